@@ -0,0 +1,64 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+import java.util.Arrays;
+
+/**
+ * Shape and size of a built hierarchy, to tell a poorly built tree from expensive shading.
+ * @param nodeCount number of nodes of the binary hierarchy
+ * @param leafCount number of leaves
+ * @param primitiveCount number of primitives referenced by the leaves
+ * @param maxDepth depth of the deepest leaf, the root being at depth zero
+ * @param leafSizes number of leaves holding each number of primitives, indexed by that number
+ * @param sahCost expected cost per ray hitting the root under the surface area heuristic
+ * @param memoryBytes bytes of the arrays making up the hierarchy, including a wide copy, without the primitives
+ */
+public record BVHStatistics(int nodeCount, int leafCount, int primitiveCount, int maxDepth, int[] leafSizes, double sahCost, long memoryBytes) {
+
+    /**
+     * Gathers the statistics of a hierarchy in the flat layout of {@link SAHBuilder}
+     */
+    public static BVHStatistics of(int[] nodeOffsets, int[] nodeCounts, int nodeCount, double sahCost, long memoryBytes) {
+        int leafCount = 0;
+        int primitiveCount = 0;
+        int maxDepth = 0;
+        int[] leafSizes = new int[1];
+        // Children always follow their parent, so levels are known once the parent has been visited
+        int[] levels = new int[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            int count = nodeCounts[node];
+            if (count == 0) {
+                levels[node + 1] = levels[node] + 1;
+                levels[nodeOffsets[node]] = levels[node] + 1;
+                continue;
+            }
+            leafCount++;
+            primitiveCount += count;
+            maxDepth = Math.max(maxDepth, levels[node]);
+            if (count >= leafSizes.length)
+                leafSizes = Arrays.copyOf(leafSizes, count + 1);
+            leafSizes[count]++;
+        }
+        return new BVHStatistics(nodeCount, leafCount, primitiveCount, maxDepth, leafSizes, sahCost, memoryBytes);
+    }
+
+    /**
+     * @return mean number of primitives per leaf
+     */
+    public double averageLeafSize() {
+        return leafCount == 0 ? 0 : (double) primitiveCount / leafCount;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sizes = new StringBuilder();
+        for (int size = 1; size < leafSizes.length; size++) {
+            if (leafSizes[size] == 0)
+                continue;
+            if (!sizes.isEmpty())
+                sizes.append(", ");
+            sizes.append(size).append(": ").append(leafSizes[size]);
+        }
+        return String.format("%d nodes, %d leaves (%.2f primitives each; %s), %d primitives, depth %d, SAH cost %.2f, %.1f KiB",
+                nodeCount, leafCount, averageLeafSize(), sizes, primitiveCount, maxDepth, sahCost, memoryBytes / 1024.0);
+    }
+}
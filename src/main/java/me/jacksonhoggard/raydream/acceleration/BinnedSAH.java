@@ -0,0 +1,326 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+import me.jacksonhoggard.raydream.config.ApplicationConfig;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Binned surface area heuristic split search, shared by the object and the mesh hierarchies.
+ * <p>
+ * Primitives are described by their bounding boxes and centroids in flat arrays and referenced through a
+ * permutation that {@link #split} partitions in place, so a node always covers a contiguous range of it.
+ * The bounds and centroids are moved along with the permutation so that every pass reads memory in order.
+ * The centroids of a node are dropped into equally sized bins along all three axes in one pass and every
+ * boundary between two bins is costed as {@code C_t + C_i * (N_l * A_l + N_r * A_r) / A}. The build is
+ * linear in the number of primitives per level and never sorts.
+ * <p>
+ * Disjoint ranges may be split concurrently. When called from a fork-join pool, the bounds and bins of
+ * nodes with at least {@link ApplicationConfig#BVH_PARALLEL_BINNING_SIZE} primitives are gathered by
+ * several tasks and merged.
+ */
+public final class BinnedSAH {
+
+    private static final int BIN = 7; // Primitive count then minimum x, y, z and maximum x, y, z
+
+    private final SAHCostModel model;
+    private final double[] bounds;
+    private final double[] centroids;
+    private final int[] primitives;
+    private final ThreadLocal<double[]> scratch;
+
+    /**
+     * @param bounds six values per primitive: minimum x, y, z then maximum x, y, z
+     * @param centroids three values per primitive
+     * @param model costs of the heuristic
+     */
+    public BinnedSAH(double[] bounds, double[] centroids, SAHCostModel model) {
+        if (bounds.length / 6 != centroids.length / 3)
+            throw new IllegalArgumentException("Bounds and centroids describe a different number of primitives");
+        this.model = model;
+        // Copied because partitioning moves them along with the permutation, which keeps every pass sequential
+        this.bounds = bounds.clone();
+        this.centroids = centroids.clone();
+        this.primitives = new int[centroids.length / 3];
+        for (int i = 0; i < primitives.length; i++)
+            primitives[i] = i;
+        this.scratch = ThreadLocal.withInitial(this::newBins);
+    }
+
+    /**
+     * @return the primitive order; each node covers a contiguous range of it
+     */
+    public int[] getPrimitives() {
+        return primitives;
+    }
+
+    /**
+     * Computes the bounding box of a range of primitives
+     * @return minimum x, y, z then maximum x, y, z
+     */
+    public double[] computeBounds(int start, int end) {
+        if (end - start >= ApplicationConfig.BVH_PARALLEL_BINNING_SIZE)
+            return new BoundsTask(start, end, false).invoke();
+        return boxOf(start, end, false);
+    }
+
+    /**
+     * Finds the cheapest split of a node and partitions its primitives around it
+     * @param start first primitive of the node
+     * @param end end of the node's primitive range, exclusive
+     * @param nodeBounds bounding box of the node as returned by {@link #computeBounds}
+     * @return start of the right child's range, or -1 if the node is cheaper as a leaf
+     */
+    public int split(int start, int end, double[] nodeBounds) {
+        int count = end - start;
+        if (count <= 1)
+            return -1;
+
+        // Small nodes use fewer bins, at most one per primitive but at least four, to keep their fixed cost down
+        int bins = Math.min(model.bins(), Math.max(count, 4));
+        boolean parallel = count >= ApplicationConfig.BVH_PARALLEL_BINNING_SIZE;
+        double[] centroidBounds = parallel ? new BoundsTask(start, end, true).invoke() : boxOf(start, end, true);
+        double[] scales = new double[3];
+        for (int axis = 0; axis < 3; axis++) {
+            double extent = centroidBounds[axis + 3] - centroidBounds[axis];
+            scales[axis] = extent > 0 ? bins / extent : 0;
+        }
+        double[] binData;
+        if (parallel) {
+            binData = new BinTask(start, end, bins, centroidBounds, scales).invoke();
+        } else {
+            binData = scratch.get();
+            resetBins(binData, bins);
+            fillBins(binData, bins, start, end, centroidBounds, scales);
+        }
+
+        int bestAxis = -1;
+        int bestBin = -1;
+        // Costs are compared scaled by the node's area so that no division is needed
+        double bestCost = Double.POSITIVE_INFINITY;
+        // The sweep from the right keeps its areas and counts after the bins
+        int rightAreas = 3 * bins * BIN;
+        int rightCounts = rightAreas + bins;
+        for (int axis = 0; axis < 3; axis++) {
+            if (scales[axis] == 0)
+                continue;
+            int first = axis * bins * BIN;
+
+            // Sweep from the right to know the area and count on the right of every boundary
+            double[] box = emptyBox();
+            int right = 0;
+            for (int b = bins - 1; b > 0; b--) {
+                right += (int) binData[first + b * BIN];
+                expand(box, 0, binData, first + b * BIN + 1);
+                binData[rightCounts + b] = right;
+                binData[rightAreas + b] = right > 0 ? surfaceArea(box) : 0;
+            }
+
+            // Sweep from the left, costing the boundary between bins b - 1 and b
+            resetBox(box, 0);
+            int left = 0;
+            for (int b = 1; b < bins; b++) {
+                left += (int) binData[first + (b - 1) * BIN];
+                expand(box, 0, binData, first + (b - 1) * BIN + 1);
+                if (left == 0 || binData[rightCounts + b] == 0)
+                    continue;
+                double cost = left * surfaceArea(box) + binData[rightCounts + b] * binData[rightAreas + b];
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestAxis = axis;
+                    bestBin = b;
+                }
+            }
+        }
+
+        if (bestAxis < 0) {
+            // Every centroid coincides: no plane separates them, so halve the range unless it fits a leaf
+            return count <= model.maxLeafSize() ? -1 : start + count / 2;
+        }
+
+        double nodeArea = surfaceArea(nodeBounds);
+        double splitCost = model.traversalCost() * nodeArea + model.intersectionCost() * bestCost;
+        double leafCost = model.intersectionCost() * count * nodeArea;
+        if (count <= model.maxLeafSize() && leafCost <= splitCost)
+            return -1;
+
+        double min = centroidBounds[bestAxis];
+        double scale = scales[bestAxis];
+        int i = start;
+        int j = end - 1;
+        while (i <= j) {
+            if (binIndex(centroids[i * 3 + bestAxis], min, scale, bins) < bestBin) {
+                i++;
+            } else {
+                swap(i, j);
+                j--;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Swaps two positions of the permutation together with their bounds and centroids
+     */
+    private void swap(int i, int j) {
+        int p = primitives[i];
+        primitives[i] = primitives[j];
+        primitives[j] = p;
+        for (int k = 0; k < 6; k++) {
+            double temp = bounds[i * 6 + k];
+            bounds[i * 6 + k] = bounds[j * 6 + k];
+            bounds[j * 6 + k] = temp;
+        }
+        for (int k = 0; k < 3; k++) {
+            double temp = centroids[i * 3 + k];
+            centroids[i * 3 + k] = centroids[j * 3 + k];
+            centroids[j * 3 + k] = temp;
+        }
+    }
+
+    private double[] newBins() {
+        return new double[model.bins() * (3 * BIN + 2)];
+    }
+
+    private static void resetBins(double[] binData, int bins) {
+        for (int b = 0; b < 3 * bins; b++) {
+            binData[b * BIN] = 0;
+            resetBox(binData, b * BIN + 1);
+        }
+    }
+
+    private void fillBins(double[] binData, int bins, int start, int end, double[] centroidBounds, double[] scales) {
+        for (int i = start; i < end; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                if (scales[axis] == 0)
+                    continue;
+                int b = (axis * bins + binIndex(centroids[i * 3 + axis], centroidBounds[axis], scales[axis], bins)) * BIN;
+                binData[b]++;
+                expand(binData, b + 1, bounds, i * 6);
+            }
+        }
+    }
+
+    /**
+     * @param ofCentroids whether to bound the centroids instead of the primitives
+     */
+    private double[] boxOf(int start, int end, boolean ofCentroids) {
+        double[] box = emptyBox();
+        for (int i = start; i < end; i++) {
+            if (ofCentroids) {
+                int c = i * 3;
+                for (int axis = 0; axis < 3; axis++) {
+                    double centroid = centroids[c + axis];
+                    if (centroid < box[axis]) box[axis] = centroid;
+                    if (centroid > box[axis + 3]) box[axis + 3] = centroid;
+                }
+            } else {
+                expand(box, 0, bounds, i * 6);
+            }
+        }
+        return box;
+    }
+
+    /**
+     * Bounds a large range of primitives or their centroids in chunks
+     */
+    private final class BoundsTask extends RecursiveTask<double[]> {
+        private final int start;
+        private final int end;
+        private final boolean ofCentroids;
+
+        BoundsTask(int start, int end, boolean ofCentroids) {
+            this.start = start;
+            this.end = end;
+            this.ofCentroids = ofCentroids;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (end - start <= ApplicationConfig.BVH_PARALLEL_BINNING_SIZE / 2 || !inForkJoinPool())
+                return boxOf(start, end, ofCentroids);
+            int mid = (start + end) >>> 1;
+            BoundsTask left = new BoundsTask(start, mid, ofCentroids);
+            left.fork();
+            double[] box = new BoundsTask(mid, end, ofCentroids).compute();
+            expand(box, 0, left.join(), 0);
+            return box;
+        }
+    }
+
+    /**
+     * Fills the bins of a large range of primitives in chunks
+     */
+    private final class BinTask extends RecursiveTask<double[]> {
+        private final int start;
+        private final int end;
+        private final int bins;
+        private final double[] centroidBounds;
+        private final double[] scales;
+
+        BinTask(int start, int end, int bins, double[] centroidBounds, double[] scales) {
+            this.start = start;
+            this.end = end;
+            this.bins = bins;
+            this.centroidBounds = centroidBounds;
+            this.scales = scales;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (end - start <= ApplicationConfig.BVH_PARALLEL_BINNING_SIZE / 2 || !inForkJoinPool()) {
+                double[] binData = newBins();
+                resetBins(binData, bins);
+                fillBins(binData, bins, start, end, centroidBounds, scales);
+                return binData;
+            }
+            int mid = (start + end) >>> 1;
+            BinTask left = new BinTask(start, mid, bins, centroidBounds, scales);
+            left.fork();
+            double[] binData = new BinTask(mid, end, bins, centroidBounds, scales).compute();
+            double[] other = left.join();
+            for (int b = 0; b < 3 * bins; b++) {
+                binData[b * BIN] += other[b * BIN];
+                expand(binData, b * BIN + 1, other, b * BIN + 1);
+            }
+            return binData;
+        }
+    }
+
+    /**
+     * @param box minimum x, y, z then maximum x, y, z
+     * @return surface area of the box, zero for an empty box
+     */
+    public static double surfaceArea(double[] box) {
+        double dx = box[3] - box[0];
+        double dy = box[4] - box[1];
+        double dz = box[5] - box[2];
+        if (dx < 0 || dy < 0 || dz < 0)
+            return 0;
+        return 2.0 * (dx * dy + dy * dz + dz * dx);
+    }
+
+    private static int binIndex(double centroid, double min, double scale, int bins) {
+        return Math.min(bins - 1, (int) ((centroid - min) * scale));
+    }
+
+    private static double[] emptyBox() {
+        double[] box = new double[6];
+        resetBox(box, 0);
+        return box;
+    }
+
+    private static void resetBox(double[] box, int offset) {
+        box[offset] = box[offset + 1] = box[offset + 2] = Double.POSITIVE_INFINITY;
+        box[offset + 3] = box[offset + 4] = box[offset + 5] = Double.NEGATIVE_INFINITY;
+    }
+
+    private static void expand(double[] box, int offset, double[] other, int otherOffset) {
+        // Plain comparisons rather than Math.min and Math.max, which also order NaN and negative zero
+        for (int axis = 0; axis < 3; axis++) {
+            double min = other[otherOffset + axis];
+            double max = other[otherOffset + 3 + axis];
+            if (min < box[offset + axis]) box[offset + axis] = min;
+            if (max > box[offset + 3 + axis]) box[offset + 3 + axis] = max;
+        }
+    }
+}
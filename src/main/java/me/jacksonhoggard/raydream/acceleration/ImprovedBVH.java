@@ -8,22 +8,212 @@ import me.jacksonhoggard.raydream.object.Hit;
 import me.jacksonhoggard.raydream.object.Model;
 import me.jacksonhoggard.raydream.object.Object;
 
-import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Improved Bounding Volume Hierarchy implementation for efficient ray-object intersection.
  * This replaces the original BVH with better splitting heuristics and memory layout.
+ * Nodes are split with a binned surface area heuristic by default, which keeps a few large objects
+ * from inflating the nodes of many small ones. The SAH build runs in parallel on a fork-join pool.
+ * <p>
+ * The hierarchy is stored depth first in flat arrays: a node's first child directly follows it, interior
+ * nodes record the index of their second child and leaves record a range of the reordered object array.
+ * Traversal walks these arrays with a fixed-size per-thread stack and allocates nothing per node. Closest
+ * hit rays enter the nearer child of a node first and skip pushed nodes entered beyond the closest hit.
+ * <p>
+ * With a width of four or eight the binary hierarchy is collapsed into a {@link WideBVH}, which tests
+ * the boxes of all children of a node together and is traversed instead.
+ * <p>
+ * When objects only move, {@link #refit} recomputes the node bounds bottom up for the new placements in
+ * linear time and keeps the tree; {@link #getDegradation()} tells how much it has degraded since it was built.
+ * <p>
+ * Objects that are not {@link Object#isBounded() bounded}, such as planes, are kept out of the tree and
+ * tested directly by every ray, so their nominal bounds do not stretch the boxes of the nodes above them.
+ * <p>
+ * {@link #getStatistics()} describes the built tree, and rays traced by a thread that has bound
+ * {@link TraversalStatistics} are counted into them.
  */
 public class ImprovedBVH {
 
-    private BVHNode root;
-    private final List<Object> objects;
+    private static final ThreadLocal<int[]> STACK = ThreadLocal.withInitial(() -> new int[ApplicationConfig.BVH_MAX_DEPTH]);
+    private static final ThreadLocal<double[]> DISTANCES = ThreadLocal.withInitial(() -> new double[ApplicationConfig.BVH_MAX_DEPTH]);
+    private static final ThreadLocal<WideBVH.Stack> WIDE_STACK = WideBVH.createStacks(); // Apart from the mesh stacks, since model leaves traverse their meshes
+
+    private final Object[] objects; // Objects of the tree in leaf order, followed by the unbounded ones
+    private final int[] order; // Index in the list the hierarchy was built from of every reordered object
+    private final int boundedCount; // Number of objects in the tree; the rest are tested by every ray
+    private double[] nodeBounds; // Six values per node: minimum x, y, z then maximum x, y, z
+    private int[] nodeOffsets; // Second child of an interior node, first object of a leaf
+    private int[] nodeCounts; // Number of objects in a leaf, zero for interior nodes
+    private int nodeCount;
+    private final int width;
+    private final WideBVH wide;
+    private final double buildCost; // Area weighted cost when built, kept through refits
 
     public ImprovedBVH(List<Object> objects) {
-        this.objects = new ArrayList<>(objects);
-        this.root = buildBVH(this.objects, 0);
+        this(objects, SplitMethod.SAH);
+    }
+
+    public ImprovedBVH(List<Object> objects, SplitMethod splitMethod) {
+        this(objects, splitMethod, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool pool the SAH build runs on; the longest axis build always runs on the calling thread
+     */
+    public ImprovedBVH(List<Object> objects, SplitMethod splitMethod, ForkJoinPool pool) {
+        this(objects, splitMethod, pool, ApplicationConfig.BVH_WIDTH);
+    }
+
+    /**
+     * @param pool pool the SAH build runs on; the longest axis build always runs on the calling thread
+     * @param width children per node: two for the binary hierarchy, four or eight for a wide one
+     */
+    public ImprovedBVH(List<Object> objects, SplitMethod splitMethod, ForkJoinPool pool, int width) {
+        int total = objects.size();
+        this.objects = new Object[total];
+
+        // Unbounded objects would stretch every box above them across all of space, so only the others go in the tree
+        int[] bounded = new int[total];
+        int[] unbounded = new int[total];
+        int n = 0;
+        int unboundedCount = 0;
+        for (int i = 0; i < total; i++) {
+            if (objects.get(i).isBounded()) bounded[n++] = i;
+            else unbounded[unboundedCount++] = i;
+        }
+
+        // Fetch every object's bounds once instead of on every comparison
+        double[] bounds = new double[n * 6];
+        double[] centroids = new double[n * 3];
+        for (int i = 0; i < n; i++) {
+            BoundingBox box = objects.get(bounded[i]).getBounds();
+            bounds[i * 6] = box.min.x;
+            bounds[i * 6 + 1] = box.min.y;
+            bounds[i * 6 + 2] = box.min.z;
+            bounds[i * 6 + 3] = box.max.x;
+            bounds[i * 6 + 4] = box.max.y;
+            bounds[i * 6 + 5] = box.max.z;
+            centroids[i * 3] = (box.min.x + box.max.x) * 0.5;
+            centroids[i * 3 + 1] = (box.min.y + box.max.y) * 0.5;
+            centroids[i * 3 + 2] = (box.min.z + box.max.z) * 0.5;
+        }
+
+        int[] order;
+        if (splitMethod != SplitMethod.LONGEST_AXIS) {
+            SAHBuilder builder = new SAHBuilder(bounds, centroids, SAHCostModel.OBJECTS).build(pool);
+            this.nodeBounds = builder.getNodeBounds();
+            this.nodeOffsets = builder.getNodeOffsets();
+            this.nodeCounts = builder.getNodeCounts();
+            this.nodeCount = builder.getNodeCount();
+            order = builder.getPrimitives();
+        } else {
+            int maxNodes = Math.max(1, 2 * n - 1);
+            this.nodeBounds = new double[maxNodes * 6];
+            this.nodeOffsets = new int[maxNodes];
+            this.nodeCounts = new int[maxNodes];
+            order = new int[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+            }
+            if (n > 0) {
+                buildBVH(order, 0, n, bounds, centroids, 0);
+            }
+            this.nodeBounds = Arrays.copyOf(nodeBounds, nodeCount * 6);
+            this.nodeOffsets = Arrays.copyOf(nodeOffsets, nodeCount);
+            this.nodeCounts = Arrays.copyOf(nodeCounts, nodeCount);
+        }
+        this.order = new int[total];
+        for (int i = 0; i < n; i++) {
+            this.order[i] = bounded[order[i]];
+        }
+        System.arraycopy(unbounded, 0, this.order, n, unboundedCount);
+        for (int i = 0; i < total; i++) {
+            this.objects[i] = objects.get(this.order[i]);
+        }
+        this.boundedCount = n;
+        this.width = width;
+        this.wide = width == 2 || nodeCount == 0 ? null : new WideBVH(nodeBounds, nodeOffsets, nodeCounts, nodeCount, width);
+        this.buildCost = areaCost(SAHCostModel.OBJECTS);
+    }
+
+    private ImprovedBVH(Object[] objects, int[] order, int boundedCount, double[] nodeBounds, int[] nodeOffsets, int[] nodeCounts, int width, double buildCost) {
+        this.objects = objects;
+        this.order = order;
+        this.boundedCount = boundedCount;
+        this.nodeBounds = nodeBounds;
+        this.nodeOffsets = nodeOffsets;
+        this.nodeCounts = nodeCounts;
+        this.nodeCount = nodeCounts.length;
+        this.width = width;
+        this.wide = width == 2 || nodeCount == 0 ? null : new WideBVH(nodeBounds, nodeOffsets, nodeCounts, nodeCount, width);
+        this.buildCost = buildCost;
+    }
+
+    /**
+     * Creates a hierarchy with the same tree for new placements of the objects this one was built from.
+     * Leaf bounds are taken from the new objects and every interior node is refit around its children,
+     * so the result is correct for any change of bounds but gets slower to traverse the further the
+     * objects move from where they were when the tree was built. This hierarchy is left unchanged.
+     * @param objects objects in the order of the list this hierarchy was built from
+     * @return the refit hierarchy, measuring its degradation against the original build
+     * @throws IllegalArgumentException if the objects cannot take the places of the old ones, see {@link #canRefit}
+     */
+    public ImprovedBVH refit(List<Object> objects) {
+        if (!canRefit(objects))
+            throw new IllegalArgumentException("Cannot refit " + this.objects.length + " objects to " + objects.size()
+                    + " that differ in number or in which are bounded");
+        Object[] placed = new Object[order.length];
+        for (int i = 0; i < order.length; i++) {
+            placed[i] = objects.get(order[i]);
+        }
+        double[] bounds = new double[nodeCount * 6];
+        // Children are laid out after their parent, so walking backwards visits them first
+        for (int node = nodeCount - 1; node >= 0; node--) {
+            int b = node * 6;
+            int count = nodeCounts[node];
+            if (count == 0) {
+                int first = (node + 1) * 6;
+                int second = nodeOffsets[node] * 6;
+                for (int axis = 0; axis < 3; axis++) {
+                    bounds[b + axis] = Math.min(bounds[first + axis], bounds[second + axis]);
+                    bounds[b + 3 + axis] = Math.max(bounds[first + 3 + axis], bounds[second + 3 + axis]);
+                }
+                continue;
+            }
+            for (int axis = 0; axis < 3; axis++) {
+                bounds[b + axis] = Double.POSITIVE_INFINITY;
+                bounds[b + 3 + axis] = Double.NEGATIVE_INFINITY;
+            }
+            for (int i = nodeOffsets[node], end = i + count; i < end; i++) {
+                BoundingBox box = placed[i].getBounds();
+                bounds[b] = Math.min(bounds[b], box.min.x);
+                bounds[b + 1] = Math.min(bounds[b + 1], box.min.y);
+                bounds[b + 2] = Math.min(bounds[b + 2], box.min.z);
+                bounds[b + 3] = Math.max(bounds[b + 3], box.max.x);
+                bounds[b + 4] = Math.max(bounds[b + 4], box.max.y);
+                bounds[b + 5] = Math.max(bounds[b + 5], box.max.z);
+            }
+        }
+        return new ImprovedBVH(placed, order, boundedCount, bounds, nodeOffsets, nodeCounts, width, buildCost);
+    }
+
+    /**
+     * @param objects objects in the order of the list this hierarchy was built from
+     * @return whether there are as many objects as this hierarchy was built from and each one is bounded
+     *         exactly where its predecessor was, so that the tree and the unbounded objects outside it keep
+     *         their layout
+     */
+    public boolean canRefit(List<Object> objects) {
+        if (objects.size() != this.objects.length)
+            return false;
+        for (int i = 0; i < order.length; i++) {
+            if (objects.get(order[i]).isBounded() != (i < boundedCount))
+                return false;
+        }
+        return true;
     }
 
     /**
@@ -34,176 +224,588 @@ public class ImprovedBVH {
      * @return intersection result or null if no intersection
      */
     public Hit intersect(Ray ray, double tMin, double tMax) {
-        if (root == null) return null;
-        return intersectNode(root, ray, tMin, tMax);
+        TraversalStatistics.Counters counters = TraversalStatistics.counters(TraversalStatistics.RayType.CLOSEST_HIT);
+        Hit hit = null;
+        if (nodeCount > 0)
+            hit = wide != null ? intersectWide(ray, tMin, tMax, counters) : intersect(0, ray, tMin, tMax, counters);
+        // Unbounded objects like a ground plane are mostly behind the closest object, so they come last
+        Hit unbounded = intersectUnbounded(ray, tMin, hit != null ? hit.t() : tMax, counters);
+        if (unbounded != null) hit = unbounded;
+        if (counters != null) counters.addRay(hit != null);
+        return hit;
     }
 
     /**
-     * Shadow ray intersection that properly handles object space transformations
-     * @param ray the shadow ray
-     * @param maxDistance maximum distance to check
-     * @return true if ray is blocked, false if clear path
+     * Finds the closest intersection with the objects kept out of the tree
      */
-    public boolean intersectShadowRay(Ray ray, double maxDistance) {
-        if (root == null) return false;
-        return intersectShadowNode(root, ray, 0.0001, maxDistance);
+    private Hit intersectUnbounded(Ray ray, double tMin, double tMax, TraversalStatistics.Counters counters) {
+        Vector3D origin = ray.origin();
+        Vector3D direction = ray.direction();
+        Hit closest = null;
+        double closestT = tMax;
+        for (int i = boundedCount; i < objects.length; i++) {
+            Object object = objects[i];
+            // The any-hit test allocates nothing and rejects the rays that already hit something closer
+            if (!object.occludes(origin.x, origin.y, origin.z, direction.x, direction.y, direction.z, tMin, closestT)) continue;
+            Hit result = object.intersect(toObjectSpace(ray, object));
+            if (result != null && result.t() > tMin && result.t() < closestT) {
+                closest = toWorldHit(ray, result);
+                closestT = result.t();
+            }
+        }
+        if (counters != null) counters.addPrimitives(objects.length - boundedCount);
+        return closest;
     }
 
-    private BVHNode buildBVH(List<Object> objects, int depth) {
-        if (objects.isEmpty()) return null;
+    /**
+     * Finds the closest intersection within the subtree of a binary node. Both children of a node are
+     * tested together: the nearer one is visited next and the farther one is pushed with its entry
+     * distance, and is skipped if a closer hit has been found by the time it is popped.
+     * @param counters counters of the calling thread, or null if it is not counting
+     */
+    private Hit intersect(int root, Ray ray, double tMin, double tMax, TraversalStatistics.Counters counters) {
+        TraversalRay traversal = new TraversalRay(ray);
+        if (counters != null) counters.addNode();
+        if (!traversal.intersects(nodeBounds, root * 6, tMin, tMax)) return null;
+        int[] stack = STACK.get();
+        double[] distances = DISTANCES.get();
+        int stackSize = 0;
+        int node = root;
+        Hit closest = null;
+        double closestT = tMax;
+
+        while (true) {
+            int count = nodeCounts[node];
+            if (count == 0) {
+                int near = node + 1;
+                int far = nodeOffsets[node];
+                double nearT = traversal.entry(nodeBounds, near * 6, tMin, closestT);
+                double farT = traversal.entry(nodeBounds, far * 6, tMin, closestT);
+                if (counters != null) {
+                    counters.addNode();
+                    counters.addNode();
+                }
+                if (farT < nearT) {
+                    int swap = near;
+                    near = far;
+                    far = swap;
+                    double swapT = nearT;
+                    nearT = farT;
+                    farT = swapT;
+                }
+                if (nearT != TraversalRay.MISS) {
+                    if (farT != TraversalRay.MISS) {
+                        stack[stackSize] = far;
+                        distances[stackSize++] = farT;
+                    }
+                    node = near;
+                    continue;
+                }
+            } else {
+                if (counters != null) counters.addPrimitives(count);
+                // Leaf node - test objects with proper object space transformation
+                for (int i = nodeOffsets[node], end = i + count; i < end; i++) {
+                    Object object = objects[i];
+                    Hit result = object.intersect(toObjectSpace(ray, object));
+                    if (result != null && result.t() > tMin && result.t() < closestT) {
+                        closest = toWorldHit(ray, result);
+                        closestT = result.t();
+                    }
+                }
+            }
+            // Pop the next node entered before the closest hit
+            do {
+                if (stackSize == 0) return closest;
+                node = stack[--stackSize];
+            } while (distances[stackSize] > closestT);
+        }
+    }
 
-        BVHNode node = new BVHNode();
-        node.bounds = calculateBounds(objects);
+    private Hit intersectWide(Ray ray, double tMin, double tMax, TraversalStatistics.Counters counters) {
+        TraversalRay traversal = new TraversalRay(ray);
+        WideBVH.Stack stack = wide.stack(WIDE_STACK);
+        int stackSize = wide.visit(0, stack, 0, traversal, tMin, tMax);
+        if (counters != null) counters.addNode();
+        Hit closest = null;
+        double closestT = tMax;
+
+        while (stackSize > 0) {
+            stackSize--;
+            // Entered beyond the closest hit found since it was pushed
+            if (stack.distance(stackSize) > closestT) continue;
+            int slot = stack.slot(stackSize);
+            int count = wide.getCount(slot);
+            if (count == 0) {
+                stackSize = wide.visit(wide.getOffset(slot), stack, stackSize, traversal, tMin, closestT);
+                if (counters != null) counters.addNode();
+                continue;
+            }
+            if (counters != null) counters.addPrimitives(count);
+            for (int i = wide.getOffset(slot), end = i + count; i < end; i++) {
+                Object object = objects[i];
+                Hit result = object.intersect(toObjectSpace(ray, object));
+                if (result != null && result.t() > tMin && result.t() < closestT) {
+                    closest = toWorldHit(ray, result);
+                    closestT = result.t();
+                }
+            }
+        }
+        return closest;
+    }
 
-        // Leaf node condition
-        if (objects.size() <= ApplicationConfig.BVH_MAX_OBJECTS_PER_LEAF || depth > 20) {
-            node.objects = new ArrayList<>(objects);
-            return node;
+    /**
+     * Finds the closest intersection of every ray in a packet, as {@link #intersect(Ray, double, double)}
+     * would for each ray up to its maximum distance. The packet walks the binary hierarchy once, culling
+     * nodes that its bounds miss and testing only the rays still active in a node; incoherent packets and
+     * subtrees that a single ray of the packet reaches are traced one ray at a time.
+     * @param packet rays to intersect, receiving their hits
+     * @param tMin minimum distance
+     */
+    public void intersect(RayPacket packet, double tMin) {
+        packet.prepare();
+        int n = packet.size;
+        if (objects.length == 0 || n == 0) return;
+        if (!packet.coherent) {
+            for (int i = 0; i < n; i++) {
+                packet.hits[i] = intersect(packet.rays[i], tMin, packet.maxDistances[i]);
+            }
+            return;
+        }
+        TraversalStatistics.Counters counters = TraversalStatistics.counters(TraversalStatistics.RayType.CLOSEST_HIT);
+        if (nodeCount > 0) intersectCoherent(packet, tMin, counters);
+        if (boundedCount < objects.length) {
+            for (int i = 0; i < n; i++) {
+                Hit hit = intersectUnbounded(packet.rays[i], tMin, packet.closest[i], counters);
+                if (hit != null) {
+                    packet.hits[i] = hit;
+                    packet.closest[i] = hit.t();
+                }
+            }
         }
+        if (counters != null) {
+            int hits = 0;
+            for (int i = 0; i < n; i++) {
+                if (packet.hits[i] != null) hits++;
+            }
+            counters.addRays(n, hits);
+        }
+    }
 
-        // Choose split axis (Surface Area Heuristic)
-        int bestAxis = chooseSplitAxis(objects, node.bounds);
+    private void intersectCoherent(RayPacket packet, double tMin, TraversalStatistics.Counters counters) {
+        int n = packet.size;
+        int stackSize = 0;
+        int node = 0;
+        long mask = n == RayPacket.MAX_SIZE ? -1L : (1L << n) - 1;
+
+        while (true) {
+            long active = activeRays(packet, node, mask, tMin);
+            if (counters != null && mask != 0) counters.addNode();
+            if (Long.bitCount(active) == 1) {
+                // Diverged: the one remaining ray finishes this subtree on its own
+                int i = Long.numberOfTrailingZeros(active);
+                Hit hit = intersect(node, packet.rays[i], tMin, packet.closest[i], counters);
+                if (hit != null) {
+                    packet.hits[i] = hit;
+                    packet.closest[i] = hit.t();
+                    packet.minClosest = Math.min(packet.minClosest, hit.t());
+                }
+            } else if (active != 0) {
+                int count = nodeCounts[node];
+                if (count == 0) {
+                    packet.stackNodes[stackSize] = nodeOffsets[node];
+                    packet.stackMasks[stackSize++] = active;
+                    node++;
+                    mask = active;
+                    continue;
+                }
+                if (counters != null) counters.addPrimitives(count * Long.bitCount(active));
+                for (long rays = active; rays != 0; rays &= rays - 1) {
+                    int r = Long.numberOfTrailingZeros(rays);
+                    Ray ray = packet.rays[r];
+                    for (int i = nodeOffsets[node], end = i + count; i < end; i++) {
+                        Object object = objects[i];
+                        Hit result = object.intersect(toObjectSpace(ray, object));
+                        if (result != null && result.t() > tMin && result.t() < packet.closest[r]) {
+                            packet.hits[r] = toWorldHit(ray, result);
+                            packet.closest[r] = result.t();
+                            packet.minClosest = Math.min(packet.minClosest, result.t());
+                        }
+                    }
+                }
+            }
+            if (stackSize == 0) return;
+            node = packet.stackNodes[--stackSize];
+            mask = packet.stackMasks[stackSize];
+        }
+    }
 
-        // Sort objects along the chosen axis
-        objects.sort(getComparator(bestAxis));
+    /**
+     * Tests every ray in a packet for a blocker before its maximum distance, as
+     * {@link #intersectShadowRay(Ray, double)} would for each ray. Rays leave the packet as soon as they are
+     * found to be blocked.
+     * @param packet shadow rays, receiving whether each one is blocked
+     */
+    public void intersectShadowRays(RayPacket packet) {
+        packet.prepare();
+        int n = packet.size;
+        if (objects.length == 0 || n == 0) return;
+        double tMin = 0.0001;
+        if (!packet.coherent) {
+            for (int i = 0; i < n; i++) {
+                if (intersectShadowRay(packet.rays[i], packet.maxDistances[i]))
+                    packet.occluded |= 1L << i;
+            }
+            return;
+        }
+        TraversalStatistics.Counters counters = TraversalStatistics.counters(TraversalStatistics.RayType.SHADOW);
+        if (boundedCount < objects.length) {
+            for (int i = 0; i < n; i++) {
+                if (findUnboundedOccluder(packet.rays[i], tMin, packet.maxDistances[i], counters) >= 0)
+                    packet.occluded |= 1L << i;
+            }
+        }
+        if (nodeCount > 0) findOccluders(packet, tMin, counters);
+        if (counters != null) counters.addRays(n, Long.bitCount(packet.occluded));
+    }
 
-        // Split objects
-        int midPoint = objects.size() / 2;
-        List<Object> leftObjects = objects.subList(0, midPoint);
-        List<Object> rightObjects = objects.subList(midPoint, objects.size());
+    private void findOccluders(RayPacket packet, double tMin, TraversalStatistics.Counters counters) {
+        int n = packet.size;
+        int stackSize = 0;
+        int node = 0;
+        long all = n == RayPacket.MAX_SIZE ? -1L : (1L << n) - 1;
+        long mask = all;
+
+        while (true) {
+            long active = activeRays(packet, node, mask & ~packet.occluded, tMin);
+            if (counters != null && (mask & ~packet.occluded) != 0) counters.addNode();
+            if (Long.bitCount(active) == 1) {
+                int i = Long.numberOfTrailingZeros(active);
+                if (findOccluder(node, packet.rays[i], tMin, packet.maxDistances[i], counters) >= 0)
+                    packet.occluded |= active;
+            } else if (active != 0) {
+                int count = nodeCounts[node];
+                if (count == 0) {
+                    packet.stackNodes[stackSize] = nodeOffsets[node];
+                    packet.stackMasks[stackSize++] = active;
+                    node++;
+                    mask = active;
+                    continue;
+                }
+                for (long rays = active; rays != 0; rays &= rays - 1) {
+                    int r = Long.numberOfTrailingZeros(rays);
+                    TraversalRay ray = packet.traversalRays[r];
+                    for (int i = nodeOffsets[node], end = i + count; i < end; i++) {
+                        if (counters != null) counters.addPrimitives(1);
+                        if (occludes(objects[i], ray, tMin, packet.maxDistances[r])) {
+                            packet.occluded |= 1L << r;
+                            break;
+                        }
+                    }
+                }
+                if (packet.occluded == all) return;
+            }
+            if (stackSize == 0) return;
+            node = packet.stackNodes[--stackSize];
+            mask = packet.stackMasks[stackSize];
+        }
+    }
 
-        // Recursively build children
-        node.left = buildBVH(new ArrayList<>(leftObjects), depth + 1);
-        node.right = buildBVH(new ArrayList<>(rightObjects), depth + 1);
+    /**
+     * @return the rays of a mask that overlap a node; the bounds of the packet decide for all rays at once
+     *         when they miss the node or lie entirely within it
+     */
+    private long activeRays(RayPacket packet, int node, long mask, double tMin) {
+        if (mask == 0 || packet.misses(nodeBounds, node * 6, tMin)) return 0;
+        if (Long.bitCount(mask) > 1 && packet.overlaps(nodeBounds, node * 6, tMin)) return mask;
+        long active = 0;
+        for (long rays = mask; rays != 0; rays &= rays - 1) {
+            int r = Long.numberOfTrailingZeros(rays);
+            if (packet.traversalRays[r].intersects(nodeBounds, node * 6, tMin, packet.closest[r]))
+                active |= 1L << r;
+        }
+        return active;
+    }
 
-        return node;
+    /**
+     * Creates the hit in world space, using the original ray for the hit point
+     */
+    private static Hit toWorldHit(Ray ray, Hit result) {
+        if(result.object() instanceof Model) {
+            return new Hit(result.object(), result.triangle(), ray.at(result.t()), result.normal(), result.texCoord(), result.t());
+        }
+        return new Hit(result.object(), null, ray.at(result.t()), result.normal(), result.texCoord(), result.t());
     }
 
-    private BoundingBox calculateBounds(List<Object> objects) {
-        if (objects.isEmpty()) return new BoundingBox();
+    /**
+     * Shadow ray intersection that properly handles object space transformations.
+     * Stops at the first blocker found, computes no hit attributes and allocates nothing.
+     * @param ray the shadow ray
+     * @param maxDistance maximum distance to check
+     * @return true if ray is blocked, false if clear path
+     */
+    public boolean intersectShadowRay(Ray ray, double maxDistance) {
+        TraversalStatistics.Counters counters = TraversalStatistics.counters(TraversalStatistics.RayType.SHADOW);
+        boolean blocked = findOccluder(ray, 0.0001, maxDistance, counters) >= 0;
+        if (counters != null) counters.addRay(blocked);
+        return blocked;
+    }
 
-        BoundingBox bounds = new BoundingBox(objects.get(0).getBounds());
-        for (int i = 1; i < objects.size(); i++) {
-            bounds.expand(objects.get(i).getBounds());
+    /**
+     * Shadow ray intersection that first tests the object which blocked the previous shadow ray toward
+     * the same light, and remembers the blocker it finds for the next one
+     * @param cache blockers of the calling thread
+     * @param light index of the light the ray points to
+     * @return true if ray is blocked, false if clear path
+     */
+    public boolean intersectShadowRay(Ray ray, double maxDistance, OccluderCache cache, int light) {
+        double tMin = 0.0001;
+        TraversalStatistics.Counters counters = TraversalStatistics.counters(TraversalStatistics.RayType.SHADOW);
+        boolean blocked = false;
+        int last = cache.get(this, light);
+        if (last >= 0) {
+            Vector3D origin = ray.origin();
+            Vector3D direction = ray.direction();
+            if (counters != null) counters.addPrimitives(1);
+            blocked = objects[last].occludes(origin.x, origin.y, origin.z, direction.x, direction.y, direction.z, tMin, maxDistance);
         }
-        return bounds;
+        if (!blocked) {
+            int occluder = findOccluder(ray, tMin, maxDistance, counters);
+            if (occluder >= 0) {
+                cache.set(light, occluder);
+                blocked = true;
+            }
+        }
+        if (counters != null) counters.addRay(blocked);
+        return blocked;
     }
 
-    private int chooseSplitAxis(List<Object> objects, BoundingBox bounds) {
-        Vector3D extent = bounds.getExtent();
+    /**
+     * @return position of any object blocking the ray within the given distances, or -1 if there is none
+     */
+    private int findOccluder(Ray ray, double tMin, double maxDistance, TraversalStatistics.Counters counters) {
+        int occluder = findUnboundedOccluder(ray, tMin, maxDistance, counters);
+        if (occluder >= 0 || nodeCount == 0) return occluder;
+        if (wide != null) return findOccluderWide(ray, tMin, maxDistance, counters);
+        return findOccluder(0, ray, tMin, maxDistance, counters);
+    }
 
-        // Choose the axis with the largest extent
-        if (extent.x >= extent.y && extent.x >= extent.z) return 0; // X axis
-        if (extent.y >= extent.z) return 1; // Y axis
-        return 2; // Z axis
-    }
-
-    private Comparator<Object> getComparator(int axis) {
-        return switch (axis) {
-            case 0 -> Comparator.comparingDouble(obj -> obj.getBounds().getCenter().x);
-            case 1 -> Comparator.comparingDouble(obj -> obj.getBounds().getCenter().y);
-            case 2 -> Comparator.comparingDouble(obj -> obj.getBounds().getCenter().z);
-            default -> throw new IllegalArgumentException("Invalid axis: " + axis);
-        };
-    }
-
-    private Hit intersectNode(BVHNode node, Ray ray, double tMin, double tMax) {
-        // Check if ray intersects node bounds
-        if (!node.bounds.intersects(ray, tMin, tMax)) {
-            return null;
-        }
-
-        // Leaf node - test objects with proper object space transformation
-        if (node.objects != null) {
-            Hit closest = null;
-            double closestT = tMax;
-
-            for (Object object : node.objects) {
-                // Transform ray to object space (critical for correct intersection)
-                Vector4D rOriginOS = new Vector4D(ray.origin().x, ray.origin().y, ray.origin().z, 1);
-                Vector4D rDirOS = new Vector4D(ray.direction().x, ray.direction().y, ray.direction().z, 0);
-                rOriginOS = rOriginOS.mult(object.getInverseTransformMatrix());
-                rDirOS = rDirOS.mult(object.getInverseTransformMatrix());
-                Ray rayOS = new Ray(new Vector3D(rOriginOS.x, rOriginOS.y, rOriginOS.z), new Vector3D(rDirOS.x, rDirOS.y, rDirOS.z));
-                
-                Hit result = object.intersect(rayOS);
-                if (result != null && result.t() > tMin && result.t() < closestT) {
-                    // Create hit in world space (using original ray for hit point calculation)
-                    if(result.object() instanceof Model) {
-                        closest = new Hit(result.object(), result.triangle(), ray.at(result.t()), result.normal(), result.texCoord(), result.t());
-                    } else {
-                        closest = new Hit(result.object(), null, ray.at(result.t()), result.normal(), result.texCoord(), result.t());
+    /**
+     * Looks for any blocker among the objects kept out of the tree
+     */
+    private int findUnboundedOccluder(Ray ray, double tMin, double maxDistance, TraversalStatistics.Counters counters) {
+        Vector3D origin = ray.origin();
+        Vector3D direction = ray.direction();
+        for (int i = boundedCount; i < objects.length; i++) {
+            if (counters != null) counters.addPrimitives(1);
+            if (objects[i].occludes(origin.x, origin.y, origin.z, direction.x, direction.y, direction.z, tMin, maxDistance)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Looks for any blocker within the subtree of a binary node
+     */
+    private int findOccluder(int root, Ray ray, double tMin, double maxDistance, TraversalStatistics.Counters counters) {
+        TraversalRay traversal = new TraversalRay(ray);
+        int[] stack = STACK.get();
+        int stackSize = 0;
+        int node = root;
+
+        while (true) {
+            if (counters != null) counters.addNode();
+            if (traversal.intersects(nodeBounds, node * 6, tMin, maxDistance)) {
+                int count = nodeCounts[node];
+                if (count == 0) {
+                    stack[stackSize++] = nodeOffsets[node];
+                    node++;
+                    continue;
+                }
+                for (int i = nodeOffsets[node], end = i + count; i < end; i++) {
+                    if (counters != null) counters.addPrimitives(1);
+                    if (occludes(objects[i], traversal, tMin, maxDistance)) {
+                        return i; // Early exit on first intersection
                     }
-                    closestT = result.t();
                 }
             }
-            return closest;
+            if (stackSize == 0) return -1;
+            node = stack[--stackSize];
         }
+    }
 
-        // Internal node - test children
-        Hit leftResult = null;
-        Hit rightResult = null;
-
-        if (node.left != null) {
-            leftResult = intersectNode(node.left, ray, tMin, tMax);
+    private int findOccluderWide(Ray ray, double tMin, double maxDistance, TraversalStatistics.Counters counters) {
+        TraversalRay traversal = new TraversalRay(ray);
+        WideBVH.Stack stack = wide.stack(WIDE_STACK);
+        int stackSize = wide.visit(0, stack, 0, traversal, tMin, maxDistance);
+        if (counters != null) counters.addNode();
+
+        while (stackSize > 0) {
+            int slot = stack.slot(--stackSize);
+            int count = wide.getCount(slot);
+            if (count == 0) {
+                stackSize = wide.visit(wide.getOffset(slot), stack, stackSize, traversal, tMin, maxDistance);
+                if (counters != null) counters.addNode();
+                continue;
+            }
+            for (int i = wide.getOffset(slot), end = i + count; i < end; i++) {
+                if (counters != null) counters.addPrimitives(1);
+                if (occludes(objects[i], traversal, tMin, maxDistance)) {
+                    return i;
+                }
+            }
         }
+        return -1;
+    }
 
-        double rightTMax = leftResult != null ? leftResult.t() : tMax;
-        if (node.right != null) {
-            rightResult = intersectNode(node.right, ray, tMin, rightTMax);
-        }
+    private static boolean occludes(Object object, TraversalRay ray, double tMin, double tMax) {
+        return object.occludes(ray.originX(), ray.originY(), ray.originZ(), ray.directionX(), ray.directionY(), ray.directionZ(), tMin, tMax);
+    }
 
-        // Return closest intersection
-        if (rightResult != null) return rightResult;
-        return leftResult;
+    /**
+     * Transforms a ray to object space (critical for correct intersection)
+     */
+    private static Ray toObjectSpace(Ray ray, Object object) {
+        Vector4D rOriginOS = new Vector4D(ray.origin().x, ray.origin().y, ray.origin().z, 1);
+        Vector4D rDirOS = new Vector4D(ray.direction().x, ray.direction().y, ray.direction().z, 0);
+        rOriginOS = rOriginOS.mult(object.getInverseTransformMatrix());
+        rDirOS = rDirOS.mult(object.getInverseTransformMatrix());
+        return new Ray(new Vector3D(rOriginOS.x, rOriginOS.y, rOriginOS.z), new Vector3D(rDirOS.x, rDirOS.y, rDirOS.z));
     }
 
-    private boolean intersectShadowNode(BVHNode node, Ray ray, double tMin, double tMax) {
-        // Check if ray intersects node bounds
-        if (!node.bounds.intersects(ray, tMin, tMax)) {
-            return false;
+    private int buildBVH(int[] order, int start, int end, double[] bounds, double[] centroids, int depth) {
+        int node = nodeCount++;
+        int b = node * 6;
+        for (int axis = 0; axis < 3; axis++) {
+            nodeBounds[b + axis] = Double.POSITIVE_INFINITY;
+            nodeBounds[b + 3 + axis] = Double.NEGATIVE_INFINITY;
+        }
+        for (int i = start; i < end; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                nodeBounds[b + axis] = Math.min(nodeBounds[b + axis], bounds[order[i] * 6 + axis]);
+                nodeBounds[b + 3 + axis] = Math.max(nodeBounds[b + 3 + axis], bounds[order[i] * 6 + 3 + axis]);
+            }
         }
 
-        // Leaf node - test objects for shadow ray intersection with object space transform
-        if (node.objects != null) {
-            for (Object object : node.objects) {
-                // Transform ray to object space (critical for correct intersection)
-                Vector4D rOriginOS = new Vector4D(ray.origin().x, ray.origin().y, ray.origin().z, 1);
-                Vector4D rDirOS = new Vector4D(ray.direction().x, ray.direction().y, ray.direction().z, 0);
-                rOriginOS = rOriginOS.mult(object.getInverseTransformMatrix());
-                rDirOS = rDirOS.mult(object.getInverseTransformMatrix());
-                Ray rayOS = new Ray(new Vector3D(rOriginOS.x, rOriginOS.y, rOriginOS.z), new Vector3D(rDirOS.x, rDirOS.y, rDirOS.z));
-                
-                // For shadow rays, we only care if there's an intersection, not the details
-                if(object instanceof Model) {
-                    if(((Model) object).intersectShadowRay(rayOS, tMax)) {
-                        return true;
-                    }
-                } else {
-                    Hit result = object.intersect(rayOS);
-                    if (result != null && result.t() > tMin && result.t() < tMax) {
-                        return true; // Early exit on first intersection
-                    }
+        // Leaf node condition
+        int count = end - start;
+        if (count <= ApplicationConfig.BVH_MAX_OBJECTS_PER_LEAF || depth > 20) {
+            nodeOffsets[node] = start;
+            nodeCounts[node] = count;
+            return node;
+        }
+
+        // Choose the axis with the largest extent
+        double extentX = nodeBounds[b + 3] - nodeBounds[b];
+        double extentY = nodeBounds[b + 4] - nodeBounds[b + 1];
+        double extentZ = nodeBounds[b + 5] - nodeBounds[b + 2];
+        int axis = 2;
+        if (extentX >= extentY && extentX >= extentZ) axis = 0;
+        else if (extentY >= extentZ) axis = 1;
+
+        // Split objects at the median centroid along the chosen axis
+        int mid = start + count / 2;
+        selectMedian(order, start, end, mid, centroids, axis);
+
+        // Recursively build children; the first one is laid out directly after this node
+        buildBVH(order, start, mid, bounds, centroids, depth + 1);
+        nodeOffsets[node] = buildBVH(order, mid, end, bounds, centroids, depth + 1);
+        return node;
+    }
+
+    /**
+     * Reorders a range so that the object at position k has the k-th smallest centroid along an axis,
+     * with no greater centroids before it and no smaller ones after it
+     */
+    private static void selectMedian(int[] order, int start, int end, int k, double[] centroids, int axis) {
+        int lo = start;
+        int hi = end - 1;
+        while (lo < hi) {
+            double pivot = centroids[order[(lo + hi) >>> 1] * 3 + axis];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (centroids[order[i] * 3 + axis] < pivot) i++;
+                while (centroids[order[j] * 3 + axis] > pivot) j--;
+                if (i <= j) {
+                    int temp = order[i];
+                    order[i] = order[j];
+                    order[j] = temp;
+                    i++;
+                    j--;
                 }
             }
-            return false;
+            if (k <= j) hi = j;
+            else if (k >= i) lo = i;
+            else return;
         }
+    }
 
-        // Internal node - test children
-        if (node.left != null && intersectShadowNode(node.left, ray, tMin, tMax)) {
-            return true;
-        }
-        if (node.right != null && intersectShadowNode(node.right, ray, tMin, tMax)) {
-            return true;
+    /**
+     * Estimates the cost of tracing a ray through the hierarchy under the surface area heuristic:
+     * every node is weighted by the probability that a ray hitting the root also hits it.
+     * Lower is better; useful for comparing split methods on the same objects.
+     * @param model costs of visiting a node and testing an object
+     * @return expected cost per ray
+     */
+    public double getSAHCost(SAHCostModel model) {
+        if (nodeCount == 0) return 0;
+        double rootArea = nodeArea(0);
+        if (rootArea <= 0) return model.intersectionCost() * boundedCount;
+        return areaCost(model) / rootArea;
+    }
+
+    /**
+     * Compares the tree with itself when it was built. The SAH cost is taken relative to the root area
+     * at build time rather than the current one, so nodes stretched by a far moved object count against
+     * the refit instead of shrinking every other node's share.
+     * @return how many times the area weighted cost has grown through refits, one for a freshly built tree
+     */
+    public double getDegradation() {
+        return buildCost > 0 ? areaCost(SAHCostModel.OBJECTS) / buildCost : 1;
+    }
+
+    /**
+     * @return the SAH cost without dividing by the root area
+     */
+    private double areaCost(SAHCostModel model) {
+        double cost = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            int count = nodeCounts[node];
+            cost += nodeArea(node) * (count == 0 ? model.traversalCost() : model.intersectionCost() * count);
         }
-        
-        return false;
+        return cost;
+    }
+
+    /**
+     * @return children per node: two for the binary hierarchy, four or eight for a wide one
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    public int getObjectCount() {
+        return objects.length;
     }
 
-    private static class BVHNode {
-        BoundingBox bounds;
-        BVHNode left, right;
-        List<Object> objects; // Only used for leaf nodes
+    /**
+     * @return number of objects kept out of the tree because they are not bounded
+     */
+    public int getUnboundedCount() {
+        return objects.length - boundedCount;
+    }
+
+    /**
+     * @return node count, leaf sizes, depth, SAH cost and memory footprint of the hierarchy
+     */
+    public BVHStatistics getStatistics() {
+        long memory = nodeBounds.length * 8L + (nodeOffsets.length + nodeCounts.length + order.length) * 4L;
+        if (wide != null) memory += wide.getMemoryFootprint();
+        return BVHStatistics.of(nodeOffsets, nodeCounts, nodeCount, getSAHCost(SAHCostModel.OBJECTS), memory);
+    }
+
+    private double nodeArea(int node) {
+        return BinnedSAH.surfaceArea(Arrays.copyOfRange(nodeBounds, node * 6, node * 6 + 6));
     }
 
     public static class BoundingBox {
@@ -241,6 +843,12 @@ public class ImprovedBVH {
             );
         }
 
+        public double getSurfaceArea() {
+            Vector3D extent = getExtent();
+            if (extent.x < 0 || extent.y < 0 || extent.z < 0) return 0;
+            return 2.0 * (extent.x * extent.y + extent.y * extent.z + extent.z * extent.x);
+        }
+
         public Vector3D getExtent() {
             return new Vector3D(
                 max.x - min.x,
@@ -249,22 +857,8 @@ public class ImprovedBVH {
             );
         }
 
-        public boolean intersects(Ray ray, double tMin, double tMax) {
-            // Fast ray-box intersection using slab method
-            Vector3D invDir = new Vector3D(1.0 / ray.direction().x, 1.0 / ray.direction().y, 1.0 / ray.direction().z);
-            Vector3D origin = ray.origin();
-
-            double t1 = (min.x - origin.x) * invDir.x;
-            double t2 = (max.x - origin.x) * invDir.x;
-            double t3 = (min.y - origin.y) * invDir.y;
-            double t4 = (max.y - origin.y) * invDir.y;
-            double t5 = (min.z - origin.z) * invDir.z;
-            double t6 = (max.z - origin.z) * invDir.z;
-
-            double tNear = Math.max(Math.max(Math.min(t1, t2), Math.min(t3, t4)), Math.min(t5, t6));
-            double tFar = Math.min(Math.min(Math.max(t1, t2), Math.max(t3, t4)), Math.max(t5, t6));
-
-            return tFar >= 0 && tNear <= tFar && tNear <= tMax && tFar >= tMin;
+        public boolean intersects(TraversalRay ray, double tMin, double tMax) {
+            return ray.entry(min, max, Math.max(tMin, 0), tMax) != TraversalRay.MISS;
         }
     }
 }
@@ -0,0 +1,37 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+import java.util.Arrays;
+
+/**
+ * Remembers, for every light, the object that last blocked a shadow ray toward it. Neighbouring shading
+ * points are mostly shadowed by the same object, so {@link ImprovedBVH#intersectShadowRay(me.jacksonhoggard.raydream.math.Ray, double, OccluderCache, int)}
+ * tests it before walking the hierarchy.
+ * <p>
+ * A cache is not thread safe; each render thread keeps its own. It forgets everything when used with
+ * another hierarchy.
+ */
+public final class OccluderCache {
+
+    private final int[] occluders; // Position in the hierarchy's object array, -1 if none is known
+    private ImprovedBVH bvh;
+
+    /**
+     * @param lights number of lights shadow rays are cast toward
+     */
+    public OccluderCache(int lights) {
+        this.occluders = new int[lights];
+        Arrays.fill(occluders, -1);
+    }
+
+    int get(ImprovedBVH bvh, int light) {
+        if (this.bvh != bvh) {
+            this.bvh = bvh;
+            Arrays.fill(occluders, -1);
+        }
+        return occluders[light];
+    }
+
+    void set(int light, int occluder) {
+        occluders[light] = occluder;
+    }
+}
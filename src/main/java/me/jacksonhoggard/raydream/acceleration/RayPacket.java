@@ -0,0 +1,175 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+import me.jacksonhoggard.raydream.config.ApplicationConfig;
+import me.jacksonhoggard.raydream.math.Ray;
+import me.jacksonhoggard.raydream.object.Hit;
+
+/**
+ * Up to 64 coherent rays, such as the primary rays of a block of pixels or the shadow rays of a block toward
+ * one point light, that {@link ImprovedBVH} traverses together.
+ * <p>
+ * Every ray is kept as a {@link TraversalRay} for the per-ray box tests, and the traversal also bounds
+ * their origins and inverse directions with intervals to cull whole nodes the packet misses. A packet is reused: it is cleared,
+ * filled and traced, then its results are read back by the index {@link #add} returned.
+ */
+public final class RayPacket {
+
+    public static final int MAX_SIZE = 64;
+
+    final Ray[] rays = new Ray[MAX_SIZE];
+    final TraversalRay[] traversalRays = new TraversalRay[MAX_SIZE];
+    final double[] maxDistances = new double[MAX_SIZE];
+    final double[] closest = new double[MAX_SIZE]; // Closest hit found so far, or the maximum distance
+    final Hit[] hits = new Hit[MAX_SIZE];
+    long occluded; // Bit per ray blocked before its maximum distance
+    int size;
+
+    // Bounds over all rays: minimum and maximum origin, then minimum and maximum inverse direction, per axis
+    final double[] intervals = new double[12];
+    double maxDistance;
+    double minClosest; // Smallest closest hit or maximum distance of any ray
+    boolean coherent; // Whether every axis has the same direction sign for all rays
+
+    // Traversal stack of nodes and the rays still active in them
+    final int[] stackNodes = new int[ApplicationConfig.BVH_MAX_DEPTH];
+    final long[] stackMasks = new long[ApplicationConfig.BVH_MAX_DEPTH];
+
+    public RayPacket() {
+        for (int i = 0; i < MAX_SIZE; i++)
+            traversalRays[i] = new TraversalRay();
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Adds a ray to the packet
+     * @param maxDistance distance beyond which hits and occluders are ignored
+     * @return index of the ray in the packet
+     */
+    public int add(Ray ray, double maxDistance) {
+        if (size == MAX_SIZE)
+            throw new IllegalStateException("A ray packet holds at most " + MAX_SIZE + " rays");
+        rays[size] = ray;
+        maxDistances[size] = maxDistance;
+        return size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Ray getRay(int index) {
+        return rays[index];
+    }
+
+    public double getMaxDistance(int index) {
+        return maxDistances[index];
+    }
+
+    /**
+     * @return closest hit of a ray after {@link ImprovedBVH#intersect(RayPacket, double)}, or null
+     */
+    public Hit getHit(int index) {
+        return hits[index];
+    }
+
+    /**
+     * @return whether a ray is blocked after {@link ImprovedBVH#intersectShadowRays(RayPacket)}
+     */
+    public boolean isOccluded(int index) {
+        return (occluded & (1L << index)) != 0;
+    }
+
+    /**
+     * Resets the results and gathers the per-ray values and the bounds of the packet
+     */
+    void prepare() {
+        occluded = 0;
+        maxDistance = 0;
+        minClosest = Double.POSITIVE_INFINITY;
+        for (int axis = 0; axis < 3; axis++) {
+            intervals[axis * 4] = Double.POSITIVE_INFINITY;
+            intervals[axis * 4 + 1] = Double.NEGATIVE_INFINITY;
+            intervals[axis * 4 + 2] = Double.POSITIVE_INFINITY;
+            intervals[axis * 4 + 3] = Double.NEGATIVE_INFINITY;
+        }
+        for (int i = 0; i < size; i++) {
+            TraversalRay ray = traversalRays[i].set(rays[i]);
+            closest[i] = maxDistances[i];
+            hits[i] = null;
+            maxDistance = Math.max(maxDistance, maxDistances[i]);
+            minClosest = Math.min(minClosest, maxDistances[i]);
+            include(0, ray.originX(), ray.invX());
+            include(1, ray.originY(), ray.invY());
+            include(2, ray.originZ(), ray.invZ());
+        }
+        // The near and far slab of an axis only agree for all rays if their directions share its sign
+        coherent = size > 1;
+        for (int axis = 0; axis < 3; axis++) {
+            if (!(intervals[axis * 4 + 2] > 0 || intervals[axis * 4 + 3] < 0))
+                coherent = false;
+        }
+    }
+
+    private void include(int axis, double origin, double inv) {
+        int b = axis * 4;
+        if (origin < intervals[b]) intervals[b] = origin;
+        if (origin > intervals[b + 1]) intervals[b + 1] = origin;
+        if (inv < intervals[b + 2]) intervals[b + 2] = inv;
+        if (inv > intervals[b + 3]) intervals[b + 3] = inv;
+    }
+
+    /**
+     * Interval form of the slab test: true only if no ray of the packet can overlap the box between
+     * {@code tMin} and its maximum distance
+     */
+    boolean misses(double[] bounds, int b, double tMin) {
+        double near = Double.NEGATIVE_INFINITY;
+        double far = Double.POSITIVE_INFINITY;
+        for (int axis = 0; axis < 3; axis++) {
+            double originMin = intervals[axis * 4];
+            double originMax = intervals[axis * 4 + 1];
+            double invMin = intervals[axis * 4 + 2];
+            double invMax = intervals[axis * 4 + 3];
+            boolean positive = invMin > 0;
+            double nearSlab = positive ? bounds[b + axis] : bounds[b + 3 + axis];
+            double farSlab = positive ? bounds[b + 3 + axis] : bounds[b + axis];
+            // Smallest entry and largest exit distance of any ray; NaN from a zero times an infinity never culls
+            near = Math.max(near, lowest(nearSlab - originMax, nearSlab - originMin, invMin, invMax));
+            far = Math.min(far, highest(farSlab - originMax, farSlab - originMin, invMin, invMax));
+        }
+        return near > far || far < tMin || far < 0 || near > maxDistance;
+    }
+
+    /**
+     * Interval form of the slab test: true only if every ray of the packet overlaps the box between
+     * {@code tMin} and its closest hit so far
+     */
+    boolean overlaps(double[] bounds, int b, double tMin) {
+        double near = Double.NEGATIVE_INFINITY;
+        double far = Double.POSITIVE_INFINITY;
+        for (int axis = 0; axis < 3; axis++) {
+            double originMin = intervals[axis * 4];
+            double originMax = intervals[axis * 4 + 1];
+            double invMin = intervals[axis * 4 + 2];
+            double invMax = intervals[axis * 4 + 3];
+            boolean positive = invMin > 0;
+            double nearSlab = positive ? bounds[b + axis] : bounds[b + 3 + axis];
+            double farSlab = positive ? bounds[b + 3 + axis] : bounds[b + axis];
+            // Largest entry and smallest exit distance of any ray
+            near = Math.max(near, highest(nearSlab - originMax, nearSlab - originMin, invMin, invMax));
+            far = Math.min(far, lowest(farSlab - originMax, farSlab - originMin, invMin, invMax));
+        }
+        return near <= far && far >= tMin && far >= 0 && near <= minClosest;
+    }
+
+    private static double lowest(double d1, double d2, double i1, double i2) {
+        return Math.min(Math.min(d1 * i1, d1 * i2), Math.min(d2 * i1, d2 * i2));
+    }
+
+    private static double highest(double d1, double d2, double i1, double i2) {
+        return Math.max(Math.max(d1 * i1, d1 * i2), Math.max(d2 * i1, d2 * i2));
+    }
+}
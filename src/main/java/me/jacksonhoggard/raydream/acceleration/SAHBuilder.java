@@ -0,0 +1,189 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+import me.jacksonhoggard.raydream.config.ApplicationConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Builds a depth-first flat hierarchy with the binned surface area heuristic on a fork-join pool.
+ * <p>
+ * The top levels bin their primitives with several tasks (see {@link BinnedSAH}); below them every child
+ * with at least {@link ApplicationConfig#BVH_PARALLEL_SUBTREE_SIZE} primitives is built by a task of its own.
+ * Each task appends its nodes to its own buffer and links the subtrees it handed off from placeholder
+ * nodes, so tasks never contend for node indices. The buffers are stitched into one array when the
+ * build finishes.
+ * <p>
+ * The result has the layout used by {@link ImprovedBVH}: six bounds per node, a node's first child
+ * directly follows it, interior nodes hold the index of their second child and a zero count, and leaves
+ * hold the first position and number of their primitives in {@link #getPrimitives()}.
+ */
+public final class SAHBuilder {
+
+    private static final int LINK = -1;
+
+    private final BinnedSAH sah;
+    private final int primitiveCount;
+    private double[] nodeBounds = new double[0];
+    private int[] nodeOffsets = new int[0];
+    private int[] nodeCounts = new int[0];
+    private int nodeCount;
+    private int depth;
+
+    /**
+     * @param bounds six values per primitive: minimum x, y, z then maximum x, y, z
+     * @param centroids three values per primitive
+     * @param model costs of the heuristic
+     */
+    public SAHBuilder(double[] bounds, double[] centroids, SAHCostModel model) {
+        this.sah = new BinnedSAH(bounds, centroids, model);
+        this.primitiveCount = centroids.length / 3;
+    }
+
+    /**
+     * Builds the hierarchy, blocking until it is complete
+     * @param pool pool whose workers build it
+     * @return this builder
+     */
+    public SAHBuilder build(ForkJoinPool pool) {
+        if (primitiveCount == 0)
+            return this;
+        SubtreeTask root = new SubtreeTask(0, primitiveCount, 0);
+        pool.invoke(root);
+
+        int total = root.countNodes();
+        nodeBounds = new double[total * 6];
+        nodeOffsets = new int[total];
+        nodeCounts = new int[total];
+        copy(root, 0, 0);
+        return this;
+    }
+
+    /**
+     * Appends a node of a task's buffer and its descendants to the final arrays in depth-first order
+     * @return index of the node in the final arrays
+     */
+    private int copy(SubtreeTask task, int node, int level) {
+        if (task.counts[node] == LINK) {
+            return copy(task.links.get(task.offsets[node]), 0, level);
+        }
+        int index = nodeCount++;
+        System.arraycopy(task.bounds, node * 6, nodeBounds, index * 6, 6);
+        if (task.counts[node] > 0) {
+            nodeOffsets[index] = task.offsets[node];
+            nodeCounts[index] = task.counts[node];
+            depth = Math.max(depth, level);
+            return index;
+        }
+        copy(task, node + 1, level + 1);
+        nodeOffsets[index] = copy(task, task.offsets[node], level + 1);
+        return index;
+    }
+
+    /**
+     * @return the primitive order; every leaf covers a contiguous range of it
+     */
+    public int[] getPrimitives() {
+        return sah.getPrimitives();
+    }
+
+    public double[] getNodeBounds() {
+        return nodeBounds;
+    }
+
+    public int[] getNodeOffsets() {
+        return nodeOffsets;
+    }
+
+    public int[] getNodeCounts() {
+        return nodeCounts;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return depth of the deepest leaf, the root being at depth zero
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Builds one subtree into a buffer of its own
+     */
+    private final class SubtreeTask extends RecursiveAction {
+        private final int start;
+        private final int end;
+        private final int level;
+        private final List<SubtreeTask> links = new ArrayList<>();
+        private double[] bounds = new double[64 * 6];
+        private int[] offsets = new int[64];
+        private int[] counts = new int[64];
+        private int size;
+
+        SubtreeTask(int start, int end, int level) {
+            this.start = start;
+            this.end = end;
+            this.level = level;
+        }
+
+        @Override
+        protected void compute() {
+            buildNode(start, end, level);
+        }
+
+        private int buildNode(int start, int end, int level) {
+            double[] box = sah.computeBounds(start, end);
+            int node = add();
+            System.arraycopy(box, 0, bounds, node * 6, 6);
+            int mid = level < ApplicationConfig.BVH_MAX_DEPTH ? sah.split(start, end, box) : -1;
+            if (mid < 0) {
+                offsets[node] = start;
+                counts[node] = end - start;
+                return node;
+            }
+            int second;
+            if (mid - start >= ApplicationConfig.BVH_PARALLEL_SUBTREE_SIZE) {
+                // Hand the first child to another task and build the second one here meanwhile
+                SubtreeTask first = new SubtreeTask(start, mid, level + 1);
+                first.fork();
+                int link = add();
+                offsets[link] = links.size();
+                counts[link] = LINK;
+                links.add(first);
+                second = buildNode(mid, end, level + 1);
+                first.join();
+            } else {
+                buildNode(start, mid, level + 1);
+                second = buildNode(mid, end, level + 1);
+            }
+            // Assigned only now because building a child may replace the arrays
+            offsets[node] = second;
+            return node;
+        }
+
+        private int add() {
+            if (size == offsets.length) {
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                counts = Arrays.copyOf(counts, counts.length * 2);
+            }
+            return size++;
+        }
+
+        /**
+         * @return the number of real nodes in this subtree, placeholders excluded
+         */
+        private int countNodes() {
+            int total = size - links.size();
+            for (SubtreeTask link : links)
+                total += link.countNodes();
+            return total;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+import me.jacksonhoggard.raydream.config.ApplicationConfig;
+
+/**
+ * Costs the surface area heuristic weighs against each other when building a hierarchy.
+ * Only the ratio of the traversal and intersection costs matters for the shape of the tree.
+ * @param traversalCost cost of visiting an interior node
+ * @param intersectionCost cost of testing one primitive
+ * @param bins number of candidate split planes per axis
+ * @param maxLeafSize largest number of primitives a leaf may hold, even when a split costs more
+ */
+public record SAHCostModel(double traversalCost, double intersectionCost, int bins, int maxLeafSize) {
+
+    public static final SAHCostModel OBJECTS = new SAHCostModel(ApplicationConfig.BVH_TRAVERSAL_COST, ApplicationConfig.BVH_OBJECT_INTERSECTION_COST, ApplicationConfig.BVH_SAH_BINS, ApplicationConfig.BVH_MAX_OBJECTS_PER_LEAF);
+    public static final SAHCostModel TRIANGLES = new SAHCostModel(ApplicationConfig.BVH_TRAVERSAL_COST, ApplicationConfig.BVH_TRIANGLE_INTERSECTION_COST, ApplicationConfig.BVH_SAH_BINS, ApplicationConfig.BVH_MAX_TRIANGLES_PER_LEAF);
+
+    public SAHCostModel {
+        if (traversalCost < 0 || intersectionCost <= 0)
+            throw new IllegalArgumentException("SAH costs must be positive");
+        if (bins < 2)
+            throw new IllegalArgumentException("SAH needs at least two bins: " + bins);
+        if (maxLeafSize < 1)
+            throw new IllegalArgumentException("Leaves must hold at least one primitive: " + maxLeafSize);
+    }
+}
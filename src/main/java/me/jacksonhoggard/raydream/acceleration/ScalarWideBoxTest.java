@@ -0,0 +1,48 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+/**
+ * Tests the lanes of a wide node one after another
+ */
+final class ScalarWideBoxTest implements WideBoxTest {
+
+    static final ScalarWideBoxTest INSTANCE = new ScalarWideBoxTest();
+
+    private ScalarWideBoxTest() {
+    }
+
+    @Override
+    public int intersect(double[] bounds, int offset, int width, double originX, double originY, double originZ,
+                         double invX, double invY, double invZ, double tMin, double tMax, double[] near) {
+        double low = tMin > 0 ? tMin : 0;
+        // The sign of the inverse orders each slab, where comparing its distances would not when one is NaN
+        boolean swapX = invX < 0;
+        boolean swapY = invY < 0;
+        boolean swapZ = invZ < 0;
+        int mask = 0;
+        for (int lane = 0; lane < width; lane++) {
+            int b = offset + lane;
+            double t1 = (bounds[b] - originX) * invX;
+            double t2 = (bounds[b + 3 * width] - originX) * invX;
+            double t3 = (bounds[b + width] - originY) * invY;
+            double t4 = (bounds[b + 4 * width] - originY) * invY;
+            double t5 = (bounds[b + 2 * width] - originZ) * invZ;
+            double t6 = (bounds[b + 5 * width] - originZ) * invZ;
+            // The same comparisons as the vectorized test, so both treat NaN alike
+            double tNear = low;
+            double tFar = tMax;
+            if (swapX) { double t = t1; t1 = t2; t2 = t; }
+            if (swapY) { double t = t3; t3 = t4; t4 = t; }
+            if (swapZ) { double t = t5; t5 = t6; t6 = t; }
+            if (t1 > tNear) tNear = t1;
+            if (t3 > tNear) tNear = t3;
+            if (t5 > tNear) tNear = t5;
+            if (t2 < tFar) tFar = t2;
+            if (t4 < tFar) tFar = t4;
+            if (t6 < tFar) tFar = t6;
+            near[lane] = tNear;
+            if (tNear <= tFar)
+                mask |= 1 << lane;
+        }
+        return mask;
+    }
+}
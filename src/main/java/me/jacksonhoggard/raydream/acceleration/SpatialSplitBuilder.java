@@ -0,0 +1,588 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+import me.jacksonhoggard.raydream.config.ApplicationConfig;
+
+import java.util.Arrays;
+
+/**
+ * Builds a depth-first flat hierarchy over triangles with spatial splits (SBVH).
+ * <p>
+ * Every node costs the best binned object split, as {@link BinnedSAH} does, and, where the two children of
+ * that split overlap by more than {@link ApplicationConfig#BVH_SPATIAL_SPLIT_OVERLAP} of the root area, the
+ * best split into equally sized spatial bins as well. A spatial split clips the triangles straddling its
+ * plane into a reference on each side, each bounded by the part of the triangle on its side, so long or thin
+ * triangles no longer stretch both children across each other. A straddling triangle is only split when
+ * that is cheaper than keeping it whole on one side, and no more than a fraction of the triangle count of
+ * new references are made; once they are used up, only object splits are made.
+ * <p>
+ * The result has the layout of {@link SAHBuilder}, except that a triangle may be referenced from several
+ * leaves, so {@link #getPrimitives()} can be longer than the triangle count and repeat triangles. The build
+ * runs on the calling thread.
+ */
+public final class SpatialSplitBuilder {
+
+    private final SAHCostModel model;
+    private final double[] vertices;
+    private final int triangleCount;
+    private final int maxReferences;
+
+    // References: the triangle and the part of its bounds they cover
+    private int[] referenceTriangles;
+    private double[] referenceBounds;
+    private int referenceCount;
+
+    private int[] primitives = new int[0];
+    private int primitiveCount;
+    private double[] nodeBounds = new double[0];
+    private int[] nodeOffsets = new int[0];
+    private int[] nodeCounts = new int[0];
+    private int nodeCount;
+    private int depth;
+    private int spatialSplits;
+    private double rootArea;
+
+    // Scratch bins, per axis: count or entries and exits, then a box
+    private final double[] objectCounts;
+    private final double[] objectBins;
+    private final int[] entries;
+    private final int[] exits;
+    private final double[] spatialBins;
+    private final double[] rightBoxes;
+    private final int[] rightCounts;
+    private final double[] point = new double[3];
+
+    /**
+     * @param vertices nine values per triangle: x, y, z of its three vertices
+     * @param model costs of the heuristic
+     * @param maxGrowth largest number of references added by spatial splits, as a fraction of the triangle count
+     */
+    public SpatialSplitBuilder(double[] vertices, SAHCostModel model, double maxGrowth) {
+        if (vertices.length % 9 != 0)
+            throw new IllegalArgumentException("Triangles are described by nine values each");
+        if (maxGrowth < 0)
+            throw new IllegalArgumentException("Reference growth cannot be negative: " + maxGrowth);
+        this.model = model;
+        this.vertices = vertices;
+        this.triangleCount = vertices.length / 9;
+        this.maxReferences = (int) Math.min(Integer.MAX_VALUE - 8, triangleCount + (long) (triangleCount * maxGrowth));
+        this.referenceTriangles = new int[triangleCount];
+        this.referenceBounds = new double[triangleCount * 6];
+        int bins = model.bins();
+        this.objectCounts = new double[3 * bins];
+        this.objectBins = new double[3 * bins * 6];
+        this.entries = new int[bins];
+        this.exits = new int[bins];
+        this.spatialBins = new double[bins * 6];
+        this.rightBoxes = new double[bins * 6];
+        this.rightCounts = new int[bins];
+    }
+
+    /**
+     * Builds the hierarchy
+     * @return this builder
+     */
+    public SpatialSplitBuilder build() {
+        if (triangleCount == 0)
+            return this;
+        int[] references = new int[triangleCount];
+        for (int i = 0; i < triangleCount; i++) {
+            references[i] = i;
+            referenceTriangles[i] = i;
+            resetBox(referenceBounds, i * 6);
+            for (int v = 0; v < 3; v++)
+                include(referenceBounds, i * 6, vertices, i * 9 + v * 3);
+        }
+        referenceCount = triangleCount;
+        double[] box = boundsOf(references, references.length);
+        rootArea = BinnedSAH.surfaceArea(box);
+        buildNode(references, box, 0);
+        nodeBounds = Arrays.copyOf(nodeBounds, nodeCount * 6);
+        nodeOffsets = Arrays.copyOf(nodeOffsets, nodeCount);
+        nodeCounts = Arrays.copyOf(nodeCounts, nodeCount);
+        primitives = Arrays.copyOf(primitives, primitiveCount);
+        return this;
+    }
+
+    /**
+     * @return the triangle of every position; every leaf covers a contiguous range of it
+     */
+    public int[] getPrimitives() {
+        return primitives;
+    }
+
+    public double[] getNodeBounds() {
+        return nodeBounds;
+    }
+
+    public int[] getNodeOffsets() {
+        return nodeOffsets;
+    }
+
+    public int[] getNodeCounts() {
+        return nodeCounts;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return depth of the deepest leaf, the root being at depth zero
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return the number of nodes split spatially rather than by object
+     */
+    public int getSpatialSplitCount() {
+        return spatialSplits;
+    }
+
+    /**
+     * Appends a node over some references and the nodes below it
+     * @param references references of the node; the array is reused for its children
+     * @return index of the new node
+     */
+    private int buildNode(int[] references, double[] box, int level) {
+        int node = addNode();
+        System.arraycopy(box, 0, nodeBounds, node * 6, 6);
+        int count = references.length;
+        int[][] children = level < ApplicationConfig.BVH_MAX_DEPTH && count > 1 ? split(references, box) : null;
+        if (children == null) {
+            nodeOffsets[node] = primitiveCount;
+            nodeCounts[node] = count;
+            if (primitiveCount + count > primitives.length)
+                primitives = Arrays.copyOf(primitives, Math.max(primitives.length * 2, primitiveCount + count));
+            for (int reference : references)
+                primitives[primitiveCount++] = referenceTriangles[reference];
+            depth = Math.max(depth, level);
+            return node;
+        }
+        buildNode(children[0], boundsOf(children[0], children[0].length), level + 1);
+        int second = buildNode(children[1], boundsOf(children[1], children[1].length), level + 1);
+        // Assigned only now because building a child may replace the arrays
+        nodeOffsets[node] = second;
+        return node;
+    }
+
+    /**
+     * Finds the cheapest split of a node and divides its references around it
+     * @return the references of the two children, or null if the node is cheaper as a leaf
+     */
+    private int[][] split(int[] references, double[] box) {
+        int count = references.length;
+        double nodeArea = BinnedSAH.surfaceArea(box);
+        ObjectSplit object = findObjectSplit(references);
+        SpatialSplit spatial = null;
+        if (object != null && referenceCount < maxReferences && overlap(object) > ApplicationConfig.BVH_SPATIAL_SPLIT_OVERLAP * rootArea)
+            spatial = findSpatialSplit(references, box);
+
+        double bestCost = Math.min(object != null ? object.cost : Double.POSITIVE_INFINITY,
+                spatial != null ? spatial.cost : Double.POSITIVE_INFINITY);
+        if (bestCost == Double.POSITIVE_INFINITY) {
+            // Every centroid coincides and no plane clips the references apart, so halve them unless they fit a leaf
+            if (count <= model.maxLeafSize())
+                return null;
+            return new int[][] {Arrays.copyOfRange(references, 0, count / 2), Arrays.copyOfRange(references, count / 2, count)};
+        }
+        double splitCost = model.traversalCost() * nodeArea + model.intersectionCost() * bestCost;
+        double leafCost = model.intersectionCost() * count * nodeArea;
+        if (count <= model.maxLeafSize() && leafCost <= splitCost)
+            return null;
+
+        if (spatial != null && spatial.cost < (object != null ? object.cost : Double.POSITIVE_INFINITY)) {
+            int[][] children = splitSpatially(references, spatial);
+            if (children != null) {
+                spatialSplits++;
+                return children;
+            }
+        }
+        return object != null ? splitByObject(references, object) : null;
+    }
+
+    /**
+     * Bins the centroids of the references along all three axes and costs every boundary between two bins
+     * @return the cheapest split, or null if all centroids coincide
+     */
+    private ObjectSplit findObjectSplit(int[] references) {
+        int count = references.length;
+        int bins = Math.min(model.bins(), Math.max(count, 4));
+        double[] centroidBounds = emptyBox();
+        for (int reference : references) {
+            for (int axis = 0; axis < 3; axis++) {
+                double centroid = centroid(reference, axis);
+                if (centroid < centroidBounds[axis]) centroidBounds[axis] = centroid;
+                if (centroid > centroidBounds[axis + 3]) centroidBounds[axis + 3] = centroid;
+            }
+        }
+        double[] scales = new double[3];
+        for (int axis = 0; axis < 3; axis++) {
+            double extent = centroidBounds[axis + 3] - centroidBounds[axis];
+            scales[axis] = extent > 0 ? bins / extent : 0;
+        }
+        for (int b = 0; b < 3 * bins; b++) {
+            objectCounts[b] = 0;
+            resetBox(objectBins, b * 6);
+        }
+        for (int reference : references) {
+            for (int axis = 0; axis < 3; axis++) {
+                if (scales[axis] == 0)
+                    continue;
+                int b = axis * bins + binIndex(centroid(reference, axis), centroidBounds[axis], scales[axis], bins);
+                objectCounts[b]++;
+                expand(objectBins, b * 6, referenceBounds, reference * 6);
+            }
+        }
+
+        ObjectSplit best = null;
+        for (int axis = 0; axis < 3; axis++) {
+            if (scales[axis] == 0)
+                continue;
+            int first = axis * bins;
+            double[] box = emptyBox();
+            int right = 0;
+            for (int b = bins - 1; b > 0; b--) {
+                right += (int) objectCounts[first + b];
+                expand(box, 0, objectBins, (first + b) * 6);
+                rightCounts[b] = right;
+                System.arraycopy(box, 0, rightBoxes, b * 6, 6);
+            }
+            resetBox(box, 0);
+            int left = 0;
+            for (int b = 1; b < bins; b++) {
+                left += (int) objectCounts[first + b - 1];
+                expand(box, 0, objectBins, (first + b - 1) * 6);
+                if (left == 0 || rightCounts[b] == 0)
+                    continue;
+                double cost = left * BinnedSAH.surfaceArea(box) + rightCounts[b] * surfaceArea(rightBoxes, b * 6);
+                if (best == null || cost < best.cost) {
+                    if (best == null)
+                        best = new ObjectSplit();
+                    best.cost = cost;
+                    best.axis = axis;
+                    best.bin = b;
+                    best.bins = bins;
+                    best.min = centroidBounds[axis];
+                    best.scale = scales[axis];
+                    System.arraycopy(box, 0, best.left, 0, 6);
+                    System.arraycopy(rightBoxes, b * 6, best.right, 0, 6);
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Drops every reference into all the equally sized bins along an axis that its triangle passes through,
+     * clipped to each bin, and costs every boundary between two bins
+     * @return the cheapest split, or null if the node has no extent
+     */
+    private SpatialSplit findSpatialSplit(int[] references, double[] box) {
+        int bins = model.bins();
+        double[] left = new double[6];
+        double[] right = new double[6];
+        double[] piece = new double[6];
+        SpatialSplit best = null;
+        for (int axis = 0; axis < 3; axis++) {
+            double min = box[axis];
+            double extent = box[axis + 3] - min;
+            if (!(extent > 0))
+                continue;
+            double width = extent / bins;
+            double scale = bins / extent;
+            Arrays.fill(entries, 0);
+            Arrays.fill(exits, 0);
+            for (int b = 0; b < bins; b++)
+                resetBox(spatialBins, b * 6);
+            for (int reference : references) {
+                int r = reference * 6;
+                int firstBin = binIndex(referenceBounds[r + axis], min, scale, bins);
+                int lastBin = binIndex(referenceBounds[r + 3 + axis], min, scale, bins);
+                entries[firstBin]++;
+                exits[lastBin]++;
+                System.arraycopy(referenceBounds, r, piece, 0, 6);
+                for (int b = firstBin; b < lastBin; b++) {
+                    clip(referenceTriangles[reference], piece, axis, min + (b + 1) * width, left, right);
+                    expand(spatialBins, b * 6, left, 0);
+                    System.arraycopy(right, 0, piece, 0, 6);
+                }
+                expand(spatialBins, lastBin * 6, piece, 0);
+            }
+
+            double[] sweep = emptyBox();
+            int rightCount = 0;
+            for (int b = bins - 1; b > 0; b--) {
+                rightCount += exits[b];
+                expand(sweep, 0, spatialBins, b * 6);
+                rightCounts[b] = rightCount;
+                System.arraycopy(sweep, 0, rightBoxes, b * 6, 6);
+            }
+            resetBox(sweep, 0);
+            int leftCount = 0;
+            for (int b = 1; b < bins; b++) {
+                leftCount += entries[b - 1];
+                expand(sweep, 0, spatialBins, (b - 1) * 6);
+                if (leftCount == 0 || rightCounts[b] == 0)
+                    continue;
+                double cost = leftCount * BinnedSAH.surfaceArea(sweep) + rightCounts[b] * surfaceArea(rightBoxes, b * 6);
+                if (best == null || cost < best.cost) {
+                    if (best == null)
+                        best = new SpatialSplit();
+                    best.cost = cost;
+                    best.axis = axis;
+                    best.position = min + b * width;
+                    best.leftCount = leftCount;
+                    best.rightCount = rightCounts[b];
+                    System.arraycopy(sweep, 0, best.left, 0, 6);
+                    System.arraycopy(rightBoxes, b * 6, best.right, 0, 6);
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Divides the references at a spatial split plane. A reference straddling the plane is clipped into one on
+     * each side unless keeping it whole on one side is cheaper or the reference budget is used up.
+     * @return the references of the two children, or null if one side would be empty
+     */
+    private int[][] splitSpatially(int[] references, SpatialSplit split) {
+        int axis = split.axis;
+        double position = split.position;
+        double leftArea = BinnedSAH.surfaceArea(split.left);
+        double rightArea = BinnedSAH.surfaceArea(split.right);
+        int[] left = new int[references.length];
+        int[] right = new int[references.length];
+        int leftSize = 0;
+        int rightSize = 0;
+        double[] leftPiece = new double[6];
+        double[] rightPiece = new double[6];
+        double[] grown = new double[6];
+        for (int reference : references) {
+            int r = reference * 6;
+            if (referenceBounds[r + 3 + axis] <= position) {
+                left = append(left, leftSize++, reference);
+                continue;
+            }
+            if (referenceBounds[r + axis] >= position) {
+                right = append(right, rightSize++, reference);
+                continue;
+            }
+            // Costs of keeping the reference whole on the left or the right, against clipping it in two
+            System.arraycopy(split.left, 0, grown, 0, 6);
+            expand(grown, 0, referenceBounds, r);
+            double leftOnly = BinnedSAH.surfaceArea(grown) * split.leftCount + rightArea * (split.rightCount - 1);
+            System.arraycopy(split.right, 0, grown, 0, 6);
+            expand(grown, 0, referenceBounds, r);
+            double rightOnly = leftArea * (split.leftCount - 1) + BinnedSAH.surfaceArea(grown) * split.rightCount;
+            double both = split.cost;
+            if (referenceCount < maxReferences && both < leftOnly && both < rightOnly) {
+                clip(referenceTriangles[reference], Arrays.copyOfRange(referenceBounds, r, r + 6), axis, position, leftPiece, rightPiece);
+                boolean hasLeft = isValid(leftPiece);
+                boolean hasRight = isValid(rightPiece);
+                if (hasLeft && hasRight) {
+                    System.arraycopy(leftPiece, 0, referenceBounds, r, 6);
+                    left = append(left, leftSize++, reference);
+                    right = append(right, rightSize++, addReference(referenceTriangles[reference], rightPiece));
+                } else if (hasLeft) {
+                    // The triangle only touches the plane, so it stays whole on the side it lies on
+                    left = append(left, leftSize++, reference);
+                } else {
+                    right = append(right, rightSize++, reference);
+                }
+                continue;
+            }
+            if (leftOnly <= rightOnly)
+                left = append(left, leftSize++, reference);
+            else
+                right = append(right, rightSize++, reference);
+        }
+        if (leftSize == 0 || rightSize == 0)
+            return null;
+        return new int[][] {Arrays.copyOf(left, leftSize), Arrays.copyOf(right, rightSize)};
+    }
+
+    /**
+     * Divides the references by the bin their centroid falls into
+     */
+    private int[][] splitByObject(int[] references, ObjectSplit split) {
+        int[] left = new int[references.length];
+        int[] right = new int[references.length];
+        int leftSize = 0;
+        int rightSize = 0;
+        for (int reference : references) {
+            if (binIndex(centroid(reference, split.axis), split.min, split.scale, split.bins) < split.bin)
+                left[leftSize++] = reference;
+            else
+                right[rightSize++] = reference;
+        }
+        return new int[][] {Arrays.copyOf(left, leftSize), Arrays.copyOf(right, rightSize)};
+    }
+
+    /**
+     * @return surface area of the overlap of the two children of an object split
+     */
+    private static double overlap(ObjectSplit split) {
+        double[] box = new double[6];
+        for (int axis = 0; axis < 3; axis++) {
+            box[axis] = Math.max(split.left[axis], split.right[axis]);
+            box[axis + 3] = Math.min(split.left[axis + 3], split.right[axis + 3]);
+        }
+        return BinnedSAH.surfaceArea(box);
+    }
+
+    /**
+     * Clips the part of a triangle within a box at an axis-aligned plane
+     * @param box part of the triangle's bounds to clip, as covered by a reference
+     * @param left receives the bounds of the part below the plane, empty if there is none
+     * @param right receives the bounds of the part above the plane, empty if there is none
+     */
+    private void clip(int triangle, double[] box, int axis, double position, double[] left, double[] right) {
+        resetBox(left, 0);
+        resetBox(right, 0);
+        int t = triangle * 9;
+        for (int v = 0; v < 3; v++) {
+            int from = t + v * 3;
+            int to = t + (v + 1) % 3 * 3;
+            double p0 = vertices[from + axis];
+            double p1 = vertices[to + axis];
+            if (p0 <= position)
+                include(left, 0, vertices, from);
+            if (p0 >= position)
+                include(right, 0, vertices, from);
+            if ((p0 < position && p1 > position) || (p0 > position && p1 < position)) {
+                // The edge crosses the plane: both sides include the crossing point
+                double s = (position - p0) / (p1 - p0);
+                for (int k = 0; k < 3; k++)
+                    point[k] = vertices[from + k] + (vertices[to + k] - vertices[from + k]) * s;
+                point[axis] = position;
+                include(left, 0, point, 0);
+                include(right, 0, point, 0);
+            }
+        }
+        left[axis + 3] = Math.min(left[axis + 3], position);
+        right[axis] = Math.max(right[axis], position);
+        intersect(left, box);
+        intersect(right, box);
+    }
+
+    private int addReference(int triangle, double[] bounds) {
+        if (referenceCount == referenceTriangles.length) {
+            int capacity = Math.min(maxReferences, referenceTriangles.length + Math.max(16, referenceTriangles.length / 4));
+            referenceTriangles = Arrays.copyOf(referenceTriangles, capacity);
+            referenceBounds = Arrays.copyOf(referenceBounds, capacity * 6);
+        }
+        referenceTriangles[referenceCount] = triangle;
+        System.arraycopy(bounds, 0, referenceBounds, referenceCount * 6, 6);
+        return referenceCount++;
+    }
+
+    private int addNode() {
+        if (nodeCount == nodeOffsets.length) {
+            int capacity = Math.max(64, nodeOffsets.length * 2);
+            nodeBounds = Arrays.copyOf(nodeBounds, capacity * 6);
+            nodeOffsets = Arrays.copyOf(nodeOffsets, capacity);
+            nodeCounts = Arrays.copyOf(nodeCounts, capacity);
+        }
+        return nodeCount++;
+    }
+
+    private static int[] append(int[] array, int size, int value) {
+        if (size == array.length)
+            array = Arrays.copyOf(array, array.length * 2);
+        array[size] = value;
+        return array;
+    }
+
+    private double centroid(int reference, int axis) {
+        return (referenceBounds[reference * 6 + axis] + referenceBounds[reference * 6 + 3 + axis]) * 0.5;
+    }
+
+    private double[] boundsOf(int[] references, int size) {
+        double[] box = emptyBox();
+        for (int i = 0; i < size; i++)
+            expand(box, 0, referenceBounds, references[i] * 6);
+        return box;
+    }
+
+    private static int binIndex(double position, double min, double scale, int bins) {
+        return Math.max(0, Math.min(bins - 1, (int) ((position - min) * scale)));
+    }
+
+    private static double surfaceArea(double[] boxes, int offset) {
+        double dx = boxes[offset + 3] - boxes[offset];
+        double dy = boxes[offset + 4] - boxes[offset + 1];
+        double dz = boxes[offset + 5] - boxes[offset + 2];
+        if (dx < 0 || dy < 0 || dz < 0)
+            return 0;
+        return 2.0 * (dx * dy + dy * dz + dz * dx);
+    }
+
+    private static boolean isValid(double[] box) {
+        return box[0] <= box[3] && box[1] <= box[4] && box[2] <= box[5];
+    }
+
+    private static double[] emptyBox() {
+        double[] box = new double[6];
+        resetBox(box, 0);
+        return box;
+    }
+
+    private static void resetBox(double[] box, int offset) {
+        box[offset] = box[offset + 1] = box[offset + 2] = Double.POSITIVE_INFINITY;
+        box[offset + 3] = box[offset + 4] = box[offset + 5] = Double.NEGATIVE_INFINITY;
+    }
+
+    private static void include(double[] box, int offset, double[] point, int pointOffset) {
+        for (int axis = 0; axis < 3; axis++) {
+            double value = point[pointOffset + axis];
+            if (value < box[offset + axis]) box[offset + axis] = value;
+            if (value > box[offset + 3 + axis]) box[offset + 3 + axis] = value;
+        }
+    }
+
+    private static void expand(double[] box, int offset, double[] other, int otherOffset) {
+        for (int axis = 0; axis < 3; axis++) {
+            double min = other[otherOffset + axis];
+            double max = other[otherOffset + 3 + axis];
+            if (min < box[offset + axis]) box[offset + axis] = min;
+            if (max > box[offset + 3 + axis]) box[offset + 3 + axis] = max;
+        }
+    }
+
+    private static void intersect(double[] box, double[] other) {
+        for (int axis = 0; axis < 3; axis++) {
+            box[axis] = Math.max(box[axis], other[axis]);
+            box[axis + 3] = Math.min(box[axis + 3], other[axis + 3]);
+        }
+    }
+
+    /**
+     * Cheapest object split of a node: references whose centroid falls below a bin boundary go left
+     */
+    private static final class ObjectSplit {
+        double cost; // Area-weighted reference count of both children
+        int axis;
+        int bin;
+        int bins;
+        double min;
+        double scale;
+        final double[] left = new double[6];
+        final double[] right = new double[6];
+    }
+
+    /**
+     * Cheapest spatial split of a node: a plane clipping the references that straddle it
+     */
+    private static final class SpatialSplit {
+        double cost; // Area-weighted reference count of both children
+        int axis;
+        double position;
+        int leftCount;
+        int rightCount;
+        final double[] left = new double[6];
+        final double[] right = new double[6];
+    }
+}
@@ -0,0 +1,24 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+/**
+ * How a bounding volume hierarchy chooses where to split its nodes
+ */
+public enum SplitMethod {
+    /**
+     * Split the longest axis of the node in half: at the median object for {@link ImprovedBVH},
+     * at the spatial midpoint for mesh hierarchies. Leaves are made only by primitive count.
+     */
+    LONGEST_AXIS,
+    /**
+     * Split at the cheapest of a set of binned candidate planes under the surface area heuristic,
+     * and make a leaf wherever that is cheaper than any split
+     */
+    SAH,
+    /**
+     * As {@link #SAH}, but mesh hierarchies also consider planes that clip the triangles straddling them into
+     * a reference on each side (see {@link SpatialSplitBuilder}). Only a {@code Mesh} can be built this way,
+     * since the hierarchy indexes more references than there are triangles. Objects are never clipped, so
+     * {@link ImprovedBVH} builds as with {@link #SAH}.
+     */
+    SPATIAL
+}
@@ -0,0 +1,155 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+import me.jacksonhoggard.raydream.math.Ray;
+import me.jacksonhoggard.raydream.math.Vector3D;
+
+/**
+ * A ray prepared for box tests: its inverse direction and the sign of every direction component are
+ * computed once per ray, so the slab test of a node needs no division and no branch. The sign picks
+ * which bound of each axis the ray enters through, giving the entry and exit distance of each slab with
+ * one subtraction and one multiplication.
+ * <p>
+ * A traversal ray is mutable so that packets can reuse theirs; it is not thread safe.
+ */
+public final class TraversalRay {
+
+    /**
+     * Entry distance returned for boxes the ray misses
+     */
+    public static final double MISS = Double.POSITIVE_INFINITY;
+
+    private double originX, originY, originZ;
+    private double directionX, directionY, directionZ;
+    private double invX, invY, invZ;
+    private int nearX, nearY, nearZ; // Offset of the entered bound within a node: 0 for the minimum, 3 for the maximum
+
+    public TraversalRay() {
+    }
+
+    public TraversalRay(Ray ray) {
+        set(ray);
+    }
+
+    public TraversalRay(double originX, double originY, double originZ, double directionX, double directionY, double directionZ) {
+        set(originX, originY, originZ, directionX, directionY, directionZ);
+    }
+
+    public TraversalRay set(Ray ray) {
+        Vector3D origin = ray.origin();
+        Vector3D direction = ray.direction();
+        return set(origin.x, origin.y, origin.z, direction.x, direction.y, direction.z);
+    }
+
+    public TraversalRay set(double originX, double originY, double originZ, double directionX, double directionY, double directionZ) {
+        this.originX = originX;
+        this.originY = originY;
+        this.originZ = originZ;
+        this.directionX = directionX;
+        this.directionY = directionY;
+        this.directionZ = directionZ;
+        this.invX = 1.0 / directionX;
+        this.invY = 1.0 / directionY;
+        this.invZ = 1.0 / directionZ;
+        // The sign of the inverse also tells negative zero apart, whose ray enters through the maximum
+        this.nearX = invX < 0 ? 3 : 0;
+        this.nearY = invY < 0 ? 3 : 0;
+        this.nearZ = invZ < 0 ? 3 : 0;
+        return this;
+    }
+
+    /**
+     * Slab test against a node stored as minimum x, y, z then maximum x, y, z
+     * @param bounds node bounds
+     * @param b offset of the node in the bounds
+     * @return distance at which the ray enters the box, no less than {@code tMin}, or {@link #MISS} if it
+     *         does not overlap the box between the two distances. An axis the ray runs along in the plane of
+     *         a bound gives NaN and does not restrict the hit, as in {@link WideBoxTest}.
+     */
+    public double entry(double[] bounds, int b, double tMin, double tMax) {
+        double entryX = (bounds[b + nearX] - originX) * invX;
+        double exitX = (bounds[b + 3 - nearX] - originX) * invX;
+        double entryY = (bounds[b + 1 + nearY] - originY) * invY;
+        double exitY = (bounds[b + 4 - nearY] - originY) * invY;
+        double entryZ = (bounds[b + 2 + nearZ] - originZ) * invZ;
+        double exitZ = (bounds[b + 5 - nearZ] - originZ) * invZ;
+        // Comparisons rather than Math.max and Math.min, which would carry a NaN through to a miss
+        double near = tMin;
+        double far = tMax;
+        if (entryX > near) near = entryX;
+        if (entryY > near) near = entryY;
+        if (entryZ > near) near = entryZ;
+        if (exitX < far) far = exitX;
+        if (exitY < far) far = exitY;
+        if (exitZ < far) far = exitZ;
+        return near <= far ? near : MISS;
+    }
+
+    /**
+     * @return whether the ray overlaps a node between two distances, see {@link #entry(double[], int, double, double)}
+     */
+    public boolean intersects(double[] bounds, int b, double tMin, double tMax) {
+        return entry(bounds, b, tMin, tMax) != MISS;
+    }
+
+    /**
+     * Slab test against a box given by its corners
+     * @return distance at which the ray enters the box, no less than {@code tMin}, or {@link #MISS}, treating
+     *         NaN as {@link #entry(double[], int, double, double)} does
+     */
+    public double entry(Vector3D min, Vector3D max, double tMin, double tMax) {
+        double x0 = (min.x - originX) * invX;
+        double x1 = (max.x - originX) * invX;
+        double y0 = (min.y - originY) * invY;
+        double y1 = (max.y - originY) * invY;
+        double z0 = (min.z - originZ) * invZ;
+        double z1 = (max.z - originZ) * invZ;
+        double near = tMin;
+        double far = tMax;
+        if (invX < 0) { double t = x0; x0 = x1; x1 = t; }
+        if (invY < 0) { double t = y0; y0 = y1; y1 = t; }
+        if (invZ < 0) { double t = z0; z0 = z1; z1 = t; }
+        if (x0 > near) near = x0;
+        if (y0 > near) near = y0;
+        if (z0 > near) near = z0;
+        if (x1 < far) far = x1;
+        if (y1 < far) far = y1;
+        if (z1 < far) far = z1;
+        return near <= far ? near : MISS;
+    }
+
+    public double originX() {
+        return originX;
+    }
+
+    public double originY() {
+        return originY;
+    }
+
+    public double originZ() {
+        return originZ;
+    }
+
+    public double directionX() {
+        return directionX;
+    }
+
+    public double directionY() {
+        return directionY;
+    }
+
+    public double directionZ() {
+        return directionZ;
+    }
+
+    public double invX() {
+        return invX;
+    }
+
+    public double invY() {
+        return invY;
+    }
+
+    public double invZ() {
+        return invZ;
+    }
+}
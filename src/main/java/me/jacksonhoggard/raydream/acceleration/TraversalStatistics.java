@@ -0,0 +1,140 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+/**
+ * Counts the work of tracing rays through {@link ImprovedBVH} and the mesh hierarchies below it: rays traced,
+ * nodes visited, primitives tested and hits, per type of ray.
+ * <p>
+ * Counting is off unless a thread has bound statistics with {@link #bind()}. Each render worker binds its own
+ * while it traces, so counters are never shared between threads; they are merged with {@link #add} once
+ * the render is done. Nodes and primitives of a mesh count toward the ray that entered it, and a packet
+ * visiting a node counts as one visit.
+ */
+public final class TraversalStatistics {
+
+    public enum RayType {
+        /**
+         * Rays looking for their closest hit
+         */
+        CLOSEST_HIT,
+        /**
+         * Rays looking for any blocker before a light
+         */
+        SHADOW
+    }
+
+    private static final ThreadLocal<TraversalStatistics> CURRENT = new ThreadLocal<>();
+
+    private final Counters[] counters = new Counters[RayType.values().length];
+
+    public TraversalStatistics() {
+        for (int i = 0; i < counters.length; i++)
+            counters[i] = new Counters();
+    }
+
+    /**
+     * Counts the rays the calling thread traces into these statistics until {@link #unbind()}
+     */
+    public void bind() {
+        CURRENT.set(this);
+    }
+
+    /**
+     * Stops counting the rays of the calling thread
+     */
+    public static void unbind() {
+        CURRENT.remove();
+    }
+
+    /**
+     * @return the counters of a ray type bound to the calling thread, or null if it is not counting
+     */
+    public static Counters counters(RayType type) {
+        TraversalStatistics statistics = CURRENT.get();
+        return statistics == null ? null : statistics.counters[type.ordinal()];
+    }
+
+    public Counters get(RayType type) {
+        return counters[type.ordinal()];
+    }
+
+    /**
+     * Adds the counts of other statistics to these
+     */
+    public void add(TraversalStatistics other) {
+        for (int i = 0; i < counters.length; i++)
+            counters[i].add(other.counters[i]);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (RayType type : RayType.values()) {
+            if (!text.isEmpty())
+                text.append("; ");
+            text.append(type.name().toLowerCase().replace('_', ' ')).append(' ').append(get(type));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Counts of one type of ray
+     */
+    public static final class Counters {
+        private long rays;
+        private long hits;
+        private long nodes;
+        private long primitives;
+
+        public void addRay(boolean hit) {
+            rays++;
+            if (hit)
+                hits++;
+        }
+
+        public void addRays(int rays, int hits) {
+            this.rays += rays;
+            this.hits += hits;
+        }
+
+        public void addNode() {
+            nodes++;
+        }
+
+        public void addPrimitives(int count) {
+            primitives += count;
+        }
+
+        private void add(Counters other) {
+            rays += other.rays;
+            hits += other.hits;
+            nodes += other.nodes;
+            primitives += other.primitives;
+        }
+
+        public long getRays() {
+            return rays;
+        }
+
+        /**
+         * @return rays that found a hit, or for shadow rays a blocker
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        public long getNodesVisited() {
+            return nodes;
+        }
+
+        public long getPrimitivesTested() {
+            return primitives;
+        }
+
+        @Override
+        public String toString() {
+            double perRay = Math.max(1, rays);
+            return String.format("rays %d, hits %d (%.1f%%), %.1f nodes and %.1f primitives per ray",
+                    rays, hits, 100.0 * hits / perRay, nodes / perRay, primitives / perRay);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Tests the lanes of a wide node with the incubating Vector API, a whole vector of child boxes per step.
+ * <p>
+ * Vectors hold at most four doubles, so eight wide nodes take two steps; this keeps the species a single
+ * constant, which the JIT needs in order to compile the operations to vector instructions instead of
+ * allocating the vectors, and avoids the lower clock rates of the widest instructions on some processors.
+ */
+final class VectorWideBoxTest implements WideBoxTest {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED.length() >= 4
+            ? DoubleVector.SPECIES_256 : DoubleVector.SPECIES_128;
+    private static final VectorWideBoxTest INSTANCE = new VectorWideBoxTest();
+
+    private VectorWideBoxTest() {
+    }
+
+    /**
+     * @return a test for nodes of the given width, or null if the hardware has no vectors of two doubles
+     */
+    static VectorWideBoxTest forWidth(int width) {
+        return DoubleVector.SPECIES_PREFERRED.length() < 2 || width % SPECIES.length() != 0 ? null : INSTANCE;
+    }
+
+    @Override
+    public int intersect(double[] bounds, int offset, int width, double originX, double originY, double originZ,
+                         double invX, double invY, double invZ, double tMin, double tMax, double[] near) {
+        double low = tMin > 0 ? tMin : 0;
+        // The sign of the inverse orders each slab, where comparing its distances would not when one is NaN
+        boolean swapX = invX < 0;
+        boolean swapY = invY < 0;
+        boolean swapZ = invZ < 0;
+        int mask = 0;
+        for (int lane = 0; lane < width; lane += SPECIES.length()) {
+            int b = offset + lane;
+            DoubleVector t1 = DoubleVector.fromArray(SPECIES, bounds, b).sub(originX).mul(invX);
+            DoubleVector t2 = DoubleVector.fromArray(SPECIES, bounds, b + 3 * width).sub(originX).mul(invX);
+            DoubleVector t3 = DoubleVector.fromArray(SPECIES, bounds, b + width).sub(originY).mul(invY);
+            DoubleVector t4 = DoubleVector.fromArray(SPECIES, bounds, b + 4 * width).sub(originY).mul(invY);
+            DoubleVector t5 = DoubleVector.fromArray(SPECIES, bounds, b + 2 * width).sub(originZ).mul(invZ);
+            DoubleVector t6 = DoubleVector.fromArray(SPECIES, bounds, b + 5 * width).sub(originZ).mul(invZ);
+            DoubleVector nearX = swapX ? t2 : t1;
+            DoubleVector nearY = swapY ? t4 : t3;
+            DoubleVector nearZ = swapZ ? t6 : t5;
+            DoubleVector farX = swapX ? t1 : t2;
+            DoubleVector farY = swapY ? t3 : t4;
+            DoubleVector farZ = swapZ ? t5 : t6;
+            // Comparisons and blends rather than min and max, so an axis whose distances are NaN is ignored
+            DoubleVector tNear = DoubleVector.broadcast(SPECIES, low);
+            tNear = tNear.blend(nearX, nearX.compare(VectorOperators.GT, tNear));
+            tNear = tNear.blend(nearY, nearY.compare(VectorOperators.GT, tNear));
+            tNear = tNear.blend(nearZ, nearZ.compare(VectorOperators.GT, tNear));
+            DoubleVector tFar = DoubleVector.broadcast(SPECIES, tMax);
+            tFar = tFar.blend(farX, farX.compare(VectorOperators.LT, tFar));
+            tFar = tFar.blend(farY, farY.compare(VectorOperators.LT, tFar));
+            tFar = tFar.blend(farZ, farZ.compare(VectorOperators.LT, tFar));
+            tNear.intoArray(near, lane);
+            mask |= (int) tNear.compare(VectorOperators.LE, tFar).toLong() << lane;
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,243 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchy with four or eight children per node, collapsed from a binary one in the flat layout shared by
+ * {@link ImprovedBVH} and the mesh hierarchy.
+ * <p>
+ * Every node stores the boxes of all its children in structure-of-arrays form so that a {@link WideBoxTest}
+ * tests them against a ray together. A child is referenced by its slot, the node index times the width
+ * plus its lane: a slot with a zero count holds the index of a child node, a slot with a positive count
+ * holds the first position and number of primitives of a leaf. Unused lanes hold an empty box at positive
+ * infinity, which no ray reaches. A node is collapsed by repeatedly opening the interior child with the
+ * largest surface area until the node is full, so the primitive order and leaves of the binary hierarchy
+ * are kept as they are.
+ * <p>
+ * Traversal pushes the children a ray hits on a per-thread {@link Stack} farthest first, together with
+ * their entry distances, so the nearest child is visited next and children beyond the closest hit found
+ * so far can be skipped. Hierarchies whose traversals nest, such as a mesh reached from the scene, must
+ * take their stacks from different {@link #createStacks() thread locals}.
+ */
+public final class WideBVH {
+
+    private final int width;
+    private final WideBoxTest boxTest;
+    private final double[] childBounds; // Six groups of width values per node: minimum x, y, z then maximum x, y, z
+    private final int[] childOffsets; // Child node of an interior slot, first primitive of a leaf slot
+    private final int[] childCounts; // Number of primitives of a leaf slot, zero for interior slots
+    private int nodeCount;
+    private int depth;
+
+    /**
+     * Collapses a binary hierarchy
+     * @param nodeBounds six values per binary node: minimum x, y, z then maximum x, y, z
+     * @param nodeOffsets second child of an interior binary node, first primitive of a leaf
+     * @param nodeCounts number of primitives of a binary leaf, zero for interior nodes
+     * @param binaryNodeCount number of binary nodes, at least one
+     * @param width children per node, four or eight
+     */
+    public WideBVH(double[] nodeBounds, int[] nodeOffsets, int[] nodeCounts, int binaryNodeCount, int width) {
+        this(nodeBounds, nodeOffsets, nodeCounts, binaryNodeCount, width, WideBoxTest.forWidth(width));
+    }
+
+    public WideBVH(double[] nodeBounds, int[] nodeOffsets, int[] nodeCounts, int binaryNodeCount, int width, WideBoxTest boxTest) {
+        if (width != 4 && width != 8)
+            throw new IllegalArgumentException("Wide hierarchies have four or eight children per node: " + width);
+        if (binaryNodeCount < 1)
+            throw new IllegalArgumentException("Cannot collapse an empty hierarchy");
+        this.width = width;
+        this.boxTest = boxTest;
+        // Every wide node consumes at least one interior binary node, except a lone leaf that becomes the root
+        int maxNodes = Math.max(1, binaryNodeCount / 2);
+        double[] bounds = new double[maxNodes * 6 * width];
+        int[] offsets = new int[maxNodes * width];
+        int[] counts = new int[maxNodes * width];
+        collapse(nodeBounds, nodeOffsets, nodeCounts, 0, 0, bounds, offsets, counts);
+        this.childBounds = Arrays.copyOf(bounds, nodeCount * 6 * width);
+        this.childOffsets = Arrays.copyOf(offsets, nodeCount * width);
+        this.childCounts = Arrays.copyOf(counts, nodeCount * width);
+    }
+
+    /**
+     * Appends the wide node rooted at a binary node and the nodes below it
+     * @return index of the new node
+     */
+    private int collapse(double[] nodeBounds, int[] nodeOffsets, int[] nodeCounts, int binaryNode, int level,
+                         double[] bounds, int[] offsets, int[] counts) {
+        int node = nodeCount++;
+        depth = Math.max(depth, level);
+        int[] lanes = new int[width];
+        int used;
+        if (nodeCounts[binaryNode] > 0) {
+            lanes[0] = binaryNode;
+            used = 1;
+        } else {
+            lanes[0] = binaryNode + 1;
+            lanes[1] = nodeOffsets[binaryNode];
+            used = 2;
+        }
+        while (used < width) {
+            int largest = -1;
+            double largestArea = -1;
+            for (int lane = 0; lane < used; lane++) {
+                if (nodeCounts[lanes[lane]] > 0)
+                    continue;
+                double area = area(nodeBounds, lanes[lane]);
+                if (area > largestArea) {
+                    largestArea = area;
+                    largest = lane;
+                }
+            }
+            if (largest < 0)
+                break;
+            int opened = lanes[largest];
+            lanes[largest] = opened + 1;
+            lanes[used++] = nodeOffsets[opened];
+        }
+
+        int base = node * 6 * width;
+        for (int lane = 0; lane < width; lane++) {
+            int slot = node * width + lane;
+            if (lane >= used) {
+                for (int k = 0; k < 6; k++)
+                    bounds[base + k * width + lane] = Double.POSITIVE_INFINITY;
+                continue;
+            }
+            int child = lanes[lane];
+            for (int k = 0; k < 6; k++)
+                bounds[base + k * width + lane] = nodeBounds[child * 6 + k];
+            if (nodeCounts[child] > 0) {
+                offsets[slot] = nodeOffsets[child];
+                counts[slot] = nodeCounts[child];
+            } else {
+                offsets[slot] = collapse(nodeBounds, nodeOffsets, nodeCounts, child, level + 1, bounds, offsets, counts);
+            }
+        }
+        return node;
+    }
+
+    private static double area(double[] nodeBounds, int node) {
+        int b = node * 6;
+        double dx = nodeBounds[b + 3] - nodeBounds[b];
+        double dy = nodeBounds[b + 4] - nodeBounds[b + 1];
+        double dz = nodeBounds[b + 5] - nodeBounds[b + 2];
+        return dx * dy + dy * dz + dz * dx;
+    }
+
+    /**
+     * @return per-thread traversal stacks for one level of nesting
+     */
+    public static ThreadLocal<Stack> createStacks() {
+        return ThreadLocal.withInitial(() -> new Stack(64));
+    }
+
+    /**
+     * @param stacks per-thread stacks of the kind of hierarchy this one is, see {@link #createStacks()}
+     * @return the traversal stack of the calling thread, large enough for this hierarchy
+     */
+    public Stack stack(ThreadLocal<Stack> stacks) {
+        Stack stack = stacks.get();
+        // Each level pushes at most all children of a node and pops one of them
+        int needed = depth * (width - 1) + width;
+        if (stack.slots.length < needed) {
+            stack = new Stack(needed);
+            stacks.set(stack);
+        }
+        return stack;
+    }
+
+    /**
+     * Tests the children of a node and pushes those the ray hits, farthest first
+     * @param size number of entries on the stack
+     * @return the new number of entries on the stack
+     */
+    public int visit(int node, Stack stack, int size, TraversalRay ray, double tMin, double tMax) {
+        return visit(node, stack, size, ray.originX(), ray.originY(), ray.originZ(), ray.invX(), ray.invY(), ray.invZ(), tMin, tMax);
+    }
+
+    /**
+     * Tests the children of a node and pushes those the ray hits, farthest first
+     * @param size number of entries on the stack
+     * @return the new number of entries on the stack
+     */
+    public int visit(int node, Stack stack, int size, double originX, double originY, double originZ,
+                     double invX, double invY, double invZ, double tMin, double tMax) {
+        double[] near = stack.near;
+        int mask = boxTest.intersect(childBounds, node * 6 * width, width, originX, originY, originZ, invX, invY, invZ, tMin, tMax, near);
+        int start = size;
+        while (mask != 0) {
+            int lane = Integer.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            double distance = near[lane];
+            // Insertion sort of at most eight entries keeps the nearest child on top
+            int i = size++;
+            while (i > start && stack.distances[i - 1] < distance) {
+                stack.slots[i] = stack.slots[i - 1];
+                stack.distances[i] = stack.distances[i - 1];
+                i--;
+            }
+            stack.slots[i] = node * width + lane;
+            stack.distances[i] = distance;
+        }
+        return size;
+    }
+
+    /**
+     * @return child node of an interior slot or first primitive of a leaf slot
+     */
+    public int getOffset(int slot) {
+        return childOffsets[slot];
+    }
+
+    /**
+     * @return number of primitives of a leaf slot, zero for an interior slot
+     */
+    public int getCount(int slot) {
+        return childCounts[slot];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return depth of the deepest node, the root being at depth zero
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return bytes of the child bounds, offsets and counts
+     */
+    public long getMemoryFootprint() {
+        return childBounds.length * 8L + (childOffsets.length + childCounts.length) * 4L;
+    }
+
+    /**
+     * Per-thread traversal stack of child slots and their entry distances
+     */
+    public static final class Stack {
+        private final int[] slots;
+        private final double[] distances;
+        private final double[] near = new double[8];
+
+        private Stack(int capacity) {
+            this.slots = new int[capacity];
+            this.distances = new double[capacity];
+        }
+
+        public int slot(int index) {
+            return slots[index];
+        }
+
+        public double distance(int index) {
+            return distances[index];
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+/**
+ * Slab test of one ray against all child boxes of a {@link WideBVH} node at once.
+ * <p>
+ * Boxes are given in structure-of-arrays form: for a node of width {@code w} starting at {@code offset}, the
+ * {@code w} minimum x values come first, then the minimum y and z values and then the maximum x, y and z
+ * values. An axis whose slab distances are NaN, because the ray starts on the slab and runs parallel to it,
+ * does not restrict the hit. Implementations return exactly the same lanes and distances; the vectorized one
+ * is only used when {@code jdk.incubator.vector} is available and the hardware has vectors of at least two
+ * doubles.
+ */
+public interface WideBoxTest {
+
+    /**
+     * @param near receives the entry distance of every lane, clamped to the tested interval
+     * @return bit mask of the lanes whose box the ray overlaps between {@code max(tMin, 0)} and {@code tMax}
+     */
+    int intersect(double[] bounds, int offset, int width, double originX, double originY, double originZ,
+                  double invX, double invY, double invZ, double tMin, double tMax, double[] near);
+
+    /**
+     * @return the fastest box test available for nodes of the given width
+     */
+    static WideBoxTest forWidth(int width) {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                WideBoxTest vectorized = VectorWideBoxTest.forWidth(width);
+                if (vectorized != null)
+                    return vectorized;
+            } catch (LinkageError e) {
+                // Fall through to the scalar test
+            }
+        }
+        return ScalarWideBoxTest.INSTANCE;
+    }
+
+    /**
+     * @return the box test that works on every platform
+     */
+    static WideBoxTest scalar() {
+        return ScalarWideBoxTest.INSTANCE;
+    }
+}
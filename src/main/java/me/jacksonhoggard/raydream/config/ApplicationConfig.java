@@ -21,6 +21,14 @@ public final class ApplicationConfig {
     public static final int MIN_SAMPLES_BEFORE_CONVERGENCE = 16; // Significantly increased for DOF scenes
     public static final double DOF_NOISE_THRESHOLD = 0.001; // Tighter threshold for DOF scenes
     public static final int MAX_DOF_SAMPLES = 64; // Maximum samples for high DOF scenes
+    public static final int DEFAULT_TILE_SIZE = 32; // Edge length in pixels of a render tile
+    public static final int MIN_SPLIT_TILE_SIZE = 8; // Smallest edge length a tile is split down to for idle workers
+    public static final int RAY_PACKET_SIZE = 8; // Edge length in pixels of the blocks whose primary and point light shadow rays are traced as one packet; 1 traces every ray alone
+    public static final double ADAPTIVE_PASS_NOISE_FRACTION = 0.5; // Pixels below this fraction of the frame noise skip a time-budgeted pass
+    public static final long PROGRESS_UPDATE_INTERVAL_MS = 250; // Minimum time between progress callbacks
+    public static final long CHECKPOINT_INTERVAL_MS = 300000; // Minimum time between two render checkpoints
+    public static final int DISTRIBUTED_PORT = 7878; // Port the render coordinator listens on for workers
+    public static final long DISTRIBUTED_TILE_TIMEOUT_MS = 120000; // Time a worker holding tiles may go without answering for any before they are handed to others
     
     // Denoising Configuration
     public static final int BILATERAL_FILTER_RADIUS = 3; // Filter radius for denoising
@@ -45,6 +53,20 @@ public final class ApplicationConfig {
 
     // Performance Settings
     public static final int BVH_MAX_OBJECTS_PER_LEAF = 4;
+    public static final int BVH_MAX_TRIANGLES_PER_LEAF = 8; // Upper bound on mesh BVH leaves chosen by the SAH
+    public static final int BVH_SAH_BINS = 16; // Candidate split planes per axis in the binned SAH
+    public static final double BVH_TRAVERSAL_COST = 1.0; // SAH cost of visiting an interior node
+    public static final double BVH_OBJECT_INTERSECTION_COST = 4.0; // SAH cost of testing an object, including the ray transform
+    public static final double BVH_TRIANGLE_INTERSECTION_COST = 1.0; // SAH cost of testing a triangle
+    public static final int BVH_MAX_DEPTH = 64; // Deepest node an SAH build creates; also the initial size of the traversal stack
+    public static final int BVH_PARALLEL_SUBTREE_SIZE = 4096; // Smallest subtree built as its own fork-join task
+    public static final int BVH_PARALLEL_BINNING_SIZE = 65536; // Smallest node whose bounds and bins are gathered by several tasks
+    public static final int BVH_WIDTH = 2; // Default children per BVH node of the render settings; 4 or 8 collapse hierarchies into wide ones
+    public static final String BVH_CACHE_DIRECTORY = "cache/bvh"; // Directory built mesh hierarchies are kept in between renders
+    public static final int BVH_CACHE_MIN_TRIANGLES = 10000; // Smallest mesh whose hierarchy is worth writing to the cache
+    public static final double BVH_SPATIAL_SPLIT_MAX_GROWTH = 0.5; // Triangle references spatial splits may add to a mesh, as a fraction of its triangle count
+    public static final double BVH_SPATIAL_SPLIT_OVERLAP = 1e-5; // Overlap of an object split's children, relative to the mesh bounds' area, above which spatial splits are tried
+    public static final double BVH_REFIT_MAX_DEGRADATION = 1.5; // Growth of the SAH cost through refits after which the scene hierarchy is rebuilt
     public static final int TEXTURE_CACHE_SIZE = 100;
     public static final int MODEL_CACHE_SIZE = 50;
 
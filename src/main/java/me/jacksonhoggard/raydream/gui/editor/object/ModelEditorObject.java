@@ -1,20 +1,25 @@
 package me.jacksonhoggard.raydream.gui.editor.object;
 
 import imgui.extension.imguizmo.ImGuizmo;
+import me.jacksonhoggard.raydream.acceleration.SplitMethod;
 import me.jacksonhoggard.raydream.gui.editor.material.EditorObjectMaterial;
 import me.jacksonhoggard.raydream.gui.editor.model.MeshModel;
 import me.jacksonhoggard.raydream.math.Vector2D;
 import me.jacksonhoggard.raydream.math.Vector3D;
 import me.jacksonhoggard.raydream.object.Mesh;
+import me.jacksonhoggard.raydream.object.MeshCache;
 import me.jacksonhoggard.raydream.object.Model;
 import me.jacksonhoggard.raydream.object.Object;
 import me.jacksonhoggard.raydream.object.Triangle;
+import me.jacksonhoggard.raydream.render.RenderSettings;
 
 import java.io.*;
 import java.nio.file.Paths;
 
 public class ModelEditorObject extends EditorObject {
 
+    private SplitMethod splitMethod; // Overrides the render setting for the meshes of this model when not null
+
     public ModelEditorObject(MeshModel model) throws IOException {
         super(model, new EditorObjectMaterial());
     }
@@ -121,6 +126,7 @@ public class ModelEditorObject extends EditorObject {
         return "+ object: model\n" +
                 "label: " + label.get() + "\n" +
                 getTransformSaveEntry() + materials.toString() +
+                (splitMethod != null ? "splitMethod: " + splitMethod + "\n" : "") +
                 "file: " + modelPath + "\n" +
                 ";\n";
     }
@@ -184,65 +190,106 @@ public class ModelEditorObject extends EditorObject {
     }
 
     public Model[] toObjects() {
+        return toObjects(new MeshCache());
+    }
+
+    public Model[] toObjects(MeshCache cache) {
+        return toObjects(cache, SplitMethod.SAH);
+    }
+
+    public Model[] toObjects(MeshCache cache, SplitMethod defaultSplitMethod) {
+        return toObjects(cache, new RenderSettings().setMeshSplitMethod(defaultSplitMethod));
+    }
+
+    /**
+     * Converts every mesh of the model into a render object. Meshes whose geometry is already in the cache
+     * are shared instead of being built again, so repeated placements of one model cost a single hierarchy.
+     * @param cache meshes shared by the scene being built
+     * @param settings settings giving the split method of the mesh hierarchies unless this model sets its
+     *                 own, whether they are left to be built when a ray first reaches them and their width
+     * @return one model per mesh
+     */
+    public Model[] toObjects(MeshCache cache, RenderSettings settings) {
         Model[] models = new Model[getSubIds().size()];
 
         int mIndex = 0;
         MeshModel model = (MeshModel) getModel();
+        SplitMethod method = splitMethod != null ? splitMethod : settings.getMeshSplitMethod();
+        int width = settings.getBvhWidth();
         for(MeshModel.Mesh m : model.getMeshes()) {
+            Mesh mesh = cache.get(m.getVertices(), method, width, () -> toMesh(model.getPath(), m, method, width));
+            // A mesh left lazy by an earlier scene is built now unless this one is lazy too
+            if(!settings.isLazyMeshes())
+                mesh.build();
+            models[mIndex] = new Model(getTransform(), m.getMaterial().toRayDreamMaterial(), mesh);
+            mIndex++;
+        }
+        return models;
+    }
 
-            Vector3D[] vertices = new Vector3D[m.getVertexCount()];
-            Vector3D[] normals = new Vector3D[m.getVertexCount()];
-            Vector2D[] texCoords = new Vector2D[m.getVertexCount()];
-            Triangle[] triangles = new Triangle[m.getVertexCount() / 3];
-            Vector3D min = new Vector3D(Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE);
-            Vector3D max = new Vector3D(-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE);
+    public SplitMethod getSplitMethod() {
+        return splitMethod;
+    }
 
-            int i = 0;
-            for(int j = 0; j < vertices.length; j++) {
-                vertices[j] = new Vector3D(
-                        m.getVertices()[i],
-                        m.getVertices()[i + 1],
-                        m.getVertices()[i + 2]
-                );
-                normals[j] = new Vector3D(
-                        m.getVertices()[i + 3],
-                        m.getVertices()[i + 4],
-                        m.getVertices()[i + 5]
-                );
-                texCoords[j] = new Vector2D(
-                        m.getVertices()[i + 6],
-                        m.getVertices()[i + 7]
-                );
-                min.x = Math.min(min.x, vertices[j].x);
-                min.y = Math.min(min.y, vertices[j].y);
-                min.z = Math.min(min.z, vertices[j].z);
-                max.x = Math.max(max.x, vertices[j].x);
-                max.y = Math.max(max.y, vertices[j].y);
-                max.z = Math.max(max.z, vertices[j].z);
-                i+=8;
-            }
+    /**
+     * Sets how the hierarchies of this model's meshes are built, for instance {@link SplitMethod#SPATIAL}
+     * for architectural meshes with long, thin triangles
+     * @param splitMethod split method, or null to use the one of the render settings
+     */
+    public void setSplitMethod(SplitMethod splitMethod) {
+        this.splitMethod = splitMethod;
+    }
 
-            i = 0;
-            for(int t = 0; t < triangles.length; t++) {
-                triangles[t] = new Triangle(
-                        vertices[i],
-                        vertices[i+1],
-                        vertices[i+2],
-                        normals[i],
-                        normals[i+1],
-                        normals[i+2],
-                        texCoords[i],
-                        texCoords[i+1],
-                        texCoords[i+2]
-                );
-                i+=3;
-            }
+    private static Mesh toMesh(String path, MeshModel.Mesh m, SplitMethod splitMethod, int width) {
+        Vector3D[] vertices = new Vector3D[m.getVertexCount()];
+        Vector3D[] normals = new Vector3D[m.getVertexCount()];
+        Vector2D[] texCoords = new Vector2D[m.getVertexCount()];
+        Triangle[] triangles = new Triangle[m.getVertexCount() / 3];
+        Vector3D min = new Vector3D(Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE);
+        Vector3D max = new Vector3D(-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE);
 
-            Mesh mesh = new Mesh(model.getPath(), triangles, min, max);
-            models[mIndex] = new Model(getTransform(), m.getMaterial().toRayDreamMaterial(), mesh);
-            mIndex++;
+        int i = 0;
+        for(int j = 0; j < vertices.length; j++) {
+            vertices[j] = new Vector3D(
+                    m.getVertices()[i],
+                    m.getVertices()[i + 1],
+                    m.getVertices()[i + 2]
+            );
+            normals[j] = new Vector3D(
+                    m.getVertices()[i + 3],
+                    m.getVertices()[i + 4],
+                    m.getVertices()[i + 5]
+            );
+            texCoords[j] = new Vector2D(
+                    m.getVertices()[i + 6],
+                    m.getVertices()[i + 7]
+            );
+            min.x = Math.min(min.x, vertices[j].x);
+            min.y = Math.min(min.y, vertices[j].y);
+            min.z = Math.min(min.z, vertices[j].z);
+            max.x = Math.max(max.x, vertices[j].x);
+            max.y = Math.max(max.y, vertices[j].y);
+            max.z = Math.max(max.z, vertices[j].z);
+            i+=8;
         }
-        return models;
+
+        i = 0;
+        for(int t = 0; t < triangles.length; t++) {
+            triangles[t] = new Triangle(
+                    vertices[i],
+                    vertices[i+1],
+                    vertices[i+2],
+                    normals[i],
+                    normals[i+1],
+                    normals[i+2],
+                    texCoords[i],
+                    texCoords[i+1],
+                    texCoords[i+2]
+            );
+            i+=3;
+        }
+
+        return new Mesh(path, triangles, min, max, splitMethod, width, true);
     }
 
     @Override
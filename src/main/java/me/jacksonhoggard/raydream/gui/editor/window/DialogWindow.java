@@ -185,7 +185,10 @@ public class DialogWindow {
                 closeFrame();
             }
         });
+        JButton acceptButton = new JButton("Accept");
+        acceptButton.addActionListener(_ -> renderCancelListener.accept());
         frame.getContentPane().add(closeButton);
+        frame.getContentPane().add(acceptButton);
         frame.getContentPane().add(imageLabel);
         frame.setVisible(true);
     }
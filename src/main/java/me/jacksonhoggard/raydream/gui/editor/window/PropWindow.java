@@ -8,6 +8,7 @@ import imgui.flag.ImGuiCond;
 import imgui.flag.ImGuiWindowFlags;
 import imgui.type.ImFloat;
 import imgui.type.ImInt;
+import me.jacksonhoggard.raydream.acceleration.SplitMethod;
 import me.jacksonhoggard.raydream.gui.MenuBar;
 import me.jacksonhoggard.raydream.gui.Window;
 import me.jacksonhoggard.raydream.gui.editor.light.EditorAreaLight;
@@ -18,6 +19,7 @@ import me.jacksonhoggard.raydream.gui.editor.material.EditorLightMaterial;
 import me.jacksonhoggard.raydream.gui.editor.material.EditorObjectMaterial;
 import me.jacksonhoggard.raydream.gui.editor.material.Texture;
 import me.jacksonhoggard.raydream.gui.editor.object.EditorObject;
+import me.jacksonhoggard.raydream.gui.editor.object.ModelEditorObject;
 import me.jacksonhoggard.raydream.material.Material;
 
 import java.io.IOException;
@@ -45,6 +47,8 @@ public class PropWindow {
 
     private static final ImInt selectedMaterialType = new ImInt();
     private static final String[] MATERIAL_TYPES = new String[] {"Reflect", "Reflect & Refract", "Non-reflective"};
+    private static final ImInt selectedSplitMethod = new ImInt();
+    private static final String[] SPLIT_METHODS = new String[] {"Render Setting", "Longest Axis", "SAH", "Spatial Splits"}; // Unset, then in the order of SplitMethod
 
     public static void show() {
         width = ImGui.getMainViewport().getSizeX() / 5.f;
@@ -125,6 +129,12 @@ public class PropWindow {
                     Arrays.fill(inputSnapValue, scaleValue);
                     break;
             }
+            if(selectedObject instanceof ModelEditorObject model) {
+                SplitMethod splitMethod = model.getSplitMethod();
+                selectedSplitMethod.set(splitMethod == null ? 0 : splitMethod.ordinal() + 1);
+                if(ImGui.combo("Mesh BVH", selectedSplitMethod, SPLIT_METHODS))
+                    model.setSplitMethod(selectedSplitMethod.get() == 0 ? null : SplitMethod.values()[selectedSplitMethod.get() - 1]);
+            }
         }
         if(selectedLight != null) {
             ImGui.pushItemWidth(ImGui.getContentRegionAvailX());
@@ -2,8 +2,10 @@ package me.jacksonhoggard.raydream.gui.editor.window;
 
 import imgui.ImGui;
 import imgui.flag.ImGuiWindowFlags;
+import imgui.type.ImBoolean;
 import imgui.type.ImFloat;
 import imgui.type.ImInt;
+import me.jacksonhoggard.raydream.acceleration.SplitMethod;
 import me.jacksonhoggard.raydream.config.ApplicationConfig;
 import me.jacksonhoggard.raydream.core.ApplicationContext;
 import me.jacksonhoggard.raydream.gui.MenuBar;
@@ -11,7 +13,9 @@ import me.jacksonhoggard.raydream.gui.Window;
 import me.jacksonhoggard.raydream.gui.editor.EditorCamera;
 import me.jacksonhoggard.raydream.light.PointLight;
 import me.jacksonhoggard.raydream.math.Vector3D;
-import me.jacksonhoggard.raydream.render.Scene;
+import me.jacksonhoggard.raydream.render.CropRegion;
+import me.jacksonhoggard.raydream.render.RenderJob;
+import me.jacksonhoggard.raydream.render.RenderSettings;
 import me.jacksonhoggard.raydream.service.SceneService;
 import me.jacksonhoggard.raydream.util.Logger;
 
@@ -40,6 +44,15 @@ public class SettingsWindow {
     private static int bounces = ApplicationConfig.DEFAULT_MAX_BOUNCE_DEPTH;
     private static int numShadowRays = 8;
     private static int threads = ApplicationConfig.DEFAULT_THREAD_COUNT;
+    private static int passes = 0;
+    private static int timeBudget = 0;
+    private static final ImBoolean checkpoints = new ImBoolean(false);
+    private static int[] crop = new int[] {0, 0, 0, 0};
+    private static final ImBoolean composite = new ImBoolean(false);
+    private static final ImBoolean spatialSplits = new ImBoolean(false);
+    private static final ImBoolean lazyMeshes = new ImBoolean(false);
+    private static final ImInt bvhWidth = new ImInt(Integer.numberOfTrailingZeros(ApplicationConfig.BVH_WIDTH) - 1);
+    private static final String[] BVH_WIDTHS = new String[] {"2", "4", "8"}; // Widths 4 and 8 run on SIMD under --add-modules jdk.incubator.vector
     private static final SceneService sceneService = ApplicationContext.getInstance().getSceneService();
 
     public static void show() {
@@ -75,13 +88,7 @@ public class SettingsWindow {
         ImGui.colorEdit3("Sky Color", skyColor);
         ImGui.colorEdit3("Ambient Color", ambientColor);
 
-        camera.setAspect((float) imgWidth / (float) imgHeight);
-        camera.setLookFrom(lookFrom[0], lookFrom[1], lookFrom[2]);
-        camera.setLookAt(lookAt[0], lookAt[1], lookAt[2]);
-        camera.setUp(up[0], up[1], up[2]);
-        camera.updateProjection();
-        camera.updateViewMatrix();
-        camera.updateModelMatrix();
+        applyCamera();
 
         ImGui.separator();
 
@@ -101,14 +108,67 @@ public class SettingsWindow {
         inputInt.set(threads);
         ImGui.inputInt("# of Threads", inputInt);
         threads = inputInt.get();
+        inputInt.set(passes);
+        ImGui.inputInt("Progressive Passes", inputInt);
+        passes = Math.max(0, inputInt.get());
+        inputInt.set(timeBudget);
+        ImGui.inputInt("Time Budget (s)", inputInt);
+        timeBudget = Math.max(0, inputInt.get());
+        ImGui.inputInt4("Crop (x, y, w, h)", crop);
+        ImGui.checkbox("Composite Crop", composite);
+        ImGui.checkbox("Write Checkpoints", checkpoints);
+        ImGui.checkbox("Spatial Splits in Meshes", spatialSplits);
+        ImGui.checkbox("Build Meshes on Demand", lazyMeshes);
+        ImGui.combo("BVH Width", bvhWidth, BVH_WIDTHS);
         if(ImGui.button("Render")) {
             String path = DialogWindow.openFileSave("output.png", "png", "jpg");
             if(path != null) {
                 if(!(path.endsWith(".jpg") || path.endsWith(".png") || path.endsWith(".jpeg")))
                     path += ".png";
-                DialogWindow.showProgressBar("Render Progress", 250, 70, Scene.getRenderCancelListener());
+                RenderJob job = sceneService.createRenderJob(
+                        ObjectWindow.objects,
+                        ObjectWindow.lights,
+                        new PointLight(
+                                new Vector3D(),
+                                new Vector3D(
+                                        ambientColor[0],
+                                        ambientColor[1],
+                                        ambientColor[2]
+                                ),
+                                1
+                        ),
+                        new Vector3D(
+                                skyColor[0],
+                                skyColor[1],
+                                skyColor[2]
+                        ),
+                        camera,
+                        imgWidth,
+                        imgHeight,
+                        aperture,
+                        path,
+                        getRenderSettings().setCheckpointFile(checkpoints.get() ? path + ".checkpoint" : null),
+                        DialogWindow.getProgressListener()
+                );
+                DialogWindow.showProgressBar("Render Progress", 250, 70, job.getCancelListener());
+                try {
+                    job.run();
+                } catch (IOException e) {
+                    logger.error("Failed to render scene", e);
+                    // TODO: Show error dialog to user
+                }
+                if(!job.isCanceled()) {
+                    boolean fullFrame = job.getSettings().isComposite() || job.getRegion().covers(imgWidth, imgHeight);
+                    DialogWindow.openImage(Path.of(path).getFileName().toString(), path, fullFrame ? imgWidth : job.getImage().getWidth(), fullFrame ? imgHeight : job.getImage().getHeight());
+                }
+            }
+        }
+        ImGui.sameLine();
+        if(ImGui.button("Resume Render")) {
+            String checkpointPath = DialogWindow.openFileChooser("Render Checkpoint", "checkpoint");
+            if(checkpointPath != null) {
                 try {
-                    sceneService.renderScene(
+                    RenderJob job = sceneService.createResumeJob(
                             ObjectWindow.objects,
                             ObjectWindow.lights,
                             new PointLight(
@@ -126,22 +186,18 @@ public class SettingsWindow {
                                     skyColor[2]
                             ),
                             camera,
-                            imgWidth,
-                            imgHeight,
                             aperture,
-                            path,
-                            sampleDepth,
-                            bounces,
-                            numShadowRays,
-                            threads,
+                            checkpointPath,
                             DialogWindow.getProgressListener()
                     );
-                } catch (IOException e) {
-                    logger.error("Failed to render scene", e);
-                    // TODO: Show error dialog to user
+                    DialogWindow.showProgressBar("Render Progress", 250, 70, job.getCancelListener());
+                    job.run();
+                    if(!job.isCanceled())
+                        DialogWindow.openImage(Path.of(job.getFilename()).getFileName().toString(), job.getFilename(), job.getImage().getWidth(), job.getImage().getHeight());
+                } catch (IOException | IllegalArgumentException e) {
+                    logger.error("Failed to resume render", e);
+                    DialogWindow.showError("Failed to resume render", e);
                 }
-                if(!Scene.getRenderCancelListener().isCanceled())
-                    DialogWindow.openImage(Path.of(path).getFileName().toString(), path, imgWidth, imgHeight);
             }
         }
 
@@ -149,6 +205,34 @@ public class SettingsWindow {
         ImGui.end();
     }
 
+    /**
+     * Moves the preview camera to the camera settings, which is also the camera used for renders
+     */
+    public static void applyCamera() {
+        EditorCamera camera = PreviewWindow.getCamera();
+        camera.setAspect((float) imgWidth / (float) imgHeight);
+        camera.setLookFrom(lookFrom[0], lookFrom[1], lookFrom[2]);
+        camera.setLookAt(lookAt[0], lookAt[1], lookAt[2]);
+        camera.setUp(up[0], up[1], up[2]);
+        camera.updateProjection();
+        camera.updateViewMatrix();
+        camera.updateModelMatrix();
+    }
+
+    /**
+     * @return the render settings currently entered, without a checkpoint file
+     */
+    public static RenderSettings getRenderSettings() {
+        return new RenderSettings(sampleDepth, bounces, numShadowRays, threads)
+                .setPasses(passes)
+                .setTimeBudget(timeBudget * 1000L)
+                .setCrop(getCropRegion())
+                .setComposite(composite.get())
+                .setMeshSplitMethod(spatialSplits.get() ? SplitMethod.SPATIAL : SplitMethod.SAH)
+                .setLazyMeshes(lazyMeshes.get())
+                .setBvhWidth(getBvhWidth());
+    }
+
     public static void reset() {
         lookFrom = new float[] {0, 1, 2};
         lookAt = new float[] {0, 0, 0};
@@ -162,6 +246,22 @@ public class SettingsWindow {
         bounces = ApplicationConfig.DEFAULT_MAX_BOUNCE_DEPTH;
         numShadowRays = 8;
         threads = ApplicationConfig.DEFAULT_THREAD_COUNT;
+        passes = 0;
+        timeBudget = 0;
+        crop = new int[] {0, 0, 0, 0};
+        composite.set(false);
+        spatialSplits.set(false);
+        lazyMeshes.set(false);
+        setBvhWidth(ApplicationConfig.BVH_WIDTH);
+    }
+
+    /**
+     * @return the crop region entered in the settings, or null to render the full frame
+     */
+    private static CropRegion getCropRegion() {
+        if(crop[2] <= 0 || crop[3] <= 0 || crop[0] >= imgWidth || crop[1] >= imgHeight)
+            return null;
+        return new CropRegion(Math.max(0, crop[0]), Math.max(0, crop[1]), crop[2], crop[3]);
     }
 
     public static String toSaveEntry() {
@@ -179,6 +279,13 @@ public class SettingsWindow {
                 "bounces: " + bounces + "\n" +
                 "shadows: " + numShadowRays + "\n" +
                 "threads: " + threads + "\n" +
+                "passes: " + passes + "\n" +
+                "budget: " + timeBudget + "\n" +
+                "crop: " + crop[0] + " " + crop[1] + " " + crop[2] + " " + crop[3] + "\n" +
+                "composite: " + composite.get() + "\n" +
+                "spatialSplits: " + spatialSplits.get() + "\n" +
+                "lazyMeshes: " + lazyMeshes.get() + "\n" +
+                "bvhWidth: " + getBvhWidth() + "\n" +
                 ";\n";
     }
 
@@ -271,6 +378,43 @@ public class SettingsWindow {
         SettingsWindow.threads = threads;
     }
 
+    public static void setPasses(int passes) {
+        SettingsWindow.passes = passes;
+    }
+
+    public static void setTimeBudget(int timeBudget) {
+        SettingsWindow.timeBudget = timeBudget;
+    }
+
+    public static void setCrop(int[] crop) {
+        SettingsWindow.crop = crop;
+    }
+
+    public static void setComposite(boolean composite) {
+        SettingsWindow.composite.set(composite);
+    }
+
+    public static void setSpatialSplits(boolean spatialSplits) {
+        SettingsWindow.spatialSplits.set(spatialSplits);
+    }
+
+    public static void setLazyMeshes(boolean lazyMeshes) {
+        SettingsWindow.lazyMeshes.set(lazyMeshes);
+    }
+
+    private static int getBvhWidth() {
+        return 2 << bvhWidth.get();
+    }
+
+    /**
+     * @param bvhWidth children per node of the hierarchies, one of 2, 4 and 8
+     */
+    public static void setBvhWidth(int bvhWidth) {
+        if(bvhWidth != 2 && bvhWidth != 4 && bvhWidth != 8)
+            throw new IllegalArgumentException("BVH nodes have two, four or eight children: " + bvhWidth);
+        SettingsWindow.bvhWidth.set(Integer.numberOfTrailingZeros(bvhWidth) - 1);
+    }
+
     public static void setFov(float fov) {
         PreviewWindow.getCamera().setFov(fov);
     }
@@ -1,5 +1,6 @@
 package me.jacksonhoggard.raydream.object;
 
+import me.jacksonhoggard.raydream.acceleration.TraversalRay;
 import me.jacksonhoggard.raydream.math.Ray;
 import me.jacksonhoggard.raydream.math.Vector3D;
 import me.jacksonhoggard.raydream.math.Vector4D;
@@ -22,6 +23,7 @@ public class BVH {
     }
 
     public Hit intersect(Ray ray, Object[] objects) {
+        TraversalRay traversal = new TraversalRay(ray);
         List<Node> stack = new ArrayList<>();
         Node currentNode = root;
         Hit out = new Hit(null, null, null, null, null, Double.MAX_VALUE);
@@ -48,8 +50,8 @@ public class BVH {
             }
             Node left = currentNode.left;
             Node right = currentNode.right;
-            double distL = intersectAABB(ray, left.min, left.max, out.t());
-            double distR = intersectAABB(ray, right.min, right.max, out.t());
+            double distL = traversal.entry(left.min, left.max, 0, out.t());
+            double distR = traversal.entry(right.min, right.max, 0, out.t());
             if(distL > distR) {
                 double temp = distL;
                 distL = distR;
@@ -59,68 +61,20 @@ public class BVH {
                 left = right;
                 right = tempNode;
             }
-            if(distL == Double.MAX_VALUE) {
+            if(distL == TraversalRay.MISS) {
                 if (stack.isEmpty())
                     break;
                 currentNode = stack.removeLast();
             } else {
                 currentNode = left;
-                if(distR != Double.MAX_VALUE) stack.add(right);
+                if(distR != TraversalRay.MISS) stack.add(right);
             }
         }
         return out;
     }
 
-    private double intersectAABB(Ray ray, Vector3D min, Vector3D max, double t) {
-        double tMin, tMax, tYMin, tYMax, tZMin, tZMax;
-        if(ray.direction().x >= 0) {
-            tMin = (min.x - ray.origin().x) / ray.direction().x;
-            tMax = (max.x - ray.origin().x) / ray.direction().x;
-        } else {
-            tMin = (max.x - ray.origin().x) / ray.direction().x;
-            tMax = (min.x - ray.origin().x) / ray.direction().x;
-        }
-        if(ray.direction().y >= 0) {
-            tYMin = (min.y - ray.origin().y) / ray.direction().y;
-            tYMax = (max.y - ray.origin().y) / ray.direction().y;
-        } else {
-            tYMin = (max.y - ray.origin().y) / ray.direction().y;
-            tYMax = (min.y - ray.origin().y) / ray.direction().y;
-        }
-        if((tMin > tYMax) || (tYMin > tMax))
-            return Double.MAX_VALUE;
-
-        if (tYMin > tMin)
-            tMin = tYMin;
-        if (tYMax < tMax)
-            tMax = tYMax;
-
-        if(ray.direction().z >= 0) {
-            tZMin = (min.z - ray.origin().z) / ray.direction().z;
-            tZMax = (max.z - ray.origin().z) / ray.direction().z;
-        } else {
-            tZMin = (max.z - ray.origin().z) / ray.direction().z;
-            tZMax = (min.z - ray.origin().z) / ray.direction().z;
-        }
-
-        if((tMin > tZMax) || (tZMin > tMax))
-            return Double.MAX_VALUE;
-
-        if(tZMin > tMin)
-            tMin = tZMin;
-        if(tZMax < tMax)
-            tMax = tZMax;
-
-        if(tMin < 0 && tMax >= 0)
-            return tMax;
-
-        if(tMin >= 0 && tMin < t)
-            return tMin;
-
-        return Double.MAX_VALUE;
-    }
-
     public boolean intersectShadowRay(Ray ray, Object[] objects, double lightDistance) {
+        TraversalRay traversal = new TraversalRay(ray);
         List<Node> stack = new ArrayList<>();
         Node currentNode = root;
         double t = lightDistance;
@@ -150,8 +104,8 @@ public class BVH {
             }
             Node left = currentNode.left;
             Node right = currentNode.right;
-            double distL = intersectAABB(ray, left.min, left.max, t);
-            double distR = intersectAABB(ray, right.min, right.max, t);
+            double distL = traversal.entry(left.min, left.max, 0, t);
+            double distR = traversal.entry(right.min, right.max, 0, t);
             if(distL > distR) {
                 double temp = distL;
                 distL = distR;
@@ -161,13 +115,13 @@ public class BVH {
                 left = right;
                 right = tempNode;
             }
-            if(distL == Double.MAX_VALUE) {
+            if(distL == TraversalRay.MISS) {
                 if (stack.isEmpty())
                     break;
                 currentNode = stack.removeLast();
             } else {
                 currentNode = left;
-                if(distR != Double.MAX_VALUE) stack.add(right);
+                if(distR != TraversalRay.MISS) stack.add(right);
             }
         }
         return false;
@@ -0,0 +1,283 @@
+package me.jacksonhoggard.raydream.object;
+
+import me.jacksonhoggard.raydream.acceleration.SAHBuilder;
+import me.jacksonhoggard.raydream.acceleration.SAHCostModel;
+import me.jacksonhoggard.raydream.acceleration.SplitMethod;
+import me.jacksonhoggard.raydream.config.ApplicationConfig;
+import me.jacksonhoggard.raydream.core.ApplicationContext;
+import me.jacksonhoggard.raydream.math.Vector3D;
+import me.jacksonhoggard.raydream.util.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Keeps built mesh hierarchies on disk so that later renders of the same geometry skip the SAH build.
+ * <p>
+ * Files are named after a 64-bit hash of the triangle bounds, in their original order, and of the build
+ * parameters. Each holds a big-endian header, the triangle order chosen by the build, the flat node arrays
+ * of {@link BVHTriangle} and a CRC-32C of everything before it. Cached files are memory-mapped and copied
+ * into the node arrays in bulk. A file that is truncated, corrupt, written by another version or built from
+ * other data is ignored: the hierarchy is built as usual and the file is replaced. Files are written to a
+ * temporary file first and then moved into place, so a crash never leaves a partial file behind.
+ */
+public class BVHCache {
+
+    private static final Logger logger = ApplicationContext.getInstance().getLoggingService().getLogger(BVHCache.class);
+    private static final BVHCache defaultCache = new BVHCache(Paths.get(ApplicationConfig.BVH_CACHE_DIRECTORY), ApplicationConfig.BVH_CACHE_MIN_TRIANGLES);
+
+    private static final int MAGIC = 0x52444256; // "RDBV"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 28; // Magic, version, key, triangle count, node count and depth
+
+    private final Path directory;
+    private final int minTriangles;
+    private final SAHCostModel model = SAHCostModel.TRIANGLES;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger builds = new AtomicInteger();
+
+    /**
+     * @param directory directory holding the cache files, created on the first write
+     * @param minTriangles smallest mesh worth caching; smaller meshes are always built
+     */
+    public BVHCache(Path directory, int minTriangles) {
+        this.directory = directory;
+        this.minTriangles = minTriangles;
+    }
+
+    /**
+     * @return the cache used for every mesh loaded into a scene
+     */
+    public static BVHCache getDefault() {
+        return defaultCache;
+    }
+
+    /**
+     * Reads the SAH hierarchy of the triangles from the cache, or builds and caches it.
+     * Either way the triangles are reordered to match the hierarchy.
+     * @param triangles triangles in the order they were loaded
+     * @return the hierarchy over the reordered triangles
+     */
+    public BVHTriangle load(Triangle[] triangles) {
+        return load(triangles, ApplicationConfig.BVH_WIDTH);
+    }
+
+    /**
+     * As {@link #load(Triangle[])}, collapsing the hierarchy into a wide one after it is read or built.
+     * Only the binary hierarchy is cached, so one file serves every width.
+     * @param width children per node: two for the binary hierarchy, four or eight for a wide one
+     */
+    public BVHTriangle load(Triangle[] triangles, int width) {
+        if(triangles.length < Math.max(1, minTriangles))
+            return new BVHTriangle(triangles, SplitMethod.SAH, ForkJoinPool.commonPool(), width);
+        long key = key(triangles);
+        Path file = getFile(key);
+        if(Files.isRegularFile(file)) {
+            try {
+                BVHTriangle cached = read(file, key, triangles, width);
+                hits.incrementAndGet();
+                return cached;
+            } catch(IOException | RuntimeException e) {
+                logger.warn("Ignoring unusable BVH cache file " + file + ": " + e.getMessage());
+            }
+        }
+        SAHBuilder builder = BVHTriangle.buildSAH(triangles, ForkJoinPool.commonPool(), model);
+        builds.incrementAndGet();
+        try {
+            write(file, key, builder);
+        } catch(IOException e) {
+            logger.warn("Failed to write BVH cache file " + file + ": " + e.getMessage());
+        }
+        return new BVHTriangle(triangles, builder, width);
+    }
+
+    /**
+     * @return the file the hierarchy with the given key is cached in
+     */
+    Path getFile(long key) {
+        return directory.resolve(String.format("%016x.bvh", key));
+    }
+
+    /**
+     * Hashes everything the shape of the hierarchy depends on: the bounds of every triangle in order, the
+     * costs of the heuristic, the depth limit and the file format
+     */
+    long key(Triangle[] triangles) {
+        long hash = mix(VERSION, triangles.length);
+        hash = mix(hash, Double.doubleToLongBits(model.traversalCost()));
+        hash = mix(hash, Double.doubleToLongBits(model.intersectionCost()));
+        hash = mix(hash, model.bins());
+        hash = mix(hash, model.maxLeafSize());
+        hash = mix(hash, ApplicationConfig.BVH_MAX_DEPTH);
+        for(Triangle triangle : triangles) {
+            Vector3D min = triangle.getMin();
+            Vector3D max = triangle.getMax();
+            hash = mix(hash, Double.doubleToLongBits(min.x));
+            hash = mix(hash, Double.doubleToLongBits(min.y));
+            hash = mix(hash, Double.doubleToLongBits(min.z));
+            hash = mix(hash, Double.doubleToLongBits(max.x));
+            hash = mix(hash, Double.doubleToLongBits(max.y));
+            hash = mix(hash, Double.doubleToLongBits(max.z));
+        }
+        // Final avalanche so that similar meshes do not get similar file names
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static long mix(long hash, long value) {
+        return Long.rotateLeft(hash ^ value * 0x9E3779B97F4A7C15L, 31) * 0xBF58476D1CE4E5B9L;
+    }
+
+    private static long fileSize(int triangleCount, int nodeCount) {
+        return HEADER_SIZE + 4L * triangleCount + 8L * 6 * nodeCount + 4L * 2 * nodeCount + 8;
+    }
+
+    private void write(Path file, long key, SAHBuilder builder) throws IOException {
+        int[] primitives = builder.getPrimitives();
+        int nodeCount = builder.getNodeCount();
+        // Larger files could not be mapped in one piece
+        if(fileSize(primitives.length, nodeCount) > Integer.MAX_VALUE)
+            return;
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            CRC32C crc = new CRC32C();
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(Files.newOutputStream(temp), crc), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(key);
+                out.writeInt(primitives.length);
+                out.writeInt(nodeCount);
+                out.writeInt(builder.getDepth());
+                for(int primitive : primitives)
+                    out.writeInt(primitive);
+                double[] bounds = builder.getNodeBounds();
+                for(int i = 0; i < nodeCount * 6; i++)
+                    out.writeDouble(bounds[i]);
+                int[] offsets = builder.getNodeOffsets();
+                for(int i = 0; i < nodeCount; i++)
+                    out.writeInt(offsets[i]);
+                int[] counts = builder.getNodeCounts();
+                for(int i = 0; i < nodeCount; i++)
+                    out.writeInt(counts[i]);
+                out.flush();
+                // Not part of the checksum: the stream below the buffer has seen every byte written so far
+                out.writeLong(crc.getValue());
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Maps a cache file and restores the hierarchy it holds, reordering the triangles
+     * @throws IOException if the file is unreadable, corrupt or describes other data
+     */
+    private BVHTriangle read(Path file, long key, Triangle[] triangles, int width) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size < HEADER_SIZE + 8 || size > Integer.MAX_VALUE)
+                throw new IOException("Unexpected size " + size);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if(buffer.getInt(0) != MAGIC)
+                throw new IOException("Not a BVH cache file");
+            int version = buffer.getInt(4);
+            if(version != VERSION)
+                throw new IOException("Unsupported version " + version);
+            if(buffer.getLong(8) != key || buffer.getInt(16) != triangles.length)
+                throw new IOException("Built from other data");
+            int nodeCount = buffer.getInt(20);
+            int depth = buffer.getInt(24);
+            if(nodeCount < 1 || fileSize(triangles.length, nodeCount) != size)
+                throw new IOException("Unexpected size " + size + " for " + nodeCount + " nodes");
+            int end = (int) size - 8;
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.slice(0, end));
+            if(crc.getValue() != buffer.getLong(end))
+                throw new IOException("Checksum mismatch");
+
+            int position = HEADER_SIZE;
+            int[] primitives = new int[triangles.length];
+            buffer.slice(position, 4 * primitives.length).asIntBuffer().get(primitives);
+            position += 4 * primitives.length;
+            double[] nodeBounds = new double[nodeCount * 6];
+            buffer.slice(position, 8 * nodeBounds.length).asDoubleBuffer().get(nodeBounds);
+            position += 8 * nodeBounds.length;
+            int[] nodeOffsets = new int[nodeCount];
+            buffer.slice(position, 4 * nodeCount).asIntBuffer().get(nodeOffsets);
+            position += 4 * nodeCount;
+            int[] nodeCounts = new int[nodeCount];
+            buffer.slice(position, 4 * nodeCount).asIntBuffer().get(nodeCounts);
+
+            validate(primitives, nodeOffsets, nodeCounts, depth);
+            BVHTriangle.reorder(triangles, primitives);
+            return new BVHTriangle(triangles.length, nodeBounds, nodeOffsets, nodeCounts, depth, width);
+        }
+    }
+
+    /**
+     * Checks that the order is a permutation and that every node references valid children or triangles,
+     * so that a file passing the checksum by chance cannot make traversal fail
+     */
+    private static void validate(int[] primitives, int[] nodeOffsets, int[] nodeCounts, int depth) throws IOException {
+        boolean[] seen = new boolean[primitives.length];
+        for(int primitive : primitives) {
+            if(primitive < 0 || primitive >= seen.length || seen[primitive])
+                throw new IOException("Invalid triangle order");
+            seen[primitive] = true;
+        }
+        int nodeCount = nodeCounts.length;
+        // Children always follow their parent, so levels are known once the parent has been visited
+        int[] levels = new int[nodeCount];
+        int deepest = 0;
+        for(int node = 0; node < nodeCount; node++) {
+            int count = nodeCounts[node];
+            int offset = nodeOffsets[node];
+            if(count > 0) {
+                if(offset < 0 || (long) offset + count > primitives.length)
+                    throw new IOException("Leaf " + node + " is out of range");
+                deepest = Math.max(deepest, levels[node]);
+            } else if(count == 0 && node + 1 < nodeCount && offset > node + 1 && offset < nodeCount) {
+                levels[node + 1] = levels[node] + 1;
+                levels[offset] = levels[node] + 1;
+            } else {
+                throw new IOException("Node " + node + " has invalid children");
+            }
+        }
+        if(deepest != depth)
+            throw new IOException("Depth " + depth + " does not match the hierarchy");
+    }
+
+    /**
+     * @return the number of hierarchies read from the cache
+     */
+    public int getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of hierarchies built because they were not cached or their file was unusable
+     */
+    public int getBuildCount() {
+        return builds.get();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+}
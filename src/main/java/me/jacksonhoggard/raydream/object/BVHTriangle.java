@@ -1,186 +1,464 @@
 package me.jacksonhoggard.raydream.object;
 
+import me.jacksonhoggard.raydream.acceleration.BVHStatistics;
+import me.jacksonhoggard.raydream.acceleration.BinnedSAH;
+import me.jacksonhoggard.raydream.acceleration.SAHBuilder;
+import me.jacksonhoggard.raydream.acceleration.SAHCostModel;
+import me.jacksonhoggard.raydream.acceleration.SpatialSplitBuilder;
+import me.jacksonhoggard.raydream.acceleration.SplitMethod;
+import me.jacksonhoggard.raydream.acceleration.TraversalRay;
+import me.jacksonhoggard.raydream.acceleration.TraversalStatistics;
+import me.jacksonhoggard.raydream.acceleration.WideBVH;
+import me.jacksonhoggard.raydream.config.ApplicationConfig;
 import me.jacksonhoggard.raydream.math.Ray;
 import me.jacksonhoggard.raydream.math.Vector3D;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
+/**
+ * Bounding volume hierarchy over the triangles of a mesh. Building it reorders the triangle array so that
+ * every node covers a contiguous range of it. The SAH build runs in parallel on a fork-join pool.
+ * <p>
+ * Nodes are stored depth first in flat arrays: a node's first child directly follows it, interior nodes
+ * record the index of their second child and leaves record their range of triangles. Traversal uses a
+ * per-thread stack of node indices sized for the deepest hierarchy seen so far and allocates nothing.
+ * A hierarchy with spatial splits may reference a triangle from several leaves; it is built through
+ * {@link Mesh}, which keeps the longer triangle array it indexes.
+ * With a width of four or eight the hierarchy is also collapsed into a {@link WideBVH}, which is traversed
+ * instead. Nodes visited and triangles tested count toward the {@link TraversalStatistics} bound to the
+ * calling thread, if any.
+ */
 public class BVHTriangle {
 
-    private final Node root;
+    private static final ThreadLocal<int[]> STACK = ThreadLocal.withInitial(() -> new int[ApplicationConfig.BVH_MAX_DEPTH]);
+    private static final ThreadLocal<WideBVH.Stack> WIDE_STACK = WideBVH.createStacks();
+
+    private double[] nodeBounds; // Six values per node: minimum x, y, z then maximum x, y, z
+    private int[] nodeOffsets; // Second child of an interior node, first triangle of a leaf
+    private int[] nodeCounts; // Number of triangles in a leaf, zero for interior nodes
+    private int nodeCount;
+    private int depth; // Depth of the deepest leaf, which bounds the traversal stack
+    private final int triangleCount;
+    private WideBVH wide;
 
     public BVHTriangle(Triangle[] triangles) {
-        this.root = new Node();
-        root.firstObject = 0;
-        root.objectCount = triangles.length;
-        root.left = null;
-        root.right = null;
-        updateNodeBounds(root, triangles);
-        subdivide(root, triangles);
+        this(triangles, SplitMethod.SAH);
+    }
+
+    public BVHTriangle(Triangle[] triangles, SplitMethod splitMethod) {
+        this(triangles, splitMethod, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool pool the SAH build runs on; the longest axis build always runs on the calling thread
+     */
+    public BVHTriangle(Triangle[] triangles, SplitMethod splitMethod, ForkJoinPool pool) {
+        this(triangles, splitMethod, pool, ApplicationConfig.BVH_WIDTH);
+    }
+
+    /**
+     * @param pool pool the SAH build runs on; the longest axis build always runs on the calling thread
+     * @param width children per node: two for the binary hierarchy, four or eight for a wide one
+     * @throws IllegalArgumentException for {@link SplitMethod#SPATIAL}, which cannot reorder the triangles in place
+     */
+    public BVHTriangle(Triangle[] triangles, SplitMethod splitMethod, ForkJoinPool pool, int width) {
+        if(splitMethod == SplitMethod.SPATIAL)
+            throw new IllegalArgumentException("Spatial splits repeat triangles; build a Mesh with them instead");
+        this.triangleCount = triangles.length;
+        if(splitMethod == SplitMethod.SAH) {
+            buildSAH(triangles, pool);
+            widen(width);
+            return;
+        }
+        int maxNodes = Math.max(1, 2 * triangles.length - 1);
+        this.nodeBounds = new double[maxNodes * 6];
+        this.nodeOffsets = new int[maxNodes];
+        this.nodeCounts = new int[maxNodes];
+        if(triangles.length > 0)
+            subdivide(triangles, 0, triangles.length, 0);
+        this.nodeBounds = Arrays.copyOf(nodeBounds, nodeCount * 6);
+        this.nodeOffsets = Arrays.copyOf(nodeOffsets, nodeCount);
+        this.nodeCounts = Arrays.copyOf(nodeCounts, nodeCount);
+        widen(width);
+    }
+
+    /**
+     * Takes over a finished SAH build and reorders the triangles to match it
+     * @param builder result of {@link #buildSAH} over the same triangles
+     * @param width children per node: two for the binary hierarchy, four or eight for a wide one
+     */
+    BVHTriangle(Triangle[] triangles, SAHBuilder builder, int width) {
+        this.triangleCount = triangles.length;
+        adopt(triangles, builder);
+        widen(width);
+    }
+
+    /**
+     * Restores a hierarchy read back from a {@link BVHCache}; the triangles must already be in its order
+     * @param width children per node: two for the binary hierarchy, four or eight for a wide one
+     */
+    BVHTriangle(int triangleCount, double[] nodeBounds, int[] nodeOffsets, int[] nodeCounts, int depth, int width) {
+        this.triangleCount = triangleCount;
+        this.nodeBounds = nodeBounds;
+        this.nodeOffsets = nodeOffsets;
+        this.nodeCounts = nodeCounts;
+        this.nodeCount = nodeCounts.length;
+        this.depth = depth;
+        widen(width);
+    }
+
+    /**
+     * Takes over a finished spatial split build
+     * @param references triangles in the order the build references them, see {@link #references}
+     */
+    BVHTriangle(Triangle[] references, SpatialSplitBuilder builder, int width) {
+        this.triangleCount = references.length;
+        this.nodeBounds = builder.getNodeBounds();
+        this.nodeOffsets = builder.getNodeOffsets();
+        this.nodeCounts = builder.getNodeCounts();
+        this.nodeCount = builder.getNodeCount();
+        this.depth = builder.getDepth();
+        widen(width);
+    }
+
+    private void widen(int width) {
+        if(width != 2 && nodeCount > 0)
+            this.wide = new WideBVH(nodeBounds, nodeOffsets, nodeCounts, nodeCount, width);
+    }
+
+    private void buildSAH(Triangle[] triangles, ForkJoinPool pool) {
+        adopt(triangles, buildSAH(triangles, pool, SAHCostModel.TRIANGLES));
+    }
+
+    /**
+     * Builds an SAH hierarchy over the triangles without reordering them
+     */
+    static SAHBuilder buildSAH(Triangle[] triangles, ForkJoinPool pool, SAHCostModel model) {
+        double[] bounds = new double[triangles.length * 6];
+        double[] centroids = new double[triangles.length * 3];
+        for(int i = 0; i < triangles.length; i++) {
+            Vector3D min = triangles[i].getMin();
+            Vector3D max = triangles[i].getMax();
+            Vector3D centroid = triangles[i].getCentroid();
+            bounds[i * 6] = min.x;
+            bounds[i * 6 + 1] = min.y;
+            bounds[i * 6 + 2] = min.z;
+            bounds[i * 6 + 3] = max.x;
+            bounds[i * 6 + 4] = max.y;
+            bounds[i * 6 + 5] = max.z;
+            centroids[i * 3] = centroid.x;
+            centroids[i * 3 + 1] = centroid.y;
+            centroids[i * 3 + 2] = centroid.z;
+        }
+        return new SAHBuilder(bounds, centroids, model).build(pool);
+    }
+
+    /**
+     * Builds a hierarchy with spatial splits over the triangles without reordering them
+     * @param maxGrowth largest number of references added by splits, as a fraction of the triangle count
+     */
+    static SpatialSplitBuilder buildSpatial(Triangle[] triangles, SAHCostModel model, double maxGrowth) {
+        double[] vertices = new double[triangles.length * 9];
+        for(int i = 0; i < triangles.length; i++) {
+            for(int v = 0; v < 3; v++) {
+                Vector3D vertex = triangles[i].getVertex(v);
+                vertices[i * 9 + v * 3] = vertex.x;
+                vertices[i * 9 + v * 3 + 1] = vertex.y;
+                vertices[i * 9 + v * 3 + 2] = vertex.z;
+            }
+        }
+        return new SpatialSplitBuilder(vertices, model, maxGrowth).build();
+    }
+
+    /**
+     * Lays out the triangles in the order a spatial split build references them, repeating split ones
+     * @param primitives original index of the triangle at each position
+     */
+    static Triangle[] references(Triangle[] triangles, int[] primitives) {
+        Triangle[] references = new Triangle[primitives.length];
+        for(int i = 0; i < primitives.length; i++)
+            references[i] = triangles[primitives[i]];
+        return references;
+    }
+
+    private void adopt(Triangle[] triangles, SAHBuilder builder) {
+        this.nodeBounds = builder.getNodeBounds();
+        this.nodeOffsets = builder.getNodeOffsets();
+        this.nodeCounts = builder.getNodeCounts();
+        this.nodeCount = builder.getNodeCount();
+        this.depth = builder.getDepth();
+        reorder(triangles, builder.getPrimitives());
+    }
+
+    /**
+     * Applies the order chosen by a build so each node covers a contiguous range of triangles
+     * @param primitives original index of the triangle at each position
+     */
+    static void reorder(Triangle[] triangles, int[] primitives) {
+        Triangle[] original = triangles.clone();
+        for(int i = 0; i < triangles.length; i++)
+            triangles[i] = original[primitives[i]];
+    }
+
+    /**
+     * Estimates the cost of tracing a ray through the hierarchy under the surface area heuristic.
+     * Lower is better; useful for comparing split methods on the same mesh.
+     * @param model costs of visiting a node and testing a triangle
+     * @return expected cost per ray hitting the mesh bounds
+     */
+    public double getSAHCost(SAHCostModel model) {
+        if(nodeCount == 0)
+            return 0;
+        double rootArea = surfaceArea(0);
+        if(rootArea <= 0)
+            return model.intersectionCost() * triangleCount;
+        double cost = 0;
+        for(int node = 0; node < nodeCount; node++) {
+            int count = nodeCounts[node];
+            cost += surfaceArea(node) * (count == 0 ? model.traversalCost() : model.intersectionCost() * count);
+        }
+        return cost / rootArea;
+    }
+
+    /**
+     * @return node count, leaf sizes, depth, SAH cost and memory footprint of the hierarchy
+     */
+    public BVHStatistics getStatistics() {
+        long memory = nodeBounds.length * 8L + (nodeOffsets.length + nodeCounts.length) * 4L;
+        if(wide != null)
+            memory += wide.getMemoryFootprint();
+        return BVHStatistics.of(nodeOffsets, nodeCounts, nodeCount, getSAHCost(SAHCostModel.TRIANGLES), memory);
+    }
+
+    private double surfaceArea(int node) {
+        return BinnedSAH.surfaceArea(Arrays.copyOfRange(nodeBounds, node * 6, node * 6 + 6));
     }
 
     public double intersect(Ray ray, Triangle[] triangles, Triangle triangleHit) {
-        List<Node> stack = new ArrayList<>();
-        Node currentNode = root;
         double t = Double.MAX_VALUE;
+        if(nodeCount == 0)
+            return t;
+        TraversalStatistics.Counters counters = TraversalStatistics.counters(TraversalStatistics.RayType.CLOSEST_HIT);
+        TraversalRay traversal = new TraversalRay(ray);
+        if(wide != null)
+            return intersectWide(traversal, triangles, triangleHit, counters);
+        Vector3D origin = ray.origin();
+        Vector3D direction = ray.direction();
+        int[] stack = stack();
+        int stackSize = 0;
+        int node = 0;
         while(true) {
-            if(currentNode.isLeaf()) {
-                for(int i = currentNode.firstObject; i < currentNode.firstObject + currentNode.objectCount; i++) {
-                    double temp = triangles[i].intersect(ray);
+            if(counters != null)
+                counters.addNode();
+            int count = nodeCounts[node];
+            if(count > 0) {
+                if(counters != null)
+                    counters.addPrimitives(count);
+                for(int i = nodeOffsets[node]; i < nodeOffsets[node] + count; i++) {
+                    double temp = triangles[i].intersect(origin.x, origin.y, origin.z, direction.x, direction.y, direction.z);
                     if(temp > 0 && temp < t) {
                         t = temp;
                         triangleHit.set(triangles[i]);
                     }
                 }
-                if(stack.isEmpty())
+                if(stackSize == 0)
                     break;
-                else currentNode = stack.removeLast();
+                node = stack[--stackSize];
                 continue;
             }
-            Node left = currentNode.left;
-            Node right = currentNode.right;
-            double distL = intersectAABB(ray, left.min, left.max, t);
-            double distR = intersectAABB(ray, right.min, right.max, t);
+            int left = node + 1;
+            int right = nodeOffsets[node];
+            double distL = traversal.entry(nodeBounds, left * 6, 0, t);
+            double distR = traversal.entry(nodeBounds, right * 6, 0, t);
             if(distL > distR) {
                 double temp = distL;
                 distL = distR;
                 distR = temp;
-                Node tempNode = new Node();
-                tempNode.set(left);
                 left = right;
-                right = tempNode;
+                right = node + 1;
             }
-            if(distL == Double.MAX_VALUE) {
-                if (stack.isEmpty())
+            if(distL == TraversalRay.MISS) {
+                if(stackSize == 0)
                     break;
-                currentNode = stack.removeLast();
+                node = stack[--stackSize];
             } else {
-                currentNode = left;
-                if(distR != Double.MAX_VALUE) stack.add(right);
+                node = left;
+                if(distR != TraversalRay.MISS) stack[stackSize++] = right;
             }
         }
         return t;
     }
 
     public boolean intersectShadowRay(Ray ray, Triangle[] triangles, double lightDistance) {
-        List<Node> stack = new ArrayList<>();
-        Node currentNode = root;
+        Vector3D origin = ray.origin();
+        Vector3D direction = ray.direction();
+        return intersectShadowRay(origin.x, origin.y, origin.z, direction.x, direction.y, direction.z, triangles, lightDistance);
+    }
+
+    /**
+     * Looks for any triangle blocking a ray before a distance, stopping at the first one found. Allocates nothing.
+     */
+    public boolean intersectShadowRay(double originX, double originY, double originZ, double directionX, double directionY, double directionZ,
+                                      Triangle[] triangles, double lightDistance) {
+        if(nodeCount == 0)
+            return false;
+        TraversalStatistics.Counters counters = TraversalStatistics.counters(TraversalStatistics.RayType.SHADOW);
+        TraversalRay traversal = new TraversalRay(originX, originY, originZ, directionX, directionY, directionZ);
+        if(wide != null)
+            return intersectShadowRayWide(traversal, triangles, lightDistance, counters);
+        int[] stack = stack();
+        int stackSize = 0;
+        int node = 0;
         double t = lightDistance;
         while(true) {
-            if(currentNode.isLeaf()) {
-                for(int i = currentNode.firstObject; i < currentNode.firstObject + currentNode.objectCount; i++) {
-                    double temp = triangles[i].intersect(ray);
+            if(counters != null)
+                counters.addNode();
+            int count = nodeCounts[node];
+            if(count > 0) {
+                for(int i = nodeOffsets[node]; i < nodeOffsets[node] + count; i++) {
+                    if(counters != null)
+                        counters.addPrimitives(1);
+                    double temp = triangles[i].intersect(originX, originY, originZ, directionX, directionY, directionZ);
                     if(temp > 0 && temp < t) {
                         return true; // Early out
                     }
                 }
-                if(stack.isEmpty())
+                if(stackSize == 0)
                     break;
-                else currentNode = stack.removeLast();
+                node = stack[--stackSize];
                 continue;
             }
-            Node left = currentNode.left;
-            Node right = currentNode.right;
-            double distL = intersectAABB(ray, left.min, left.max, t);
-            double distR = intersectAABB(ray, right.min, right.max, t);
+            int left = node + 1;
+            int right = nodeOffsets[node];
+            double distL = traversal.entry(nodeBounds, left * 6, 0, t);
+            double distR = traversal.entry(nodeBounds, right * 6, 0, t);
             if(distL > distR) {
                 double temp = distL;
                 distL = distR;
                 distR = temp;
-                Node tempNode = new Node();
-                tempNode.set(left);
                 left = right;
-                right = tempNode;
+                right = node + 1;
             }
-            if(distL == Double.MAX_VALUE) {
-                if (stack.isEmpty())
+            if(distL == TraversalRay.MISS) {
+                if(stackSize == 0)
                     break;
-                currentNode = stack.removeLast();
+                node = stack[--stackSize];
             } else {
-                currentNode = left;
-                if(distR != Double.MAX_VALUE) stack.add(right);
+                node = left;
+                if(distR != TraversalRay.MISS) stack[stackSize++] = right;
             }
         }
         return false;
     }
 
-    private double intersectAABB(Ray ray, Vector3D min, Vector3D max, double t) {
-        double tMin, tMax, tYMin, tYMax, tZMin, tZMax;
-        if(ray.direction().x >= 0) {
-            tMin = (min.x - ray.origin().x) / ray.direction().x;
-            tMax = (max.x - ray.origin().x) / ray.direction().x;
-        } else {
-            tMin = (max.x - ray.origin().x) / ray.direction().x;
-            tMax = (min.x - ray.origin().x) / ray.direction().x;
-        }
-        if(ray.direction().y >= 0) {
-            tYMin = (min.y - ray.origin().y) / ray.direction().y;
-            tYMax = (max.y - ray.origin().y) / ray.direction().y;
-        } else {
-            tYMin = (max.y - ray.origin().y) / ray.direction().y;
-            tYMax = (min.y - ray.origin().y) / ray.direction().y;
-        }
-        if((tMin > tYMax) || (tYMin > tMax))
-            return Double.MAX_VALUE;
-
-        if (tYMin > tMin)
-            tMin = tYMin;
-        if (tYMax < tMax)
-            tMax = tYMax;
-
-        if(ray.direction().z >= 0) {
-            tZMin = (min.z - ray.origin().z) / ray.direction().z;
-            tZMax = (max.z - ray.origin().z) / ray.direction().z;
-        } else {
-            tZMin = (max.z - ray.origin().z) / ray.direction().z;
-            tZMax = (min.z - ray.origin().z) / ray.direction().z;
+    private double intersectWide(TraversalRay ray, Triangle[] triangles, Triangle triangleHit, TraversalStatistics.Counters counters) {
+        WideBVH.Stack stack = wide.stack(WIDE_STACK);
+        int stackSize = wide.visit(0, stack, 0, ray, 0, Double.MAX_VALUE);
+        if(counters != null)
+            counters.addNode();
+        double t = Double.MAX_VALUE;
+        while(stackSize > 0) {
+            stackSize--;
+            if(stack.distance(stackSize) > t)
+                continue;
+            int slot = stack.slot(stackSize);
+            int count = wide.getCount(slot);
+            if(count == 0) {
+                stackSize = wide.visit(wide.getOffset(slot), stack, stackSize, ray, 0, t);
+                if(counters != null)
+                    counters.addNode();
+                continue;
+            }
+            if(counters != null)
+                counters.addPrimitives(count);
+            for(int i = wide.getOffset(slot), end = i + count; i < end; i++) {
+                double temp = triangles[i].intersect(ray.originX(), ray.originY(), ray.originZ(), ray.directionX(), ray.directionY(), ray.directionZ());
+                if(temp > 0 && temp < t) {
+                    t = temp;
+                    triangleHit.set(triangles[i]);
+                }
+            }
         }
+        return t;
+    }
 
-        if((tMin > tZMax) || (tZMin > tMax))
-            return Double.MAX_VALUE;
-
-        if(tZMin > tMin)
-            tMin = tZMin;
-        if(tZMax < tMax)
-            tMax = tZMax;
-
-        if(tMin < 0 && tMax >= 0)
-            return tMax;
-
-        if(tMin >= 0 && tMin < t)
-            return tMin;
-
-        return Double.MAX_VALUE;
+    private boolean intersectShadowRayWide(TraversalRay ray, Triangle[] triangles, double lightDistance, TraversalStatistics.Counters counters) {
+        WideBVH.Stack stack = wide.stack(WIDE_STACK);
+        int stackSize = wide.visit(0, stack, 0, ray, 0, lightDistance);
+        if(counters != null)
+            counters.addNode();
+        while(stackSize > 0) {
+            int slot = stack.slot(--stackSize);
+            int count = wide.getCount(slot);
+            if(count == 0) {
+                stackSize = wide.visit(wide.getOffset(slot), stack, stackSize, ray, 0, lightDistance);
+                if(counters != null)
+                    counters.addNode();
+                continue;
+            }
+            for(int i = wide.getOffset(slot), end = i + count; i < end; i++) {
+                if(counters != null)
+                    counters.addPrimitives(1);
+                double temp = triangles[i].intersect(ray.originX(), ray.originY(), ray.originZ(), ray.directionX(), ray.directionY(), ray.directionZ());
+                if(temp > 0 && temp < lightDistance)
+                    return true;
+            }
+        }
+        return false;
     }
 
-    private void updateNodeBounds(Node node, Triangle[] triangles) {
-        node.min = new Vector3D(Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE);
-        node.max = new Vector3D(-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE);
-        for(int first = node.firstObject, i = 0; i < node.objectCount; i++) {
-            node.min.x = Math.min(triangles[first + i].getMin().x, node.min.x);
-            node.min.y = Math.min(triangles[first + i].getMin().y, node.min.y);
-            node.min.z = Math.min(triangles[first + i].getMin().z, node.min.z);
-            node.max.x = Math.max(triangles[first + i].getMax().x, node.max.x);
-            node.max.y = Math.max(triangles[first + i].getMax().y, node.max.y);
-            node.max.z = Math.max(triangles[first + i].getMax().z, node.max.z);
+    private int[] stack() {
+        int[] stack = STACK.get();
+        if(stack.length < depth) {
+            stack = new int[depth];
+            STACK.set(stack);
         }
+        return stack;
     }
 
-    private void subdivide(Node node, Triangle[] triangles) {
-        Vector3D extent = Vector3D.sub(node.max, node.min);
-        double splitPos = node.min.z + extent.z * 0.5D;
+    /**
+     * Appends the node covering a range of triangles and splits it at the middle of its longest axis
+     * @return index of the new node
+     */
+    private int subdivide(Triangle[] triangles, int first, int count, int depth) {
+        int node = nodeCount++;
+        int b = node * 6;
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, minZ = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE, maxZ = -Double.MAX_VALUE;
+        for(int i = first; i < first + count; i++) {
+            minX = Math.min(triangles[i].getMin().x, minX);
+            minY = Math.min(triangles[i].getMin().y, minY);
+            minZ = Math.min(triangles[i].getMin().z, minZ);
+            maxX = Math.max(triangles[i].getMax().x, maxX);
+            maxY = Math.max(triangles[i].getMax().y, maxY);
+            maxZ = Math.max(triangles[i].getMax().z, maxZ);
+        }
+        nodeBounds[b] = minX;
+        nodeBounds[b + 1] = minY;
+        nodeBounds[b + 2] = minZ;
+        nodeBounds[b + 3] = maxX;
+        nodeBounds[b + 4] = maxY;
+        nodeBounds[b + 5] = maxZ;
+        nodeOffsets[node] = first;
+        nodeCounts[node] = count;
+        this.depth = Math.max(this.depth, depth);
+
+        double extentX = maxX - minX;
+        double extentY = maxY - minY;
+        double extentZ = maxZ - minZ;
+        double splitPos = minZ + extentZ * 0.5D;
         int axis = 2;
-        if(extent.x > extent.y && extent.x > extent.z) {
-            splitPos = node.min.x + extent.x * 0.5D;
+        if(extentX > extentY && extentX > extentZ) {
+            splitPos = minX + extentX * 0.5D;
             axis = 0;
         }
-        if(extent.y > extent.x && extent.y > extent.z) {
-            splitPos = node.min.y + extent.y * 0.5D;
+        if(extentY > extentX && extentY > extentZ) {
+            splitPos = minY + extentY * 0.5D;
             axis = 1;
         }
-        int i = node.firstObject;
-        int j = i + node.objectCount - 1;
+        int i = first;
+        int j = i + count - 1;
         while(i <= j) {
             double centroidAxis = switch (axis) {
                 case 0 -> triangles[i].getCentroid().x;
@@ -198,42 +476,13 @@ public class BVHTriangle {
             }
         }
 
-        int leftCount = i - node.firstObject;
-        if(leftCount == 0 || leftCount == node.objectCount)
-            return;
-        node.left = new Node();
-        node.left.firstObject = node.firstObject;
-        node.left.objectCount = leftCount;
-        node.right = new Node();
-        node.right.firstObject = i;
-        node.right.objectCount = node.objectCount - leftCount;
-        node.objectCount = 0;
-        updateNodeBounds(node.left, triangles);
-        updateNodeBounds(node.right, triangles);
-        subdivide(node.left, triangles);
-        subdivide(node.right, triangles);
-    }
-
-    private class Node {
-        private Node left;
-        private Node right;
-        private int firstObject;
-        private int objectCount;
-        private Vector3D min;
-        private Vector3D max;
-
-        public void set(Node node) {
-            this.left = node.left;
-            this.right = node.right;
-            this.firstObject = node.firstObject;
-            this.objectCount = node.objectCount;
-            this.min = node.min;
-            this.max = node.max;
-        }
-
-        private boolean isLeaf() {
-            return left == null && right == null;
-        }
+        int leftCount = i - first;
+        if(leftCount == 0 || leftCount == count)
+            return node;
+        nodeCounts[node] = 0;
+        subdivide(triangles, first, leftCount, depth + 1);
+        nodeOffsets[node] = subdivide(triangles, i, count - leftCount, depth + 1);
+        return node;
     }
 
 }
@@ -22,39 +22,55 @@ public class Box extends Object {
 
     @Override
     public Hit intersect(Ray ray) {
+        double t = distance(ray.origin().x, ray.origin().y, ray.origin().z, ray.direction().x, ray.direction().y, ray.direction().z);
+        if(t < 0)
+            return new Hit(null, null, null, null, null, -1.0D);
+        return new Hit(this, null, ray.at(t), normalAt(ray.at(t)), mapTexture(ray.at(t)), t);
+    }
+
+    @Override
+    protected boolean occludesInObjectSpace(double originX, double originY, double originZ, double directionX, double directionY, double directionZ, double tMin, double tMax) {
+        double t = distance(originX, originY, originZ, directionX, directionY, directionZ);
+        return t > tMin && t < tMax;
+    }
+
+    /**
+     * @return distance to where the ray enters the box, or leaves it if it starts inside, or -1 if it misses
+     */
+    private double distance(double originX, double originY, double originZ, double directionX, double directionY, double directionZ) {
         double tMin, tMax, tYMin, tYMax, tZMin, tZMax;
-        if(ray.direction().x >= 0) {
-            tMin = (min.x - ray.origin().x) / ray.direction().x;
-            tMax = (max.x - ray.origin().x) / ray.direction().x;
+        if(directionX >= 0) {
+            tMin = (min.x - originX) / directionX;
+            tMax = (max.x - originX) / directionX;
         } else {
-            tMin = (max.x - ray.origin().x) / ray.direction().x;
-            tMax = (min.x - ray.origin().x) / ray.direction().x;
+            tMin = (max.x - originX) / directionX;
+            tMax = (min.x - originX) / directionX;
         }
-        if(ray.direction().y >= 0) {
-            tYMin = (min.y - ray.origin().y) / ray.direction().y;
-            tYMax = (max.y - ray.origin().y) / ray.direction().y;
+        if(directionY >= 0) {
+            tYMin = (min.y - originY) / directionY;
+            tYMax = (max.y - originY) / directionY;
         } else {
-            tYMin = (max.y - ray.origin().y) / ray.direction().y;
-            tYMax = (min.y - ray.origin().y) / ray.direction().y;
+            tYMin = (max.y - originY) / directionY;
+            tYMax = (min.y - originY) / directionY;
         }
         if((tMin > tYMax) || (tYMin > tMax))
-            return new Hit(null, null, null, null, null, -1.0D);
+            return -1.0D;
 
         if (tYMin > tMin)
             tMin = tYMin;
         if (tYMax < tMax)
             tMax = tYMax;
 
-        if(ray.direction().z >= 0) {
-            tZMin = (min.z - ray.origin().z) / ray.direction().z;
-            tZMax = (max.z - ray.origin().z) / ray.direction().z;
+        if(directionZ >= 0) {
+            tZMin = (min.z - originZ) / directionZ;
+            tZMax = (max.z - originZ) / directionZ;
         } else {
-            tZMin = (max.z - ray.origin().z) / ray.direction().z;
-            tZMax = (min.z - ray.origin().z) / ray.direction().z;
+            tZMin = (max.z - originZ) / directionZ;
+            tZMax = (min.z - originZ) / directionZ;
         }
 
         if((tMin > tZMax) || (tZMin > tMax))
-            return new Hit(null, null, null, null, null, -1.0D);
+            return -1.0D;
 
         if(tZMin > tMin)
             tMin = tZMin;
@@ -62,12 +78,12 @@ public class Box extends Object {
             tMax = tZMax;
 
         if(tMin < 0 && tMax >= 0)
-            return new Hit(this, null, ray.at(tMax), normalAt(ray.at(tMax)), mapTexture(ray.at(tMax)), tMax);
+            return tMax;
 
         if(tMin >= 0)
-            return new Hit(this, null, ray.at(tMin), normalAt(ray.at(tMin)), mapTexture(ray.at(tMin)), tMin);
+            return tMin;
 
-        return new Hit(null, null, null, null, null, -1.0D);
+        return -1.0D;
     }
 
     public Vector3D normalAt(Vector3D point) {
@@ -1,7 +1,130 @@
 package me.jacksonhoggard.raydream.object;
 
+import me.jacksonhoggard.raydream.acceleration.SAHCostModel;
+import me.jacksonhoggard.raydream.acceleration.SpatialSplitBuilder;
+import me.jacksonhoggard.raydream.acceleration.SplitMethod;
+import me.jacksonhoggard.raydream.config.ApplicationConfig;
 import me.jacksonhoggard.raydream.math.Vector3D;
 
-public record Mesh(String path, Triangle[] triangles, Vector3D min, Vector3D max) {
+import java.util.concurrent.ForkJoinPool;
 
+/**
+ * Triangles of a mesh in object space together with their bounding volume hierarchy.
+ * A mesh is immutable once built, so any number of {@link Model} instances with their own transform and
+ * material can share one mesh and trace through the same hierarchy.
+ * <p>
+ * A lazy mesh only knows its bounds until the hierarchy is first needed, usually by the first ray to enter
+ * one of its models, and is built then. The first thread to get there builds it while any others wait, so
+ * it is built exactly once; meshes no ray reaches are never built.
+ */
+public final class Mesh {
+
+    private final String path;
+    private final Vector3D min;
+    private final Vector3D max;
+    private final SplitMethod splitMethod;
+    private final int width;
+    private Triangle[] source; // Triangles as loaded, dropped once the hierarchy is built
+    private volatile Hierarchy hierarchy;
+
+    private record Hierarchy(Triangle[] triangles, BVHTriangle bvh) {
+    }
+
+    /**
+     * Builds the hierarchy over the triangles, or reads it from the {@link BVHCache}, reordering them
+     */
+    public Mesh(String path, Triangle[] triangles, Vector3D min, Vector3D max) {
+        this(path, triangles, min, max, SplitMethod.SAH);
+    }
+
+    /**
+     * Builds the hierarchy over the triangles with a split method. SAH hierarchies go through the
+     * {@link BVHCache}; hierarchies with spatial splits are always built, and {@link #triangles()} then
+     * returns a new array in which split triangles appear once per leaf referencing them.
+     */
+    public Mesh(String path, Triangle[] triangles, Vector3D min, Vector3D max, SplitMethod splitMethod) {
+        this(path, triangles, min, max, splitMethod, ApplicationConfig.BVH_WIDTH, false);
+    }
+
+    /**
+     * @param width children per node: two for the binary hierarchy, four or eight for a wide one
+     * @param lazy whether to defer building the hierarchy until it is first needed
+     */
+    public Mesh(String path, Triangle[] triangles, Vector3D min, Vector3D max, SplitMethod splitMethod, int width, boolean lazy) {
+        this.path = path;
+        this.min = min;
+        this.max = max;
+        this.splitMethod = splitMethod;
+        this.width = width;
+        this.source = triangles;
+        if(!lazy)
+            build();
+    }
+
+    /**
+     * Builds the hierarchy unless it has been built already
+     */
+    public void build() {
+        hierarchy();
+    }
+
+    /**
+     * @return whether the hierarchy has been built
+     */
+    public boolean isBuilt() {
+        return hierarchy != null;
+    }
+
+    private Hierarchy hierarchy() {
+        Hierarchy built = hierarchy;
+        if(built == null) {
+            synchronized(this) {
+                built = hierarchy;
+                if(built == null) {
+                    built = build(source, splitMethod, width);
+                    hierarchy = built;
+                    source = null;
+                }
+            }
+        }
+        return built;
+    }
+
+    private static Hierarchy build(Triangle[] triangles, SplitMethod splitMethod, int width) {
+        return switch (splitMethod) {
+            case SAH -> new Hierarchy(triangles, BVHCache.getDefault().load(triangles, width));
+            case SPATIAL -> {
+                SpatialSplitBuilder builder = BVHTriangle.buildSpatial(triangles, SAHCostModel.TRIANGLES, ApplicationConfig.BVH_SPATIAL_SPLIT_MAX_GROWTH);
+                Triangle[] references = BVHTriangle.references(triangles, builder.getPrimitives());
+                yield new Hierarchy(references, new BVHTriangle(references, builder, width));
+            }
+            default -> new Hierarchy(triangles, new BVHTriangle(triangles, splitMethod, ForkJoinPool.commonPool(), width));
+        };
+    }
+
+    public String path() {
+        return path;
+    }
+
+    /**
+     * @return triangles in the order of the hierarchy, building it if needed
+     */
+    public Triangle[] triangles() {
+        return hierarchy().triangles();
+    }
+
+    public Vector3D min() {
+        return min;
+    }
+
+    public Vector3D max() {
+        return max;
+    }
+
+    /**
+     * @return the hierarchy, building it if needed
+     */
+    public BVHTriangle bvh() {
+        return hierarchy().bvh();
+    }
 }
@@ -0,0 +1,102 @@
+package me.jacksonhoggard.raydream.object;
+
+import me.jacksonhoggard.raydream.acceleration.SplitMethod;
+import me.jacksonhoggard.raydream.config.ApplicationConfig;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Shares meshes between instances placed in the same scene. Meshes are keyed by their interleaved vertex
+ * data, so every placement of the same geometry, even when loaded from the file again, gets the same
+ * {@link Mesh} and its hierarchy is built only once. A cache kept between renders also shares meshes with
+ * the scenes rendered before, as long as {@link #evictUnused()} is called after each scene is built.
+ */
+public class MeshCache {
+
+    private final Map<Key, Mesh> meshes = new HashMap<>();
+    private final Set<Key> used = new HashSet<>();
+    private int requests;
+
+    /**
+     * @param vertices interleaved vertex data the mesh is built from
+     * @param builder builds the mesh if no equal vertex data has been seen
+     * @return the shared mesh
+     */
+    public Mesh get(float[] vertices, Supplier<Mesh> builder) {
+        return get(vertices, SplitMethod.SAH, builder);
+    }
+
+    public Mesh get(float[] vertices, SplitMethod splitMethod, Supplier<Mesh> builder) {
+        return get(vertices, splitMethod, ApplicationConfig.BVH_WIDTH, builder);
+    }
+
+    /**
+     * @param vertices interleaved vertex data the mesh is built from
+     * @param splitMethod split method the builder builds the hierarchy with; meshes of equal vertex data
+     *                    built with different methods are kept apart
+     * @param width children per node of the hierarchy the builder builds, kept apart in the same way
+     * @param builder builds the mesh if it has not been seen
+     * @return the shared mesh
+     */
+    public synchronized Mesh get(float[] vertices, SplitMethod splitMethod, int width, Supplier<Mesh> builder) {
+        requests++;
+        Key key = new Key(vertices, splitMethod, width);
+        used.add(key);
+        return meshes.computeIfAbsent(key, _ -> builder.get());
+    }
+
+    /**
+     * Drops the meshes that were not handed out since the previous call
+     * @return the number of meshes dropped
+     */
+    public synchronized int evictUnused() {
+        int before = meshes.size();
+        meshes.keySet().retainAll(used);
+        used.clear();
+        return before - meshes.size();
+    }
+
+    /**
+     * @return the number of distinct meshes built
+     */
+    public synchronized int getMeshCount() {
+        return meshes.size();
+    }
+
+    /**
+     * @return the number of meshes handed out, counting each shared mesh once per request
+     */
+    public synchronized int getInstanceCount() {
+        return requests;
+    }
+
+    private static final class Key {
+        private final float[] vertices;
+        private final SplitMethod splitMethod;
+        private final int width;
+        private final int hash;
+
+        private Key(float[] vertices, SplitMethod splitMethod, int width) {
+            this.vertices = vertices;
+            this.splitMethod = splitMethod;
+            this.width = width;
+            this.hash = (Arrays.hashCode(vertices) * 31 + splitMethod.hashCode()) * 31 + width;
+        }
+
+        @Override
+        public boolean equals(java.lang.Object other) {
+            return other instanceof Key key && hash == key.hash && splitMethod == key.splitMethod && width == key.width
+                    && Arrays.equals(vertices, key.vertices);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -8,18 +8,19 @@ import me.jacksonhoggard.raydream.math.Vector3D;
 public class Model extends Object {
 
     private final Mesh mesh;
-    private final BVHTriangle bvh;
 
+    /**
+     * Places an instance of a mesh. The mesh and its hierarchy may be shared with other models.
+     */
     public Model(Transform transform, Material material, Mesh mesh) {
         super(transform, material, mesh.min(), mesh.max());
         this.mesh = mesh;
-        bvh = new BVHTriangle(this.mesh.triangles());
     }
 
     @Override
     public Hit intersect(Ray ray) {
         Triangle triangle = new Triangle(new Vector3D(), new Vector3D(), new Vector3D(), new Vector2D(), new Vector2D(), new Vector2D());
-        double t = bvh.intersect(ray, mesh.triangles(), triangle);
+        double t = mesh.bvh().intersect(ray, mesh.triangles(), triangle);
         if(t < Double.MAX_VALUE) {
             Vector3D barycentric = new Vector3D();
             triangle.calcBarycentric(ray.at(t), barycentric);
@@ -29,7 +30,13 @@ public class Model extends Object {
     }
 
     public boolean intersectShadowRay(Ray ray, double lightDistance) {
-        return bvh.intersectShadowRay(ray, mesh.triangles(), lightDistance);
+        return mesh.bvh().intersectShadowRay(ray, mesh.triangles(), lightDistance);
+    }
+
+    @Override
+    protected boolean occludesInObjectSpace(double originX, double originY, double originZ, double directionX, double directionY, double directionZ, double tMin, double tMax) {
+        // As with intersectShadowRay, only the triangle tolerance rejects hits right at the origin
+        return mesh.bvh().intersectShadowRay(originX, originY, originZ, directionX, directionY, directionZ, mesh.triangles(), tMax);
     }
 
     private Vector2D mapTexture(Triangle triangle, Vector3D barycentric) {
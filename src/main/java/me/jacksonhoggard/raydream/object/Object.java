@@ -3,6 +3,7 @@ package me.jacksonhoggard.raydream.object;
 import me.jacksonhoggard.raydream.acceleration.ImprovedBVH;
 import me.jacksonhoggard.raydream.material.Material;
 import me.jacksonhoggard.raydream.math.Matrix4D;
+import me.jacksonhoggard.raydream.math.Ray;
 import me.jacksonhoggard.raydream.math.Vector3D;
 import me.jacksonhoggard.raydream.math.Vector4D;
 
@@ -209,4 +210,36 @@ public abstract class Object implements IObject {
     public ImprovedBVH.BoundingBox getBounds() {
         return new ImprovedBVH.BoundingBox(min, max);
     }
+
+    /**
+     * @return false for objects such as planes that extend without limit, whose bounds are only nominal;
+     *         {@link ImprovedBVH} tests them on their own instead of placing them in its tree
+     */
+    public boolean isBounded() {
+        return true;
+    }
+
+    /**
+     * Any-hit test for shadow rays: whether the object blocks a world space ray between two distances.
+     * The ray is moved to object space without allocating and no hit attributes are computed.
+     */
+    public final boolean occludes(double originX, double originY, double originZ, double directionX, double directionY, double directionZ, double tMin, double tMax) {
+        double[] m = inverseTransformMatrix.getMatrixArray();
+        return occludesInObjectSpace(
+                originX * m[0] + originY * m[1] + originZ * m[2] + m[3],
+                originX * m[4] + originY * m[5] + originZ * m[6] + m[7],
+                originX * m[8] + originY * m[9] + originZ * m[10] + m[11],
+                directionX * m[0] + directionY * m[1] + directionZ * m[2],
+                directionX * m[4] + directionY * m[5] + directionZ * m[6],
+                directionX * m[8] + directionY * m[9] + directionZ * m[10],
+                tMin, tMax);
+    }
+
+    /**
+     * Object space part of {@link #occludes}. Computes the full hit unless a subclass knows a cheaper test.
+     */
+    protected boolean occludesInObjectSpace(double originX, double originY, double originZ, double directionX, double directionY, double directionZ, double tMin, double tMax) {
+        Hit hit = intersect(new Ray(new Vector3D(originX, originY, originZ), new Vector3D(directionX, directionY, directionZ)));
+        return hit != null && hit.t() > tMin && hit.t() < tMax;
+    }
 }
@@ -22,6 +22,11 @@ public class Plane extends Object {
         this.normal = new Vector3D(0, 1, 0);
     }
 
+    @Override
+    public boolean isBounded() {
+        return false;
+    }
+
     @Override
     public Hit intersect(Ray ray) {
         double t = (-ray.origin().dot(normal)) / ray.direction().dot(normal);
@@ -30,6 +35,12 @@ public class Plane extends Object {
         );
     }
 
+    @Override
+    protected boolean occludesInObjectSpace(double originX, double originY, double originZ, double directionX, double directionY, double directionZ, double tMin, double tMax) {
+        double t = -(originX * normal.x + originY * normal.y + originZ * normal.z) / (directionX * normal.x + directionY * normal.y + directionZ * normal.z);
+        return t > tMin && t < tMax;
+    }
+
     @Override
     public Vector2D mapTexture(Vector3D point) {
         if(point.x < 0) point.x = 1+(point.x % 1.0D);
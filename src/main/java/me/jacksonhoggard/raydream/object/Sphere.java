@@ -28,6 +28,20 @@ public class Sphere extends Object {
         return new Hit(this, null, ray.at(t), ray.at(t).normalized(), mapTexture(ray.at(t)), t);
     }
 
+    @Override
+    protected boolean occludesInObjectSpace(double originX, double originY, double originZ, double directionX, double directionY, double directionZ, double tMin, double tMax) {
+        double a = directionX * directionX + directionY * directionY + directionZ * directionZ;
+        double b = 2.0D * (originX * directionX + originY * directionY + originZ * directionZ);
+        double c = (originX * originX + originY * originY + originZ * originZ) - radius * radius;
+        double discriminant = b * b - 4 * a * c;
+        if(discriminant < 0)
+            return false;
+        double t = (-b - Math.sqrt(discriminant)) / (2.0D * a);
+        if(t < 0)
+            t = (-b + Math.sqrt(discriminant)) / (2.0D * a);
+        return t > tMin && t < tMax;
+    }
+
     public Vector3D normalAt(Vector3D point) {
         return point.normalized(); // Note: point is a point in object space
     }
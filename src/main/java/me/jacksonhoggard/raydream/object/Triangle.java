@@ -121,7 +121,15 @@ public class Triangle {
     }
 
     public double intersect(Ray ray) {
-        double nDotRDir = normalNotNormal.dot(ray.direction());
+        return intersect(ray.origin().x, ray.origin().y, ray.origin().z, ray.direction().x, ray.direction().y, ray.direction().z);
+    }
+
+    /**
+     * Ray intersection that allocates nothing, for the traversal loops
+     * @return distance to the point hit, or -1 if the ray misses
+     */
+    public double intersect(double originX, double originY, double originZ, double directionX, double directionY, double directionZ) {
+        double nDotRDir = normalNotNormal.x * directionX + normalNotNormal.y * directionY + normalNotNormal.z * directionZ;
         
         // Avoid division by very small numbers to prevent numerical instability
         if(Math.abs(nDotRDir) < 1e-8) {
@@ -129,16 +137,37 @@ public class Triangle {
         }
         
         // Compute distance to point hit
-        double t = -(normalNotNormal.dot(ray.origin()) + d) / nDotRDir;
+        double t = -((normalNotNormal.x * originX + normalNotNormal.y * originY + normalNotNormal.z * originZ) + d) / nDotRDir;
         if(t < 1e-8) // point is behind ray or too close (numerical tolerance)
             return -1.0D;
 
-        Vector3D v = new Vector3D();
-        calcBarycentric(ray.at(t), v);
+        // Barycentric coordinates of the point hit, computed as in calcBarycentric
+        double px = originX + directionX * t;
+        double py = originY + directionY * t;
+        double pz = originZ + directionZ * t;
+        double nu, nv, ood;
+        double x = Math.abs(normalNotNormal.x);
+        double y = Math.abs(normalNotNormal.y);
+        double z = Math.abs(normalNotNormal.z);
+        if(x >= y && x >= z) {
+            nu = calcTriArea(py, pz, v1.y, v1.z, v2.y, v2.z);
+            nv = calcTriArea(py, pz, v2.y, v2.z, v0.y, v0.z);
+            ood = 1.d / normalNotNormal.x;
+        } else if(y >= x && y >= z) {
+            nu = calcTriArea(px, pz, v1.x, v1.z, v2.x, v2.z);
+            nv = calcTriArea(px, pz, v2.x, v2.z, v0.x, v0.z);
+            ood = 1.d / -normalNotNormal.y;
+        } else {
+            nu = calcTriArea(px, py, v1.x, v1.y, v2.x, v2.y);
+            nv = calcTriArea(px, py, v2.x, v2.y, v0.x, v0.y);
+            ood = 1.d / normalNotNormal.z;
+        }
+        double v = nv * ood;
+        double w = 1.d - nu * ood - v;
         
         // Add small epsilon tolerance for barycentric coordinate test
         double epsilon = 1e-8;
-        if(v.y >= -epsilon && v.z >= -epsilon && (v.y + v.z) <= 1.0d + epsilon)
+        if(v >= -epsilon && w >= -epsilon && (v + w) <= 1.0d + epsilon)
             return t;
 
         return -1.0D;
@@ -156,6 +185,18 @@ public class Triangle {
         return Vector3D.add(Vector3D.mult(u, normal[0]), Vector3D.mult(v, normal[1])).add(Vector3D.mult(w, normal[2])).normalized();
     }
 
+    /**
+     * @param index zero, one or two
+     */
+    public Vector3D getVertex(int index) {
+        return switch (index) {
+            case 0 -> v0;
+            case 1 -> v1;
+            case 2 -> v2;
+            default -> throw new IndexOutOfBoundsException("Triangles have three vertices: " + index);
+        };
+    }
+
     public Vector3D getCentroid() {
         return centroid;
     }
@@ -0,0 +1,228 @@
+package me.jacksonhoggard.raydream.render;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Framebuffer accumulating radiance samples in planar primitive channels.
+ * Each pixel stores the running sum of its samples per color channel plus the number of samples taken,
+ * so the mean can be read in place and further samples can be added later. The sum of squared sample
+ * luminance is kept as well so the noise of progressively rendered pixels can be estimated.
+ */
+public class AccumulationBuffer {
+
+    // Number of values converted per chunk when the buffer is written to or read from a stream
+    private static final int IO_CHUNK = 1 << 14;
+
+    private final int width;
+    private final int height;
+    private final float[] red;
+    private final float[] green;
+    private final float[] blue;
+    private final float[] luminanceSquared;
+    private final int[] sampleCount;
+
+    public AccumulationBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        int size = width * height;
+        this.red = new float[size];
+        this.green = new float[size];
+        this.blue = new float[size];
+        this.luminanceSquared = new float[size];
+        this.sampleCount = new int[size];
+    }
+
+    /**
+     * Adds samples to a pixel. Different threads may update different pixels concurrently.
+     * @param index pixel index, {@code y * width + x}
+     * @param r sum of the red components of the samples
+     * @param g sum of the green components of the samples
+     * @param b sum of the blue components of the samples
+     * @param samples number of samples the sums were taken over
+     */
+    public void add(int index, double r, double g, double b, int samples) {
+        red[index] += (float) r;
+        green[index] += (float) g;
+        blue[index] += (float) b;
+        sampleCount[index] += samples;
+    }
+
+    /**
+     * Adds samples to a pixel together with their squared luminance for noise estimation.
+     * @param index pixel index, {@code y * width + x}
+     * @param r sum of the red components of the samples
+     * @param g sum of the green components of the samples
+     * @param b sum of the blue components of the samples
+     * @param lumSquared sum of the squared luminance of the samples
+     * @param samples number of samples the sums were taken over
+     */
+    public void add(int index, double r, double g, double b, double lumSquared, int samples) {
+        luminanceSquared[index] += (float) lumSquared;
+        add(index, r, g, b, samples);
+    }
+
+    /**
+     * Adds all samples of a smaller buffer to a rectangle of this one
+     * @param other buffer holding the samples to add
+     * @param offsetX column of this buffer receiving the first column of the other buffer
+     * @param offsetY row of this buffer receiving the first row of the other buffer
+     */
+    public void add(AccumulationBuffer other, int offsetX, int offsetY) {
+        if(offsetX < 0 || offsetY < 0 || offsetX + other.width > width || offsetY + other.height > height)
+            throw new IllegalArgumentException("Buffer does not fit at " + offsetX + ", " + offsetY);
+        for(int y = 0; y < other.height; y++) {
+            int source = y * other.width;
+            int target = (offsetY + y) * width + offsetX;
+            for(int x = 0; x < other.width; x++) {
+                red[target + x] += other.red[source + x];
+                green[target + x] += other.green[source + x];
+                blue[target + x] += other.blue[source + x];
+                luminanceSquared[target + x] += other.luminanceSquared[source + x];
+                sampleCount[target + x] += other.sampleCount[source + x];
+            }
+        }
+    }
+
+    /**
+     * Discards every sample of a pixel
+     * @param index pixel index, {@code y * width + x}
+     */
+    public void clear(int index) {
+        red[index] = 0.0f;
+        green[index] = 0.0f;
+        blue[index] = 0.0f;
+        luminanceSquared[index] = 0.0f;
+        sampleCount[index] = 0;
+    }
+
+    /**
+     * Writes the raw channels and sample counts in big-endian planar order
+     * @param out stream receiving the data
+     * @throws IOException if writing fails
+     */
+    public void write(DataOutputStream out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(IO_CHUNK * Float.BYTES);
+        for(float[] channel : new float[][] {red, green, blue, luminanceSquared}) {
+            for(int offset = 0; offset < channel.length; offset += IO_CHUNK) {
+                int length = Math.min(IO_CHUNK, channel.length - offset);
+                buffer.clear();
+                buffer.asFloatBuffer().put(channel, offset, length);
+                out.write(buffer.array(), 0, length * Float.BYTES);
+            }
+        }
+        for(int offset = 0; offset < sampleCount.length; offset += IO_CHUNK) {
+            int length = Math.min(IO_CHUNK, sampleCount.length - offset);
+            buffer.clear();
+            buffer.asIntBuffer().put(sampleCount, offset, length);
+            out.write(buffer.array(), 0, length * Integer.BYTES);
+        }
+    }
+
+    /**
+     * Replaces the contents of the buffer with data written by {@link #write(DataOutputStream)}
+     * for a buffer of the same size
+     * @param in stream providing the data
+     * @throws IOException if reading fails or the stream ends early
+     */
+    public void read(DataInputStream in) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(IO_CHUNK * Float.BYTES);
+        for(float[] channel : new float[][] {red, green, blue, luminanceSquared}) {
+            for(int offset = 0; offset < channel.length; offset += IO_CHUNK) {
+                int length = Math.min(IO_CHUNK, channel.length - offset);
+                in.readFully(buffer.array(), 0, length * Float.BYTES);
+                buffer.clear();
+                buffer.asFloatBuffer().get(channel, offset, length);
+            }
+        }
+        for(int offset = 0; offset < sampleCount.length; offset += IO_CHUNK) {
+            int length = Math.min(IO_CHUNK, sampleCount.length - offset);
+            in.readFully(buffer.array(), 0, length * Integer.BYTES);
+            buffer.clear();
+            buffer.asIntBuffer().get(sampleCount, offset, length);
+        }
+    }
+
+    /**
+     * Skips data written by {@link #write(DataOutputStream)} for a buffer of the given size without storing it
+     * @param in stream providing the data
+     * @throws IOException if reading fails or the stream ends early
+     */
+    public static void skip(DataInputStream in, int width, int height) throws IOException {
+        in.skipNBytes((long) width * height * (4 * Float.BYTES + Integer.BYTES));
+    }
+
+    /**
+     * Estimates the remaining noise as the root mean square of the standard error of each pixel's mean luminance.
+     * Pixels with fewer than two samples carry no variance information and are skipped.
+     * @return estimated noise, or positive infinity if no pixel has enough samples
+     */
+    public double estimateNoise() {
+        double sum = 0.0;
+        int pixels = 0;
+        for(int k = 0; k < sampleCount.length; k++) {
+            int n = sampleCount[k];
+            if(n < 2)
+                continue;
+            double mean = luminance(red[k], green[k], blue[k]) / n;
+            double variance = Math.max(0.0, luminanceSquared[k] / n - mean * mean);
+            sum += variance / n;
+            pixels++;
+        }
+        return pixels > 0 ? Math.sqrt(sum / pixels) : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @return standard error of the pixel's mean luminance, or positive infinity with fewer than two samples
+     */
+    public double getStandardError(int index) {
+        int n = sampleCount[index];
+        if(n < 2)
+            return Double.POSITIVE_INFINITY;
+        double mean = luminance(red[index], green[index], blue[index]) / n;
+        double variance = Math.max(0.0, luminanceSquared[index] / n - mean * mean);
+        return Math.sqrt(variance / n);
+    }
+
+    /**
+     * @return Rec. 709 relative luminance of a linear color
+     */
+    public static double luminance(double r, double g, double b) {
+        return 0.2126 * r + 0.7152 * g + 0.0722 * b;
+    }
+
+    public float getMeanRed(int index) {
+        return mean(red, index);
+    }
+
+    public float getMeanGreen(int index) {
+        return mean(green, index);
+    }
+
+    public float getMeanBlue(int index) {
+        return mean(blue, index);
+    }
+
+    public int getSampleCount(int index) {
+        return sampleCount[index];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getPixelCount() {
+        return width * height;
+    }
+
+    private float mean(float[] channel, int index) {
+        int count = sampleCount[index];
+        return count > 0 ? channel[index] / count : 0.0f;
+    }
+}
@@ -0,0 +1,50 @@
+package me.jacksonhoggard.raydream.render;
+
+/**
+ * A rectangle of the camera image that a render is restricted to. Pixels inside it are traced at the
+ * same positions and resolution as in a full frame render.
+ * @param x left pixel column of the region
+ * @param y top pixel row of the region
+ * @param width region width in pixels
+ * @param height region height in pixels
+ */
+public record CropRegion(int x, int y, int width, int height) {
+
+    public CropRegion {
+        if (x < 0 || y < 0 || width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid crop region: " + x + " " + y + " " + width + " " + height);
+        }
+    }
+
+    /**
+     * @return a region covering a whole image
+     */
+    public static CropRegion full(int imageWidth, int imageHeight) {
+        return new CropRegion(0, 0, imageWidth, imageHeight);
+    }
+
+    /**
+     * Restricts the region to the bounds of an image.
+     * @return the part of this region inside the image
+     * @throws IllegalArgumentException if the region lies entirely outside the image
+     */
+    public CropRegion clamp(int imageWidth, int imageHeight) {
+        int right = Math.min(x + width, imageWidth);
+        int bottom = Math.min(y + height, imageHeight);
+        if (right <= x || bottom <= y) {
+            throw new IllegalArgumentException("Crop region " + this + " lies outside the " + imageWidth + "x" + imageHeight + " image");
+        }
+        return new CropRegion(x, y, right - x, bottom - y);
+    }
+
+    /**
+     * @return true if the region covers every pixel of an image of the given size
+     */
+    public boolean covers(int imageWidth, int imageHeight) {
+        return x == 0 && y == 0 && width >= imageWidth && height >= imageHeight;
+    }
+
+    public int getPixelCount() {
+        return width * height;
+    }
+}
@@ -4,4 +4,11 @@ public interface RenderCancelListener {
     void cancel();
     boolean isCanceled();
     void setCanceled(boolean canceled);
+
+    /**
+     * Accepts the image rendered so far. A progressive render stops after the current pass and writes its output.
+     */
+    void accept();
+    boolean isAccepted();
+    void setAccepted(boolean accepted);
 }
@@ -0,0 +1,159 @@
+package me.jacksonhoggard.raydream.render;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+
+/**
+ * Saved state of an unfinished render: its settings, crop region and output file, the accumulation buffer with
+ * per-pixel sample counts, the bitmap of finished tiles and the number of finished progressive passes.
+ * <p>
+ * The file holds a small big-endian header followed by the planar channels of the accumulation buffer.
+ * Checkpoints are written to a temporary file first and then moved over the previous one, so a crash
+ * while saving never leaves a truncated checkpoint behind.
+ */
+public class RenderCheckpoint {
+
+    private static final int MAGIC = 0x52444350; // "RDCP"
+    private static final int VERSION = 3;
+
+    private final int width;
+    private final int height;
+    private final String filename;
+    private final RenderSettings settings;
+    private final int completedPasses;
+    private final BitSet completedTiles;
+    private final AccumulationBuffer accumulation;
+
+    private RenderCheckpoint(int width, int height, String filename, RenderSettings settings, int completedPasses, BitSet completedTiles, AccumulationBuffer accumulation) {
+        this.width = width;
+        this.height = height;
+        this.filename = filename;
+        this.settings = settings;
+        this.completedPasses = completedPasses;
+        this.completedTiles = completedTiles;
+        this.accumulation = accumulation;
+    }
+
+    /**
+     * Writes a checkpoint, replacing the previous one at the same path.
+     * Only the samples of finished tiles are restored from it; the others are rendered again on resume.
+     * @param file checkpoint file
+     * @param job job being saved
+     * @param completedPasses number of finished progressive passes
+     * @param completedTiles indices of the tiles finished in the current pass
+     * @throws IOException if the checkpoint could not be written
+     */
+    static void write(Path file, RenderJob job, int completedPasses, BitSet completedTiles) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        RenderSettings settings = job.getSettings();
+        AccumulationBuffer accumulation = job.getAccumulation();
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(job.getScene().getWidth());
+            out.writeInt(job.getScene().getHeight());
+            CropRegion region = job.getRegion();
+            out.writeInt(region.x());
+            out.writeInt(region.y());
+            out.writeInt(region.width());
+            out.writeInt(region.height());
+            out.writeBoolean(settings.isComposite());
+            out.writeUTF(job.getFilename());
+            out.writeInt(settings.getSampleDepth());
+            out.writeInt(settings.getBounces());
+            out.writeInt(settings.getNumShadowRays());
+            out.writeInt(settings.getThreads());
+            out.writeInt(settings.getTileSize());
+            out.writeInt(settings.getTileOrder().ordinal());
+            out.writeInt(settings.getPasses());
+            out.writeInt(settings.getSamplesPerPass());
+            out.writeDouble(settings.getNoiseTarget());
+            out.writeLong(settings.getTimeBudget());
+            out.writeInt(settings.getPriority());
+            out.writeLong(settings.getCheckpointInterval());
+            out.writeInt(completedPasses);
+            long[] bits = completedTiles.toLongArray();
+            out.writeInt(bits.length);
+            for(long word : bits)
+                out.writeLong(word);
+            accumulation.write(out);
+        }
+        Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a checkpoint written by a previous render
+     * @param file checkpoint file
+     * @return the saved render state
+     * @throws IOException if the file cannot be read or is not a checkpoint
+     */
+    public static RenderCheckpoint read(Path file) throws IOException {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if(in.readInt() != MAGIC)
+                throw new IOException("Not a render checkpoint: " + file);
+            int version = in.readInt();
+            if(version != VERSION)
+                throw new IOException("Unsupported render checkpoint version " + version + ": " + file);
+            int width = in.readInt();
+            int height = in.readInt();
+            CropRegion region = new CropRegion(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+            boolean composite = in.readBoolean();
+            String filename = in.readUTF();
+            RenderSettings settings = new RenderSettings(in.readInt(), in.readInt(), in.readInt(), in.readInt())
+                    .setTileSize(in.readInt())
+                    .setTileOrder(TileOrder.values()[in.readInt()])
+                    .setPasses(in.readInt())
+                    .setSamplesPerPass(in.readInt())
+                    .setNoiseTarget(in.readDouble())
+                    .setTimeBudget(in.readLong())
+                    .setPriority(in.readInt())
+                    .setCheckpointInterval(in.readLong())
+                    .setCheckpointFile(file.toString())
+                    .setCrop(region)
+                    .setComposite(composite);
+            int completedPasses = in.readInt();
+            long[] bits = new long[in.readInt()];
+            for(int k = 0; k < bits.length; k++)
+                bits[k] = in.readLong();
+            AccumulationBuffer accumulation = new AccumulationBuffer(region.width(), region.height());
+            accumulation.read(in);
+            return new RenderCheckpoint(width, height, filename, settings, completedPasses, BitSet.valueOf(bits), accumulation);
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public RenderSettings getSettings() {
+        return settings;
+    }
+
+    public int getCompletedPasses() {
+        return completedPasses;
+    }
+
+    public BitSet getCompletedTiles() {
+        return completedTiles;
+    }
+
+    AccumulationBuffer getAccumulation() {
+        return accumulation;
+    }
+}
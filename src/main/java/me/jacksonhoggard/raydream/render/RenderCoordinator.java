@@ -0,0 +1,401 @@
+package me.jacksonhoggard.raydream.render;
+
+import me.jacksonhoggard.raydream.config.ApplicationConfig;
+import me.jacksonhoggard.raydream.core.ApplicationContext;
+import me.jacksonhoggard.raydream.util.Logger;
+import me.jacksonhoggard.raydream.util.ProgressListener;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders jobs on {@link RenderWorker} processes that connect over TCP, possibly from other machines.
+ * <p>
+ * Every worker that connects receives the project file and the assets it references, loads the scene itself and
+ * then traces the tiles it is handed, sending back the raw samples which are merged into the job like locally
+ * traced tiles.
+ * Each worker holds at most two tiles per thread so that faster machines take more of the frame. Tiles of a
+ * worker that disconnects, or that holds tiles without answering for any of them for the tile timeout, are
+ * handed to the other workers.
+ * Workers may join or leave at any time; a job waits while no worker is connected.
+ */
+public class RenderCoordinator implements TileExecutor, Closeable {
+    private static final Logger logger = ApplicationContext.getInstance().getLoggingService().getLogger(RenderCoordinator.class);
+    private static final int MAX_TILE_ATTEMPTS = 3;
+
+    private final ServerSocket server;
+    private final Path projectFile;
+    private final Set<Path> excluded = ConcurrentHashMap.newKeySet();
+    private final long tileTimeoutNanos;
+    private final List<WorkerConnection> workers = new CopyOnWriteArrayList<>();
+    private final ConcurrentLinkedQueue<Tile> retries = new ConcurrentLinkedQueue<>();
+    private final Map<Integer, Integer> attempts = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService watchdog;
+    private final AtomicInteger nextConnectionId = new AtomicInteger();
+    private volatile RenderJob job;
+    private volatile int jobId;
+
+    public RenderCoordinator(Path projectFile, int port) throws IOException {
+        this(projectFile, port, ApplicationConfig.DISTRIBUTED_TILE_TIMEOUT_MS);
+    }
+
+    public RenderCoordinator(Path projectFile, int port, long tileTimeoutMillis) throws IOException {
+        this(projectFile, null, port, tileTimeoutMillis);
+    }
+
+    /**
+     * Starts listening for workers
+     * @param projectFile project shipped to every worker, together with the models and textures it references
+     * @param output image the renders will write, which is never shipped even if the project references it,
+     *               or null if not known yet
+     * @param port port to listen on, or 0 for any free port
+     * @param tileTimeoutMillis time after which a worker holding tiles that has answered for none of them is
+     *                          considered stalled
+     * @throws IOException if the project file does not exist or the port cannot be bound
+     */
+    public RenderCoordinator(Path projectFile, Path output, int port, long tileTimeoutMillis) throws IOException {
+        if(!Files.isRegularFile(projectFile))
+            throw new NoSuchFileException(projectFile.toString());
+        this.projectFile = projectFile;
+        if(output != null)
+            excluded.add(output.toAbsolutePath().normalize());
+        this.tileTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(tileTimeoutMillis);
+        this.server = new ServerSocket(port);
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "RayDream-Coordinator-Watchdog"));
+        long checkInterval = Math.max(10, Math.min(1000, tileTimeoutMillis / 4));
+        watchdog.scheduleWithFixedDelay(this::closeStalledWorkers, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+        daemon(this::accept, "RayDream-Coordinator").start();
+        logger.info("Render coordinator listening on port " + server.getLocalPort());
+    }
+
+    /**
+     * Renders a tile mode job on the connected workers and writes the output image on this machine
+     * @param scene the scene of the shipped project, used for the output and progress previews
+     * @throws IOException if the output image could not be written
+     */
+    public void render(Scene scene, String filename, RenderSettings settings, ProgressListener listener) throws IOException {
+        if(settings.isProgressive())
+            throw new IllegalArgumentException("Distributed renders do not support progressive mode");
+        // Workers joining later must not be sent the image as it is being written
+        excluded.add(Path.of(filename).toAbsolutePath().normalize());
+        new RenderJob(scene, filename, settings, listener, this).run();
+    }
+
+    @Override
+    public void register(RenderJob job) {
+        synchronized(this) {
+            if(this.job != null && this.job != job)
+                throw new IllegalStateException("Render coordinator is already rendering job " + this.job.getId());
+            retries.clear();
+            attempts.clear();
+            jobId++;
+            this.job = job;
+        }
+        dispatchAll();
+    }
+
+    @Override
+    public synchronized void unregister(RenderJob job) {
+        if(this.job != job)
+            return;
+        this.job = null;
+        retries.clear();
+        attempts.clear();
+    }
+
+    /**
+     * @return the port workers connect to
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * @return the number of workers that have loaded the scene and can take tiles
+     */
+    public int getWorkerCount() {
+        int count = 0;
+        for(WorkerConnection worker : workers) {
+            if(worker.ready)
+                count++;
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchdog.shutdownNow();
+        server.close();
+        for(WorkerConnection worker : workers)
+            worker.close();
+    }
+
+    private void accept() {
+        while(!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                WorkerConnection worker = new WorkerConnection(socket, nextConnectionId.incrementAndGet());
+                workers.add(worker);
+                daemon(worker::serve, "RayDream-Coordinator-Worker-" + worker.id).start();
+            } catch (IOException e) {
+                if(!server.isClosed())
+                    logger.error("Failed to accept render worker", e);
+            }
+        }
+    }
+
+    private void dispatchAll() {
+        for(WorkerConnection worker : workers)
+            worker.dispatch();
+    }
+
+    /**
+     * Takes the next tile to hand out: first tiles given back by lost workers, then fresh tiles of the job
+     */
+    private Tile nextTile(RenderJob current) {
+        Tile tile = retries.poll();
+        if(tile != null)
+            return tile;
+        return current.acquireTile(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Hands a tile that was not traced back to the job, failing the job once the tile has been tried too often
+     */
+    private void retry(RenderJob owner, Tile tile, String reason) {
+        synchronized(this) {
+            if(owner == job && !owner.isCanceled()) {
+                int tries = attempts.merge(tile.index(), 1, Integer::sum);
+                if(tries < MAX_TILE_ATTEMPTS) {
+                    retries.add(tile);
+                    return;
+                }
+                owner.failTile(tile, new IOException("Tile " + tile.index() + " failed " + tries + " times: " + reason));
+                return;
+            }
+        }
+        owner.abandonTile(tile);
+    }
+
+    private void closeStalledWorkers() {
+        RenderJob current = job;
+        if(current != null && current.isCanceled()) {
+            // Nobody may be left to pick these up, and the job waits for every tile it handed out
+            Tile tile;
+            while((tile = retries.poll()) != null)
+                current.abandonTile(tile);
+        }
+        long now = System.nanoTime();
+        for(WorkerConnection worker : workers) {
+            // Measured from the worker's last answer rather than per tile, since queued and costly tiles wait long
+            if(!worker.outstanding.isEmpty() && now - worker.lastAnswer > tileTimeoutNanos) {
+                logger.warn("Render worker " + worker.id + " answered for none of its " + worker.outstanding.size() + " tiles in time, handing them to other workers");
+                worker.close();
+            }
+        }
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private record Assignment(RenderJob job, int jobId, Tile tile) {
+    }
+
+    /**
+     * Connection to one worker. Its thread reads results while other threads send tiles under the connection lock.
+     */
+    private class WorkerConnection {
+        private final Socket socket;
+        private final int id;
+        private final Map<Integer, Assignment> outstanding = new ConcurrentHashMap<>();
+        private DataOutputStream out;
+        private volatile boolean ready;
+        private volatile boolean closed;
+        private volatile long lastAnswer; // Time of the last result or failure, or of being handed tiles while holding none
+        private int capacity;
+        private int sentJobId = -1;
+
+        WorkerConnection(Socket socket, int id) {
+            this.socket = socket;
+            this.id = id;
+        }
+
+        void serve() {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                if(in.readInt() != RenderProtocol.MAGIC || in.readInt() != RenderProtocol.VERSION)
+                    throw new IOException("Incompatible render worker");
+                int threads = Math.max(1, in.readInt());
+                RenderProtocol.writeBundle(out, projectFile, excluded);
+                out.flush();
+                int type = RenderProtocol.readType(in);
+                if(type == RenderProtocol.ERROR)
+                    throw new IOException("Render worker failed to load the scene: " + in.readUTF());
+                if(type != RenderProtocol.READY)
+                    throw new IOException("Unexpected message from render worker: " + type);
+                synchronized(this) {
+                    this.out = out;
+                    this.capacity = threads * 2;
+                    this.ready = true;
+                }
+                logger.info("Render worker " + id + " at " + socket.getRemoteSocketAddress() + " joined with " + threads + " threads");
+                dispatch();
+                while((type = RenderProtocol.readType(in)) >= 0) {
+                    lastAnswer = System.nanoTime();
+                    switch(type) {
+                        case RenderProtocol.RESULT -> readResult(in);
+                        case RenderProtocol.FAILED -> readFailure(in);
+                        default -> throw new IOException("Unexpected message from render worker: " + type);
+                    }
+                    dispatch();
+                }
+                logger.info("Render worker " + id + " disconnected");
+            } catch (SocketException e) {
+                logger.info("Render worker " + id + " disconnected");
+            } catch (IOException e) {
+                logger.warn("Lost render worker " + id + ": " + e.getMessage());
+            } finally {
+                close();
+                workers.remove(this);
+                List<Assignment> lost;
+                synchronized(this) {
+                    // Taking the lock waits for a dispatch still writing to the closed socket
+                    lost = new ArrayList<>(outstanding.values());
+                    outstanding.clear();
+                }
+                for(Assignment assignment : lost)
+                    retry(assignment.job(), assignment.tile(), "render worker " + id + " was lost");
+                dispatchAll();
+            }
+        }
+
+        private void readResult(DataInputStream in) throws IOException {
+            int resultJobId = in.readInt();
+            int index = in.readInt();
+            int width = in.readInt();
+            int height = in.readInt();
+            if(width < 0 || height < 0)
+                throw new IOException("Render worker returned " + width + "x" + height + " samples for tile " + index);
+            Assignment assignment = outstanding.get(index);
+            if(assignment == null || assignment.jobId() != resultJobId) {
+                // The tile was handed to another worker or belongs to an earlier job
+                AccumulationBuffer.skip(in, width, height);
+                return;
+            }
+            Tile tile = assignment.tile();
+            // Checked before allocating so a faulty worker cannot make the coordinator reserve any size
+            if(width != tile.width() || height != tile.height())
+                throw new IOException("Render worker returned " + width + "x" + height + " samples for tile " + index);
+            AccumulationBuffer samples = new AccumulationBuffer(width, height);
+            samples.read(in);
+            outstanding.remove(index);
+            assignment.job().completeTile(tile, samples);
+        }
+
+        private void readFailure(DataInputStream in) throws IOException {
+            int resultJobId = in.readInt();
+            int index = in.readInt();
+            String message = in.readUTF();
+            Assignment assignment = outstanding.get(index);
+            if(assignment == null || assignment.jobId() != resultJobId)
+                return;
+            outstanding.remove(index);
+            logger.warn("Render worker " + id + " failed tile " + index + ": " + message);
+            retry(assignment.job(), assignment.tile(), message);
+        }
+
+        /**
+         * Sends tiles of the current job until the worker holds as many as it may
+         */
+        synchronized void dispatch() {
+            if(!ready || closed)
+                return;
+            RenderJob current;
+            int currentJobId;
+            synchronized(RenderCoordinator.this) {
+                current = job;
+                currentJobId = jobId;
+            }
+            if(current == null)
+                return;
+            try {
+                if(sentJobId != currentJobId) {
+                    out.writeByte(RenderProtocol.JOB);
+                    out.writeInt(currentJobId);
+                    RenderProtocol.writeSettings(out, current.getSettings());
+                    sentJobId = currentJobId;
+                }
+                Tile tile;
+                while(outstanding.size() < capacity && (tile = nextTile(current)) != null) {
+                    if(outstanding.isEmpty())
+                        lastAnswer = System.nanoTime();
+                    // Recorded before sending so the tile is handed back if the connection drops mid-write
+                    outstanding.put(tile.index(), new Assignment(current, currentJobId, tile));
+                    out.writeByte(RenderProtocol.TILE);
+                    out.writeInt(currentJobId);
+                    RenderProtocol.writeTile(out, tile);
+                }
+                out.flush();
+            } catch (IOException e) {
+                logger.warn("Failed to send tiles to render worker " + id + ": " + e.getMessage());
+                close();
+            }
+        }
+
+        /**
+         * Closes the socket, which also unblocks a dispatch stuck writing to a stalled worker
+         */
+        void close() {
+            closed = true;
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Renders a project on every worker that connects.
+     * Usage: {@code RenderCoordinator <project.dream> <output.png> [port] [scene loader class]}
+     */
+    public static void main(String[] args) throws Exception {
+        if(args.length < 2) {
+            System.err.println("Usage: RenderCoordinator <project.dream> <output.png> [port] [scene loader class]");
+            System.exit(1);
+        }
+        Path projectFile = Path.of(args[0]);
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : ApplicationConfig.DISTRIBUTED_PORT;
+        SceneLoader loader = SceneLoader.create(args.length > 3 ? args[3] : SceneLoader.DEFAULT);
+        Scene scene = loader.load(projectFile);
+        try(RenderCoordinator coordinator = new RenderCoordinator(projectFile, Path.of(args[1]), port, ApplicationConfig.DISTRIBUTED_TILE_TIMEOUT_MS)) {
+            coordinator.render(scene, args[1], loader.getSettings(), null);
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,549 @@
+package me.jacksonhoggard.raydream.render;
+
+import me.jacksonhoggard.raydream.acceleration.TraversalStatistics;
+import me.jacksonhoggard.raydream.config.ApplicationConfig;
+import me.jacksonhoggard.raydream.core.ApplicationContext;
+import me.jacksonhoggard.raydream.util.Logger;
+import me.jacksonhoggard.raydream.util.ProgressListener;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A single render of a {@link Scene} with its own cancellation token, progress, framebuffers and tile queue.
+ * The tiles of a job are traced by a {@link TileExecutor}, usually the shared worker threads of a
+ * {@link RenderScheduler}, so several jobs can render at the same time in one JVM without replacing each
+ * other's threads. A {@link SubdivisionScheduler} splits the frame recursively instead, and a
+ * {@link RenderCoordinator} traces the tiles on remote worker processes.
+ */
+public class RenderJob {
+    private static final Logger logger = ApplicationContext.getInstance().getLoggingService().getLogger(RenderJob.class);
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    private final int id;
+    private final Scene scene;
+    private final String filename;
+    private final RenderSettings settings;
+    private final TileExecutor executor;
+    private final CropRegion region;
+    private final BufferedImage image;
+    private final AccumulationBuffer accumulation;
+    private final TileScheduler tiles;
+    private final RenderProgress progress;
+    private final int maxConcurrentTiles;
+    private final ConcurrentLinkedQueue<Scene.TraceRayTask> workers = new ConcurrentLinkedQueue<>();
+    private final RenderCancelListener cancelListener = new RenderCancelListener() {
+        private volatile boolean canceled = false;
+        private volatile boolean accepted = false;
+
+        @Override
+        public void cancel() {
+            canceled = true;
+            wakeDriver();
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return canceled;
+        }
+
+        @Override
+        public void setCanceled(boolean canceled) {
+            this.canceled = canceled;
+        }
+
+        @Override
+        public void accept() {
+            accepted = true;
+        }
+
+        @Override
+        public boolean isAccepted() {
+            return accepted;
+        }
+
+        @Override
+        public void setAccepted(boolean accepted) {
+            this.accepted = accepted;
+        }
+    };
+
+    // Pass state, guarded by this
+    private boolean passOpen;
+    private boolean tilesExhausted;
+    private int tilesInFlight;
+    private Throwable failure;
+    private final BitSet completedTiles;
+    private int completedPasses;
+    private long nextCheckpointTime;
+    private volatile boolean hasDeadline;
+    private volatile long deadline;
+    private volatile double sampleThreshold;
+
+    public RenderJob(Scene scene, String filename, RenderSettings settings, ProgressListener listener) {
+        this(scene, filename, settings, listener, RenderScheduler.getDefault());
+    }
+
+    public RenderJob(Scene scene, String filename, RenderSettings settings, ProgressListener listener, TileExecutor executor) {
+        this(scene, filename, settings, listener, executor, null, new BitSet(), 0);
+    }
+
+    /**
+     * Creates a job that continues the render saved in a checkpoint
+     * @param scene the scene the checkpoint was rendered from
+     * @param checkpoint saved render state
+     * @param listener listener receiving progress updates
+     * @param executor executor tracing the remaining tiles
+     */
+    public RenderJob(Scene scene, RenderCheckpoint checkpoint, ProgressListener listener, TileExecutor executor) {
+        this(scene, checkpoint.getFilename(), checkpoint.getSettings(), listener, executor, checkpoint.getAccumulation(), checkpoint.getCompletedTiles(), checkpoint.getCompletedPasses());
+        if(scene.getWidth() != checkpoint.getWidth() || scene.getHeight() != checkpoint.getHeight())
+            throw new IllegalArgumentException("Checkpoint size " + checkpoint.getWidth() + "x" + checkpoint.getHeight() + " does not match scene size " + scene.getWidth() + "x" + scene.getHeight());
+        if(settings.isTimeBudgeted()) {
+            // Progress of a time-budgeted render is measured in time, which starts over on resume
+        } else if(settings.isProgressive()) {
+            progress.complete(completedPasses);
+        } else {
+            // Samples of unfinished tiles may be partial, so those tiles are rendered again from scratch
+            long restoredPixels = 0;
+            for(Tile tile : tiles.getTiles()) {
+                if(completedTiles.get(tile.index())) {
+                    restoredPixels += tile.getPixelCount();
+                    continue;
+                }
+                for(int y = tile.y(); y < tile.y() + tile.height(); y++) {
+                    for(int x = tile.x(); x < tile.x() + tile.width(); x++)
+                        accumulation.clear(getPixelIndex(x, y));
+                }
+            }
+            progress.complete(restoredPixels);
+        }
+    }
+
+    private RenderJob(Scene scene, String filename, RenderSettings settings, ProgressListener listener, TileExecutor executor, AccumulationBuffer accumulation, BitSet completedTiles, int completedPasses) {
+        this.id = nextId.incrementAndGet();
+        this.scene = scene;
+        this.filename = filename;
+        this.settings = settings;
+        this.executor = executor;
+        this.region = settings.getCrop() != null ? settings.getCrop().clamp(scene.getWidth(), scene.getHeight()) : CropRegion.full(scene.getWidth(), scene.getHeight());
+        this.image = new BufferedImage(region.width(), region.height(), BufferedImage.TYPE_INT_ARGB);
+        this.accumulation = accumulation != null ? accumulation : new AccumulationBuffer(region.width(), region.height());
+        if(this.accumulation.getWidth() != region.width() || this.accumulation.getHeight() != region.height())
+            throw new IllegalArgumentException("Accumulation buffer does not match the render region " + region);
+        this.completedTiles = completedTiles;
+        this.completedPasses = completedPasses;
+        this.tiles = new TileScheduler(region, settings.getTileSize(), settings.getTileOrder());
+        this.maxConcurrentTiles = Math.max(1, settings.getThreads());
+        this.nextCheckpointTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.getCheckpointInterval());
+        if(settings.isTimeBudgeted())
+            this.progress = new RenderProgress(settings.getTimeBudget(), 0, listener, image);
+        else if(settings.isProgressive())
+            this.progress = new RenderProgress(settings.getPasses(), 0, listener, image);
+        else
+            this.progress = new RenderProgress(region.getPixelCount(), ApplicationConfig.PROGRESS_UPDATE_INTERVAL_MS, listener, image);
+    }
+
+    /**
+     * Renders the job on the calling thread, which waits while the executor traces the tiles.
+     * @throws IOException if the output image could not be written
+     */
+    public void run() throws IOException {
+        scene.render(this);
+    }
+
+    /**
+     * Hands every unfinished tile of the frame to the executor and blocks until all of them have been
+     * traced or the job is cancelled. Tile renders save checkpoints from this thread while they wait.
+     */
+    void runPass() {
+        synchronized(this) {
+            tiles.reset();
+            if(settings.isProgressive())
+                completedTiles.clear();
+            passOpen = true;
+            tilesExhausted = false;
+        }
+        executor.register(this);
+        try {
+            boolean checkpointing = settings.getCheckpointFile() != null && !settings.isProgressive();
+            while(!awaitPass(checkpointing)) {
+                if(System.nanoTime() - nextCheckpointTime >= 0)
+                    saveCheckpoint();
+            }
+        } catch (InterruptedException e) {
+            cancelListener.cancel();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Render interrupted:", e);
+        } finally {
+            synchronized(this) {
+                passOpen = false;
+            }
+            executor.unregister(this);
+        }
+        if(failure != null)
+            throw new RuntimeException("Render failed:", failure);
+    }
+
+    /**
+     * Waits for the current pass to finish
+     * @param untilCheckpoint whether to return early once the next checkpoint is due
+     * @return true if the pass is finished or cancelled, false if a checkpoint is due first
+     */
+    private synchronized boolean awaitPass(boolean untilCheckpoint) throws InterruptedException {
+        while(tilesInFlight > 0 || !(tilesExhausted || cancelListener.isCanceled() || isOverBudget())) {
+            long now = System.nanoTime();
+            long remaining = Long.MAX_VALUE;
+            if(untilCheckpoint) {
+                remaining = nextCheckpointTime - now;
+                if(remaining <= 0)
+                    return false;
+            }
+            // Workers stop taking tiles at the deadline without telling this thread, so wake up for it
+            if(hasDeadline && completedPasses > 0)
+                remaining = Math.min(remaining, deadline - now);
+            if(remaining == Long.MAX_VALUE)
+                wait();
+            else
+                wait(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+        }
+        return true;
+    }
+
+    /**
+     * Starts the clock of a time-budgeted render
+     */
+    void startBudget() {
+        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.getTimeBudget());
+        hasDeadline = true;
+    }
+
+    /**
+     * @return true if the time budget of the render is spent
+     */
+    boolean isPastDeadline() {
+        return hasDeadline && System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * Once the budget is spent no further tiles are handed out, except during the first pass which must
+     * give every pixel a sample. Tiles already being traced still finish, so no tile is left half sampled.
+     */
+    private boolean isOverBudget() {
+        return completedPasses > 0 && isPastDeadline();
+    }
+
+    /**
+     * @return standard error of mean luminance below which pixels skip the current pass, zero to sample every pixel
+     */
+    double getSampleThreshold() {
+        return sampleThreshold;
+    }
+
+    void setSampleThreshold(double sampleThreshold) {
+        this.sampleThreshold = sampleThreshold;
+    }
+
+    /**
+     * Called by the scene after every finished progressive pass; saves a checkpoint if one is due
+     */
+    void passCompleted() {
+        synchronized(this) {
+            completedPasses++;
+        }
+        if(settings.getCheckpointFile() != null && System.nanoTime() - nextCheckpointTime >= 0)
+            saveCheckpoint();
+    }
+
+    /**
+     * Writes the current state to the checkpoint file. Failures are logged and the render continues.
+     */
+    void saveCheckpoint() {
+        if(settings.getCheckpointFile() == null)
+            return;
+        BitSet finished;
+        int passes;
+        synchronized(this) {
+            // Reading the bitmap under the lock makes the samples of every finished tile visible to this thread
+            finished = (BitSet) completedTiles.clone();
+            passes = completedPasses;
+        }
+        try {
+            RenderCheckpoint.write(Path.of(settings.getCheckpointFile()), this, passes, finished);
+            logger.debug("Saved render checkpoint to " + settings.getCheckpointFile());
+        } catch (IOException e) {
+            logger.error("Failed to save render checkpoint to " + settings.getCheckpointFile(), e);
+        }
+        nextCheckpointTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.getCheckpointInterval());
+    }
+
+    /**
+     * Removes the checkpoint file once the render has finished
+     */
+    void deleteCheckpoint() {
+        if(settings.getCheckpointFile() == null)
+            return;
+        try {
+            Files.deleteIfExists(Path.of(settings.getCheckpointFile()));
+        } catch (IOException e) {
+            logger.warn("Failed to delete render checkpoint " + settings.getCheckpointFile());
+        }
+    }
+
+    /**
+     * @return true if the job can take another tile right now
+     */
+    synchronized boolean hasWork() {
+        return hasWork(maxConcurrentTiles);
+    }
+
+    private boolean hasWork(int limit) {
+        return passOpen && !tilesExhausted && !cancelListener.isCanceled() && !isOverBudget() && tilesInFlight < limit;
+    }
+
+    /**
+     * Takes the next tile of the current pass, respecting the job's thread limit
+     * @return the tile to trace, or null if the job has no work for another thread
+     */
+    synchronized Tile acquireTile() {
+        return acquireTile(maxConcurrentTiles);
+    }
+
+    /**
+     * Takes the next tile of the current pass
+     * @param limit maximum number of tiles of this job in flight at once
+     * @return the tile to trace, or null if the job has no work available
+     */
+    synchronized Tile acquireTile(int limit) {
+        if(!hasWork(limit))
+            return null;
+        Tile tile;
+        do {
+            tile = tiles.next();
+        } while(tile != null && completedTiles.get(tile.index()));
+        if(tile == null) {
+            tilesExhausted = true;
+            if(tilesInFlight == 0)
+                notifyAll();
+            return null;
+        }
+        tilesInFlight++;
+        return tile;
+    }
+
+    /**
+     * Claims a specific tile of the current pass, for executors that choose tiles themselves
+     * @return true if the tile must be traced and then released, false if it is finished or the pass is over
+     */
+    synchronized boolean claimTile(Tile tile) {
+        if(!passOpen || tilesExhausted || cancelListener.isCanceled() || isOverBudget() || completedTiles.get(tile.index()))
+            return false;
+        tilesInFlight++;
+        return true;
+    }
+
+    /**
+     * Tells the job that its executor will not claim any further tiles in the current pass
+     */
+    synchronized void tilesExhausted() {
+        tilesExhausted = true;
+        if(tilesInFlight == 0)
+            notifyAll();
+    }
+
+    /**
+     * Traces a tile acquired from {@link #acquireTile()} on the calling worker thread
+     */
+    void renderTile(Tile tile) {
+        boolean finished = false;
+        try {
+            finished = traceRegion(tile);
+        } finally {
+            releaseTile(tile, finished);
+        }
+    }
+
+    /**
+     * Traces a rectangle inside a claimed tile without releasing the tile. Failures abort the job.
+     * @param part the tile or a part of it
+     * @return true if every pixel was traced, false if the job was cancelled or the trace failed
+     */
+    boolean traceRegion(Tile part) {
+        Scene.TraceRayTask worker = workers.poll();
+        try {
+            if(worker == null)
+                worker = scene.new TraceRayTask(this);
+            if(worker.getStatistics() != null)
+                worker.getStatistics().bind();
+            return worker.renderTile(part);
+        } catch (RuntimeException | Error e) {
+            synchronized(this) {
+                if(failure == null)
+                    failure = e;
+            }
+            cancelListener.cancel();
+            return false;
+        } finally {
+            TraversalStatistics.unbind();
+            if(worker != null)
+                workers.offer(worker);
+        }
+    }
+
+    /**
+     * Merges the traversal statistics of every worker; call once no tile is being traced
+     * @return rays counted so far, or null unless the settings ask for traversal statistics
+     */
+    public TraversalStatistics getTraversalStatistics() {
+        if(!settings.isTraversalStatistics())
+            return null;
+        TraversalStatistics merged = new TraversalStatistics();
+        for(Scene.TraceRayTask worker : workers)
+            merged.add(worker.getStatistics());
+        return merged;
+    }
+
+    /**
+     * Adds the samples of a tile traced elsewhere, for example by a remote worker, and releases the tile
+     * @param tile tile acquired from {@link #acquireTile(int)}
+     * @param samples accumulated samples covering exactly the tile
+     */
+    void completeTile(Tile tile, AccumulationBuffer samples) {
+        accumulation.add(samples, tile.x() - region.x(), tile.y() - region.y());
+        int[] tileRGB = new int[tile.getPixelCount()];
+        for(int y = tile.y(); y < tile.y() + tile.height(); y++) {
+            for(int x = tile.x(); x < tile.x() + tile.width(); x++) {
+                int index = getPixelIndex(x, y);
+                tileRGB[(y - tile.y()) * tile.width() + (x - tile.x())] = Scene.previewRGB(accumulation.getMeanRed(index), accumulation.getMeanGreen(index), accumulation.getMeanBlue(index));
+            }
+        }
+        image.setRGB(tile.x() - region.x(), tile.y() - region.y(), tile.width(), tile.height(), tileRGB, 0, tile.width());
+        if(!settings.isProgressive())
+            progress.complete(tile.getPixelCount());
+        releaseTile(tile, true);
+    }
+
+    /**
+     * Releases a tile that could not be traced and aborts the job
+     * @param tile tile acquired from {@link #acquireTile(int)}
+     * @param cause reason the tile failed
+     */
+    void failTile(Tile tile, Throwable cause) {
+        synchronized(this) {
+            if(failure == null)
+                failure = cause;
+        }
+        cancelListener.cancel();
+        releaseTile(tile, false);
+    }
+
+    /**
+     * Releases a tile that will not be traced because the job was cancelled
+     * @param tile tile acquired from {@link #acquireTile(int)}
+     */
+    void abandonTile(Tile tile) {
+        releaseTile(tile, false);
+    }
+
+    /**
+     * Gives a tile back once its trace has ended
+     * @param finished whether every pixel of the tile was traced
+     */
+    synchronized void releaseTile(Tile tile, boolean finished) {
+        if(finished)
+            completedTiles.set(tile.index());
+        tilesInFlight--;
+        if(tilesInFlight == 0)
+            notifyAll();
+    }
+
+    private synchronized void wakeDriver() {
+        notifyAll();
+    }
+
+    public void cancel() {
+        cancelListener.cancel();
+    }
+
+    public boolean isCanceled() {
+        return cancelListener.isCanceled();
+    }
+
+    /**
+     * Accepts the image rendered so far; a progressive job stops after the current pass
+     */
+    public void accept() {
+        cancelListener.accept();
+    }
+
+    public boolean isAccepted() {
+        return cancelListener.isAccepted();
+    }
+
+    public RenderCancelListener getCancelListener() {
+        return cancelListener;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getPriority() {
+        return settings.getPriority();
+    }
+
+    public Scene getScene() {
+        return scene;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public synchronized int getCompletedPasses() {
+        return completedPasses;
+    }
+
+    public RenderSettings getSettings() {
+        return settings;
+    }
+
+    public RenderProgress getProgress() {
+        return progress;
+    }
+
+    /**
+     * @return the rectangle of the camera image this job renders
+     */
+    public CropRegion getRegion() {
+        return region;
+    }
+
+    /**
+     * @return index into the job's framebuffers of a pixel given in camera image coordinates
+     */
+    int getPixelIndex(int x, int y) {
+        return (y - region.y()) * region.width() + (x - region.x());
+    }
+
+    /**
+     * @return the rendered pixels of the job's region
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    AccumulationBuffer getAccumulation() {
+        return accumulation;
+    }
+
+    TileScheduler getTiles() {
+        return tiles;
+    }
+}
@@ -0,0 +1,78 @@
+package me.jacksonhoggard.raydream.render;
+
+import me.jacksonhoggard.raydream.util.ProgressListener;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks how much of a render has completed and forwards throttled updates to a {@link ProgressListener}.
+ * Workers report finished work without taking any lock; at most one worker per interval wins the
+ * right to invoke the listener, and it does so outside of any shared critical section.
+ */
+public class RenderProgress {
+
+    private final long totalWork;
+    private final LongAdder completed = new LongAdder();
+    private final AtomicLong nextUpdateTime;
+    private final long intervalNanos;
+    private final ProgressListener listener;
+    private final BufferedImage image;
+    private volatile int lastReported = -1;
+
+    /**
+     * @param totalWork amount of work in the render, for example the number of pixels
+     * @param intervalMillis minimum time between two listener callbacks
+     * @param listener listener receiving updates, may be null
+     * @param image preview image passed to the listener
+     */
+    public RenderProgress(long totalWork, long intervalMillis, ProgressListener listener, BufferedImage image) {
+        this.totalWork = Math.max(1, totalWork);
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.nextUpdateTime = new AtomicLong(System.nanoTime() + intervalNanos);
+        this.listener = listener;
+        this.image = image;
+    }
+
+    /**
+     * Records finished work and notifies the listener if the update interval has elapsed.
+     * Progress reported this way stays below 100 percent; call {@link #finish()} once the render is done.
+     * @param amount amount of work completed since the last call
+     */
+    public void complete(long amount) {
+        completed.add(amount);
+        long now = System.nanoTime();
+        long scheduled = nextUpdateTime.get();
+        if (now - scheduled >= 0 && nextUpdateTime.compareAndSet(scheduled, now + intervalNanos)) {
+            report(Math.min(99, getPercent()));
+        }
+    }
+
+    /**
+     * Reports completion to the listener.
+     */
+    public void finish() {
+        report(100);
+    }
+
+    /**
+     * @return completed work as a percentage of the total
+     */
+    public int getPercent() {
+        return (int) (completed.sum() * 100 / totalWork);
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    private void report(int percent) {
+        if (listener == null || percent < lastReported) {
+            return;
+        }
+        lastReported = percent;
+        listener.progressUpdated(percent, image);
+    }
+}
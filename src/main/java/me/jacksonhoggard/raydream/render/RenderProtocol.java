@@ -0,0 +1,149 @@
+package me.jacksonhoggard.raydream.render;
+
+import me.jacksonhoggard.raydream.util.io.ProjectReader;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Message types and encodings spoken between a {@link RenderCoordinator} and its {@link RenderWorker}s.
+ * <p>
+ * A worker opens the connection and sends {@link #MAGIC}, {@link #VERSION} and its thread count. The coordinator
+ * answers with the project bundle, the worker replies {@link #READY} once the scene is loaded, and from then on
+ * the coordinator sends job settings and tiles while the worker streams back the raw samples of each tile.
+ * All values are big-endian as written by {@link DataOutputStream}.
+ */
+final class RenderProtocol {
+
+    static final int MAGIC = 0x52445257; // "RDRW"
+    static final int VERSION = 1;
+
+    // Coordinator to worker
+    static final int SCENE = 1;
+    static final int JOB = 2;
+    static final int TILE = 3;
+
+    // Worker to coordinator
+    static final int READY = 10;
+    static final int ERROR = 11;
+    static final int RESULT = 12;
+    static final int FAILED = 13;
+
+    private RenderProtocol() {
+    }
+
+    /**
+     * Streams a project file together with the models and textures it references. Referenced files outside
+     * the project directory and the excluded files, such as render outputs, are left out. Each file is copied
+     * straight from disk, so the bundle is never held in memory.
+     * @param out stream receiving the {@link #SCENE} message
+     * @param projectFile project file to ship
+     * @param excluded absolute, normalized paths of files in the project directory not to ship
+     * @throws IOException if a file cannot be read or writing fails
+     */
+    static void writeBundle(DataOutputStream out, Path projectFile, Set<Path> excluded) throws IOException {
+        Path project = projectFile.toAbsolutePath().normalize();
+        Path directory = project.getParent();
+        List<Path> files = new ArrayList<>();
+        files.add(project);
+        for(Path file : ProjectReader.referencedFiles(project)) {
+            if(file.startsWith(directory) && !excluded.contains(file))
+                files.add(file);
+        }
+        out.writeByte(SCENE);
+        out.writeUTF(toEntryName(directory.relativize(project)));
+        out.writeInt(files.size());
+        byte[] buffer = new byte[8192];
+        for(Path file : files) {
+            out.writeUTF(toEntryName(directory.relativize(file)));
+            long remaining = Files.size(file);
+            out.writeLong(remaining);
+            // Exactly the announced length, in case the file changes while it is sent
+            try(InputStream in = Files.newInputStream(file)) {
+                while(remaining > 0) {
+                    int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if(read < 0)
+                        throw new IOException("Project file shrank while it was sent: " + file);
+                    out.write(buffer, 0, read);
+                    remaining -= read;
+                }
+            }
+        }
+    }
+
+    /**
+     * Unpacks a bundle written by {@link #writeBundle(DataOutputStream, Path, Set)}, after its message type has been read
+     * @param in stream positioned after the message type
+     * @param directory directory receiving the files
+     * @return path of the unpacked project file
+     * @throws IOException if a file cannot be written or an entry points outside the directory
+     */
+    static Path unbundle(DataInputStream in, Path directory) throws IOException {
+        Path projectFile = resolveEntry(directory, in.readUTF());
+        int count = in.readInt();
+        byte[] buffer = new byte[8192];
+        for(int k = 0; k < count; k++) {
+            Path file = resolveEntry(directory, in.readUTF());
+            long remaining = in.readLong();
+            Files.createDirectories(file.getParent());
+            try(var out = Files.newOutputStream(file)) {
+                while(remaining > 0) {
+                    int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if(read < 0)
+                        throw new IOException("Project bundle ended early");
+                    out.write(buffer, 0, read);
+                    remaining -= read;
+                }
+            }
+        }
+        return projectFile;
+    }
+
+    static void writeSettings(DataOutputStream out, RenderSettings settings) throws IOException {
+        out.writeInt(settings.getSampleDepth());
+        out.writeInt(settings.getBounces());
+        out.writeInt(settings.getNumShadowRays());
+    }
+
+    static RenderSettings readSettings(DataInputStream in) throws IOException {
+        return new RenderSettings(in.readInt(), in.readInt(), in.readInt(), 1);
+    }
+
+    static void writeTile(DataOutputStream out, Tile tile) throws IOException {
+        out.writeInt(tile.index());
+        out.writeInt(tile.x());
+        out.writeInt(tile.y());
+        out.writeInt(tile.width());
+        out.writeInt(tile.height());
+    }
+
+    static Tile readTile(DataInputStream in) throws IOException {
+        return new Tile(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+    }
+
+    /**
+     * Reads the next message type
+     * @return the message type, or -1 if the peer closed the connection
+     */
+    static int readType(InputStream in) throws IOException {
+        return in.read();
+    }
+
+    private static String toEntryName(Path relative) {
+        return relative.toString().replace('\\', '/');
+    }
+
+    private static Path resolveEntry(Path directory, String name) throws IOException {
+        Path file = directory.resolve(name).normalize();
+        if(!file.startsWith(directory.normalize()))
+            throw new IOException("Project bundle entry outside of the project: " + name);
+        return file;
+    }
+}
@@ -0,0 +1,147 @@
+package me.jacksonhoggard.raydream.render;
+
+import me.jacksonhoggard.raydream.config.ApplicationConfig;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shares one work-stealing pool between every running {@link RenderJob}.
+ * Workers repeatedly pick a job according to the scheduling policy, trace one of its tiles and pick again,
+ * so the pool never runs more threads than it was created with no matter how many jobs are active.
+ */
+public class RenderScheduler implements TileExecutor {
+
+    /**
+     * How workers choose between several active jobs
+     */
+    public enum Policy {
+        /**
+         * Jobs take turns tile by tile regardless of their priority
+         */
+        FAIR,
+        /**
+         * Jobs with the highest priority get every free worker; jobs of equal priority take turns
+         */
+        PRIORITY
+    }
+
+    private static final RenderScheduler defaultScheduler = new RenderScheduler(ApplicationConfig.DEFAULT_THREAD_COUNT, Policy.PRIORITY);
+
+    private final ForkJoinPool pool;
+    private final int parallelism;
+    private final Policy policy;
+    private final CopyOnWriteArrayList<RenderJob> jobs = new CopyOnWriteArrayList<>();
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private final AtomicInteger turn = new AtomicInteger();
+
+    public RenderScheduler(int parallelism, Policy policy) {
+        if(parallelism <= 0)
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        this.parallelism = parallelism;
+        this.policy = policy;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * @return the scheduler shared by all jobs that were not given one explicitly
+     */
+    public static RenderScheduler getDefault() {
+        return defaultScheduler;
+    }
+
+    /**
+     * Makes the tiles of a job available to the workers and starts workers as needed
+     */
+    @Override
+    public void register(RenderJob job) {
+        jobs.addIfAbsent(job);
+        signal();
+    }
+
+    @Override
+    public void unregister(RenderJob job) {
+        jobs.remove(job);
+    }
+
+    private void signal() {
+        int workers;
+        while((workers = activeWorkers.get()) < parallelism) {
+            if(activeWorkers.compareAndSet(workers, workers + 1))
+                pool.execute(this::work);
+        }
+    }
+
+    private void work() {
+        while(true) {
+            RenderJob job;
+            Tile tile;
+            while((job = nextJob()) != null && (tile = job.acquireTile()) != null)
+                job.renderTile(tile);
+            activeWorkers.decrementAndGet();
+            // A job registered after the last check but before the decrement would otherwise be missed
+            if(!hasWork())
+                return;
+            int workers = activeWorkers.get();
+            if(workers >= parallelism || !activeWorkers.compareAndSet(workers, workers + 1))
+                return;
+        }
+    }
+
+    private boolean hasWork() {
+        for(RenderJob job : jobs) {
+            if(job.hasWork())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Picks the job the next tile is taken from. Jobs are visited starting at a rotating offset so that
+     * jobs eligible under the policy take turns.
+     * @return a job with work available, or null if there is none
+     */
+    private RenderJob nextJob() {
+        RenderJob[] snapshot = jobs.toArray(new RenderJob[0]);
+        if(snapshot.length == 0)
+            return null;
+        boolean byPriority = policy == Policy.PRIORITY;
+        int priority = Integer.MIN_VALUE;
+        if(byPriority) {
+            boolean found = false;
+            for(RenderJob job : snapshot) {
+                if(job.hasWork() && (!found || job.getPriority() > priority)) {
+                    priority = job.getPriority();
+                    found = true;
+                }
+            }
+            if(!found)
+                return null;
+        }
+        int start = Math.floorMod(turn.getAndIncrement(), snapshot.length);
+        for(int k = 0; k < snapshot.length; k++) {
+            RenderJob job = snapshot[(start + k) % snapshot.length];
+            if(byPriority && job.getPriority() != priority)
+                continue;
+            if(job.hasWork())
+                return job;
+        }
+        return null;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return the number of jobs that currently have a pass in progress
+     */
+    public int getActiveJobCount() {
+        return jobs.size();
+    }
+}
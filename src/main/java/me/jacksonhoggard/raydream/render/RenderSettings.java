@@ -0,0 +1,300 @@
+package me.jacksonhoggard.raydream.render;
+
+import me.jacksonhoggard.raydream.acceleration.SplitMethod;
+import me.jacksonhoggard.raydream.config.ApplicationConfig;
+
+/**
+ * Parameters controlling a single render of a {@link Scene}.
+ * Setters return this instance so settings can be chained.
+ */
+public class RenderSettings {
+
+    private int sampleDepth = 1;
+    private int bounces = ApplicationConfig.DEFAULT_MAX_BOUNCE_DEPTH;
+    private int numShadowRays = 1;
+    private int threads = ApplicationConfig.DEFAULT_THREAD_COUNT;
+    private int tileSize = ApplicationConfig.DEFAULT_TILE_SIZE;
+    private TileOrder tileOrder = TileOrder.SPIRAL;
+    private int passes = 0;
+    private int samplesPerPass = 1;
+    private double noiseTarget = 0.0;
+    private long timeBudget = 0;
+    private int priority = 0;
+    private String checkpointFile = null;
+    private long checkpointInterval = ApplicationConfig.CHECKPOINT_INTERVAL_MS;
+    private CropRegion crop = null;
+    private boolean composite = false;
+    private SplitMethod meshSplitMethod = SplitMethod.SAH;
+    private boolean lazyMeshes = false;
+    private int bvhWidth = ApplicationConfig.BVH_WIDTH;
+    private boolean traversalStatistics = false;
+
+    public RenderSettings() {
+    }
+
+    public RenderSettings(int sampleDepth, int bounces, int numShadowRays, int threads) {
+        this.sampleDepth = sampleDepth;
+        this.bounces = bounces;
+        this.numShadowRays = numShadowRays;
+        this.threads = threads;
+    }
+
+    public int getSampleDepth() {
+        return sampleDepth;
+    }
+
+    public RenderSettings setSampleDepth(int sampleDepth) {
+        this.sampleDepth = sampleDepth;
+        return this;
+    }
+
+    public int getBounces() {
+        return bounces;
+    }
+
+    public RenderSettings setBounces(int bounces) {
+        this.bounces = bounces;
+        return this;
+    }
+
+    public int getNumShadowRays() {
+        return numShadowRays;
+    }
+
+    public RenderSettings setNumShadowRays(int numShadowRays) {
+        this.numShadowRays = numShadowRays;
+        return this;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public RenderSettings setThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public RenderSettings setTileSize(int tileSize) {
+        this.tileSize = tileSize;
+        return this;
+    }
+
+    public TileOrder getTileOrder() {
+        return tileOrder;
+    }
+
+    public RenderSettings setTileOrder(TileOrder tileOrder) {
+        this.tileOrder = tileOrder;
+        return this;
+    }
+
+    /**
+     * @return true if the frame is rendered in progressive passes rather than tile by tile
+     */
+    public boolean isProgressive() {
+        return passes > 0 || timeBudget > 0;
+    }
+
+    public int getPasses() {
+        return passes;
+    }
+
+    /**
+     * Sets the number of progressive passes to render. Zero disables progressive mode.
+     * @param passes target pass count
+     * @return this settings instance
+     */
+    public RenderSettings setPasses(int passes) {
+        this.passes = passes;
+        return this;
+    }
+
+    public int getSamplesPerPass() {
+        return samplesPerPass;
+    }
+
+    public RenderSettings setSamplesPerPass(int samplesPerPass) {
+        this.samplesPerPass = samplesPerPass;
+        return this;
+    }
+
+    public double getNoiseTarget() {
+        return noiseTarget;
+    }
+
+    /**
+     * Sets the noise level at which a progressive render stops early. Zero disables the noise target.
+     * @param noiseTarget root mean square standard error of pixel luminance
+     * @return this settings instance
+     */
+    public RenderSettings setNoiseTarget(double noiseTarget) {
+        this.noiseTarget = noiseTarget;
+        return this;
+    }
+
+    public long getTimeBudget() {
+        return timeBudget;
+    }
+
+    /**
+     * @return true if the render runs progressive passes until its time budget is spent
+     */
+    public boolean isTimeBudgeted() {
+        return timeBudget > 0;
+    }
+
+    /**
+     * Sets a wall-clock budget for the render. The frame is then rendered in progressive passes until the budget
+     * is spent, with later passes only sampling the pixels that are still noisy, and the pass count is ignored.
+     * The first pass always completes so every pixel has a sample. A resumed render gets the full budget again.
+     * Zero disables the time budget.
+     * @param timeBudget budget in milliseconds
+     * @return this settings instance
+     */
+    public RenderSettings setTimeBudget(long timeBudget) {
+        this.timeBudget = timeBudget;
+        return this;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Sets the scheduling priority of the render. When several renders share a {@link RenderScheduler}
+     * with the priority policy, tiles of higher priority renders are handed out first.
+     * @param priority scheduling priority, higher runs first
+     * @return this settings instance
+     */
+    public RenderSettings setPriority(int priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    public String getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    /**
+     * Sets the file the render periodically saves its state to so it can be resumed with
+     * {@link Scene#resume}. Null disables checkpointing.
+     * @param checkpointFile path of the checkpoint file
+     * @return this settings instance
+     */
+    public RenderSettings setCheckpointFile(String checkpointFile) {
+        this.checkpointFile = checkpointFile;
+        return this;
+    }
+
+    public long getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * Sets the minimum time between two checkpoints. Progressive renders only save between passes.
+     * @param checkpointInterval interval in milliseconds
+     * @return this settings instance
+     */
+    public RenderSettings setCheckpointInterval(long checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+        return this;
+    }
+
+    public CropRegion getCrop() {
+        return crop;
+    }
+
+    /**
+     * Restricts the render to a rectangle of the camera image. Only rays for pixels inside it are traced.
+     * @param crop pixel rectangle to render, or null for the full frame
+     * @return this settings instance
+     */
+    public RenderSettings setCrop(CropRegion crop) {
+        this.crop = crop;
+        return this;
+    }
+
+    public boolean isComposite() {
+        return composite;
+    }
+
+    /**
+     * Sets whether a cropped render is pasted over the existing image at the output path instead of
+     * being written as an image of its own.
+     * @param composite true to composite the crop into the existing output
+     * @return this settings instance
+     */
+    public RenderSettings setComposite(boolean composite) {
+        this.composite = composite;
+        return this;
+    }
+
+    public SplitMethod getMeshSplitMethod() {
+        return meshSplitMethod;
+    }
+
+    /**
+     * Sets how mesh hierarchies are built for models that do not choose their own split method.
+     * {@link SplitMethod#SPATIAL} speeds up meshes with large or thin triangles at the cost of a slower build.
+     * @param meshSplitMethod split method of the mesh hierarchies
+     * @return this settings instance
+     */
+    public RenderSettings setMeshSplitMethod(SplitMethod meshSplitMethod) {
+        this.meshSplitMethod = meshSplitMethod;
+        return this;
+    }
+
+    public boolean isLazyMeshes() {
+        return lazyMeshes;
+    }
+
+    /**
+     * Sets whether mesh hierarchies are built when a ray first reaches them instead of before the render
+     * starts. The first pixels appear sooner and meshes no ray reaches are never built.
+     * @param lazyMeshes true to build mesh hierarchies on demand
+     * @return this settings instance
+     */
+    public RenderSettings setLazyMeshes(boolean lazyMeshes) {
+        this.lazyMeshes = lazyMeshes;
+        return this;
+    }
+
+    public int getBvhWidth() {
+        return bvhWidth;
+    }
+
+    /**
+     * Sets how many children every node of the scene and mesh hierarchies has. Wide hierarchies test the
+     * boxes of all children together, with SIMD instructions when the application is started with
+     * {@code --add-modules jdk.incubator.vector}.
+     * @param bvhWidth two for binary hierarchies, four or eight for wide ones
+     * @return this settings instance
+     * @throws IllegalArgumentException for any other width
+     */
+    public RenderSettings setBvhWidth(int bvhWidth) {
+        if(bvhWidth != 2 && bvhWidth != 4 && bvhWidth != 8)
+            throw new IllegalArgumentException("BVH nodes have two, four or eight children: " + bvhWidth);
+        this.bvhWidth = bvhWidth;
+        return this;
+    }
+
+    public boolean isTraversalStatistics() {
+        return traversalStatistics;
+    }
+
+    /**
+     * Sets whether the nodes visited, primitives tested and hits of every ray are counted and logged
+     * when the render completes. Counting slows tracing down slightly.
+     * @param traversalStatistics true to collect traversal statistics
+     * @return this settings instance
+     */
+    public RenderSettings setTraversalStatistics(boolean traversalStatistics) {
+        this.traversalStatistics = traversalStatistics;
+        return this;
+    }
+}
@@ -0,0 +1,170 @@
+package me.jacksonhoggard.raydream.render;
+
+import me.jacksonhoggard.raydream.config.ApplicationConfig;
+import me.jacksonhoggard.raydream.core.ApplicationContext;
+import me.jacksonhoggard.raydream.util.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Traces tiles for a {@link RenderCoordinator}. The worker connects to the coordinator, unpacks the project
+ * it receives into a temporary directory, loads it with a {@link SceneLoader} and then traces the tiles it is
+ * handed, up to one per thread at a time, until the coordinator closes the connection.
+ */
+public class RenderWorker {
+    private static final Logger logger = ApplicationContext.getInstance().getLoggingService().getLogger(RenderWorker.class);
+
+    private final String host;
+    private final int port;
+    private final int threads;
+    private final SceneLoader loader;
+
+    public RenderWorker(String host, int port, int threads, SceneLoader loader) {
+        if(threads <= 0)
+            throw new IllegalArgumentException("Thread count must be positive: " + threads);
+        this.host = host;
+        this.port = port;
+        this.threads = threads;
+        this.loader = loader;
+    }
+
+    /**
+     * Connects to the coordinator and traces tiles until it closes the connection
+     * @throws IOException if the connection fails or the project cannot be unpacked
+     */
+    public void run() throws IOException {
+        Path directory = Files.createTempDirectory("raydream-worker");
+        ExecutorService tracers = Executors.newFixedThreadPool(threads);
+        try(Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(RenderProtocol.MAGIC);
+            out.writeInt(RenderProtocol.VERSION);
+            out.writeInt(threads);
+            out.flush();
+            logger.info("Connected to render coordinator at " + host + ":" + port);
+
+            Scene scene = null;
+            int jobId = -1;
+            RenderSettings settings = null;
+            int type;
+            while((type = RenderProtocol.readType(in)) >= 0) {
+                switch(type) {
+                    case RenderProtocol.SCENE -> {
+                        Path projectFile = RenderProtocol.unbundle(in, directory);
+                        try {
+                            scene = loader.load(projectFile);
+                        } catch (IOException | RuntimeException e) {
+                            logger.error("Failed to load " + projectFile, e);
+                            out.writeByte(RenderProtocol.ERROR);
+                            out.writeUTF(String.valueOf(e.getMessage()));
+                            out.flush();
+                            return;
+                        }
+                        out.writeByte(RenderProtocol.READY);
+                        out.flush();
+                        logger.info("Loaded " + projectFile.getFileName() + ", waiting for tiles");
+                    }
+                    case RenderProtocol.JOB -> {
+                        jobId = in.readInt();
+                        settings = RenderProtocol.readSettings(in);
+                    }
+                    case RenderProtocol.TILE -> {
+                        int tileJobId = in.readInt();
+                        Tile tile = RenderProtocol.readTile(in);
+                        if(scene == null || settings == null || tileJobId != jobId)
+                            throw new IOException("Tile received before its scene or job");
+                        Scene tileScene = scene;
+                        RenderSettings tileSettings = settings;
+                        tracers.execute(() -> trace(socket, out, tileScene, tileSettings, tileJobId, tile));
+                    }
+                    default -> throw new IOException("Unexpected message from render coordinator: " + type);
+                }
+            }
+            logger.info("Render coordinator closed the connection");
+        } finally {
+            tracers.shutdownNow();
+            deleteDirectory(directory);
+        }
+    }
+
+    private void trace(Socket socket, DataOutputStream out, Scene scene, RenderSettings settings, int jobId, Tile tile) {
+        AccumulationBuffer samples = null;
+        String failure = null;
+        try {
+            // One tracing thread per tile; the worker's parallelism comes from tracing several tiles at once
+            samples = scene.trace(new RenderSettings(settings.getSampleDepth(), settings.getBounces(), settings.getNumShadowRays(), 1)
+                    .setTileSize(Math.max(tile.width(), tile.height()))
+                    .setCrop(new CropRegion(tile.x(), tile.y(), tile.width(), tile.height())));
+        } catch (RuntimeException e) {
+            logger.error("Failed to trace tile " + tile.index(), e);
+            failure = String.valueOf(e.getMessage());
+        }
+        try {
+            synchronized(out) {
+                if(samples != null) {
+                    out.writeByte(RenderProtocol.RESULT);
+                    out.writeInt(jobId);
+                    out.writeInt(tile.index());
+                    out.writeInt(samples.getWidth());
+                    out.writeInt(samples.getHeight());
+                    samples.write(out);
+                } else {
+                    out.writeByte(RenderProtocol.FAILED);
+                    out.writeInt(jobId);
+                    out.writeInt(tile.index());
+                    out.writeUTF(failure);
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            // The coordinator hands the tile to another worker once it notices the dropped connection
+            logger.warn("Failed to send tile " + tile.index() + ": " + e.getMessage());
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static void deleteDirectory(Path directory) {
+        try(Stream<Path> walk = Files.walk(directory)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            logger.warn("Failed to delete " + directory);
+        }
+    }
+
+    /**
+     * Usage: {@code RenderWorker <host>[:port] [threads] [scene loader class]}
+     */
+    public static void main(String[] args) throws Exception {
+        if(args.length < 1) {
+            System.err.println("Usage: RenderWorker <host>[:port] [threads] [scene loader class]");
+            System.exit(1);
+        }
+        String host = args[0];
+        int port = ApplicationConfig.DISTRIBUTED_PORT;
+        int separator = host.lastIndexOf(':');
+        if(separator >= 0) {
+            port = Integer.parseInt(host.substring(separator + 1));
+            host = host.substring(0, separator);
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : ApplicationConfig.DEFAULT_THREAD_COUNT;
+        SceneLoader loader = SceneLoader.create(args.length > 2 ? args[2] : SceneLoader.DEFAULT);
+        new RenderWorker(host, port, threads, loader).run();
+        System.exit(0);
+    }
+}
@@ -1,6 +1,10 @@
 package me.jacksonhoggard.raydream.render;
 
+import me.jacksonhoggard.raydream.acceleration.BVHStatistics;
 import me.jacksonhoggard.raydream.acceleration.ImprovedBVH;
+import me.jacksonhoggard.raydream.acceleration.OccluderCache;
+import me.jacksonhoggard.raydream.acceleration.RayPacket;
+import me.jacksonhoggard.raydream.acceleration.TraversalStatistics;
 import me.jacksonhoggard.raydream.config.ApplicationConfig;
 import me.jacksonhoggard.raydream.core.ApplicationContext;
 import me.jacksonhoggard.raydream.light.Light;
@@ -16,19 +20,14 @@ import me.jacksonhoggard.raydream.util.ProgressListener;
 import me.jacksonhoggard.raydream.util.Util;
 
 import javax.imageio.ImageIO;
-import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.IdentityHashMap;
+import java.util.Set;
 
 public class Scene {
     private static final Logger logger = ApplicationContext.getInstance().getLoggingService().getLogger(Scene.class);
@@ -39,127 +38,101 @@ public class Scene {
     private final Object[] objects;
     private final Vector3D skyColor;
     private final ImprovedBVH bvh;
-    private final BufferedImage image;
     private final int width;
     private final int height;
-    private int threadCounter;
-    private int renderProgress;
-    private ProgressListener progressListener;
-    private static ExecutorService pool;
-    private static final RenderCancelListener renderCancelListener = new RenderCancelListener() {
-        public boolean canceled = false;
-
-        @Override
-        public void cancel() {
-            canceled = true;
-            pool.shutdownNow();
-        }
-
-        @Override
-        public boolean isCanceled() {
-            return canceled;
-        }
-
-        @Override
-        public void setCanceled(boolean canceled) {
-            this.canceled = canceled;
-        }
-    };
-    private static final Lock lock = new ReentrantLock();
 
     public Scene(Camera camera, Light ambient, Light[] lights, Object[] objects, Vector3D skyColor, int width, int height) {
+        this(camera, ambient, lights, objects, skyColor, width, height, new ImprovedBVH(Arrays.asList(objects)));
+    }
+
+    /**
+     * @param bvh hierarchy over exactly the given objects, such as one refit from an earlier render
+     */
+    public Scene(Camera camera, Light ambient, Light[] lights, Object[] objects, Vector3D skyColor, int width, int height, ImprovedBVH bvh) {
         this.camera = camera;
         this.ambient = ambient;
         this.lights = lights;
         this.objects = objects;
         this.skyColor = skyColor;
-        this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
         this.width = width;
         this.height = height;
-        this.threadCounter = width * height;
-        this.renderProgress = 0;
-        this.bvh = new ImprovedBVH(Arrays.asList(objects));
+        this.bvh = bvh;
     }
 
     public void render(String filename, int sampleDepth, int bounces, int numShadowRays, int threads, ProgressListener listener) throws IOException {
-        progressListener = listener;
-        long startTime = System.nanoTime();
+        render(filename, new RenderSettings(sampleDepth, bounces, numShadowRays, threads), listener);
+    }
 
-        renderCancelListener.setCanceled(false);
-        pool = Executors.newFixedThreadPool(threads);
-        List<Vector3D> pixelColors = new ArrayList<>();
-        List<TraceRayTask> tasks = new ArrayList<>();
+    public void render(String filename, RenderSettings settings, ProgressListener listener) throws IOException {
+        new RenderJob(this, filename, settings, listener).run();
+    }
 
-        for(int j = 0; j < height; j++) {
-            for(int i = 0; i < width; i++) {
-                pixelColors.add(new Vector3D());
-                tasks.add(new TraceRayTask(pixelColors.getLast(), bounces, sampleDepth, numShadowRays, i, j));
-            }
-        }
-        Collections.shuffle(tasks);
-        for(TraceRayTask task : tasks) {
-            pool.execute(task);
-        }
-        pool.shutdown();
-        try {
-            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-        } catch (InterruptedException e) {
-            throw new RuntimeException("Thread shutdown interrupted:", e);
-        }
+    /**
+     * Continues a render from a checkpoint written by an earlier, interrupted render of this scene.
+     * The settings and output file are taken from the checkpoint, which keeps being updated while rendering.
+     * @param checkpointFile path of the checkpoint file
+     * @param listener listener receiving progress updates
+     * @throws IOException if the checkpoint cannot be read or the output image could not be written
+     */
+    public void resume(String checkpointFile, ProgressListener listener) throws IOException {
+        RenderCheckpoint checkpoint = RenderCheckpoint.read(Path.of(checkpointFile));
+        logger.info("Resuming render of " + checkpoint.getFilename() + " from " + checkpointFile);
+        new RenderJob(this, checkpoint, listener, RenderScheduler.getDefault()).run();
+    }
+
+    /**
+     * Traces the crop region of the settings, or the full frame, and returns the accumulated samples
+     * without tone mapping or writing any output. Used by distributed render workers.
+     * @param settings settings of the render, including the region to trace
+     * @return the samples of every pixel in the region
+     */
+    public AccumulationBuffer trace(RenderSettings settings) {
+        RenderJob job = new RenderJob(this, null, settings, null);
+        job.runPass();
+        return job.getAccumulation();
+    }
 
-        if(renderCancelListener.isCanceled()) {
+    /**
+     * Renders a job on the calling thread. The tiles are traced by the workers of the job's scheduler
+     * while this thread waits for each pass, then tone maps and writes the output image.
+     * Several jobs may render the same scene at the same time.
+     * @param job job holding the settings, framebuffers and cancellation state of this render
+     * @throws IOException if the output image could not be written
+     */
+    void render(RenderJob job) throws IOException {
+        long startTime = System.nanoTime();
+        logBuildStatistics(job.getSettings().isTraversalStatistics());
+
+        if(job.getSettings().isProgressive())
+            renderProgressive(job);
+        else
+            job.runPass();
+
+        if(job.isCanceled()) {
+            // Keep what has been rendered so far so the render can be resumed later
+            job.saveCheckpoint();
             logger.info("Render cancelled by user");
             return;
         }
+        job.getProgress().finish();
+        CropRegion region = job.getRegion();
 
-        int k = 0;
-        Vector3D[][] imageData = new Vector3D[height][width];
-        
-        // First pass: tone mapping and gamma correction
-        for(int j = 0; j < height; j++) {
-            for(int i = 0; i < width; i++) {
-                Vector3D pixelColor = pixelColors.get(k++);
-                
-                // Apply tone mapping to handle HDR values better
-                pixelColor.x = toneMap(pixelColor.x);
-                pixelColor.y = toneMap(pixelColor.y);
-                pixelColor.z = toneMap(pixelColor.z);
-                
-                imageData[j][i] = new Vector3D(pixelColor);
-            }
-        }
+        // First pass: tone mapping, read in place from the accumulation buffer
+        float[][] imageData = toneMap(job.getAccumulation());
         
         // Apply bilateral denoising filter for high DOF scenes
         if(camera.getAperture() > 5.0) {
-            imageData = applyBilateralFilter(imageData, width, height);
+            imageData = applyBilateralFilter(imageData, region.width(), region.height());
         }
         
-        // Second pass: dithering and final color conversion
-        for(int j = 0; j < height; j++) {
-            for(int i = 0; i < width; i++) {
-                Vector3D pixelColor = imageData[j][i];
-                
-                // Apply dithering to reduce banding artifacts
-                pixelColor.x = Util.applyDithering(pixelColor.x, i, j);
-                pixelColor.y = Util.applyDithering(pixelColor.y, i, j);
-                pixelColor.z = Util.applyDithering(pixelColor.z, i, j);
-                
-                // Apply gamma correction for more accurate color display
-                double invGamma = 1.0 / ApplicationConfig.GAMMA_CORRECTION;
-                double r = Math.pow(Math.min(Math.max(pixelColor.x, 0.0), 1.0), invGamma) * 255;
-                double g = Math.pow(Math.min(Math.max(pixelColor.y, 0.0), 1.0), invGamma) * 255;
-                double b = Math.pow(Math.min(Math.max(pixelColor.z, 0.0), 1.0), invGamma) * 255;
-                
-                // Round to prevent floating point artifacts
-                int red = Math.min(255, Math.max(0, (int) Math.round(r)));
-                int green = Math.min(255, Math.max(0, (int) Math.round(g)));
-                int blue = Math.min(255, Math.max(0, (int) Math.round(b)));
-                
-                image.setRGB(i, j, new Color(red, green, blue).getRGB());
-            }
-        }
-        File output = new File(filename);
-        ImageIO.write(image, "png", output);
+        // Second pass: dithering, gamma correction and final color conversion
+        encode(imageData, job.getImage(), region);
+        File output = new File(job.getFilename());
+        if(job.getSettings().isComposite() && !region.covers(width, height))
+            ImageIO.write(composite(job.getImage(), region, output), "png", output);
+        else
+            ImageIO.write(job.getImage(), "png", output);
+        job.deleteCheckpoint();
 
         long duration = System.nanoTime() - startTime;
         double durationSeconds = ((int) ((duration / 1e9D) * 100) / 100.0);
@@ -168,31 +141,222 @@ public class Scene {
             logger.info("Render completed in " + minutes + "m " + (float) (durationSeconds - (minutes * 60)) + "s");
         else
             logger.info("Render completed in " + durationSeconds + "s");
+        TraversalStatistics statistics = job.getTraversalStatistics();
+        if(statistics != null)
+            logger.info("Traversal: " + statistics);
+        if(job.getSettings().isLazyMeshes()) {
+            Set<Mesh> meshes = getMeshes();
+            long built = meshes.stream().filter(Mesh::isBuilt).count();
+            logger.info("Mesh hierarchies built on demand: " + built + " of " + meshes.size());
+        }
+    }
+
+    /**
+     * @return build statistics of the hierarchy over the objects of the scene
+     */
+    public BVHStatistics getStatistics() {
+        return bvh.getStatistics();
+    }
+
+    /**
+     * @return the distinct meshes of the models in the scene
+     */
+    private Set<Mesh> getMeshes() {
+        Set<Mesh> meshes = Collections.newSetFromMap(new IdentityHashMap<>());
+        for(Object object : objects) {
+            if(object instanceof Model model)
+                meshes.add(model.getMesh());
+        }
+        return meshes;
+    }
+
+    /**
+     * Logs the build statistics of the scene hierarchy and of every distinct mesh built so far
+     * @param info whether to log at info level rather than debug
+     */
+    private void logBuildStatistics(boolean info) {
+        StringBuilder text = new StringBuilder("Scene BVH: ").append(bvh.getStatistics());
+        for(Mesh mesh : getMeshes()) {
+            text.append(System.lineSeparator()).append("Mesh BVH ").append(mesh.path()).append(": ");
+            // Statistics must not build a lazy mesh that no ray may reach
+            text.append(mesh.isBuilt() ? mesh.bvh().getStatistics() : "built on demand");
+        }
+        if(info)
+            logger.info(text.toString());
+        else
+            logger.debug(text.toString());
+    }
+
+    /**
+     * Renders the whole frame in passes of a few samples per pixel into the running accumulation buffer,
+     * pushing the complete image to the listener after every pass. Stops once the target pass count is
+     * reached or the time budget is spent, the estimated noise drops below the noise target, or the user
+     * accepts the current image.
+     * <p>
+     * With a time budget, pixels whose standard error is well below the frame's average skip the next pass,
+     * so the remaining time goes to the pixels that are still noisy.
+     */
+    private void renderProgressive(RenderJob job) {
+        RenderSettings settings = job.getSettings();
+        boolean budgeted = settings.isTimeBudgeted();
+        long startTime = System.nanoTime();
+        long reportedMillis = 0;
+        if(budgeted)
+            job.startBudget();
+        for(int pass = job.getCompletedPasses() + 1; budgeted || pass <= settings.getPasses(); pass++) {
+            job.runPass();
+            if(job.isCanceled())
+                return;
+            job.passCompleted();
+            double noise = job.getAccumulation().estimateNoise();
+            if(budgeted) {
+                long elapsedMillis = Math.min(settings.getTimeBudget(), (System.nanoTime() - startTime) / 1_000_000);
+                job.getProgress().complete(elapsedMillis - reportedMillis);
+                reportedMillis = elapsedMillis;
+                job.setSampleThreshold(Double.isFinite(noise) ? noise * ApplicationConfig.ADAPTIVE_PASS_NOISE_FRACTION : 0.0);
+                logger.debug("Progressive pass " + pass + " finished after " + elapsedMillis + "ms of " + settings.getTimeBudget() + "ms, noise " + noise);
+            } else {
+                job.getProgress().complete(1);
+                logger.debug("Progressive pass " + pass + " of " + settings.getPasses() + " finished, noise " + noise);
+            }
+            if(job.isAccepted()) {
+                logger.info("Render accepted by user after " + pass + " passes");
+                return;
+            }
+            if(settings.getNoiseTarget() > 0 && noise <= settings.getNoiseTarget()) {
+                logger.info("Noise target reached after " + pass + " passes");
+                return;
+            }
+            if(budgeted && job.isPastDeadline()) {
+                logger.info("Time budget reached after " + pass + " passes");
+                return;
+            }
+        }
     }
 
     /**
      * Simple tone mapping to handle HDR values and reduce artifacts
      * Uses Reinhard tone mapping operator
      */
-    private double toneMap(double value) {
+    private static double toneMap(double value) {
         // Reinhard tone mapping: x / (1 + x)
         return value / (1.0 + value);
     }
 
+    /**
+     * Converts a linear pixel color to the packed ARGB value shown in progress previews
+     */
+    static int previewRGB(double red, double green, double blue) {
+        // Apply gamma correction for more accurate color display
+        double invGamma = 1.0 / ApplicationConfig.GAMMA_CORRECTION;
+        double r = Math.pow(Math.min(Math.max(toneMap(red), 0.0), 1.0), invGamma) * 255;
+        double g = Math.pow(Math.min(Math.max(toneMap(green), 0.0), 1.0), invGamma) * 255;
+        double b = Math.pow(Math.min(Math.max(toneMap(blue), 0.0), 1.0), invGamma) * 255;
+
+        // Round to prevent floating point artifacts
+        int ri = Math.min(255, Math.max(0, (int) Math.round(r)));
+        int gi = Math.min(255, Math.max(0, (int) Math.round(g)));
+        int bi = Math.min(255, Math.max(0, (int) Math.round(b)));
+        return 0xFF000000 | (ri << 16) | (gi << 8) | bi;
+    }
+
+    /**
+     * Tone maps the mean color of every pixel into planar red, green and blue channels
+     * @param accumulation buffer holding the accumulated samples
+     * @return tone mapped channels indexed as [channel][y * width + x]
+     */
+    private float[][] toneMap(AccumulationBuffer accumulation) {
+        int size = accumulation.getPixelCount();
+        float[][] channels = new float[3][size];
+        for(int k = 0; k < size; k++) {
+            channels[0][k] = (float) toneMap(accumulation.getMeanRed(k));
+            channels[1][k] = (float) toneMap(accumulation.getMeanGreen(k));
+            channels[2][k] = (float) toneMap(accumulation.getMeanBlue(k));
+        }
+        return channels;
+    }
+
+    /**
+     * Pastes a cropped render over the existing image at the output path.
+     * Falls back to a black frame if there is no existing image of the full frame size.
+     * @param crop rendered pixels of the region
+     * @param region position of the crop in the camera image
+     * @param output path of the existing full frame image
+     * @return the composited full frame image
+     */
+    private BufferedImage composite(BufferedImage crop, CropRegion region, File output) throws IOException {
+        BufferedImage frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage existing = output.isFile() ? ImageIO.read(output) : null;
+        if(existing != null && existing.getWidth() == width && existing.getHeight() == height) {
+            int[] row = new int[width];
+            for(int j = 0; j < height; j++) {
+                existing.getRGB(0, j, width, 1, row, 0, width);
+                frame.setRGB(0, j, width, 1, row, 0, width);
+            }
+        } else {
+            logger.warn("No " + width + "x" + height + " image at " + output + " to composite the crop over, writing it over a black frame");
+        }
+        int[] row = new int[region.width()];
+        for(int j = 0; j < region.height(); j++) {
+            crop.getRGB(0, j, region.width(), 1, row, 0, region.width());
+            frame.setRGB(region.x(), region.y() + j, region.width(), 1, row, 0, region.width());
+        }
+        return frame;
+    }
+
+    /**
+     * Applies dithering and gamma correction and writes the final colors into the output image row by row
+     * @param channels tone mapped planar color channels
+     * @param image image receiving the encoded colors
+     * @param region rectangle of the camera image the channels cover, which keeps the dither pattern aligned to the full frame
+     */
+    private void encode(float[][] channels, BufferedImage image, CropRegion region) {
+        double invGamma = 1.0 / ApplicationConfig.GAMMA_CORRECTION;
+        int width = region.width();
+        int height = region.height();
+        int[] row = new int[width];
+        for(int j = 0; j < height; j++) {
+            for(int i = 0; i < width; i++) {
+                int k = j * width + i;
+                
+                // Apply dithering to reduce banding artifacts
+                double x = Util.applyDithering(channels[0][k], region.x() + i, region.y() + j);
+                double y = Util.applyDithering(channels[1][k], region.x() + i, region.y() + j);
+                double z = Util.applyDithering(channels[2][k], region.x() + i, region.y() + j);
+                
+                // Apply gamma correction for more accurate color display
+                double r = Math.pow(Math.min(Math.max(x, 0.0), 1.0), invGamma) * 255;
+                double g = Math.pow(Math.min(Math.max(y, 0.0), 1.0), invGamma) * 255;
+                double b = Math.pow(Math.min(Math.max(z, 0.0), 1.0), invGamma) * 255;
+                
+                // Round to prevent floating point artifacts
+                int red = Math.min(255, Math.max(0, (int) Math.round(r)));
+                int green = Math.min(255, Math.max(0, (int) Math.round(g)));
+                int blue = Math.min(255, Math.max(0, (int) Math.round(b)));
+                
+                row[i] = 0xFF000000 | (red << 16) | (green << 8) | blue;
+            }
+            image.setRGB(0, j, width, 1, row, 0, width);
+        }
+    }
+
     /**
      * Apply bilateral filtering to reduce noise while preserving edges
      * Particularly effective for depth of field noise
      */
-    private Vector3D[][] applyBilateralFilter(Vector3D[][] imageData, int width, int height) {
-        Vector3D[][] filtered = new Vector3D[height][width];
+    private float[][] applyBilateralFilter(float[][] imageData, int width, int height) {
+        float[][] filtered = new float[3][width * height];
+        float[] red = imageData[0];
+        float[] green = imageData[1];
+        float[] blue = imageData[2];
         int filterRadius = ApplicationConfig.BILATERAL_FILTER_RADIUS;
         double spatialSigma = ApplicationConfig.BILATERAL_SPATIAL_SIGMA;
         double intensitySigma = ApplicationConfig.BILATERAL_INTENSITY_SIGMA;
         
         for(int y = 0; y < height; y++) {
             for(int x = 0; x < width; x++) {
-                Vector3D centerPixel = imageData[y][x];
-                Vector3D filteredColor = new Vector3D();
+                int center = y * width + x;
+                double sumR = 0.0, sumG = 0.0, sumB = 0.0;
                 double weightSum = 0.0;
                 
                 // Sample neighbors within filter radius
@@ -200,26 +364,35 @@ public class Scene {
                     for(int dx = -filterRadius; dx <= filterRadius; dx++) {
                         int ny = Math.max(0, Math.min(height - 1, y + dy));
                         int nx = Math.max(0, Math.min(width - 1, x + dx));
-                        Vector3D neighborPixel = imageData[ny][nx];
+                        int neighbor = ny * width + nx;
                         
                         // Spatial weight (based on distance)
                         double spatialDist = Math.sqrt(dx * dx + dy * dy);
                         double spatialWeight = Math.exp(-(spatialDist * spatialDist) / (2 * spatialSigma * spatialSigma));
                         
                         // Intensity weight (based on color similarity) - more aggressive for DOF
-                        double intensityDist = Vector3D.sub(centerPixel, neighborPixel).length();
+                        double dr = red[center] - red[neighbor];
+                        double dg = green[center] - green[neighbor];
+                        double db = blue[center] - blue[neighbor];
+                        double intensityDist = Math.sqrt(dr * dr + dg * dg + db * db);
                         double intensityWeight = Math.exp(-(intensityDist * intensityDist) / (2 * intensitySigma * intensitySigma));
                         
                         double totalWeight = spatialWeight * intensityWeight;
-                        filteredColor.add(Vector3D.mult(neighborPixel, totalWeight));
+                        sumR += red[neighbor] * totalWeight;
+                        sumG += green[neighbor] * totalWeight;
+                        sumB += blue[neighbor] * totalWeight;
                         weightSum += totalWeight;
                     }
                 }
                 
                 if(weightSum > 0) {
-                    filtered[y][x] = Vector3D.div(filteredColor, weightSum);
+                    filtered[0][center] = (float) (sumR / weightSum);
+                    filtered[1][center] = (float) (sumG / weightSum);
+                    filtered[2][center] = (float) (sumB / weightSum);
                 } else {
-                    filtered[y][x] = new Vector3D(centerPixel);
+                    filtered[0][center] = red[center];
+                    filtered[1][center] = green[center];
+                    filtered[2][center] = blue[center];
                 }
             }
         }
@@ -243,70 +416,270 @@ public class Scene {
         return lights;
     }
 
-    public static RenderCancelListener getRenderCancelListener() {
-        return renderCancelListener;
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
     }
 
-    private class TraceRayTask implements Runnable {
+    /**
+     * Per-thread render state of a job. Scheduler workers borrow one from the job for every tile they trace,
+     * so per-pixel state is reused between pixels, tiles and passes.
+     * <p>
+     * Tiles are traced in square blocks of pixels. The primary rays of a block, and the shadow rays from the
+     * points they hit toward each point light, are coherent and traverse the hierarchy as packets; later
+     * bounces and area light shadows are traced one ray at a time.
+     */
+    class TraceRayTask {
+        private final RenderJob job;
+        private final CropRegion region;
+        private final AccumulationBuffer accumulation;
+        private final int[] tileRGB;
         private final Vector3D pixelColor;
+        private final Vector3D tempColor;
         private final int bounces;
         private final int sampleDepth;
+        private final int samplesPerPass;
         private int samples;
         private final int numShadowRays;
         private Ray ray;
-        private final int i, j;
-
-        public TraceRayTask(Vector3D pixelColor, int bounces, int sampleDepth, int numShadowRays, int i, int j) {
-            this.pixelColor = pixelColor;
-            this.bounces = bounces;
-            this.sampleDepth = sampleDepth;
-            this.i = i;
-            this.j = j;
+        private int i, j;
+        private final int packetSize;
+        private final Ray[] primaryRays;
+        private final RayPacket primaryPacket;
+        private final Vector3D[] primaryNormals; // World space shading normal of each primary hit
+        private final RayPacket[] shadowPackets; // One per point light, null for the other lights
+        private final int[][] shadowSlots; // Shadow packet index of each primary ray per point light, -1 without a shadow ray
+        private final int[] blockPixels;
+        private final int[] blockX;
+        private final int[] blockY;
+        private final int[] blockFirst;
+        private final double[] blockSums; // Red, green, blue and squared luminance of the samples of each pixel in this pass
+        private final OccluderCache occluders; // Last blocker of a shadow ray toward each light
+        private final TraversalStatistics statistics; // Null unless the settings ask for traversal statistics
+
+        TraceRayTask(RenderJob job) {
+            RenderSettings settings = job.getSettings();
+            this.job = job;
+            this.region = job.getRegion();
+            this.accumulation = job.getAccumulation();
+            this.pixelColor = new Vector3D();
+            this.tempColor = new Vector3D();
+            this.bounces = settings.getBounces();
+            this.sampleDepth = settings.getSampleDepth();
+            this.samplesPerPass = settings.isProgressive() ? Math.max(1, settings.getSamplesPerPass()) : 0;
             this.samples = 0;
-            this.numShadowRays = numShadowRays;
+            this.numShadowRays = settings.getNumShadowRays();
             this.ray = new Ray(new Vector3D(), new Vector3D());
+            this.tileRGB = new int[job.getTiles().getMaxTilePixels()];
+            this.packetSize = Math.max(1, Math.min(ApplicationConfig.RAY_PACKET_SIZE, (int) Math.sqrt(RayPacket.MAX_SIZE)));
+            int blockSize = packetSize * packetSize;
+            this.primaryRays = new Ray[blockSize];
+            for(int k = 0; k < blockSize; k++)
+                primaryRays[k] = new Ray(new Vector3D(), new Vector3D());
+            this.primaryPacket = new RayPacket();
+            this.primaryNormals = new Vector3D[blockSize];
+            this.shadowPackets = new RayPacket[lights.length];
+            for(int l = 0; l < lights.length; l++) {
+                if(lights[l].getClass().equals(PointLight.class))
+                    shadowPackets[l] = new RayPacket();
+            }
+            this.shadowSlots = new int[lights.length][blockSize];
+            this.blockPixels = new int[blockSize];
+            this.blockX = new int[blockSize];
+            this.blockY = new int[blockSize];
+            this.blockFirst = new int[blockSize];
+            this.blockSums = new double[blockSize * 4];
+            this.occluders = new OccluderCache(lights.length);
+            this.statistics = settings.isTraversalStatistics() ? new TraversalStatistics() : null;
+        }
+
+        TraversalStatistics getStatistics() {
+            return statistics;
         }
 
-        public void run() {
-            takeSamples();
-            updateProgress();
+        /**
+         * Traces every pixel of a tile and writes it to the preview image
+         * @return true if the tile was finished, false if the job was cancelled part way through
+         */
+        boolean renderTile(Tile tile) {
+            for(int y = tile.y(); y < tile.y() + tile.height(); y += packetSize) {
+                for(int x = tile.x(); x < tile.x() + tile.width(); x += packetSize) {
+                    if(job.isCanceled())
+                        return false;
+                    int blockWidth = Math.min(packetSize, tile.x() + tile.width() - x);
+                    int blockHeight = Math.min(packetSize, tile.y() + tile.height() - y);
+                    if(!renderBlock(tile, x, y, blockWidth, blockHeight))
+                        return false;
+                }
+            }
+            // Tiles never overlap, so each worker writes its own region of the preview without locking
+            job.getImage().setRGB(tile.x() - region.x(), tile.y() - region.y(), tile.width(), tile.height(), tileRGB, 0, tile.width());
+            if(samplesPerPass == 0)
+                job.getProgress().complete(tile.getPixelCount());
+            return true;
+        }
+
+        /**
+         * Traces a block of pixels of a tile
+         * @return false if the job was cancelled part way through
+         */
+        private boolean renderBlock(Tile tile, int x, int y, int blockWidth, int blockHeight) {
+            double threshold = job.getSampleThreshold();
+            int count = 0;
+            for(j = y; j < y + blockHeight; j++) {
+                for(i = x; i < x + blockWidth; i++) {
+                    int index = job.getPixelIndex(i, j);
+                    if(samplesPerPass > 0 && threshold > 0 && accumulation.getStandardError(index) < threshold) {
+                        // Converged well enough for now, leave the samples of this pass to noisier pixels
+                        pixelColor.set(accumulation.getMeanRed(index), accumulation.getMeanGreen(index), accumulation.getMeanBlue(index));
+                        writePreview(tile);
+                        continue;
+                    }
+                    blockPixels[count] = index;
+                    blockX[count] = i;
+                    blockY[count] = j;
+                    count++;
+                }
+            }
+            if(count == 0)
+                return true;
+            return samplesPerPass > 0 ? takePassSamples(tile, count) : takeBlockSamples(tile, count);
+        }
+
+        private void writePreview(Tile tile) {
+            tileRGB[(j - tile.y()) * tile.width() + (i - tile.x())] = previewRGB();
+        }
+
+        /**
+         * Adds one progressive pass worth of samples to the pixels of a block, tracing the same sample of
+         * every pixel as one packet.
+         * Sample positions continue each pixel's low-discrepancy sequence where the previous pass stopped.
+         * @param count number of pixels of the block taking samples
+         * @return false if the job was cancelled part way through
+         */
+        private boolean takePassSamples(Tile tile, int count) {
+            Arrays.fill(blockSums, 0, count * 4, 0);
+            for(int k = 0; k < count; k++)
+                blockFirst[k] = accumulation.getSampleCount(blockPixels[k]);
+            for(int pass = 0; pass < samplesPerPass; pass++) {
+                if(job.isCanceled())
+                    return false;
+                primaryPacket.clear();
+                for(int k = 0; k < count; k++) {
+                    int sample = blockFirst[k] + pass;
+                    // First sample at pixel center, then a Halton sequence for better sample distribution
+                    double jitterX = sample == 0 ? 0.5D : Util.vanDerCorput(sample, 2);
+                    double jitterY = sample == 0 ? 0.5D : Util.vanDerCorput(sample, 3);
+                    camera.shootRay(primaryRays[k], blockX[k], blockY[k], jitterX, jitterY);
+                    primaryPacket.add(primaryRays[k], Double.MAX_VALUE);
+                }
+                tracePrimaryPacket();
+                for(int k = 0; k < count; k++) {
+                    tempColor.set(0, 0, 0);
+                    shadePrimary(k, tempColor);
+                    blockSums[k * 4] += tempColor.x;
+                    blockSums[k * 4 + 1] += tempColor.y;
+                    blockSums[k * 4 + 2] += tempColor.z;
+                    double lum = AccumulationBuffer.luminance(tempColor.x, tempColor.y, tempColor.z);
+                    blockSums[k * 4 + 3] += lum * lum;
+                }
+            }
+            for(int k = 0; k < count; k++) {
+                int index = blockPixels[k];
+                accumulation.add(index, blockSums[k * 4], blockSums[k * 4 + 1], blockSums[k * 4 + 2], blockSums[k * 4 + 3], samplesPerPass);
+                pixelColor.set(accumulation.getMeanRed(index), accumulation.getMeanGreen(index), accumulation.getMeanBlue(index));
+                i = blockX[k];
+                j = blockY[k];
+                writePreview(tile);
+            }
+            return true;
+        }
+
+        /**
+         * Traces the center samples of the pixels of a block as one packet, then takes the remaining
+         * samples of each pixel on its own
+         * @param count number of pixels of the block
+         * @return false if the job was cancelled part way through
+         */
+        private boolean takeBlockSamples(Tile tile, int count) {
+            primaryPacket.clear();
+            for(int k = 0; k < count; k++) {
+                camera.shootRay(primaryRays[k], blockX[k], blockY[k], 0.5D, 0.5D);
+                primaryPacket.add(primaryRays[k], Double.MAX_VALUE);
+            }
+            tracePrimaryPacket();
+            for(int k = 0; k < count; k++) {
+                if(job.isCanceled())
+                    return false;
+                i = blockX[k];
+                j = blockY[k];
+                pixelColor.set(0, 0, 0);
+                shadePrimary(k, pixelColor);
+                takeSamples();
+                accumulation.add(blockPixels[k], pixelColor.x * samples, pixelColor.y * samples, pixelColor.z * samples, samples);
+                writePreview(tile);
+            }
+            return true;
         }
 
-        private void updateProgress() {
-            // Apply gamma correction for more accurate color display
-            double invGamma = 1.0 / ApplicationConfig.GAMMA_CORRECTION;
-            double r = Math.pow(Math.min(Math.max(toneMap(pixelColor.x), 0.0), 1.0), invGamma) * 255;
-            double g = Math.pow(Math.min(Math.max(toneMap(pixelColor.y), 0.0), 1.0), invGamma) * 255;
-            double b = Math.pow(Math.min(Math.max(toneMap(pixelColor.z), 0.0), 1.0), invGamma) * 255;
-
-            // Round to prevent floating point artifacts
-            int red = Math.min(255, Math.max(0, (int) Math.round(r)));
-            int green = Math.min(255, Math.max(0, (int) Math.round(g)));
-            int blue = Math.min(255, Math.max(0, (int) Math.round(b)));
-            lock.lock();
-            threadCounter--;
-            double progress = (((((width * height) - threadCounter) / (double) (width * height))) * 100);
-            image.setRGB(i, j, new Color(
-                red,
-                green,
-                blue
-            ).getRGB());
-            if(renderProgress < (int) progress) {
-                renderProgress = (int) progress;
-                progressListener.progressUpdated(renderProgress, image);
+        /**
+         * Intersects the primary packet, then traces the shadow rays from its hits toward every point light
+         * as one packet per light
+         */
+        private void tracePrimaryPacket() {
+            bvh.intersect(primaryPacket, 0.0001);
+            if(bounces <= 0)
+                return;
+            int count = primaryPacket.size();
+            for(int k = 0; k < count; k++) {
+                Hit hit = primaryPacket.getHit(k);
+                primaryNormals[k] = hit != null ? shadingNormal(hit) : null;
+            }
+            for(int l = 0; l < lights.length; l++) {
+                RayPacket shadows = shadowPackets[l];
+                if(shadows == null)
+                    continue;
+                shadows.clear();
+                for(int k = 0; k < count; k++) {
+                    shadowSlots[l][k] = -1;
+                    Hit hit = primaryPacket.getHit(k);
+                    if(hit == null)
+                        continue;
+                    Ray shadowRay = shadowRay(lights[l].pointOnLight(0, 0, 1, 1), hit.point(), primaryNormals[k]);
+                    double lightDist = lights[l].intersect(shadowRay);
+                    if(lightDist >= 0)
+                        shadowSlots[l][k] = shadows.add(shadowRay, lightDist);
+                }
+                bvh.intersectShadowRays(shadows);
             }
-            lock.unlock();
         }
 
+        /**
+         * Adds the color of a primary ray of the packet, starting from its precomputed hit and shadow rays
+         * @param slot index of the ray in the primary packet
+         */
+        private void shadePrimary(int slot, Vector3D color) {
+            if(bounces <= 0)
+                return;
+            shade(primaryPacket.getRay(slot), bounces, color, primaryPacket.getHit(slot), slot);
+        }
+
+        private int previewRGB() {
+            return Scene.previewRGB(pixelColor.x, pixelColor.y, pixelColor.z);
+        }
+
+        /**
+         * Takes the remaining samples of the current pixel, whose first sample at the pixel center
+         * is already in the pixel color
+         */
         private void takeSamples() {
             // Determine if this is a high DOF scene requiring more samples
             boolean isHighDOF = camera.getAperture() > 5.0;
             int maxSamples = isHighDOF ? 
                 Math.min(ApplicationConfig.MAX_DOF_SAMPLES, sampleDepth * 2) : sampleDepth;
-            
-            // First sample at pixel center for base quality
-            camera.shootRay(ray, i, j, 0.5D, 0.5D);
-            trace(ray, bounces, pixelColor);
             samples = 1;
             
             if(maxSamples == 1)
@@ -403,7 +776,15 @@ public class Scene {
             if(bounce <= 0)
                 return;
             // Find intersections using ImprovedBVH
-            Hit bvhHit = bvh.intersect(ray, 0.0001, Double.MAX_VALUE);
+            shade(ray, bounce, color, bvh.intersect(ray, 0.0001, Double.MAX_VALUE), -1);
+        }
+
+        /**
+         * Adds the color of a ray given its closest hit
+         * @param slot index of the ray in the primary packet, whose shadow rays toward point lights are
+         *             already traced, or -1 for any other ray
+         */
+        private void shade(Ray ray, int bounce, Vector3D color, Hit bvhHit, int slot) {
             Vector3D pointHit = bvhHit != null ? bvhHit.point() : null;
             Object objectHit = bvhHit != null ? bvhHit.object() : null;
             Vector3D normalHit = bvhHit != null ? bvhHit.normal() : null;
@@ -437,22 +818,8 @@ public class Scene {
                 return;
             }
             Material material = objectHit.getMaterial();
-            Vector3D phongNormal = new Vector3D(normalHit);
-            // apply bump map if exists
-            if(material.getBumpMap() != null) {
-                Vector3D tangent;
-                Vector3D bitangent;
-                if(bvhHit.triangle() != null) {
-                    tangent = bvhHit.triangle().getTangent();
-                    bitangent = bvhHit.triangle().getBitangent(normalHit);
-                } else {
-                    tangent = objectHit.calcTangent(normalHit);
-                    bitangent = objectHit.calcBitangent(normalHit, tangent);
-                }
-                phongNormal.set(material.getBumpMap().apply(normalHit, tangent, bitangent, bvhHit.texCoord()));
-            }
+            Vector3D phongNormal = slot >= 0 ? primaryNormals[slot] : shadingNormal(bvhHit);
             normalHit.set(Object.transformNormalToWS(normalHit, objectHit.getNormalMatrix()));
-            phongNormal.set(Object.transformNormalToWS(phongNormal, objectHit.getNormalMatrix()));
             Vector3D reflectionColor = new Vector3D();
             Vector3D refractionColor = new Vector3D();
             switch(material.getType()) {
@@ -460,7 +827,7 @@ public class Scene {
                     double kr = material.fresnelMetal(ray, phongNormal);
                     trace(material.reflectRay(ray, pointHit, normalHit), bounce - 1, reflectionColor);
                     Vector3D phong = new Vector3D();
-                    phong(phong, ray, objectHit, pointHit, phongNormal, bvhHit.texCoord());
+                    phong(phong, ray, objectHit, pointHit, phongNormal, bvhHit.texCoord(), slot);
                     color.add(phong.add(Vector3D.mult(reflectionColor, kr)));
                     return;
                 }
@@ -471,42 +838,77 @@ public class Scene {
                     trace(reflectionRay, bounce - 1, reflectionColor);
                     trace(refractionRay, bounce - 1, refractionColor);
                     Vector3D phong = new Vector3D();
-                    phong(phong, ray, objectHit, pointHit, phongNormal, bvhHit.texCoord());
+                    phong(phong, ray, objectHit, pointHit, phongNormal, bvhHit.texCoord(), slot);
                     color.add(phong.add(Vector3D.mult(reflectionColor, kr).add(Vector3D.mult(refractionColor, 1 - kr))));
                     return;
                 }
                 case OTHER -> {
                     // Standard diffuse/specular material - no reflection/refraction
                     Vector3D phong = new Vector3D();
-                    phong(phong, ray, objectHit, pointHit, phongNormal, bvhHit.texCoord());
+                    phong(phong, ray, objectHit, pointHit, phongNormal, bvhHit.texCoord(), slot);
                     color.add(phong);
                     return;
                 }
             }
             Vector3D phong = new Vector3D();
-            phong(phong, ray, objectHit, pointHit, phongNormal, bvhHit.texCoord());
+            phong(phong, ray, objectHit, pointHit, phongNormal, bvhHit.texCoord(), slot);
             color.add(phong);
         }
 
-        private void phong(Vector3D phong, Ray ray, Object objectHit, Vector3D pointHit, Vector3D normalHit, Vector2D texCoord) {
+        /**
+         * World space shading normal of a hit, bump mapped if its material has a bump map
+         */
+        private static Vector3D shadingNormal(Hit hit) {
+            Object objectHit = hit.object();
+            Vector3D normalHit = hit.normal();
+            Material material = objectHit.getMaterial();
+            Vector3D phongNormal = new Vector3D(normalHit);
+            // apply bump map if exists
+            if(material.getBumpMap() != null) {
+                Vector3D tangent;
+                Vector3D bitangent;
+                if(hit.triangle() != null) {
+                    tangent = hit.triangle().getTangent();
+                    bitangent = hit.triangle().getBitangent(normalHit);
+                } else {
+                    tangent = objectHit.calcTangent(normalHit);
+                    bitangent = objectHit.calcBitangent(normalHit, tangent);
+                }
+                phongNormal.set(material.getBumpMap().apply(normalHit, tangent, bitangent, hit.texCoord()));
+            }
+            return Object.transformNormalToWS(phongNormal, objectHit.getNormalMatrix());
+        }
+
+        private void phong(Vector3D phong, Ray ray, Object objectHit, Vector3D pointHit, Vector3D normalHit, Vector2D texCoord, int slot) {
             phong.set(Vector3D.mult(objectHit.getMaterial().getColor(texCoord), objectHit.getMaterial().getAmbient()).mult(ambient.getColor()));
-            for(Light light : lights) {
+            for(int l = 0; l < lights.length; l++) {
+                Light light = lights[l];
+                RayPacket shadows = slot >= 0 ? shadowPackets[l] : null;
                 int maxShadowRays = light.getClass().equals(PointLight.class) ? 1 : numShadowRays;
                 Vector3D tempColor = new Vector3D();
                 int cols = (int) Math.sqrt(maxShadowRays);
                 int rows = maxShadowRays / cols;
                 for(int j = 0; j < rows; j++) {
                     for(int i = 0; i < cols; i++) {
-                        Vector3D shadowDir = Vector3D.sub(light.pointOnLight(i, j, cols, rows), pointHit).normalize();
-                        // Improved shadow ray origin with better bias calculation
-                        Vector3D shadowOrigin = Vector3D.add(pointHit, Vector3D.mult(normalHit, ApplicationConfig.RAY_OFFSET_EPSILON));
-                        // Add small directional bias to prevent self-intersection
-                        shadowOrigin.add(Vector3D.mult(shadowDir, ApplicationConfig.RAY_OFFSET_EPSILON * 0.1));
-                        Ray shadowRay = new Ray(shadowOrigin, shadowDir);
-                        double lightDist = light.intersect(shadowRay);
-                        if(lightDist < 0)
-                            continue;
-                        if(!bvh.intersectShadowRay(shadowRay, lightDist)) {
+                        Ray shadowRay;
+                        double lightDist;
+                        boolean occluded;
+                        if(shadows != null) {
+                            // Point light shadow ray of a primary hit, already traced with its packet
+                            int shadowSlot = shadowSlots[l][slot];
+                            if(shadowSlot < 0)
+                                continue;
+                            shadowRay = shadows.getRay(shadowSlot);
+                            lightDist = shadows.getMaxDistance(shadowSlot);
+                            occluded = shadows.isOccluded(shadowSlot);
+                        } else {
+                            shadowRay = shadowRay(light.pointOnLight(i, j, cols, rows), pointHit, normalHit);
+                            lightDist = light.intersect(shadowRay);
+                            if(lightDist < 0)
+                                continue;
+                            occluded = bvh.intersectShadowRay(shadowRay, lightDist, occluders, l);
+                        }
+                        if(!occluded) {
                             shadowPhong(tempColor, ray, objectHit, shadowRay, pointHit, normalHit, light, lightDist, texCoord);
                         }
                     }
@@ -516,6 +918,15 @@ public class Scene {
             }
         }
 
+        private static Ray shadowRay(Vector3D pointOnLight, Vector3D pointHit, Vector3D normalHit) {
+            Vector3D shadowDir = Vector3D.sub(pointOnLight, pointHit).normalize();
+            // Improved shadow ray origin with better bias calculation
+            Vector3D shadowOrigin = Vector3D.add(pointHit, Vector3D.mult(normalHit, ApplicationConfig.RAY_OFFSET_EPSILON));
+            // Add small directional bias to prevent self-intersection
+            shadowOrigin.add(Vector3D.mult(shadowDir, ApplicationConfig.RAY_OFFSET_EPSILON * 0.1));
+            return new Ray(shadowOrigin, shadowDir);
+        }
+
         private static void shadowPhong(Vector3D shadowPhong, Ray ray, Object objectHit, Ray shadowRay, Vector3D pointHit, Vector3D normalHit, Light light, double lightDist, Vector2D texCoord) {
             if (lightDist <= 0) return; // Safety check
             
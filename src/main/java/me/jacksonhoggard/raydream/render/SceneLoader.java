@@ -0,0 +1,40 @@
+package me.jacksonhoggard.raydream.render;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Builds a renderable {@link Scene} from a project file. Render workers use it to load the project
+ * shipped to them by a {@link RenderCoordinator}.
+ */
+public interface SceneLoader {
+
+    /**
+     * Loader for .dream project files
+     */
+    String DEFAULT = "me.jacksonhoggard.raydream.service.ProjectSceneLoader";
+
+    /**
+     * @param projectFile project file, with every asset it references next to it
+     * @return the scene described by the project
+     * @throws IOException if the project or one of its assets cannot be read
+     */
+    Scene load(Path projectFile) throws IOException;
+
+    /**
+     * @return the render settings stored in the last loaded project
+     */
+    default RenderSettings getSettings() {
+        return new RenderSettings();
+    }
+
+    /**
+     * Instantiates a loader by class name, so the render package does not depend on the service classes
+     * the default project loader belongs to
+     * @param className loader class with a public no-argument constructor
+     * @return the loader
+     */
+    static SceneLoader create(String className) throws ReflectiveOperationException {
+        return (SceneLoader) Class.forName(className).getDeclaredConstructor().newInstance();
+    }
+}
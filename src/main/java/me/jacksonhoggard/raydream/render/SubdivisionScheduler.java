@@ -0,0 +1,143 @@
+package me.jacksonhoggard.raydream.render;
+
+import me.jacksonhoggard.raydream.config.ApplicationConfig;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Traces render jobs by recursively halving the tile grid on a work-stealing pool.
+ * <p>
+ * Each worker walks its own block of neighbouring tiles while idle workers steal the largest block still
+ * waiting, so expensive regions such as glass or depth of field end up shared between every thread.
+ * Once no blocks are left to steal, a worker splits the tile it is tracing further, down to
+ * {@link ApplicationConfig#MIN_SPLIT_TILE_SIZE}, so the last expensive tiles of a frame do not leave the other
+ * cores idle. Jobs share the pool in submission order; job priorities and thread limits are not applied.
+ */
+public class SubdivisionScheduler implements TileExecutor {
+
+    private final ForkJoinPool pool;
+
+    public SubdivisionScheduler(int parallelism) {
+        if(parallelism <= 0)
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    @Override
+    public void register(RenderJob job) {
+        TileScheduler tiles = job.getTiles();
+        pool.execute(new PassTask(job, new BlockTask(job, 0, 0, tiles.getTilesX(), tiles.getTilesY())));
+    }
+
+    @Override
+    public void unregister(RenderJob job) {
+        // Tasks of a finished or cancelled pass stop claiming tiles on their own
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Runs the whole tile grid of a pass and tells the job once nothing more will be claimed
+     */
+    private static final class PassTask extends RecursiveAction {
+        private final RenderJob job;
+        private final BlockTask root;
+
+        PassTask(RenderJob job, BlockTask root) {
+            this.job = job;
+            this.root = root;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                root.compute();
+            } finally {
+                job.tilesExhausted();
+            }
+        }
+    }
+
+    /**
+     * A rectangular block of tiles, halved along its longer side until single tiles remain
+     */
+    private static final class BlockTask extends RecursiveAction {
+        private final RenderJob job;
+        private final int column;
+        private final int row;
+        private final int columns;
+        private final int rows;
+
+        BlockTask(RenderJob job, int column, int row, int columns, int rows) {
+            this.job = job;
+            this.column = column;
+            this.row = row;
+            this.columns = columns;
+            this.rows = rows;
+        }
+
+        @Override
+        protected void compute() {
+            if(job.isCanceled() || columns <= 0 || rows <= 0)
+                return;
+            if(columns == 1 && rows == 1) {
+                Tile tile = job.getTiles().getTile(column, row);
+                if(!job.claimTile(tile))
+                    return;
+                boolean finished = false;
+                try {
+                    finished = new PartTask(job, tile).compute();
+                } finally {
+                    job.releaseTile(tile, finished);
+                }
+                return;
+            }
+            if(columns >= rows) {
+                int half = columns / 2;
+                invokeAll(new BlockTask(job, column, row, half, rows), new BlockTask(job, column + half, row, columns - half, rows));
+            } else {
+                int half = rows / 2;
+                invokeAll(new BlockTask(job, column, row, columns, half), new BlockTask(job, column, row + half, columns, rows - half));
+            }
+        }
+    }
+
+    /**
+     * A rectangle inside a claimed tile, split further only while other workers have nothing to steal
+     */
+    private static final class PartTask extends RecursiveTask<Boolean> {
+        private final RenderJob job;
+        private final Tile part;
+
+        PartTask(RenderJob job, Tile part) {
+            this.job = job;
+            this.part = part;
+        }
+
+        @Override
+        protected Boolean compute() {
+            int minSize = ApplicationConfig.MIN_SPLIT_TILE_SIZE;
+            boolean splittable = part.width() >= 2 * minSize || part.height() >= 2 * minSize;
+            if(!splittable || getSurplusQueuedTaskCount() > 0)
+                return job.traceRegion(part);
+            PartTask first;
+            PartTask second;
+            if(part.width() >= part.height()) {
+                int half = part.width() / 2;
+                first = new PartTask(job, new Tile(part.index(), part.x(), part.y(), half, part.height()));
+                second = new PartTask(job, new Tile(part.index(), part.x() + half, part.y(), part.width() - half, part.height()));
+            } else {
+                int half = part.height() / 2;
+                first = new PartTask(job, new Tile(part.index(), part.x(), part.y(), part.width(), half));
+                second = new PartTask(job, new Tile(part.index(), part.x(), part.y() + half, part.width(), part.height() - half));
+            }
+            second.fork();
+            boolean finished = first.compute();
+            return second.join() && finished;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package me.jacksonhoggard.raydream.render;
+
+/**
+ * A rectangular block of pixels handed to a render worker as one unit of work.
+ * @param index position of the tile in row-major tile grid order
+ * @param x left pixel column of the tile
+ * @param y top pixel row of the tile
+ * @param width tile width in pixels
+ * @param height tile height in pixels
+ */
+public record Tile(int index, int x, int y, int width, int height) {
+
+    public int getPixelCount() {
+        return width * height;
+    }
+}
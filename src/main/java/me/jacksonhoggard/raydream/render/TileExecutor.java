@@ -0,0 +1,20 @@
+package me.jacksonhoggard.raydream.render;
+
+/**
+ * Runs the tiles of render jobs. A job registers itself for every pass; the executor then takes tiles with
+ * {@link RenderJob#acquireTile()} until none are left and reports each one back to the job once traced.
+ */
+public interface TileExecutor {
+
+    /**
+     * Makes the tiles of a job's current pass available for tracing
+     * @param job job with an open pass
+     */
+    void register(RenderJob job);
+
+    /**
+     * Called once the job's pass is finished or cancelled
+     * @param job job to stop taking tiles from
+     */
+    void unregister(RenderJob job);
+}
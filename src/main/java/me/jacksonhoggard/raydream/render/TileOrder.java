@@ -0,0 +1,13 @@
+package me.jacksonhoggard.raydream.render;
+
+/**
+ * Order in which tiles are handed out to render workers.
+ */
+public enum TileOrder {
+    /** Row by row, top-left to bottom-right. */
+    SCANLINE,
+    /** Outward square spiral starting at the center of the image. */
+    SPIRAL,
+    /** Along a Hilbert curve, keeping consecutive tiles spatially close for better cache reuse. */
+    HILBERT
+}
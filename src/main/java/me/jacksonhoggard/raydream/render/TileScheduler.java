@@ -0,0 +1,159 @@
+package me.jacksonhoggard.raydream.render;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits an image into tiles and hands them out to render workers through a shared cursor.
+ * Memory and queue overhead are proportional to the number of tiles rather than the number of pixels.
+ */
+public class TileScheduler {
+
+    private final Tile[] tiles;
+    private final Tile[] grid;
+    private final int tilesX;
+    private final int tilesY;
+    private final int tileSize;
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    /**
+     * Creates a scheduler covering the full image.
+     * @param width image width in pixels
+     * @param height image height in pixels
+     * @param tileSize edge length of a tile in pixels
+     * @param order order in which tiles are handed out
+     */
+    public TileScheduler(int width, int height, int tileSize, TileOrder order) {
+        this(CropRegion.full(width, height), tileSize, order);
+    }
+
+    /**
+     * Creates a scheduler covering a region of the image. Tiles keep their position in the full image.
+     * @param region pixel rectangle to split into tiles
+     * @param tileSize edge length of a tile in pixels
+     * @param order order in which tiles are handed out
+     */
+    public TileScheduler(CropRegion region, int tileSize, TileOrder order) {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive: " + tileSize);
+        }
+        this.tileSize = tileSize;
+        int tilesX = (region.width() + tileSize - 1) / tileSize;
+        int tilesY = (region.height() + tileSize - 1) / tileSize;
+        this.tilesX = tilesX;
+        this.tilesY = tilesY;
+        List<Tile> grid = new ArrayList<>(tilesX * tilesY);
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++) {
+                int x = tx * tileSize;
+                int y = ty * tileSize;
+                grid.add(new Tile(grid.size(), region.x() + x, region.y() + y, Math.min(tileSize, region.width() - x), Math.min(tileSize, region.height() - y)));
+            }
+        }
+        this.grid = grid.toArray(new Tile[0]);
+        switch (order) {
+            case SCANLINE -> { }
+            case SPIRAL -> grid.sort(spiralComparator(tilesX, tilesY));
+            case HILBERT -> grid.sort(hilbertComparator(tilesX, tilesY));
+        }
+        this.tiles = grid.toArray(new Tile[0]);
+    }
+
+    /**
+     * Hands out the next tile. Safe to call from any number of worker threads.
+     * @return the next tile, or null once every tile has been handed out
+     */
+    public Tile next() {
+        int index = cursor.getAndIncrement();
+        return index < tiles.length ? tiles[index] : null;
+    }
+
+    /**
+     * Rewinds the cursor so the same tiles can be handed out again, for example for the next progressive pass.
+     * Must not be called while workers are still pulling tiles.
+     */
+    public void reset() {
+        cursor.set(0);
+    }
+
+    public int getTileCount() {
+        return tiles.length;
+    }
+
+    /**
+     * @return pixel count of the largest tile, useful for sizing per-worker tile buffers
+     */
+    public int getMaxTilePixels() {
+        return tileSize * tileSize;
+    }
+
+    public Tile[] getTiles() {
+        return tiles;
+    }
+
+    /**
+     * @return the tile at a position of the tile grid, regardless of the order tiles are handed out in
+     */
+    public Tile getTile(int column, int row) {
+        return grid[row * tilesX + column];
+    }
+
+    public int getTilesX() {
+        return tilesX;
+    }
+
+    public int getTilesY() {
+        return tilesY;
+    }
+
+    private static Comparator<Tile> spiralComparator(int tilesX, int tilesY) {
+        double centerX = (tilesX - 1) * 0.5;
+        double centerY = (tilesY - 1) * 0.5;
+        return Comparator.<Tile>comparingDouble(tile -> {
+            // Ring number of the square spiral the tile belongs to
+            double dx = tile.index() % tilesX - centerX;
+            double dy = tile.index() / tilesX - centerY;
+            return Math.ceil(Math.max(Math.abs(dx), Math.abs(dy)));
+        }).thenComparingDouble(tile -> {
+            // Walk each ring clockwise starting from the top
+            double dx = tile.index() % tilesX - centerX;
+            double dy = tile.index() / tilesX - centerY;
+            double angle = Math.atan2(dx, -dy);
+            return angle < 0 ? angle + 2 * Math.PI : angle;
+        });
+    }
+
+    private static Comparator<Tile> hilbertComparator(int tilesX, int tilesY) {
+        int n = Integer.highestOneBit(Math.max(1, Math.max(tilesX, tilesY) - 1)) << 1;
+        return Comparator.comparingLong(tile -> hilbertIndex(n, tile.index() % tilesX, tile.index() / tilesX));
+    }
+
+    /**
+     * Converts grid coordinates to the distance along a Hilbert curve filling an n by n grid.
+     * @param n grid size, a power of two
+     * @param x grid column
+     * @param y grid row
+     * @return position of the cell along the curve
+     */
+    static long hilbertIndex(int n, int x, int y) {
+        long d = 0;
+        for (int s = n / 2; s > 0; s /= 2) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            // Rotate the quadrant so the curve stays continuous
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = s - 1 - x;
+                    y = s - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+}
@@ -0,0 +1,33 @@
+package me.jacksonhoggard.raydream.service;
+
+import me.jacksonhoggard.raydream.object.MeshCache;
+import me.jacksonhoggard.raydream.render.RenderSettings;
+import me.jacksonhoggard.raydream.render.Scene;
+import me.jacksonhoggard.raydream.render.SceneLoader;
+import me.jacksonhoggard.raydream.util.io.ProjectReader;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Loads a .dream project outside of the editor, for render workers and command line renders.
+ * The project is read straight into render objects by a {@link ProjectReader}, so no display, OpenGL
+ * context or editor state is needed.
+ */
+public class ProjectSceneLoader implements SceneLoader {
+
+    private final MeshCache meshes = new MeshCache();
+    private RenderSettings settings = new RenderSettings();
+
+    @Override
+    public Scene load(Path projectFile) throws IOException {
+        ProjectReader reader = new ProjectReader(projectFile, meshes);
+        settings = reader.getSettings();
+        return reader.createScene();
+    }
+
+    @Override
+    public RenderSettings getSettings() {
+        return settings;
+    }
+}
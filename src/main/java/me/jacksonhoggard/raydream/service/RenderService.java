@@ -1,27 +1,38 @@
 package me.jacksonhoggard.raydream.service;
 
-import me.jacksonhoggard.raydream.config.ApplicationConfig;
+import me.jacksonhoggard.raydream.render.RenderJob;
+import me.jacksonhoggard.raydream.render.RenderScheduler;
+import me.jacksonhoggard.raydream.render.RenderSettings;
 import me.jacksonhoggard.raydream.render.Scene;
 import me.jacksonhoggard.raydream.util.ProgressListener;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 
 /**
  * Service responsible for managing render operations.
- * Provides better control over rendering lifecycle and resource management.
+ * Any number of render jobs can run at once; their tiles are traced by the shared workers of a
+ * {@link RenderScheduler}, which decides between jobs by its fair or priority policy.
  */
 public class RenderService {
 
-    private final ExecutorService renderExecutor;
-    private volatile Future<?> currentRenderTask;
-    private volatile boolean isRendering = false;
+    private final RenderScheduler scheduler;
+    // Each job waits for its passes on a thread of its own; the tracing itself happens on the scheduler's workers
+    private final ExecutorService jobExecutor;
+    private final Set<RenderJob> activeJobs = ConcurrentHashMap.newKeySet();
 
     public RenderService() {
-        this.renderExecutor = Executors.newFixedThreadPool(ApplicationConfig.DEFAULT_THREAD_COUNT);
+        this(RenderScheduler.getDefault());
+    }
+
+    public RenderService(RenderScheduler scheduler) {
+        this.scheduler = scheduler;
+        this.jobExecutor = Executors.newCachedThreadPool();
     }
 
     /**
@@ -36,31 +47,53 @@ public class RenderService {
      * @return a Future representing the render operation
      */
     public CompletableFuture<Void> renderAsync(Scene scene, String filename, int sampleDepth, int bounces, int numShadowRays, int threads, ProgressListener progressListener) {
-        if (isRendering) {
-            throw new IllegalStateException("A render operation is already in progress");
-        }
+        return renderAsync(scene, filename, new RenderSettings(sampleDepth, bounces, numShadowRays, threads), progressListener);
+    }
 
-        isRendering = true;
+    /**
+     * Starts rendering a scene asynchronously.
+     * @param scene the scene to render
+     * @param filename the output filename
+     * @param settings the render settings, including the job priority
+     * @param progressListener listener for progress updates
+     * @return a Future representing the render operation
+     */
+    public CompletableFuture<Void> renderAsync(Scene scene, String filename, RenderSettings settings, ProgressListener progressListener) {
+        return submit(createJob(scene, filename, settings, progressListener));
+    }
 
+    /**
+     * Creates a job on this service's scheduler without starting it.
+     * @return the new job
+     */
+    public RenderJob createJob(Scene scene, String filename, RenderSettings settings, ProgressListener progressListener) {
+        return new RenderJob(scene, filename, settings, progressListener, scheduler);
+    }
+
+    /**
+     * Starts a render job asynchronously.
+     * @param job the job to run
+     * @return a Future representing the render operation
+     */
+    public CompletableFuture<Void> submit(RenderJob job) {
+        activeJobs.add(job);
         return CompletableFuture.runAsync(() -> {
             try {
-                scene.render(filename, sampleDepth, bounces, numShadowRays, threads, progressListener);
+                job.run();
             } catch (IOException e) {
                 throw new RuntimeException("Render failed", e);
             } finally {
-                isRendering = false;
-                currentRenderTask = null;
+                activeJobs.remove(job);
             }
-        }, renderExecutor);
+        }, jobExecutor);
     }
 
     /**
-     * Cancels the current render operation if one is running.
+     * Cancels every render operation that is running.
      */
     public void cancelRender() {
-        if (currentRenderTask != null && !currentRenderTask.isDone()) {
-            currentRenderTask.cancel(true);
-            isRendering = false;
+        for (RenderJob job : activeJobs) {
+            job.cancel();
         }
     }
 
@@ -69,7 +102,18 @@ public class RenderService {
      * @return true if rendering is in progress
      */
     public boolean isRendering() {
-        return isRendering;
+        return !activeJobs.isEmpty();
+    }
+
+    /**
+     * @return the jobs that are currently running
+     */
+    public Set<RenderJob> getActiveJobs() {
+        return Collections.unmodifiableSet(activeJobs);
+    }
+
+    public RenderScheduler getScheduler() {
+        return scheduler;
     }
 
     /**
@@ -77,6 +121,6 @@ public class RenderService {
      */
     public void shutdown() {
         cancelRender();
-        renderExecutor.shutdown();
+        jobExecutor.shutdown();
     }
 }
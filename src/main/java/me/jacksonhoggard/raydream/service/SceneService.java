@@ -1,5 +1,8 @@
 package me.jacksonhoggard.raydream.service;
 
+import me.jacksonhoggard.raydream.acceleration.ImprovedBVH;
+import me.jacksonhoggard.raydream.acceleration.SplitMethod;
+import me.jacksonhoggard.raydream.config.ApplicationConfig;
 import me.jacksonhoggard.raydream.gui.editor.EditorCamera;
 import me.jacksonhoggard.raydream.gui.editor.light.EditorLight;
 import me.jacksonhoggard.raydream.gui.editor.object.EditorObject;
@@ -9,7 +12,12 @@ import me.jacksonhoggard.raydream.gui.editor.window.ObjectWindow;
 import me.jacksonhoggard.raydream.gui.editor.window.SettingsWindow;
 import me.jacksonhoggard.raydream.light.PointLight;
 import me.jacksonhoggard.raydream.math.Vector3D;
+import me.jacksonhoggard.raydream.object.MeshCache;
 import me.jacksonhoggard.raydream.object.Model;
+import me.jacksonhoggard.raydream.render.RenderCheckpoint;
+import me.jacksonhoggard.raydream.render.RenderJob;
+import me.jacksonhoggard.raydream.render.RenderScheduler;
+import me.jacksonhoggard.raydream.render.RenderSettings;
 import me.jacksonhoggard.raydream.render.Scene;
 import me.jacksonhoggard.raydream.util.ProgressListener;
 import me.jacksonhoggard.raydream.util.io.SceneReader;
@@ -20,6 +28,8 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Service responsible for scene management operations.
@@ -29,6 +39,9 @@ public class SceneService {
 
     private Path currentProjectDirectory;
     private boolean hasUnsavedChanges = false;
+    // Kept between renders, so meshes that did not change and the scene hierarchy are not built again
+    private MeshCache meshes = new MeshCache();
+    private ImprovedBVH sceneBVH;
 
     public SceneService() {
         this.currentProjectDirectory = Paths.get(System.getProperty("user.dir"));
@@ -134,9 +147,64 @@ public class SceneService {
         EditorLight.reset();
         SettingsWindow.reset();
         EditorWindow.reset();
+        synchronized (this) {
+            meshes = new MeshCache();
+            sceneBVH = null;
+        }
+    }
+
+    public void renderScene(ArrayList<EditorObject> objects, ArrayList<EditorLight> lights, PointLight ambientLight, Vector3D skyColor, EditorCamera camera, int width, int height, float aperture, String filename, RenderSettings settings, ProgressListener progressListener) throws IOException {
+        createRenderJob(objects, lights, ambientLight, skyColor, camera, width, height, aperture, filename, settings, progressListener).run();
+    }
+
+    /**
+     * Converts the editor scene into a render job without starting it, so the caller can hold on to
+     * the job's cancellation token while it renders.
+     * @return the render job
+     */
+    public RenderJob createRenderJob(ArrayList<EditorObject> objects, ArrayList<EditorLight> lights, PointLight ambientLight, Vector3D skyColor, EditorCamera camera, int width, int height, float aperture, String filename, RenderSettings settings, ProgressListener progressListener) {
+        Scene scene = createScene(objects, lights, ambientLight, skyColor, camera, width, height, aperture, settings);
+        return new RenderJob(scene, filename, settings, progressListener);
     }
 
-    public void renderScene(ArrayList<EditorObject> objects, ArrayList<EditorLight> lights, PointLight ambientLight, Vector3D skyColor, EditorCamera camera, int width, int height, float aperture, String filename, int sampleDepth, int bounces, int numShadowRays, int threads, ProgressListener progressListener) throws IOException {
+    /**
+     * Converts the editor scene into a job that continues an interrupted render from its checkpoint.
+     * The image size, settings and output file are taken from the checkpoint.
+     * @return the render job
+     * @throws IOException if the checkpoint cannot be read
+     */
+    public RenderJob createResumeJob(ArrayList<EditorObject> objects, ArrayList<EditorLight> lights, PointLight ambientLight, Vector3D skyColor, EditorCamera camera, float aperture, String checkpointFile, ProgressListener progressListener) throws IOException {
+        RenderCheckpoint checkpoint = RenderCheckpoint.read(Path.of(checkpointFile));
+        Scene scene = createScene(objects, lights, ambientLight, skyColor, camera, checkpoint.getWidth(), checkpoint.getHeight(), aperture, checkpoint.getSettings());
+        return new RenderJob(scene, checkpoint, progressListener, RenderScheduler.getDefault());
+    }
+
+    /**
+     * Converts the editor scene into a renderable scene. Meshes and the scene hierarchy are reused from the
+     * previous scene: unchanged geometry keeps its mesh hierarchy and, when the scene still has the same
+     * objects, the hierarchy over them is refit to their new placements instead of being rebuilt.
+     * @return the scene
+     */
+    public Scene createScene(ArrayList<EditorObject> objects, ArrayList<EditorLight> lights, PointLight ambientLight, Vector3D skyColor, EditorCamera camera, int width, int height, float aperture) {
+        return createScene(objects, lights, ambientLight, skyColor, camera, width, height, aperture, SplitMethod.SAH);
+    }
+
+    /**
+     * Converts the editor scene into a renderable scene, building mesh hierarchies with a split method
+     * @param meshSplitMethod split method of the mesh hierarchies of models that do not choose their own
+     * @return the scene
+     */
+    public Scene createScene(ArrayList<EditorObject> objects, ArrayList<EditorLight> lights, PointLight ambientLight, Vector3D skyColor, EditorCamera camera, int width, int height, float aperture, SplitMethod meshSplitMethod) {
+        return createScene(objects, lights, ambientLight, skyColor, camera, width, height, aperture, new RenderSettings().setMeshSplitMethod(meshSplitMethod));
+    }
+
+    /**
+     * Converts the editor scene into a renderable scene, building the hierarchies as the render settings say
+     * @param settings settings giving the split method of the mesh hierarchies of models that do not choose
+     *                 their own, whether mesh hierarchies are built on demand and the width of every hierarchy
+     * @return the scene
+     */
+    public synchronized Scene createScene(ArrayList<EditorObject> objects, ArrayList<EditorLight> lights, PointLight ambientLight, Vector3D skyColor, EditorCamera camera, int width, int height, float aperture, RenderSettings settings) {
         // Convert editor camera to render camera
         me.jacksonhoggard.raydream.render.Camera renderCamera = new me.jacksonhoggard.raydream.render.Camera(
             camera.getLookFrom(), 
@@ -156,12 +224,13 @@ public class SceneService {
         me.jacksonhoggard.raydream.light.Light[] renderLights = renderLightsList.toArray(new me.jacksonhoggard.raydream.light.Light[0]);
         
         // Convert editor objects to render objects
+        // Placements of the same geometry share one mesh and its BVH
         ArrayList<me.jacksonhoggard.raydream.object.Object> renderObjectsList = new ArrayList<>();
         for (EditorObject editorObject : objects) {
             if (editorObject instanceof ModelEditorObject) {
                 // ModelEditorObject returns an array of Model objects
                 ModelEditorObject modelObject = (ModelEditorObject) editorObject;
-                Model[] models = modelObject.toObjects();
+                Model[] models = modelObject.toObjects(meshes, settings);
                 for (Model model : models) {
                     renderObjectsList.add(model);
                 }
@@ -171,8 +240,28 @@ public class SceneService {
             }
         }
         me.jacksonhoggard.raydream.object.Object[] renderObjects = renderObjectsList.toArray(new me.jacksonhoggard.raydream.object.Object[0]);
+        meshes.evictUnused();
         
-        Scene scene = new Scene(renderCamera, ambientLight, renderLights, renderObjects, skyColor, width, height);
-        scene.render(filename, sampleDepth, bounces, numShadowRays, threads, progressListener);
+        return new Scene(renderCamera, ambientLight, renderLights, renderObjects, skyColor, width, height, updateHierarchy(renderObjects, settings.getBvhWidth()));
+    }
+
+    /**
+     * Refits the hierarchy of the previous scene to the objects of a new one, the editor having kept their
+     * order, or builds a new hierarchy if the objects were added or removed, an object was replaced by
+     * one that is bounded where the old one was not or the other way around, or the refit tree has
+     * degraded too far. A hierarchy of another width is always rebuilt.
+     * @param width children per node of the hierarchy
+     * @return the hierarchy over the objects
+     */
+    private ImprovedBVH updateHierarchy(me.jacksonhoggard.raydream.object.Object[] objects, int width) {
+        if (sceneBVH != null && sceneBVH.getWidth() == width && sceneBVH.canRefit(Arrays.asList(objects))) {
+            ImprovedBVH refit = sceneBVH.refit(Arrays.asList(objects));
+            if (refit.getDegradation() <= ApplicationConfig.BVH_REFIT_MAX_DEGRADATION) {
+                sceneBVH = refit;
+                return refit;
+            }
+        }
+        sceneBVH = new ImprovedBVH(Arrays.asList(objects), SplitMethod.SAH, ForkJoinPool.commonPool(), width);
+        return sceneBVH;
     }
 }
@@ -0,0 +1,597 @@
+package me.jacksonhoggard.raydream.util.io;
+
+import me.jacksonhoggard.raydream.acceleration.ImprovedBVH;
+import me.jacksonhoggard.raydream.acceleration.SplitMethod;
+import me.jacksonhoggard.raydream.config.ApplicationConfig;
+import me.jacksonhoggard.raydream.light.AreaLight;
+import me.jacksonhoggard.raydream.light.Light;
+import me.jacksonhoggard.raydream.light.PointLight;
+import me.jacksonhoggard.raydream.light.SphereLight;
+import me.jacksonhoggard.raydream.material.Material;
+import me.jacksonhoggard.raydream.math.Vector2D;
+import me.jacksonhoggard.raydream.math.Vector3D;
+import me.jacksonhoggard.raydream.object.Box;
+import me.jacksonhoggard.raydream.object.Mesh;
+import me.jacksonhoggard.raydream.object.MeshCache;
+import me.jacksonhoggard.raydream.object.Model;
+import me.jacksonhoggard.raydream.object.Object;
+import me.jacksonhoggard.raydream.object.Plane;
+import me.jacksonhoggard.raydream.object.Sphere;
+import me.jacksonhoggard.raydream.object.Transform;
+import me.jacksonhoggard.raydream.object.Triangle;
+import me.jacksonhoggard.raydream.render.Camera;
+import me.jacksonhoggard.raydream.render.CropRegion;
+import me.jacksonhoggard.raydream.render.RenderSettings;
+import me.jacksonhoggard.raydream.render.Scene;
+import me.jacksonhoggard.raydream.util.Util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Reads a .dream project straight into render objects, without the editor. Unlike {@link SceneReader},
+ * nothing is uploaded to OpenGL, so projects can be rendered on machines without a display.
+ */
+public class ProjectReader {
+
+    private final Path projectDir;
+    private final MeshCache meshes;
+    private final List<Light> lights = new ArrayList<>();
+    private final List<Object> objects = new ArrayList<>();
+    private final List<ModelEntry> models = new ArrayList<>();
+    private final Map<Path, List<MeshEntry>> modelFiles = new HashMap<>();
+
+    private int imgWidth = ApplicationConfig.DEFAULT_WINDOW_WIDTH;
+    private int imgHeight = ApplicationConfig.DEFAULT_WINDOW_HEIGHT;
+    private float fov = ApplicationConfig.DEFAULT_FOV;
+    private float aperture = 100;
+    private Vector3D lookFrom = new Vector3D(0, 1, 2);
+    private Vector3D lookAt = new Vector3D();
+    private Vector3D skyColor = new Vector3D();
+    private Vector3D ambientColor = new Vector3D(1, 1, 1);
+    private int sampleDepth = 2;
+    private int bounces = ApplicationConfig.DEFAULT_MAX_BOUNCE_DEPTH;
+    private int numShadowRays = 8;
+    private int threads = ApplicationConfig.DEFAULT_THREAD_COUNT;
+    private int passes = 0;
+    private int timeBudget = 0;
+    private int[] crop = new int[] {0, 0, 0, 0};
+    private boolean composite = false;
+    private boolean spatialSplits = false;
+    private boolean lazyMeshes = false;
+    private int bvhWidth = ApplicationConfig.BVH_WIDTH;
+
+    /**
+     * Reads the project, loading the textures it references
+     * @param projectFile .dream file, whose models and textures are resolved relative to its directory
+     * @param meshes meshes shared with earlier scenes
+     * @throws IOException if the project or one of its models cannot be read
+     */
+    public ProjectReader(Path projectFile, MeshCache meshes) throws IOException {
+        this.projectDir = projectFile.toAbsolutePath().getParent();
+        this.meshes = meshes;
+        try(BufferedReader reader = Files.newBufferedReader(projectFile)) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                if(line.startsWith("+")) {
+                    parseObject(reader, line);
+                }
+            }
+        } catch (UnrecognizedTokenException e) {
+            throw new IOException("Error reading file: " + projectFile, e);
+        }
+    }
+
+    /**
+     * Builds the scene, with its mesh and scene hierarchies built as the project's render settings say
+     * @return the scene
+     * @throws IOException if a model file cannot be read
+     */
+    public Scene createScene() throws IOException {
+        RenderSettings settings = getSettings();
+        List<Object> sceneObjects = new ArrayList<>(objects);
+        for(ModelEntry model : models) {
+            sceneObjects.addAll(toModels(model, settings));
+        }
+        meshes.evictUnused();
+        Object[] renderObjects = sceneObjects.toArray(new Object[0]);
+        // The editor renders with a fixed up vector
+        Camera camera = new Camera(lookFrom, lookAt, new Vector3D(0, 1, 0), fov, aperture, imgWidth, imgHeight);
+        return new Scene(
+                camera,
+                new PointLight(new Vector3D(), ambientColor, 1),
+                lights.toArray(new Light[0]),
+                renderObjects,
+                skyColor,
+                imgWidth,
+                imgHeight,
+                new ImprovedBVH(List.of(renderObjects), SplitMethod.SAH, ForkJoinPool.commonPool(), settings.getBvhWidth())
+        );
+    }
+
+    /**
+     * @return the render settings stored in the project, without a checkpoint file
+     */
+    public RenderSettings getSettings() {
+        CropRegion cropRegion = null;
+        if(crop[2] > 0 && crop[3] > 0 && crop[0] < imgWidth && crop[1] < imgHeight)
+            cropRegion = new CropRegion(Math.max(0, crop[0]), Math.max(0, crop[1]), crop[2], crop[3]);
+        return new RenderSettings(sampleDepth, bounces, numShadowRays, threads)
+                .setPasses(passes)
+                .setTimeBudget(timeBudget * 1000L)
+                .setCrop(cropRegion)
+                .setComposite(composite)
+                .setMeshSplitMethod(spatialSplits ? SplitMethod.SPATIAL : SplitMethod.SAH)
+                .setLazyMeshes(lazyMeshes)
+                .setBvhWidth(bvhWidth);
+    }
+
+    /**
+     * Lists the files a project needs besides the project file, without loading them
+     * @param projectFile .dream file
+     * @return the model files and the textures and bump maps of the project and its models, in the order
+     *         they are referenced, leaving out files that do not exist
+     * @throws IOException if the project or one of its models cannot be read
+     */
+    public static List<Path> referencedFiles(Path projectFile) throws IOException {
+        Path dir = projectFile.toAbsolutePath().normalize().getParent();
+        Set<Path> files = new LinkedHashSet<>();
+        List<Path> modelFiles = new ArrayList<>();
+        addReferencedFiles(projectFile, dir, files, modelFiles);
+        for(Path modelFile : modelFiles) {
+            if(Files.isRegularFile(modelFile))
+                addReferencedFiles(modelFile, modelFile.getParent(), files, null);
+        }
+        files.removeIf(file -> !Files.isRegularFile(file));
+        return new ArrayList<>(files);
+    }
+
+    private static void addReferencedFiles(Path file, Path dir, Set<Path> files, List<Path> modelFiles) throws IOException {
+        try(BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                String trimmed = line.trim();
+                if(trimmed.startsWith("| texture: ") && !trimmed.equals("| texture: null"))
+                    files.add(dir.resolve(trimmed.substring(11)).normalize());
+                else if(trimmed.startsWith("| bump: ") && !trimmed.equals("| bump: null"))
+                    files.add(dir.resolve(trimmed.substring(8)).normalize());
+                else if(modelFiles != null && line.startsWith("file: ")) {
+                    Path modelFile = dir.resolve(line.substring(6)).normalize();
+                    if(files.add(modelFile))
+                        modelFiles.add(modelFile);
+                }
+            }
+        }
+    }
+
+    private void parseObject(BufferedReader reader, String line) throws IOException, UnrecognizedTokenException {
+        String[] tokens = line.split("\\s+");
+        switch(tokens[1]) {
+            case "settings:":
+                setSettings(reader);
+                break;
+            case "light:":
+                addLight(reader, tokens[2]);
+                break;
+            case "object:":
+                addObject(reader, tokens[2]);
+                break;
+            default:
+                throw new UnrecognizedTokenException(tokens[1]);
+        }
+    }
+
+    private void setSettings(BufferedReader reader) throws IOException, UnrecognizedTokenException {
+        String line;
+        while(!(line = reader.readLine()).startsWith(";")) {
+            String[] params = line.split("\\s+");
+            switch(params[0]) {
+                case "width:":
+                    imgWidth = Integer.parseInt(params[1]);
+                    break;
+                case "height:":
+                    imgHeight = Integer.parseInt(params[1]);
+                    break;
+                case "fov:":
+                    fov = Float.parseFloat(params[1]);
+                    break;
+                case "aperture:":
+                    aperture = Float.parseFloat(params[1]);
+                    break;
+                case "lookFrom:":
+                    lookFrom = parseVector(params, 1);
+                    break;
+                case "lookAt:":
+                    lookAt = parseVector(params, 1);
+                    break;
+                case "up:":
+                    break;
+                case "sky:":
+                    skyColor = parseVector(params, 1);
+                    break;
+                case "ambient:":
+                    ambientColor = parseVector(params, 1);
+                    break;
+                case "samples:":
+                    sampleDepth = Integer.parseInt(params[1]);
+                    break;
+                case "bounces:":
+                    bounces = Integer.parseInt(params[1]);
+                    break;
+                case "shadows:":
+                    numShadowRays = Integer.parseInt(params[1]);
+                    break;
+                case "threads:":
+                    threads = Integer.parseInt(params[1]);
+                    break;
+                case "passes:":
+                    passes = Integer.parseInt(params[1]);
+                    break;
+                case "budget:":
+                    timeBudget = Integer.parseInt(params[1]);
+                    break;
+                case "crop:":
+                    crop = new int[] {
+                            Integer.parseInt(params[1]),
+                            Integer.parseInt(params[2]),
+                            Integer.parseInt(params[3]),
+                            Integer.parseInt(params[4])
+                    };
+                    break;
+                case "composite:":
+                    composite = Boolean.parseBoolean(params[1]);
+                    break;
+                case "spatialSplits:":
+                    spatialSplits = Boolean.parseBoolean(params[1]);
+                    break;
+                case "lazyMeshes:":
+                    lazyMeshes = Boolean.parseBoolean(params[1]);
+                    break;
+                case "bvhWidth:":
+                    bvhWidth = Integer.parseInt(params[1]);
+                    break;
+                default:
+                    throw new UnrecognizedTokenException(params[0]);
+            }
+        }
+    }
+
+    private void addLight(BufferedReader reader, String type) throws IOException, UnrecognizedTokenException {
+        Vector3D[] transform = new Vector3D[] {new Vector3D(), new Vector3D(), new Vector3D()};
+        Vector3D color = new Vector3D();
+        float brightness = 0;
+        String line;
+        while(!(line = reader.readLine()).startsWith(";")) {
+            String[] params = line.split("\\s+");
+            switch(params[0]) {
+                case "label:":
+                    break;
+                case "transform:":
+                    parseTransform(reader, transform);
+                    break;
+                case "material:":
+                    while(!(line = reader.readLine()).trim().startsWith("/") && line.trim().startsWith("|")) {
+                        String[] matParams = line.split("\\s+");
+                        switch(matParams[1]) {
+                            case "color:":
+                                color = parseVector(matParams, 2);
+                                break;
+                            case "brightness:":
+                                brightness = Float.parseFloat(matParams[2]);
+                                break;
+                            default:
+                                throw new UnrecognizedTokenException(matParams[1]);
+                        }
+                    }
+                    break;
+                default:
+                    throw new UnrecognizedTokenException(params[0]);
+            }
+        }
+        switch(type) {
+            case "area":
+                lights.add(new AreaLight(new Transform(transform[0], transform[1], transform[2]), color, brightness));
+                break;
+            case "sphere":
+                lights.add(new SphereLight(transform[0], color, brightness, transform[2].x));
+                break;
+            case "point":
+                lights.add(new PointLight(transform[0], color, brightness));
+                break;
+            default:
+                throw new UnrecognizedTokenException(type);
+        }
+    }
+
+    private void addObject(BufferedReader reader, String type) throws IOException, UnrecognizedTokenException {
+        Vector3D[] transform = new Vector3D[] {new Vector3D(), new Vector3D(), new Vector3D()};
+        List<MaterialEntry> materials = new ArrayList<>();
+        SplitMethod splitMethod = null;
+        Path file = null;
+        String line;
+        while(!(line = reader.readLine()).startsWith(";")) {
+            String[] params = line.split("\\s+");
+            switch(params[0]) {
+                case "label:":
+                    break;
+                case "transform:":
+                    parseTransform(reader, transform);
+                    break;
+                case "material:":
+                    materials.add(parseMaterial(reader, projectDir));
+                    break;
+                case "splitMethod:":
+                    splitMethod = SplitMethod.valueOf(params[1]);
+                    break;
+                case "file:":
+                    file = projectDir.resolve(line.substring(6));
+                    break;
+                default:
+                    throw new UnrecognizedTokenException(params[0]);
+            }
+        }
+        Transform t = new Transform(transform[0], transform[1], transform[2]);
+        MaterialEntry material = materials.isEmpty() ? new MaterialEntry() : materials.getFirst();
+        switch(type) {
+            case "sphere":
+                objects.add(new Sphere(t, 1.0D, material.toMaterial()));
+                break;
+            case "box":
+                objects.add(new Box(t, new Vector3D(1, 1, 1), material.toMaterial()));
+                break;
+            case "plane":
+                objects.add(new Plane(t.translation().y, t.rotation(), material.toMaterial()));
+                break;
+            case "model":
+                if(file == null)
+                    throw new IOException("Model without a file in " + projectDir);
+                models.add(new ModelEntry(t, materials, splitMethod, file));
+                break;
+            default:
+                throw new UnrecognizedTokenException(type);
+        }
+    }
+
+    /**
+     * Converts every mesh of a placed model file into a render object, sharing the meshes whose geometry
+     * is already in the cache like the editor does
+     * @return one model per mesh
+     */
+    private List<Model> toModels(ModelEntry model, RenderSettings settings) throws IOException {
+        List<MeshEntry> entries = readModel(model.file());
+        SplitMethod method = model.splitMethod() != null ? model.splitMethod() : settings.getMeshSplitMethod();
+        int width = settings.getBvhWidth();
+        List<Model> placed = new ArrayList<>();
+        for(int i = 0; i < entries.size(); i++) {
+            MeshEntry entry = entries.get(i);
+            Mesh mesh = meshes.get(entry.vertices(), method, width, () -> toMesh(model.file(), entry.vertices(), method, width));
+            if(!settings.isLazyMeshes())
+                mesh.build();
+            MaterialEntry material = i < model.materials().size() ? model.materials().get(i) : entry.material();
+            placed.add(new Model(model.transform(), material.toMaterial(), mesh));
+        }
+        return placed;
+    }
+
+    private List<MeshEntry> readModel(Path file) throws IOException {
+        List<MeshEntry> loaded = modelFiles.get(file);
+        if(loaded != null)
+            return loaded;
+        loaded = new ArrayList<>();
+        try(BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                if(line.startsWith("+ mesh:")) {
+                    loaded.add(readMesh(reader, file.getParent()));
+                }
+            }
+        } catch (UnrecognizedTokenException e) {
+            throw new IOException("Error reading model: " + file, e);
+        }
+        modelFiles.put(file, loaded);
+        return loaded;
+    }
+
+    private static MeshEntry readMesh(BufferedReader reader, Path modelDir) throws IOException, UnrecognizedTokenException {
+        MaterialEntry material = new MaterialEntry();
+        List<float[]> triangles = new ArrayList<>();
+        String line;
+        while(!(line = reader.readLine()).startsWith(";")) {
+            String[] params = line.split("\\s+");
+            switch(params[0]) {
+                case "label:":
+                    break;
+                case "material:":
+                    material = parseMaterial(reader, modelDir);
+                    break;
+                case "triangles:":
+                    while(!(line = reader.readLine()).trim().startsWith("/") && line.trim().startsWith("|")) {
+                        String[] triParams = line.trim().split("\\s+");
+                        float[] triangle = new float[24];
+                        for(int v = 0; v < 3; v++) {
+                            // Positions, normals and then texture coordinates, as the editor interleaves them
+                            for(int c = 0; c < 3; c++) {
+                                triangle[v * 8 + c] = Float.parseFloat(triParams[1 + v * 3 + c]);
+                                triangle[v * 8 + 3 + c] = Float.parseFloat(triParams[10 + v * 3 + c]);
+                            }
+                            triangle[v * 8 + 6] = Float.parseFloat(triParams[19 + v * 2]);
+                            triangle[v * 8 + 7] = Float.parseFloat(triParams[20 + v * 2]);
+                        }
+                        triangles.add(triangle);
+                    }
+                    break;
+                default:
+                    throw new UnrecognizedTokenException(params[0]);
+            }
+        }
+        float[] vertices = new float[triangles.size() * 24];
+        for(int t = 0; t < triangles.size(); t++) {
+            System.arraycopy(triangles.get(t), 0, vertices, t * 24, 24);
+        }
+        return new MeshEntry(material, vertices);
+    }
+
+    private static Mesh toMesh(Path file, float[] vertices, SplitMethod splitMethod, int width) {
+        int vertexCount = vertices.length / 8;
+        Vector3D[] positions = new Vector3D[vertexCount];
+        Vector3D[] normals = new Vector3D[vertexCount];
+        Vector2D[] texCoords = new Vector2D[vertexCount];
+        Vector3D min = new Vector3D(Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE);
+        Vector3D max = new Vector3D(-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE);
+        for(int j = 0; j < vertexCount; j++) {
+            int i = j * 8;
+            positions[j] = new Vector3D(vertices[i], vertices[i + 1], vertices[i + 2]);
+            normals[j] = new Vector3D(vertices[i + 3], vertices[i + 4], vertices[i + 5]);
+            texCoords[j] = new Vector2D(vertices[i + 6], vertices[i + 7]);
+            min.x = Math.min(min.x, positions[j].x);
+            min.y = Math.min(min.y, positions[j].y);
+            min.z = Math.min(min.z, positions[j].z);
+            max.x = Math.max(max.x, positions[j].x);
+            max.y = Math.max(max.y, positions[j].y);
+            max.z = Math.max(max.z, positions[j].z);
+        }
+        Triangle[] triangles = new Triangle[vertexCount / 3];
+        for(int t = 0; t < triangles.length; t++) {
+            int i = t * 3;
+            triangles[t] = new Triangle(
+                    positions[i], positions[i + 1], positions[i + 2],
+                    normals[i], normals[i + 1], normals[i + 2],
+                    texCoords[i], texCoords[i + 1], texCoords[i + 2]
+            );
+        }
+        return new Mesh(file.toString(), triangles, min, max, splitMethod, width, true);
+    }
+
+    private static MaterialEntry parseMaterial(BufferedReader reader, Path dir) throws IOException, UnrecognizedTokenException {
+        MaterialEntry material = new MaterialEntry();
+        String line;
+        while(!(line = reader.readLine()).trim().startsWith("/") && line.trim().startsWith("|")) {
+            String[] params = line.trim().split("\\s+");
+            switch(params[1]) {
+                case "color:":
+                    material.color = parseVector(params, 2);
+                    break;
+                case "ambient:":
+                    material.ambient = Float.parseFloat(params[2]);
+                    break;
+                case "diffuse:":
+                    material.diffuse = Float.parseFloat(params[2]);
+                    break;
+                case "specular:":
+                    material.specular = Float.parseFloat(params[2]);
+                    break;
+                case "exponent:":
+                    material.specularExponent = Float.parseFloat(params[2]);
+                    break;
+                case "metalness:":
+                    material.metalness = Float.parseFloat(params[2]);
+                    break;
+                case "roughness:":
+                    material.roughness = Float.parseFloat(params[2]);
+                    break;
+                case "ior:":
+                    material.indexOfRefraction = Float.parseFloat(params[2]);
+                    break;
+                case "k:":
+                    material.k = Float.parseFloat(params[2]);
+                    break;
+                case "type:":
+                    material.type = Material.Type.valueOf(params[2]);
+                    break;
+                case "texture:":
+                    if(!params[2].equals("null"))
+                        material.texture = dir.resolve(line.substring(11));
+                    break;
+                case "bump:":
+                    if(!params[2].equals("null"))
+                        material.bumpMap = dir.resolve(line.substring(8));
+                    break;
+                case "bScale:":
+                    material.bumpScale = Float.parseFloat(params[2]);
+                    break;
+                default:
+                    throw new UnrecognizedTokenException(params[1]);
+            }
+        }
+        return material;
+    }
+
+    private static void parseTransform(BufferedReader reader, Vector3D[] transform) throws IOException, UnrecognizedTokenException {
+        String line;
+        while(!(line = reader.readLine()).trim().startsWith("/") && line.trim().startsWith("|")) {
+            String[] params = line.trim().split("\\s+");
+            switch(params[1]) {
+                case "translation:":
+                    transform[0] = parseVector(params, 2);
+                    break;
+                case "rotation:":
+                    transform[1] = parseVector(params, 2);
+                    break;
+                case "scale:":
+                    transform[2] = parseVector(params, 2);
+                    break;
+                default:
+                    throw new UnrecognizedTokenException(params[1]);
+            }
+        }
+    }
+
+    private static Vector3D parseVector(String[] params, int start) {
+        return new Vector3D(Float.parseFloat(params[start]), Float.parseFloat(params[start + 1]), Float.parseFloat(params[start + 2]));
+    }
+
+    /**
+     * Material as saved, with its textures loaded only once it is given to an object
+     */
+    private static class MaterialEntry {
+        private Vector3D color = new Vector3D();
+        private float ambient;
+        private float diffuse;
+        private float specular;
+        private float specularExponent;
+        private float indexOfRefraction;
+        private float k;
+        private float metalness;
+        private float roughness;
+        private Material.Type type = Material.Type.OTHER;
+        private Path texture;
+        private Path bumpMap;
+        private float bumpScale;
+
+        private Material toMaterial() {
+            return new Material(
+                    color,
+                    ambient,
+                    diffuse,
+                    specular,
+                    specularExponent,
+                    metalness,
+                    roughness,
+                    indexOfRefraction,
+                    k,
+                    type,
+                    texture != null ? Util.loadTexture(texture.toString()) : null,
+                    bumpMap != null ? Util.loadBumpMap(bumpMap.toString(), bumpScale) : null
+            );
+        }
+    }
+
+    private record MeshEntry(MaterialEntry material, float[] vertices) {
+    }
+
+    /**
+     * Placement of a model file, whose meshes are read once the settings of the whole project are known
+     * @param materials materials replacing those saved in the model file, one per mesh in order
+     */
+    private record ModelEntry(Transform transform, List<MaterialEntry> materials, SplitMethod splitMethod, Path file) {
+    }
+}
@@ -1,5 +1,6 @@
 package me.jacksonhoggard.raydream.util.io;
 
+import me.jacksonhoggard.raydream.acceleration.SplitMethod;
 import me.jacksonhoggard.raydream.gui.editor.light.EditorAreaLight;
 import me.jacksonhoggard.raydream.gui.editor.light.EditorPointLight;
 import me.jacksonhoggard.raydream.gui.editor.light.EditorSphereLight;
@@ -162,6 +163,32 @@ public class SceneReader {
                 case "threads:":
                     SettingsWindow.setThreads(Integer.parseInt(params[1]));
                     break;
+                case "passes:":
+                    SettingsWindow.setPasses(Integer.parseInt(params[1]));
+                    break;
+                case "budget:":
+                    SettingsWindow.setTimeBudget(Integer.parseInt(params[1]));
+                    break;
+                case "crop:":
+                    SettingsWindow.setCrop(new int[] {
+                            Integer.parseInt(params[1]),
+                            Integer.parseInt(params[2]),
+                            Integer.parseInt(params[3]),
+                            Integer.parseInt(params[4])
+                    });
+                    break;
+                case "composite:":
+                    SettingsWindow.setComposite(Boolean.parseBoolean(params[1]));
+                    break;
+                case "spatialSplits:":
+                    SettingsWindow.setSpatialSplits(Boolean.parseBoolean(params[1]));
+                    break;
+                case "lazyMeshes:":
+                    SettingsWindow.setLazyMeshes(Boolean.parseBoolean(params[1]));
+                    break;
+                case "bvhWidth:":
+                    SettingsWindow.setBvhWidth(Integer.parseInt(params[1]));
+                    break;
                 default:
                     throw new UnrecognizedTokenException(params[0]);
             }
@@ -354,6 +381,7 @@ public class SceneReader {
         float[] scale = new float[3];
         StringBuilder label = new StringBuilder();
         RDOModel model = null;
+        SplitMethod splitMethod = null;
         String line;
         while(!(line = reader.readLine()).startsWith(";")) {
             String[] params = line.split("\\s+");
@@ -369,6 +397,9 @@ public class SceneReader {
                     parseObjectMaterial(reader, material, projectDir);
                     materials.add(material);
                     break;
+                case "splitMethod:":
+                    splitMethod = SplitMethod.valueOf(params[1]);
+                    break;
                 case "file:":
                     model = new RDOModel(projectDir + File.separator + line.substring(6), new FileInputStream(projectDir + File.separator + line.substring(6)));
                     break;
@@ -377,6 +408,7 @@ public class SceneReader {
             }
         }
         ModelEditorObject modelEditorObject = new ModelEditorObject(model, translation, rotation, scale, label.toString());
+        modelEditorObject.setSplitMethod(splitMethod);
         if(!materials.isEmpty()) {
             int i = 0;
             for (MeshModel.Mesh mesh : ((MeshModel) modelEditorObject.getModel()).getMeshes()) {
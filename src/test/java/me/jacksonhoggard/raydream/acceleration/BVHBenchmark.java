@@ -0,0 +1,171 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+import me.jacksonhoggard.raydream.math.Ray;
+import me.jacksonhoggard.raydream.math.Vector2D;
+import me.jacksonhoggard.raydream.math.Vector3D;
+import me.jacksonhoggard.raydream.object.BVHTriangle;
+import me.jacksonhoggard.raydream.object.Mesh;
+import me.jacksonhoggard.raydream.object.Object;
+import me.jacksonhoggard.raydream.object.Sphere;
+import me.jacksonhoggard.raydream.object.Triangle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares BVHs built with the binned surface area heuristic against the longest axis median split.
+ * For each build the expected traversal cost under the SAH cost model, the build time and the median
+ * wall time of casting a fixed set of random rays are reported. The object scene mixes a few large
+ * spheres with many small clustered ones; the meshes are a sphere tessellated much more finely on one side
+ * and a building whose long floor and wall triangles overlap everything else, where spatial splits help most.
+ * <p>
+ * Run with {@code java -cp <test classpath> me.jacksonhoggard.raydream.acceleration.BVHBenchmark [rays] [runs]}
+ */
+public class BVHBenchmark {
+
+    public static void main(String[] args) {
+        int rayCount = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        Ray[] rays = createRays(rayCount, new Random(3));
+        System.out.println("Rays: " + rayCount + ", runs: " + runs);
+
+        List<Object> objects = createObjects(new Random(5));
+        System.out.println("Objects: " + objects.size());
+        for(SplitMethod method : SplitMethod.values()) {
+            long start = System.nanoTime();
+            ImprovedBVH bvh = new ImprovedBVH(objects, method);
+            double build = (System.nanoTime() - start) / 1e6;
+            double trace = Benchmarks.measure(runs, () -> {
+                int hits = 0;
+                for(Ray ray : rays) {
+                    if(bvh.intersect(ray, 0.001, Double.MAX_VALUE) != null)
+                        hits++;
+                }
+                return hits;
+            });
+            report(method, bvh.getSAHCost(SAHCostModel.OBJECTS), build, trace);
+        }
+
+        benchmarkMesh("Sphere", createMesh(), rays, runs);
+        benchmarkMesh("Building", createBuilding(new Random(7)), rays, runs);
+    }
+
+    private static void benchmarkMesh(String name, Triangle[] mesh, Ray[] rays, int runs) {
+        System.out.println(name + " triangles: " + mesh.length);
+        for(SplitMethod method : SplitMethod.values()) {
+            long start = System.nanoTime();
+            Triangle[] triangles;
+            BVHTriangle bvh;
+            if(method == SplitMethod.SPATIAL) {
+                // Spatial splits reference triangles more than once, so only a mesh can hold them
+                Mesh built = new Mesh(name, mesh.clone(), new Vector3D(), new Vector3D(), method);
+                triangles = built.triangles();
+                bvh = built.bvh();
+            } else {
+                triangles = mesh.clone();
+                bvh = new BVHTriangle(triangles, method);
+            }
+            double build = (System.nanoTime() - start) / 1e6;
+            Vector2D uv = new Vector2D(0, 0);
+            Triangle hit = new Triangle(new Vector3D(), new Vector3D(), new Vector3D(), uv, uv, uv);
+            double trace = Benchmarks.measure(runs, () -> {
+                int hits = 0;
+                for(Ray ray : rays) {
+                    if(bvh.intersect(ray, triangles, hit) < Double.MAX_VALUE)
+                        hits++;
+                }
+                return hits;
+            });
+            report(method, bvh.getSAHCost(SAHCostModel.TRIANGLES), build, trace);
+        }
+    }
+
+    private static void report(SplitMethod method, double cost, double build, double trace) {
+        System.out.printf("  %-13s cost %9.2f   build %8.1f ms   trace %8.1f ms%n", method, cost, build, trace);
+    }
+
+    private static Ray[] createRays(int count, Random random) {
+        Ray[] rays = new Ray[count];
+        for(int k = 0; k < count; k++) {
+            Vector3D origin = new Vector3D(random.nextDouble() * 8 - 4, random.nextDouble() * 8 - 4, 12);
+            Vector3D target = new Vector3D(random.nextDouble() * 8 - 4, random.nextDouble() * 8 - 4, 0);
+            rays[k] = new Ray(origin, Vector3D.sub(target, origin).normalize());
+        }
+        return rays;
+    }
+
+    private static List<Object> createObjects(Random random) {
+        List<Object> objects = new ArrayList<>();
+        for(int k = 0; k < 4; k++) {
+            Vector3D position = new Vector3D(k * 2.5 - 3.75, -3, -2);
+            objects.add(new Sphere(TestScenes.at(position), 1.2, TestScenes.MATERIAL));
+        }
+        for(int k = 0; k < 2000; k++) {
+            // Most of the small spheres crowd into one corner of the scene
+            double spread = k % 4 == 0 ? 4.0 : 1.0;
+            Vector3D position = new Vector3D(2 - random.nextDouble() * spread, 2 - random.nextDouble() * spread, random.nextDouble() * 2 - 1);
+            objects.add(new Sphere(TestScenes.at(position), 0.04, TestScenes.MATERIAL));
+        }
+        return objects;
+    }
+
+    private static Triangle[] createMesh() {
+        List<Triangle> triangles = new ArrayList<>();
+        Vector2D uv = new Vector2D(0, 0);
+        int rings = 64;
+        for(int ring = 0; ring < rings; ring++) {
+            double theta0 = Math.PI * ring / rings;
+            double theta1 = Math.PI * (ring + 1) / rings;
+            // The upper hemisphere is tessellated eight times more finely around its axis
+            int segments = ring < rings / 2 ? 512 : 64;
+            for(int segment = 0; segment < segments; segment++) {
+                double phi0 = 2 * Math.PI * segment / segments;
+                double phi1 = 2 * Math.PI * (segment + 1) / segments;
+                Vector3D a = point(theta0, phi0);
+                Vector3D b = point(theta1, phi0);
+                Vector3D c = point(theta1, phi1);
+                Vector3D d = point(theta0, phi1);
+                triangles.add(new Triangle(a, b, c, uv, uv, uv));
+                triangles.add(new Triangle(a, c, d, uv, uv, uv));
+            }
+        }
+        return triangles.toArray(new Triangle[0]);
+    }
+
+    /**
+     * Floors and walls of a grid of rooms, each a quad of two long triangles, furnished with small triangles
+     */
+    private static Triangle[] createBuilding(Random random) {
+        List<Triangle> triangles = new ArrayList<>();
+        for(int storey = 0; storey < 6; storey++) {
+            double y = storey * 1.5 - 4.5;
+            quad(triangles, new Vector3D(-4, y, -4), new Vector3D(4, y, -4), new Vector3D(4, y, 4), new Vector3D(-4, y, 4));
+            for(int wall = 0; wall <= 8; wall++) {
+                double p = wall - 4;
+                quad(triangles, new Vector3D(p, y, -4), new Vector3D(p, y, 4), new Vector3D(p, y + 1.5, 4), new Vector3D(p, y + 1.5, -4));
+                quad(triangles, new Vector3D(-4, y, p), new Vector3D(4, y, p), new Vector3D(4, y + 1.5, p), new Vector3D(-4, y + 1.5, p));
+            }
+        }
+        Vector2D uv = new Vector2D(0, 0);
+        for(int k = 0; k < 20000; k++) {
+            Vector3D corner = new Vector3D(random.nextDouble() * 8 - 4, random.nextDouble() * 9 - 4.5, random.nextDouble() * 8 - 4);
+            triangles.add(new Triangle(corner,
+                    new Vector3D(corner.x + 0.05, corner.y, corner.z + 0.05 * random.nextDouble()),
+                    new Vector3D(corner.x, corner.y + 0.05, corner.z + 0.05 * random.nextDouble()),
+                    uv, uv, uv));
+        }
+        return triangles.toArray(new Triangle[0]);
+    }
+
+    private static void quad(List<Triangle> triangles, Vector3D a, Vector3D b, Vector3D c, Vector3D d) {
+        Vector2D uv = new Vector2D(0, 0);
+        triangles.add(new Triangle(a, b, c, uv, uv, uv));
+        triangles.add(new Triangle(a, c, d, uv, uv, uv));
+    }
+
+    private static Vector3D point(double theta, double phi) {
+        double radius = 3;
+        return new Vector3D(radius * Math.sin(theta) * Math.cos(phi), radius * Math.cos(theta), radius * Math.sin(theta) * Math.sin(phi));
+    }
+}
@@ -0,0 +1,83 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+import me.jacksonhoggard.raydream.math.Vector2D;
+import me.jacksonhoggard.raydream.math.Vector3D;
+import me.jacksonhoggard.raydream.object.BVHTriangle;
+import me.jacksonhoggard.raydream.object.Object;
+import me.jacksonhoggard.raydream.object.Sphere;
+import me.jacksonhoggard.raydream.object.Triangle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * Measures how the SAH builds of {@link BVHTriangle} and {@link ImprovedBVH} scale with the number of
+ * fork-join workers. Builds a triangle soup and a set of spheres on pools of 1, 2, 4, ... up to the given
+ * thread count and reports the median build time and the speedup over one thread.
+ * <p>
+ * Run with {@code java -cp <test classpath> me.jacksonhoggard.raydream.acceleration.BVHBuildBenchmark [threads] [triangles] [runs]}
+ */
+public class BVHBuildBenchmark {
+
+    public static void main(String[] args) {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int triangleCount = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        Triangle[] triangles = createTriangles(triangleCount, new Random(1));
+        List<Object> objects = createObjects(triangleCount / 10, new Random(2));
+        System.out.println("Threads: " + threads + ", triangles: " + triangleCount + ", objects: " + objects.size() + ", runs: " + runs);
+        measure("triangles", threads, runs, pool -> new BVHTriangle(triangles.clone(), SplitMethod.SAH, pool));
+        measure("objects", threads, runs, pool -> new ImprovedBVH(objects, SplitMethod.SAH, pool));
+    }
+
+    private static void measure(String name, int threads, int runs, Consumer<ForkJoinPool> build) {
+        double single = 0;
+        for(int parallelism = 1; ; parallelism = Math.min(threads, parallelism * 2)) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            // Warm up the JIT and the pool's workers before measuring
+            build.accept(pool);
+            double[] wall = new double[runs];
+            for(int run = 0; run < runs; run++) {
+                long start = System.nanoTime();
+                build.accept(pool);
+                wall[run] = (System.nanoTime() - start) / 1e6;
+            }
+            pool.shutdown();
+            Arrays.sort(wall);
+            double median = wall[runs / 2];
+            if(parallelism == 1)
+                single = median;
+            System.out.printf("%-10s %3d threads %9.1f ms   speedup %5.2fx%n", name, parallelism, median, single / median);
+            if(parallelism == threads)
+                break;
+        }
+    }
+
+    private static Triangle[] createTriangles(int count, Random random) {
+        Triangle[] triangles = new Triangle[count];
+        Vector2D uv = new Vector2D(0, 0);
+        for(int i = 0; i < count; i++) {
+            Vector3D corner = new Vector3D(random.nextDouble() * 100, random.nextDouble() * 100, random.nextDouble() * 100);
+            triangles[i] = new Triangle(
+                    corner,
+                    new Vector3D(corner.x + random.nextDouble(), corner.y, corner.z + random.nextDouble()),
+                    new Vector3D(corner.x, corner.y + random.nextDouble(), corner.z + random.nextDouble()),
+                    uv, uv, uv);
+        }
+        return triangles;
+    }
+
+    private static List<Object> createObjects(int count, Random random) {
+        List<Object> objects = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) {
+            Vector3D position = new Vector3D(random.nextDouble() * 100, random.nextDouble() * 100, random.nextDouble() * 100);
+            objects.add(new Sphere(TestScenes.at(position), 0.2 + random.nextDouble() * 0.3, TestScenes.MATERIAL));
+        }
+        return objects;
+    }
+}
@@ -0,0 +1,51 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+import me.jacksonhoggard.raydream.math.Vector3D;
+import me.jacksonhoggard.raydream.object.Object;
+import me.jacksonhoggard.raydream.object.Sphere;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Timing and scene helpers shared by the acceleration structure benchmarks
+ */
+final class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    interface Trace {
+        int run();
+    }
+
+    /**
+     * Runs the trace once to warm up the JIT, then the given number of times
+     * @return the median wall time of a run in milliseconds
+     */
+    static double measure(int runs, Trace trace) {
+        trace.run();
+        double[] wall = new double[runs];
+        for(int run = 0; run < runs; run++) {
+            long start = System.nanoTime();
+            trace.run();
+            wall[run] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(wall);
+        return wall[runs / 2];
+    }
+
+    /**
+     * Small spheres spread evenly through a flat box in front of the camera
+     */
+    static List<Object> createScatteredSpheres(Random random) {
+        List<Object> objects = new ArrayList<>();
+        for(int k = 0; k < 4000; k++) {
+            Vector3D position = new Vector3D(random.nextDouble() * 8 - 4, random.nextDouble() * 8 - 4, random.nextDouble() * 4 - 2);
+            objects.add(new Sphere(TestScenes.at(position), 0.03 + random.nextDouble() * 0.05, TestScenes.MATERIAL));
+        }
+        return objects;
+    }
+}
@@ -0,0 +1,68 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("BinnedSAH Tests")
+public class BinnedSAHTest {
+
+    private static final SAHCostModel MODEL = new SAHCostModel(1.0, 1.0, 8, 4);
+
+    /**
+     * Builds unit cubes whose minimum corners are given as x, y, z triples
+     */
+    private static BinnedSAH cubes(double... corners) {
+        int count = corners.length / 3;
+        double[] bounds = new double[count * 6];
+        double[] centroids = new double[count * 3];
+        for (int i = 0; i < count; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                bounds[i * 6 + axis] = corners[i * 3 + axis];
+                bounds[i * 6 + 3 + axis] = corners[i * 3 + axis] + 1;
+                centroids[i * 3 + axis] = corners[i * 3 + axis] + 0.5;
+            }
+        }
+        return new BinnedSAH(bounds, centroids, MODEL);
+    }
+
+    @Test
+    @DisplayName("Separates Distant Clusters")
+    void testClusters() {
+        BinnedSAH sah = cubes(100, 0, 0, 0, 0, 0, 101, 0, 0, 1, 0, 0, 100, 1, 0, 0, 1, 0);
+        int mid = sah.split(0, 6, sah.computeBounds(0, 6));
+        assertEquals(3, mid);
+        int[] primitives = sah.getPrimitives();
+        for (int i = 0; i < 6; i++) {
+            // Odd primitives sit near the origin, even ones near x = 100
+            assertEquals(i < mid, primitives[i] % 2 == 1);
+        }
+    }
+
+    @Test
+    @DisplayName("Overlapping Primitives Become A Leaf")
+    void testLeaf() {
+        BinnedSAH sah = cubes(0, 0, 0, 0.1, 0, 0, 0.2, 0, 0);
+        assertEquals(-1, sah.split(0, 3, sah.computeBounds(0, 3)));
+    }
+
+    @Test
+    @DisplayName("Nodes Above The Leaf Size Are Always Split")
+    void testForcedSplit() {
+        BinnedSAH sah = cubes(0, 0, 0, 0.1, 0, 0, 0.2, 0, 0, 0.3, 0, 0, 0.4, 0, 0, 0.4, 0, 0);
+        int mid = sah.split(0, 6, sah.computeBounds(0, 6));
+        assertTrue(mid > 0 && mid < 6);
+
+        // Identical centroids cannot be separated by any plane, so the range is halved
+        BinnedSAH same = cubes(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+        assertEquals(2, same.split(0, 5, same.computeBounds(0, 5)));
+    }
+
+    @Test
+    @DisplayName("Surface Area")
+    void testSurfaceArea() {
+        assertEquals(22.0, BinnedSAH.surfaceArea(new double[] {0, 0, 0, 1, 2, 3}), 1e-9);
+        assertEquals(0.0, BinnedSAH.surfaceArea(new double[] {1, 1, 1, 0, 0, 0}));
+    }
+}
@@ -0,0 +1,128 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+import me.jacksonhoggard.raydream.math.Ray;
+import me.jacksonhoggard.raydream.math.Vector3D;
+import me.jacksonhoggard.raydream.object.Hit;
+import me.jacksonhoggard.raydream.object.Object;
+import me.jacksonhoggard.raydream.object.Plane;
+import me.jacksonhoggard.raydream.object.Sphere;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures a typical scene of objects resting on a ground plane, with the plane kept out of the tree as
+ * {@link ImprovedBVH} does against the plane placed in the tree with its nominal bounds. The primary rays
+ * of a camera looking down at the objects and the shadow rays from their hits toward a point light are
+ * traced for both split methods and for the binary and the 4-wide hierarchy. Every hierarchy traces once
+ * before any is measured, so all of them run with the same compiled code.
+ * <p>
+ * Run with {@code java -cp <test classpath> me.jacksonhoggard.raydream.acceleration.GroundPlaneBenchmark [image size] [runs]}
+ */
+public class GroundPlaneBenchmark {
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        List<Object> spheres = createSpheres(new Random(5));
+        List<Object> separate = new ArrayList<>(spheres);
+        separate.add(new Plane(0, new Vector3D(), TestScenes.MATERIAL));
+        List<Object> inTree = new ArrayList<>(spheres);
+        inTree.add(new Plane(0, new Vector3D(), TestScenes.MATERIAL) {
+            @Override
+            public boolean isBounded() {
+                return true;
+            }
+        });
+        Ray[] primary = createPrimaryRays(size);
+        System.out.println("Image: " + size + "x" + size + ", objects: " + separate.size() + ", runs: " + runs);
+
+        // Shadow rays start where the primary rays hit, which is the same with the plane in the tree or not
+        ImprovedBVH reference = new ImprovedBVH(separate);
+        Vector3D light = new Vector3D(4, 8, 6);
+        Ray[] shadow = new Ray[primary.length];
+        double[] lightDistances = new double[primary.length];
+        for(int k = 0; k < primary.length; k++) {
+            Hit hit = reference.intersect(primary[k], 0.0001, Double.MAX_VALUE);
+            Vector3D point = hit != null ? hit.point() : primary[k].at(50);
+            Vector3D toLight = Vector3D.sub(light, point);
+            lightDistances[k] = toLight.length();
+            shadow[k] = new Ray(Vector3D.add(point, Vector3D.mult(toLight, 1e-4 / lightDistances[k])), toLight.normalize());
+        }
+
+        List<String> names = new ArrayList<>();
+        List<ImprovedBVH> hierarchies = new ArrayList<>();
+        for(SplitMethod method : new SplitMethod[] {SplitMethod.SAH, SplitMethod.LONGEST_AXIS}) {
+            for(int width : new int[] {2, 4}) {
+                String name = method + ", width " + width;
+                names.add(name + ", plane in tree");
+                hierarchies.add(new ImprovedBVH(inTree, method, ForkJoinPool.commonPool(), width));
+                names.add(name + ", plane separate");
+                hierarchies.add(new ImprovedBVH(separate, method, ForkJoinPool.commonPool(), width));
+            }
+        }
+        for(ImprovedBVH bvh : hierarchies) {
+            trace(bvh, primary);
+            traceShadows(bvh, shadow, lightDistances);
+        }
+        for(int i = 0; i < hierarchies.size(); i++) {
+            ImprovedBVH bvh = hierarchies.get(i);
+            double closest = Benchmarks.measure(runs, () -> trace(bvh, primary));
+            double blocked = Benchmarks.measure(runs, () -> traceShadows(bvh, shadow, lightDistances));
+            System.out.printf("  %-38s primary %8.1f ms   shadow %8.1f ms%n", names.get(i), closest, blocked);
+        }
+    }
+
+    private static int trace(ImprovedBVH bvh, Ray[] primary) {
+        int hits = 0;
+        for(Ray ray : primary) {
+            if(bvh.intersect(ray, 0.0001, Double.MAX_VALUE) != null)
+                hits++;
+        }
+        return hits;
+    }
+
+    private static int traceShadows(ImprovedBVH bvh, Ray[] shadow, double[] lightDistances) {
+        int hits = 0;
+        for(int k = 0; k < shadow.length; k++) {
+            if(bvh.intersectShadowRay(shadow[k], lightDistances[k]))
+                hits++;
+        }
+        return hits;
+    }
+
+    /**
+     * One ray through the center of every pixel from a pinhole camera above the ground looking down at the origin
+     */
+    private static Ray[] createPrimaryRays(int size) {
+        Ray[] rays = new Ray[size * size];
+        Vector3D eye = new Vector3D(0, 5, 12);
+        Vector3D forward = Vector3D.sub(new Vector3D(), eye).normalize();
+        Vector3D right = forward.cross(new Vector3D(0, 1, 0)).normalize();
+        Vector3D up = right.cross(forward);
+        for(int j = 0; j < size; j++) {
+            for(int i = 0; i < size; i++) {
+                double x = ((i + 0.5) / size - 0.5) * 1.2;
+                double y = (0.5 - (j + 0.5) / size) * 1.2;
+                Vector3D direction = Vector3D.add(forward, Vector3D.add(Vector3D.mult(right, x), Vector3D.mult(up, y)));
+                rays[j * size + i] = new Ray(new Vector3D(eye), direction.normalize());
+            }
+        }
+        return rays;
+    }
+
+    /**
+     * Spheres of mixed sizes resting on the ground around the origin
+     */
+    private static List<Object> createSpheres(Random random) {
+        List<Object> objects = new ArrayList<>();
+        for(int k = 0; k < 2000; k++) {
+            double radius = k % 50 == 0 ? 0.6 : 0.05 + random.nextDouble() * 0.15;
+            Vector3D position = new Vector3D(random.nextDouble() * 16 - 8, radius, random.nextDouble() * 16 - 8);
+            objects.add(new Sphere(TestScenes.at(position), radius, TestScenes.MATERIAL));
+        }
+        return objects;
+    }
+}
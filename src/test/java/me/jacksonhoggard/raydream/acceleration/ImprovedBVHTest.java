@@ -0,0 +1,260 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+import me.jacksonhoggard.raydream.material.Material;
+import me.jacksonhoggard.raydream.math.Ray;
+import me.jacksonhoggard.raydream.math.Vector3D;
+import me.jacksonhoggard.raydream.object.Hit;
+import me.jacksonhoggard.raydream.object.Object;
+import me.jacksonhoggard.raydream.object.Plane;
+import me.jacksonhoggard.raydream.object.Sphere;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("ImprovedBVH Tests")
+public class ImprovedBVHTest {
+
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    @DisplayName("Both Split Methods Match A Brute Force Search")
+    void testBruteForce() {
+        Random random = new Random(21);
+        List<Object> objects = TestScenes.createSpheres(random, 200, 0.1, 0.3);
+        // A few large spheres overlap many small ones
+        for (int k = 0; k < objects.size(); k += 40)
+            objects.set(k, new Sphere(TestScenes.at(objects.get(k).getTransform().translation()), 2.0, TestScenes.MATERIAL));
+        ImprovedBVH sah = new ImprovedBVH(objects, SplitMethod.SAH);
+        ImprovedBVH axis = new ImprovedBVH(objects, SplitMethod.LONGEST_AXIS);
+
+        int hits = 0;
+        for (int i = 0; i < 500; i++) {
+            Ray ray = TestScenes.randomRay(random);
+            // Each object on its own is the reference
+            Hit expected = null;
+            for (Object object : objects) {
+                Hit hit = new ImprovedBVH(List.of(object)).intersect(ray, 0.001, Double.MAX_VALUE);
+                if (hit != null && (expected == null || hit.t() < expected.t()))
+                    expected = hit;
+            }
+            for (ImprovedBVH bvh : new ImprovedBVH[] {sah, axis}) {
+                Hit hit = bvh.intersect(ray, 0.001, Double.MAX_VALUE);
+                if (expected == null) {
+                    assertNull(hit);
+                    assertFalse(bvh.intersectShadowRay(ray, Double.MAX_VALUE));
+                } else {
+                    assertNotNull(hit);
+                    assertSame(expected.object(), hit.object());
+                    assertEquals(expected.t(), hit.t(), EPSILON);
+                    assertTrue(bvh.intersectShadowRay(ray, expected.t() + 1e-6));
+                }
+            }
+            if (expected != null)
+                hits++;
+        }
+        assertTrue(hits > 0);
+        assertNull(new ImprovedBVH(List.of()).intersect(new Ray(new Vector3D(), new Vector3D(0, 0, 1)), 0.001, Double.MAX_VALUE));
+    }
+
+    @Test
+    @DisplayName("Refit Hierarchies Match A Rebuild")
+    void testRefit() {
+        Random random = new Random(31);
+        List<Object> objects = new ArrayList<>();
+        List<Object> nudged = new ArrayList<>();
+        List<Object> scattered = new ArrayList<>();
+        for (int k = 0; k < 300; k++) {
+            Vector3D position = TestScenes.randomPosition(random);
+            double radius = 0.1 + random.nextDouble() * 0.3;
+            objects.add(new Sphere(TestScenes.at(position), radius, TestScenes.MATERIAL));
+            Vector3D moved = Vector3D.add(position, new Vector3D(0.2, k == 7 ? 1.5 : 0, 0));
+            nudged.add(new Sphere(TestScenes.at(moved), radius, TestScenes.MATERIAL));
+            scattered.add(new Sphere(TestScenes.at(TestScenes.randomPosition(random)), radius, TestScenes.MATERIAL));
+        }
+        for (SplitMethod method : SplitMethod.values()) {
+            ImprovedBVH bvh = new ImprovedBVH(objects, method);
+            assertEquals(1.0, bvh.getDegradation(), EPSILON);
+            for (List<Object> placed : List.of(nudged, scattered)) {
+                ImprovedBVH refit = bvh.refit(placed);
+                ImprovedBVH rebuilt = new ImprovedBVH(placed, method);
+                for (int i = 0; i < 300; i++) {
+                    Ray ray = TestScenes.randomRay(random);
+                    Hit expected = rebuilt.intersect(ray, 0.001, Double.MAX_VALUE);
+                    Hit hit = refit.intersect(ray, 0.001, Double.MAX_VALUE);
+                    if (expected == null) {
+                        assertNull(hit);
+                    } else {
+                        assertSame(expected.object(), hit.object());
+                        assertEquals(expected.t(), hit.t(), EPSILON);
+                    }
+                }
+            }
+            // Moving every object somewhere else degrades the tree far more than nudging them
+            assertTrue(bvh.refit(nudged).getDegradation() < 1.2);
+            assertTrue(bvh.refit(scattered).getDegradation() > 2);
+            // The original hierarchy keeps the old placements
+            assertEquals(1.0, bvh.getDegradation(), EPSILON);
+        }
+        assertThrows(IllegalArgumentException.class, () -> new ImprovedBVH(objects).refit(nudged.subList(0, 10)));
+    }
+
+    @Test
+    @DisplayName("Swapping A Plane And A Sphere Between Renders Needs A Rebuild")
+    void testRefitBoundedness() {
+        Random random = new Random(37);
+        Material material = TestScenes.MATERIAL;
+        List<Object> before = new ArrayList<>();
+        for (int k = 0; k < 100; k++) {
+            Vector3D position = new Vector3D(random.nextDouble() * 10 - 5, random.nextDouble() * 4, random.nextDouble() * 10 - 5);
+            before.add(new Sphere(TestScenes.at(position), 0.1 + random.nextDouble() * 0.3, material));
+        }
+        before.add(new Plane(-1, new Vector3D(), material));
+        // The next render has the same number of objects, with the plane and one of the spheres trading places
+        List<Object> after = new ArrayList<>(before);
+        after.set(100, before.get(20));
+        after.set(20, new Plane(-1, new Vector3D(), material));
+        // Only the plane replaced by a sphere
+        List<Object> planeRemoved = new ArrayList<>(before);
+        planeRemoved.set(100, new Sphere(TestScenes.at(new Vector3D(0, 1, 0)), 0.2, material));
+
+        ImprovedBVH bvh = new ImprovedBVH(before);
+        assertTrue(bvh.canRefit(before));
+        for (List<Object> objects : List.of(after, planeRemoved)) {
+            assertFalse(bvh.canRefit(objects));
+            assertThrows(IllegalArgumentException.class, () -> bvh.refit(objects));
+        }
+
+        // The rebuild keeps the plane outside the tree, so it is hit far beyond its nominal bounds
+        ImprovedBVH rebuilt = new ImprovedBVH(after);
+        assertEquals(1, rebuilt.getUnboundedCount());
+        Ray ray = new Ray(new Vector3D(50000, 5, 0), new Vector3D(0, -1, 0));
+        Hit hit = rebuilt.intersect(ray, 0.001, Double.MAX_VALUE);
+        assertNotNull(hit);
+        assertSame(after.get(20), hit.object());
+        assertEquals(6.0, hit.t(), EPSILON);
+        assertEquals(0, new ImprovedBVH(planeRemoved).getUnboundedCount());
+    }
+
+    @Test
+    @DisplayName("Statistics Describe The Tree And Count Traversal")
+    void testStatistics() {
+        Random random = new Random(41);
+        List<Object> objects = TestScenes.createSpheres(random, 200, 0.1, 0.3);
+        for (int width : new int[] {2, 4}) {
+            ImprovedBVH bvh = new ImprovedBVH(objects, SplitMethod.SAH, ForkJoinPool.commonPool(), width);
+            BVHStatistics build = bvh.getStatistics();
+            assertEquals(2 * build.leafCount() - 1, build.nodeCount());
+            assertEquals(objects.size(), build.primitiveCount());
+            int leaves = 0;
+            int primitives = 0;
+            for (int size = 0; size < build.leafSizes().length; size++) {
+                leaves += build.leafSizes()[size];
+                primitives += size * build.leafSizes()[size];
+            }
+            assertEquals(build.leafCount(), leaves);
+            assertEquals(build.primitiveCount(), primitives);
+            assertTrue(build.maxDepth() >= 32 - Integer.numberOfLeadingZeros(build.leafCount() - 1));
+            assertEquals(bvh.getSAHCost(SAHCostModel.OBJECTS), build.sahCost(), EPSILON);
+            assertTrue(build.memoryBytes() > build.nodeCount() * 48L);
+
+            TraversalStatistics statistics = new TraversalStatistics();
+            statistics.bind();
+            int hits = 0;
+            int blocked = 0;
+            try {
+                for (int i = 0; i < 100; i++) {
+                    Ray ray = TestScenes.randomRay(random);
+                    if (bvh.intersect(ray, 0.001, Double.MAX_VALUE) != null)
+                        hits++;
+                    if (bvh.intersectShadowRay(ray, 20))
+                        blocked++;
+                }
+            } finally {
+                TraversalStatistics.unbind();
+            }
+            TraversalStatistics.Counters closest = statistics.get(TraversalStatistics.RayType.CLOSEST_HIT);
+            TraversalStatistics.Counters shadow = statistics.get(TraversalStatistics.RayType.SHADOW);
+            assertEquals(100, closest.getRays());
+            assertEquals(hits, closest.getHits());
+            assertEquals(100, shadow.getRays());
+            assertEquals(blocked, shadow.getHits());
+            assertTrue(closest.getNodesVisited() >= 100);
+            assertTrue(closest.getPrimitivesTested() >= hits);
+
+            // Unbound threads count nothing, and merging adds the counts up
+            bvh.intersect(new Ray(new Vector3D(0, 0, -12), new Vector3D(0, 0, 1)), 0.001, Double.MAX_VALUE);
+            assertEquals(100, closest.getRays());
+            TraversalStatistics merged = new TraversalStatistics();
+            merged.add(statistics);
+            merged.add(statistics);
+            assertEquals(200, merged.get(TraversalStatistics.RayType.CLOSEST_HIT).getRays());
+            assertEquals(2 * shadow.getNodesVisited(), merged.get(TraversalStatistics.RayType.SHADOW).getNodesVisited());
+        }
+    }
+
+    @Test
+    @DisplayName("Unbounded Objects Stay Out Of The Tree")
+    void testUnbounded() {
+        Random random = new Random(51);
+        List<Object> spheres = new ArrayList<>();
+        for (int k = 0; k < 200; k++) {
+            Vector3D position = new Vector3D(random.nextDouble() * 10 - 5, random.nextDouble() * 4 - 1, random.nextDouble() * 10 - 5);
+            spheres.add(new Sphere(TestScenes.at(position), 0.1 + random.nextDouble() * 0.3, TestScenes.MATERIAL));
+        }
+        List<Object> objects = new ArrayList<>(spheres);
+        objects.add(100, new Plane(-1, new Vector3D(), TestScenes.MATERIAL));
+
+        for (int width : new int[] {2, 4}) {
+            ImprovedBVH bvh = new ImprovedBVH(objects, SplitMethod.SAH, ForkJoinPool.commonPool(), width);
+            assertEquals(objects.size(), bvh.getObjectCount());
+            assertEquals(1, bvh.getUnboundedCount());
+            // The plane does not stretch the tree, which is the one built without it
+            assertEquals(spheres.size(), bvh.getStatistics().primitiveCount());
+            assertEquals(new ImprovedBVH(spheres, SplitMethod.SAH).getSAHCost(SAHCostModel.OBJECTS), bvh.getSAHCost(SAHCostModel.OBJECTS), EPSILON);
+
+            RayPacket packet = new RayPacket();
+            RayPacket shadows = new RayPacket();
+            int planeHits = 0;
+            for (int i = 0; i < 256; i++) {
+                Vector3D origin = new Vector3D(random.nextDouble() * 12 - 6, random.nextDouble() * 2 + 2, -12);
+                Vector3D direction = new Vector3D(0.01 + random.nextDouble() * 0.1, -0.01 - random.nextDouble() * 0.3, 1).normalize();
+                Ray ray = new Ray(origin, direction);
+                Hit expected = null;
+                for (Object object : objects) {
+                    Hit hit = new ImprovedBVH(List.of(object)).intersect(ray, 0.001, Double.MAX_VALUE);
+                    if (hit != null && (expected == null || hit.t() < expected.t()))
+                        expected = hit;
+                }
+                Hit hit = bvh.intersect(ray, 0.001, Double.MAX_VALUE);
+                if (expected == null) {
+                    assertNull(hit);
+                } else {
+                    assertSame(expected.object(), hit.object());
+                    assertEquals(expected.t(), hit.t(), EPSILON);
+                    assertEquals(expected.object() instanceof Plane, !expected.object().isBounded());
+                    if (expected.object() instanceof Plane) planeHits++;
+                }
+                packet.add(ray, Double.MAX_VALUE);
+                shadows.add(ray, expected == null ? 1000 : expected.t() + 1e-6);
+                if (packet.size() == RayPacket.MAX_SIZE) {
+                    bvh.intersect(packet, 0.001);
+                    bvh.intersectShadowRays(shadows);
+                    for (int r = 0; r < packet.size(); r++) {
+                        Hit single = bvh.intersect(packet.getRay(r), 0.001, Double.MAX_VALUE);
+                        assertSame(single == null ? null : single.object(), packet.getHit(r) == null ? null : packet.getHit(r).object());
+                        assertEquals(bvh.intersectShadowRay(shadows.getRay(r), shadows.getMaxDistance(r)), shadows.isOccluded(r));
+                    }
+                    packet.clear();
+                    shadows.clear();
+                }
+            }
+            assertTrue(planeHits > 0);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+import me.jacksonhoggard.raydream.math.Ray;
+import me.jacksonhoggard.raydream.math.Vector3D;
+import me.jacksonhoggard.raydream.object.Box;
+import me.jacksonhoggard.raydream.object.Hit;
+import me.jacksonhoggard.raydream.object.Object;
+import me.jacksonhoggard.raydream.object.Plane;
+import me.jacksonhoggard.raydream.object.Sphere;
+import me.jacksonhoggard.raydream.object.Transform;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("OccluderCache Tests")
+public class OccluderCacheTest {
+
+    private static List<Object> createObjects(Random random) {
+        List<Object> objects = new ArrayList<>();
+        for (int k = 0; k < 300; k++) {
+            Vector3D position = TestScenes.randomPosition(random);
+            Vector3D rotation = new Vector3D(random.nextDouble() * 90, random.nextDouble() * 90, 0);
+            if (k % 2 == 0)
+                objects.add(new Sphere(new Transform(position, rotation, new Vector3D(1, 1, 1)), 0.1 + random.nextDouble() * 0.4, TestScenes.MATERIAL));
+            else
+                objects.add(new Box(new Transform(position, rotation, new Vector3D(1, 1, 1)), new Vector3D(0.3, 0.5, 0.2), TestScenes.MATERIAL));
+        }
+        objects.add(new Plane(-7, new Vector3D(), TestScenes.MATERIAL));
+        return objects;
+    }
+
+    @Test
+    @DisplayName("Objects Report Occlusion Where They Are Hit")
+    void testOccludes() {
+        Random random = new Random(31);
+        int blocked = 0;
+        for (Object object : createObjects(random)) {
+            ImprovedBVH single = new ImprovedBVH(List.of(object), SplitMethod.SAH, ForkJoinPool.commonPool(), 2);
+            for (int i = 0; i < 20; i++) {
+                Vector3D origin = new Vector3D(random.nextDouble() * 12 - 6, random.nextDouble() * 12 - 6, -12);
+                Vector3D direction = Vector3D.sub(object.getCentroid(), origin).normalize();
+                direction = Vector3D.add(direction, new Vector3D(random.nextDouble() * 0.1 - 0.05, random.nextDouble() * 0.1 - 0.05, 0)).normalize();
+                Ray ray = new Ray(origin, direction);
+                Hit hit = single.intersect(ray, 0.0001, Double.MAX_VALUE);
+                Vector3D o = ray.origin();
+                Vector3D d = ray.direction();
+                if (hit == null) {
+                    assertFalse(object.occludes(o.x, o.y, o.z, d.x, d.y, d.z, 0.0001, Double.MAX_VALUE));
+                } else {
+                    assertTrue(object.occludes(o.x, o.y, o.z, d.x, d.y, d.z, 0.0001, hit.t() + 1e-6));
+                    assertFalse(object.occludes(o.x, o.y, o.z, d.x, d.y, d.z, 0.0001, hit.t() - 1e-6));
+                    blocked++;
+                }
+            }
+        }
+        assertTrue(blocked > 0);
+    }
+
+    @Test
+    @DisplayName("Cached Shadow Rays Find The Same Blockers")
+    void testCache() {
+        Random random = new Random(37);
+        List<Object> objects = createObjects(random);
+        ImprovedBVH binary = new ImprovedBVH(objects, SplitMethod.SAH, ForkJoinPool.commonPool(), 2);
+        ImprovedBVH wide = new ImprovedBVH(objects, SplitMethod.SAH, ForkJoinPool.commonPool(), 4);
+        Vector3D[] lights = {new Vector3D(0, 9, 0), new Vector3D(6, 2, -9)};
+
+        int blocked = 0;
+        for (ImprovedBVH bvh : new ImprovedBVH[] {binary, wide}) {
+            OccluderCache cache = new OccluderCache(lights.length);
+            for (int i = 0; i < 2000; i++) {
+                // Walk the points in a coarse grid so neighbouring rays often share a blocker
+                Vector3D point = new Vector3D((i % 40) * 0.25 - 5, -6, (i / 40) * 0.2 - 5);
+                for (int l = 0; l < lights.length; l++) {
+                    Vector3D toLight = Vector3D.sub(lights[l], point);
+                    double distance = toLight.length();
+                    Ray ray = new Ray(point, new Vector3D(toLight).normalize());
+                    boolean expected = bvh.intersectShadowRay(ray, distance);
+                    assertEquals(expected, bvh.intersectShadowRay(ray, distance, cache, l));
+                    if (expected)
+                        blocked++;
+                }
+            }
+        }
+        assertTrue(blocked > 0);
+        assertTrue(blocked < 2 * 2000 * lights.length);
+    }
+}
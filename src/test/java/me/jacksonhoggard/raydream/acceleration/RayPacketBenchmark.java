@@ -0,0 +1,117 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+import me.jacksonhoggard.raydream.math.Ray;
+import me.jacksonhoggard.raydream.math.Vector3D;
+import me.jacksonhoggard.raydream.object.Hit;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares tracing the primary rays of an image, and the shadow rays from their hits toward a point light,
+ * one ray at a time against tracing them in packets of square pixel blocks.
+ * <p>
+ * Run with {@code java -cp <test classpath> me.jacksonhoggard.raydream.acceleration.RayPacketBenchmark [image size] [runs]}
+ */
+public class RayPacketBenchmark {
+
+    private static final int[] BLOCK_SIZES = {2, 4, 8};
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        ImprovedBVH bvh = new ImprovedBVH(Benchmarks.createScatteredSpheres(new Random(5)), SplitMethod.SAH, ForkJoinPool.commonPool(), 2);
+        Ray[] primary = createPrimaryRays(size);
+        Vector3D light = new Vector3D(2, 6, 10);
+        Ray[] shadow = new Ray[primary.length];
+        double[] lightDistances = new double[primary.length];
+        for(int k = 0; k < primary.length; k++) {
+            Hit hit = bvh.intersect(primary[k], 0.0001, Double.MAX_VALUE);
+            Vector3D point = hit != null ? hit.point() : primary[k].at(20);
+            Vector3D toLight = Vector3D.sub(light, point);
+            lightDistances[k] = toLight.length();
+            shadow[k] = new Ray(Vector3D.add(point, Vector3D.mult(toLight, 1e-4 / lightDistances[k])), toLight.normalize());
+        }
+        System.out.println("Image: " + size + "x" + size + ", runs: " + runs);
+
+        double closest = Benchmarks.measure(runs, () -> {
+            int hits = 0;
+            for(Ray ray : primary) {
+                if(bvh.intersect(ray, 0.0001, Double.MAX_VALUE) != null)
+                    hits++;
+            }
+            return hits;
+        });
+        double blocked = Benchmarks.measure(runs, () -> {
+            int hits = 0;
+            for(int k = 0; k < shadow.length; k++) {
+                if(bvh.intersectShadowRay(shadow[k], lightDistances[k]))
+                    hits++;
+            }
+            return hits;
+        });
+        report("single rays", primary.length, closest, blocked);
+
+        RayPacket packet = new RayPacket();
+        for(int blockSize : BLOCK_SIZES) {
+            double packetClosest = Benchmarks.measure(runs, () -> {
+                int hits = 0;
+                for(int y = 0; y < size; y += blockSize) {
+                    for(int x = 0; x < size; x += blockSize) {
+                        packet.clear();
+                        for(int j = y; j < y + blockSize; j++) {
+                            for(int i = x; i < x + blockSize; i++)
+                                packet.add(primary[j * size + i], Double.MAX_VALUE);
+                        }
+                        bvh.intersect(packet, 0.0001);
+                        for(int k = 0; k < packet.size(); k++) {
+                            if(packet.getHit(k) != null)
+                                hits++;
+                        }
+                    }
+                }
+                return hits;
+            });
+            double packetBlocked = Benchmarks.measure(runs, () -> {
+                int hits = 0;
+                for(int y = 0; y < size; y += blockSize) {
+                    for(int x = 0; x < size; x += blockSize) {
+                        packet.clear();
+                        for(int j = y; j < y + blockSize; j++) {
+                            for(int i = x; i < x + blockSize; i++)
+                                packet.add(shadow[j * size + i], lightDistances[j * size + i]);
+                        }
+                        bvh.intersectShadowRays(packet);
+                        for(int k = 0; k < packet.size(); k++) {
+                            if(packet.isOccluded(k))
+                                hits++;
+                        }
+                    }
+                }
+                return hits;
+            });
+            report(blockSize + "x" + blockSize + " packets", primary.length, packetClosest, packetBlocked);
+        }
+    }
+
+    private static void report(String name, int rayCount, double closest, double shadow) {
+        System.out.printf("  %-14s primary %8.1f ms (%5.2f M rays/s)   shadow %8.1f ms (%5.2f M rays/s)%n",
+                name, closest, rayCount / closest / 1e3, shadow, rayCount / shadow / 1e3);
+    }
+
+    /**
+     * One ray through the center of every pixel from a pinhole camera looking down the negative z axis
+     */
+    private static Ray[] createPrimaryRays(int size) {
+        Ray[] rays = new Ray[size * size];
+        Vector3D eye = new Vector3D(0, 0, 12);
+        for(int j = 0; j < size; j++) {
+            for(int i = 0; i < size; i++) {
+                double x = ((i + 0.5) / size - 0.5) * 0.8;
+                double y = (0.5 - (j + 0.5) / size) * 0.8;
+                rays[j * size + i] = new Ray(new Vector3D(eye), new Vector3D(x, y, -1).normalize());
+            }
+        }
+        return rays;
+    }
+}
@@ -0,0 +1,102 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+import me.jacksonhoggard.raydream.math.Ray;
+import me.jacksonhoggard.raydream.math.Vector3D;
+import me.jacksonhoggard.raydream.object.Hit;
+import me.jacksonhoggard.raydream.object.Object;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("RayPacket Tests")
+public class RayPacketTest {
+
+    /**
+     * Rays from a small lens through an 8 by 8 grid of pixels, as the camera shoots them for a block
+     */
+    private static Ray[] createBlock(Random random, double spread) {
+        Ray[] rays = new Ray[RayPacket.MAX_SIZE];
+        double cornerX = random.nextDouble() * 1.6 - 0.8;
+        double cornerY = random.nextDouble() * 1.6 - 0.8;
+        for (int k = 0; k < rays.length; k++) {
+            Vector3D origin = new Vector3D(random.nextDouble() * 0.1, random.nextDouble() * 0.1, -12);
+            Vector3D direction = new Vector3D(cornerX + (k % 8) * spread, cornerY + (k / 8) * spread, 1).normalize();
+            rays[k] = new Ray(origin, direction);
+        }
+        return rays;
+    }
+
+    @Test
+    @DisplayName("Packets Find The Same Hits As Single Rays")
+    void testIntersect() {
+        Random random = new Random(17);
+        List<Object> objects = TestScenes.createSpheres(random, 400, 0.1, 0.4);
+        ImprovedBVH sah = new ImprovedBVH(objects, SplitMethod.SAH, ForkJoinPool.commonPool(), 2);
+        ImprovedBVH axis = new ImprovedBVH(objects, SplitMethod.LONGEST_AXIS, ForkJoinPool.commonPool(), 4);
+        RayPacket packet = new RayPacket();
+
+        int hits = 0;
+        for (int block = 0; block < 60; block++) {
+            // Coherent blocks, a diverging one and one whose rays point both ways along x
+            double spread = block % 3 == 0 ? 0.3 : 0.01;
+            Ray[] rays = createBlock(random, spread);
+            if (block % 5 == 0)
+                rays[7] = new Ray(rays[7].origin(), new Vector3D(-0.2, 0.1, 1).normalize());
+            int size = block % 4 == 0 ? 13 : RayPacket.MAX_SIZE;
+            for (ImprovedBVH bvh : new ImprovedBVH[] {sah, axis}) {
+                packet.clear();
+                for (int k = 0; k < size; k++)
+                    assertEquals(k, packet.add(rays[k], k % 9 == 0 ? 14 : Double.MAX_VALUE));
+                bvh.intersect(packet, 0.001);
+                for (int k = 0; k < size; k++) {
+                    Hit expected = bvh.intersect(rays[k], 0.001, packet.getMaxDistance(k));
+                    Hit hit = packet.getHit(k);
+                    if (expected == null) {
+                        assertNull(hit);
+                    } else {
+                        assertSame(expected.object(), hit.object());
+                        assertEquals(expected.t(), hit.t());
+                        hits++;
+                    }
+                }
+            }
+        }
+        assertTrue(hits > 0);
+    }
+
+    @Test
+    @DisplayName("Packets Find The Same Blockers As Single Rays")
+    void testShadowRays() {
+        Random random = new Random(23);
+        ImprovedBVH bvh = new ImprovedBVH(TestScenes.createSpheres(random, 400, 0.1, 0.4), SplitMethod.SAH, ForkJoinPool.commonPool(), 2);
+        RayPacket packet = new RayPacket();
+
+        int blocked = 0;
+        for (int block = 0; block < 60; block++) {
+            // Shadow rays from a patch of points toward one light
+            Vector3D light = new Vector3D(random.nextDouble() * 4 - 2, 8, random.nextDouble() * 4 - 2);
+            double x = random.nextDouble() * 8 - 4;
+            double z = random.nextDouble() * 8 - 4;
+            packet.clear();
+            for (int k = 0; k < RayPacket.MAX_SIZE; k++) {
+                Vector3D origin = new Vector3D(x + (k % 8) * 0.05, -6, z + (k / 8) * 0.05);
+                Vector3D toLight = Vector3D.sub(light, origin);
+                packet.add(new Ray(origin, new Vector3D(toLight).normalize()), toLight.length());
+            }
+            bvh.intersectShadowRays(packet);
+            for (int k = 0; k < packet.size(); k++) {
+                boolean expected = bvh.intersectShadowRay(packet.getRay(k), packet.getMaxDistance(k));
+                assertEquals(expected, packet.isOccluded(k));
+                if (expected)
+                    blocked++;
+            }
+        }
+        assertTrue(blocked > 0);
+        assertTrue(blocked < 60 * RayPacket.MAX_SIZE);
+    }
+}
@@ -0,0 +1,82 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+import me.jacksonhoggard.raydream.config.ApplicationConfig;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("SAHBuilder Tests")
+public class SAHBuilderTest {
+
+    private static SAHBuilder build(int count, ForkJoinPool pool) {
+        Random random = new Random(9);
+        double[] bounds = new double[count * 6];
+        double[] centroids = new double[count * 3];
+        for (int i = 0; i < count; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                double min = random.nextDouble() * 100;
+                double size = random.nextDouble() * (i % 100 == 0 ? 20 : 0.5);
+                bounds[i * 6 + axis] = min;
+                bounds[i * 6 + 3 + axis] = min + size;
+                centroids[i * 3 + axis] = min + size * 0.5;
+            }
+        }
+        return new SAHBuilder(bounds, centroids, SAHCostModel.TRIANGLES).build(pool);
+    }
+
+    @Test
+    @DisplayName("Parallel And Single-Threaded Builds Are Identical")
+    void testParallelBuild() {
+        int count = ApplicationConfig.BVH_PARALLEL_BINNING_SIZE * 2;
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool parallel = new ForkJoinPool(4);
+        try {
+            SAHBuilder expected = build(count, single);
+            SAHBuilder actual = build(count, parallel);
+            assertEquals(expected.getNodeCount(), actual.getNodeCount());
+            assertEquals(expected.getDepth(), actual.getDepth());
+            assertArrayEquals(expected.getPrimitives(), actual.getPrimitives());
+            assertArrayEquals(expected.getNodeBounds(), actual.getNodeBounds());
+            assertArrayEquals(expected.getNodeOffsets(), actual.getNodeOffsets());
+            assertArrayEquals(expected.getNodeCounts(), actual.getNodeCounts());
+        } finally {
+            single.shutdown();
+            parallel.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Leaves Cover Every Primitive Once In Depth-First Order")
+    void testLayout() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            SAHBuilder builder = build(20000, pool);
+            int[] offsets = builder.getNodeOffsets();
+            int[] counts = builder.getNodeCounts();
+            double[] bounds = builder.getNodeBounds();
+            int next = 0;
+            for (int node = 0; node < builder.getNodeCount(); node++) {
+                if (counts[node] > 0) {
+                    // Leaves appear in depth-first order, so their ranges follow each other
+                    assertEquals(next, offsets[node]);
+                    next += counts[node];
+                    continue;
+                }
+                for (int child : new int[] {node + 1, offsets[node]}) {
+                    assertTrue(child > node && child < builder.getNodeCount());
+                    for (int axis = 0; axis < 3; axis++) {
+                        assertTrue(bounds[child * 6 + axis] >= bounds[node * 6 + axis]);
+                        assertTrue(bounds[child * 6 + 3 + axis] <= bounds[node * 6 + 3 + axis]);
+                    }
+                }
+            }
+            assertEquals(20000, next);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+import me.jacksonhoggard.raydream.material.Material;
+import me.jacksonhoggard.raydream.math.Ray;
+import me.jacksonhoggard.raydream.math.Vector3D;
+import me.jacksonhoggard.raydream.object.Object;
+import me.jacksonhoggard.raydream.object.Sphere;
+import me.jacksonhoggard.raydream.object.Transform;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Objects, materials and rays shared by the acceleration structure tests and benchmarks
+ */
+final class TestScenes {
+
+    /**
+     * Material given to every object, since only the geometry matters to the hierarchies
+     */
+    static final Material MATERIAL = new Material(new Vector3D(1, 1, 1), 0.1, 0.8, 0.2, 32.0, 0.0, 0.0, 1.0, 0.0, Material.Type.REFLECT, null, null);
+
+    private TestScenes() {
+    }
+
+    /**
+     * @return an unrotated, unscaled placement at the given position
+     */
+    static Transform at(Vector3D position) {
+        return new Transform(position, new Vector3D(), new Vector3D(1, 1, 1));
+    }
+
+    /**
+     * @return a position in the cube from -5 to 5 on every axis
+     */
+    static Vector3D randomPosition(Random random) {
+        return new Vector3D(random.nextDouble() * 10 - 5, random.nextDouble() * 10 - 5, random.nextDouble() * 10 - 5);
+    }
+
+    /**
+     * Spheres at random positions in the cube from -5 to 5
+     * @param minRadius smallest radius
+     * @param radiusRange how much larger than the smallest a radius can be
+     */
+    static List<Object> createSpheres(Random random, int count, double minRadius, double radiusRange) {
+        List<Object> objects = new ArrayList<>();
+        for (int k = 0; k < count; k++) {
+            Vector3D position = randomPosition(random);
+            objects.add(new Sphere(at(position), minRadius + random.nextDouble() * radiusRange, MATERIAL));
+        }
+        return objects;
+    }
+
+    /**
+     * @return a ray from behind the cube of {@link #createSpheres} heading roughly through it
+     */
+    static Ray randomRay(Random random) {
+        Vector3D origin = new Vector3D(random.nextDouble() * 12 - 6, random.nextDouble() * 12 - 6, -12);
+        Vector3D direction = new Vector3D(random.nextDouble() - 0.5, random.nextDouble() - 0.5, 1).normalize();
+        return new Ray(origin, direction);
+    }
+}
@@ -0,0 +1,77 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+import me.jacksonhoggard.raydream.math.Ray;
+import me.jacksonhoggard.raydream.math.Vector3D;
+import me.jacksonhoggard.raydream.object.Object;
+import me.jacksonhoggard.raydream.object.Sphere;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures the closest hit traversal of the binary hierarchy in a dense volume of small spheres, where most
+ * rays are stopped by the first objects they reach and visiting the nearer child first pays off. Rays
+ * arrive from all directions, so a fixed child order is wrong for half of them. For each split method the
+ * nodes and objects tested per ray, as counted by {@link TraversalStatistics}, and the median wall time
+ * are reported.
+ * <p>
+ * Run with {@code java -cp <test classpath> me.jacksonhoggard.raydream.acceleration.TraversalOrderBenchmark [rays] [runs]}
+ */
+public class TraversalOrderBenchmark {
+
+    public static void main(String[] args) {
+        int rayCount = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        List<Object> objects = createObjects(new Random(5));
+        Ray[] rays = createRays(rayCount, new Random(3));
+        System.out.println("Objects: " + objects.size() + ", rays: " + rayCount + ", runs: " + runs);
+
+        for(SplitMethod method : new SplitMethod[] {SplitMethod.SAH, SplitMethod.LONGEST_AXIS}) {
+            ImprovedBVH bvh = new ImprovedBVH(objects, method, ForkJoinPool.commonPool(), 2);
+            TraversalStatistics statistics = new TraversalStatistics();
+            statistics.bind();
+            int hits = trace(bvh, rays);
+            TraversalStatistics.unbind();
+            TraversalStatistics.Counters counters = statistics.get(TraversalStatistics.RayType.CLOSEST_HIT);
+            double wall = Benchmarks.measure(runs, () -> trace(bvh, rays));
+            System.out.printf("  %-13s hits %6d   nodes %6.1f   objects %6.1f per ray   trace %8.1f ms%n", method, hits,
+                    (double) counters.getNodesVisited() / rayCount, (double) counters.getPrimitivesTested() / rayCount, wall);
+        }
+    }
+
+    private static int trace(ImprovedBVH bvh, Ray[] rays) {
+        int hits = 0;
+        for(Ray ray : rays) {
+            if(bvh.intersect(ray, 0.0001, Double.MAX_VALUE) != null)
+                hits++;
+        }
+        return hits;
+    }
+
+    /**
+     * Rays from random points around the volume toward random points inside it
+     */
+    private static Ray[] createRays(int count, Random random) {
+        Ray[] rays = new Ray[count];
+        for(int k = 0; k < count; k++) {
+            Vector3D origin = Vector3D.mult(new Vector3D(random.nextGaussian(), random.nextGaussian(), random.nextGaussian()).normalize(), 12);
+            Vector3D target = new Vector3D(random.nextDouble() * 6 - 3, random.nextDouble() * 6 - 3, random.nextDouble() * 6 - 3);
+            rays[k] = new Ray(origin, Vector3D.sub(target, origin).normalize());
+        }
+        return rays;
+    }
+
+    /**
+     * Small spheres filling a cube
+     */
+    private static List<Object> createObjects(Random random) {
+        List<Object> objects = new ArrayList<>();
+        for(int k = 0; k < 20000; k++) {
+            Vector3D position = new Vector3D(random.nextDouble() * 8 - 4, random.nextDouble() * 8 - 4, random.nextDouble() * 8 - 4);
+            objects.add(new Sphere(TestScenes.at(position), 0.08 + random.nextDouble() * 0.08, TestScenes.MATERIAL));
+        }
+        return objects;
+    }
+}
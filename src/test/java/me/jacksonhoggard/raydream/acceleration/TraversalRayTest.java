@@ -0,0 +1,116 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+import me.jacksonhoggard.raydream.math.Vector3D;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("TraversalRay Tests")
+public class TraversalRayTest {
+
+    /**
+     * Slab test computing the inverse of every axis on its own and ignoring an axis whose distances are NaN
+     */
+    private static double reference(double[] o, double[] d, double[] bounds, double tMin, double tMax) {
+        double near = tMin;
+        double far = tMax;
+        for (int axis = 0; axis < 3; axis++) {
+            double inv = 1.0 / d[axis];
+            double t0 = (bounds[axis] - o[axis]) * inv;
+            double t1 = (bounds[axis + 3] - o[axis]) * inv;
+            if (inv < 0) { double t = t0; t0 = t1; t1 = t; }
+            if (t0 > near) near = t0;
+            if (t1 < far) far = t1;
+        }
+        return near <= far ? near : TraversalRay.MISS;
+    }
+
+    private static double component(Random random) {
+        // Axis-parallel rays in a quarter of the components, including negative zero
+        return switch (random.nextInt(8)) {
+            case 0 -> 0.0;
+            case 1 -> -0.0;
+            default -> random.nextDouble() * 2 - 1;
+        };
+    }
+
+    @Test
+    @DisplayName("Entry Distance Matches A Reference Slab Test")
+    void testEntry() {
+        Random random = new Random(17);
+        int hits = 0;
+        for (int i = 0; i < 20000; i++) {
+            double[] o = {random.nextDouble() * 6 - 3, random.nextDouble() * 6 - 3, random.nextDouble() * 6 - 3};
+            double[] bounds = new double[6];
+            for (int axis = 0; axis < 3; axis++) {
+                double a = random.nextDouble() * 4 - 2;
+                double b = random.nextDouble() * 4 - 2;
+                bounds[axis] = Math.min(a, b);
+                bounds[axis + 3] = Math.max(a, b);
+            }
+            double[] d = {component(random), component(random), component(random)};
+            // Half of the rays point roughly at the box, keeping their zero components
+            for (int axis = 0; i % 2 == 0 && axis < 3; axis++) {
+                if (d[axis] != 0)
+                    d[axis] = (bounds[axis] + bounds[axis + 3]) / 2 - o[axis] + random.nextDouble() * 0.2 - 0.1;
+            }
+            if (d[0] == 0 && d[1] == 0 && d[2] == 0)
+                continue;
+            double tMax = random.nextBoolean() ? Double.MAX_VALUE : random.nextDouble() * 5;
+            double expected = reference(o, d, bounds, 0, tMax);
+            TraversalRay ray = new TraversalRay(o[0], o[1], o[2], d[0], d[1], d[2]);
+            // The boxes are offset in the array to check the node offset is applied
+            double[] nodes = new double[12];
+            System.arraycopy(bounds, 0, nodes, 6, 6);
+            assertEquals(expected, ray.entry(nodes, 6, 0, tMax));
+            assertEquals(expected != TraversalRay.MISS, ray.intersects(nodes, 6, 0, tMax));
+            assertEquals(expected, ray.entry(new Vector3D(bounds[0], bounds[1], bounds[2]), new Vector3D(bounds[3], bounds[4], bounds[5]), 0, tMax));
+            if (expected != TraversalRay.MISS)
+                hits++;
+        }
+        assertTrue(hits > 1000);
+    }
+
+    @Test
+    @DisplayName("Axis-Parallel Ray In The Plane Of A Bound Hits The Box")
+    void testOnPlane() {
+        double[] bounds = {-1, -1, -1, 1, 1, 1};
+        double[] near = new double[1];
+        // Each ray runs along a face or edge, where the zero direction times an infinite inverse is NaN
+        double[][] rays = {
+                {-5, 1, 0, 1, 0, 0},
+                {-5, -1, 0, 1, -0.0, 0},
+                {5, 1, -1, -1, 0, 0},
+                {0, -1, 5, 0.0, -0.0, -1}
+        };
+        for (double[] r : rays) {
+            TraversalRay ray = new TraversalRay(r[0], r[1], r[2], r[3], r[4], r[5]);
+            assertEquals(4, ray.entry(bounds, 0, 0, Double.MAX_VALUE));
+            assertTrue(ray.intersects(bounds, 0, 0, Double.MAX_VALUE));
+            assertEquals(4, ray.entry(new Vector3D(-1, -1, -1), new Vector3D(1, 1, 1), 0, Double.MAX_VALUE));
+            // A one-wide node has the layout of a binary one, so the wide test must agree
+            assertEquals(1, ScalarWideBoxTest.INSTANCE.intersect(bounds, 0, 1, r[0], r[1], r[2],
+                    ray.invX(), ray.invY(), ray.invZ(), 0, Double.MAX_VALUE, near));
+            assertEquals(4, near[0]);
+        }
+        // Running along the plane of a face from outside the box still misses it
+        TraversalRay outside = new TraversalRay(-5, 2, 0, 1, 0, 0);
+        assertEquals(TraversalRay.MISS, outside.entry(bounds, 0, 0, Double.MAX_VALUE));
+    }
+
+    @Test
+    @DisplayName("Reused Ray Takes The New Direction")
+    void testSet() {
+        double[] bounds = {-1, -1, -1, 1, 1, 1};
+        TraversalRay ray = new TraversalRay(-5, 0, 0, 1, 0, 0);
+        assertEquals(4, ray.entry(bounds, 0, 0, Double.MAX_VALUE));
+        ray.set(5, 0, 0, -1, 0, 0);
+        assertEquals(4, ray.entry(bounds, 0, 0, Double.MAX_VALUE));
+        assertEquals(TraversalRay.MISS, ray.entry(bounds, 0, 0, 3.5));
+        ray.set(5, 0, 0, 1, 0, 0);
+        assertFalse(ray.intersects(bounds, 0, 0, Double.MAX_VALUE));
+    }
+}
@@ -0,0 +1,167 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+import me.jacksonhoggard.raydream.math.Ray;
+import me.jacksonhoggard.raydream.math.Vector2D;
+import me.jacksonhoggard.raydream.math.Vector3D;
+import me.jacksonhoggard.raydream.object.BVHTriangle;
+import me.jacksonhoggard.raydream.object.Object;
+import me.jacksonhoggard.raydream.object.Triangle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares the traversal throughput of the binary hierarchies with their four and eight wide collapses, for
+ * closest hits and shadow rays, and the raw throughput of the scalar and vectorized box tests.
+ * The vectorized box test is only used when the incubating Vector API module is added; running once with
+ * and once without it compares the two in the full traversal as well.
+ * <p>
+ * Run with {@code java --add-modules jdk.incubator.vector -cp <test classpath>
+ * me.jacksonhoggard.raydream.acceleration.WideBVHBenchmark [rays] [runs]}
+ */
+public class WideBVHBenchmark {
+
+    private static final int[] WIDTHS = {2, 4, 8};
+
+    public static void main(String[] args) {
+        int rayCount = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        Ray[] rays = createRays(rayCount, new Random(3));
+        System.out.println("Rays: " + rayCount + ", runs: " + runs);
+        System.out.println("Box test: 4 wide " + WideBoxTest.forWidth(4).getClass().getSimpleName()
+                + ", 8 wide " + WideBoxTest.forWidth(8).getClass().getSimpleName());
+
+        List<Object> objects = Benchmarks.createScatteredSpheres(new Random(5));
+        System.out.println("Objects: " + objects.size());
+        for(int width : WIDTHS) {
+            ImprovedBVH bvh = new ImprovedBVH(objects, SplitMethod.SAH, ForkJoinPool.commonPool(), width);
+            double closest = Benchmarks.measure(runs, () -> {
+                int hits = 0;
+                for(Ray ray : rays) {
+                    if(bvh.intersect(ray, 0.001, Double.MAX_VALUE) != null)
+                        hits++;
+                }
+                return hits;
+            });
+            double shadow = Benchmarks.measure(runs, () -> {
+                int hits = 0;
+                for(Ray ray : rays) {
+                    if(bvh.intersectShadowRay(ray, 20))
+                        hits++;
+                }
+                return hits;
+            });
+            report(width, rayCount, closest, shadow);
+        }
+
+        Triangle[] mesh = createMesh();
+        System.out.println("Triangles: " + mesh.length);
+        for(int width : WIDTHS) {
+            Triangle[] triangles = mesh.clone();
+            BVHTriangle bvh = new BVHTriangle(triangles, SplitMethod.SAH, ForkJoinPool.commonPool(), width);
+            Vector2D uv = new Vector2D(0, 0);
+            Triangle hit = new Triangle(new Vector3D(), new Vector3D(), new Vector3D(), uv, uv, uv);
+            double closest = Benchmarks.measure(runs, () -> {
+                int hits = 0;
+                for(Ray ray : rays) {
+                    if(bvh.intersect(ray, triangles, hit) < Double.MAX_VALUE)
+                        hits++;
+                }
+                return hits;
+            });
+            double shadow = Benchmarks.measure(runs, () -> {
+                int hits = 0;
+                for(Ray ray : rays) {
+                    if(bvh.intersectShadowRay(ray, triangles, 20))
+                        hits++;
+                }
+                return hits;
+            });
+            report(width, rayCount, closest, shadow);
+        }
+
+        System.out.println("Box tests:");
+        for(int width : new int[] {4, 8}) {
+            for(WideBoxTest boxTest : new WideBoxTest[] {WideBoxTest.scalar(), WideBoxTest.forWidth(width)}) {
+                double wall = measureBoxTest(boxTest, width, rays, runs);
+                System.out.printf("  %d wide %-18s %8.1f ms   %6.1f M nodes/s%n", width, boxTest.getClass().getSimpleName(), wall, rays.length * 16 / wall / 1e3);
+            }
+        }
+    }
+
+    /**
+     * Tests every ray against sixteen random nodes
+     */
+    private static double measureBoxTest(WideBoxTest boxTest, int width, Ray[] rays, int runs) {
+        Random random = new Random(9);
+        int nodes = 16;
+        double[] bounds = new double[nodes * 6 * width];
+        for(int node = 0; node < nodes; node++) {
+            for(int lane = 0; lane < width; lane++) {
+                for(int axis = 0; axis < 3; axis++) {
+                    double min = random.nextDouble() * 8 - 4;
+                    bounds[node * 6 * width + axis * width + lane] = min;
+                    bounds[node * 6 * width + (axis + 3) * width + lane] = min + random.nextDouble();
+                }
+            }
+        }
+        double[] near = new double[8];
+        return Benchmarks.measure(runs, () -> {
+            int hits = 0;
+            for(Ray ray : rays) {
+                Vector3D origin = ray.origin();
+                double invX = 1.0 / ray.direction().x;
+                double invY = 1.0 / ray.direction().y;
+                double invZ = 1.0 / ray.direction().z;
+                for(int node = 0; node < nodes; node++)
+                    hits += Integer.bitCount(boxTest.intersect(bounds, node * 6 * width, width, origin.x, origin.y, origin.z, invX, invY, invZ, 0, Double.MAX_VALUE, near));
+            }
+            return hits;
+        });
+    }
+
+    private static void report(int width, int rayCount, double closest, double shadow) {
+        System.out.printf("  %d wide   closest %8.1f ms (%5.2f M rays/s)   shadow %8.1f ms (%5.2f M rays/s)%n",
+                width, closest, rayCount / closest / 1e3, shadow, rayCount / shadow / 1e3);
+    }
+
+    private static Ray[] createRays(int count, Random random) {
+        Ray[] rays = new Ray[count];
+        for(int k = 0; k < count; k++) {
+            Vector3D origin = new Vector3D(random.nextDouble() * 8 - 4, random.nextDouble() * 8 - 4, 12);
+            Vector3D target = new Vector3D(random.nextDouble() * 8 - 4, random.nextDouble() * 8 - 4, 0);
+            rays[k] = new Ray(origin, Vector3D.sub(target, origin).normalize());
+        }
+        return rays;
+    }
+
+    private static Triangle[] createMesh() {
+        List<Triangle> triangles = new ArrayList<>();
+        Vector2D uv = new Vector2D(0, 0);
+        int rings = 128;
+        int segments = 512;
+        for(int ring = 0; ring < rings; ring++) {
+            double theta0 = Math.PI * ring / rings;
+            double theta1 = Math.PI * (ring + 1) / rings;
+            for(int segment = 0; segment < segments; segment++) {
+                double phi0 = 2 * Math.PI * segment / segments;
+                double phi1 = 2 * Math.PI * (segment + 1) / segments;
+                Vector3D a = point(theta0, phi0);
+                Vector3D b = point(theta1, phi0);
+                Vector3D c = point(theta1, phi1);
+                Vector3D d = point(theta0, phi1);
+                triangles.add(new Triangle(a, b, c, uv, uv, uv));
+                triangles.add(new Triangle(a, c, d, uv, uv, uv));
+            }
+        }
+        return triangles.toArray(new Triangle[0]);
+    }
+
+    private static Vector3D point(double theta, double phi) {
+        // Ripples give the surface a varying depth so that rays pass through several nodes
+        double radius = 3 + 0.2 * Math.sin(12 * theta) * Math.cos(9 * phi);
+        return new Vector3D(radius * Math.sin(theta) * Math.cos(phi), radius * Math.cos(theta), radius * Math.sin(theta) * Math.sin(phi));
+    }
+}
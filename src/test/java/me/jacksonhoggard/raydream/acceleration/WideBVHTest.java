@@ -0,0 +1,208 @@
+package me.jacksonhoggard.raydream.acceleration;
+
+import me.jacksonhoggard.raydream.math.Ray;
+import me.jacksonhoggard.raydream.math.Vector2D;
+import me.jacksonhoggard.raydream.math.Vector3D;
+import me.jacksonhoggard.raydream.object.BVHTriangle;
+import me.jacksonhoggard.raydream.object.Hit;
+import me.jacksonhoggard.raydream.object.Mesh;
+import me.jacksonhoggard.raydream.object.Model;
+import me.jacksonhoggard.raydream.object.Object;
+import me.jacksonhoggard.raydream.object.Triangle;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("WideBVH Tests")
+public class WideBVHTest {
+
+    @Test
+    @DisplayName("Wide Object Hierarchies Match The Binary One")
+    void testObjects() {
+        Random random = new Random(4);
+        List<Object> objects = TestScenes.createSpheres(random, 300, 0.1, 0.4);
+        ImprovedBVH binary = new ImprovedBVH(objects, SplitMethod.SAH, ForkJoinPool.commonPool(), 2);
+        ImprovedBVH four = new ImprovedBVH(objects, SplitMethod.SAH, ForkJoinPool.commonPool(), 4);
+        ImprovedBVH eight = new ImprovedBVH(objects, SplitMethod.LONGEST_AXIS, ForkJoinPool.commonPool(), 8);
+
+        int hits = 0;
+        for (int i = 0; i < 500; i++) {
+            Ray ray = TestScenes.randomRay(random);
+            Hit expected = binary.intersect(ray, 0.001, Double.MAX_VALUE);
+            for (ImprovedBVH bvh : new ImprovedBVH[] {four, eight}) {
+                Hit hit = bvh.intersect(ray, 0.001, Double.MAX_VALUE);
+                if (expected == null) {
+                    assertNull(hit);
+                    assertFalse(bvh.intersectShadowRay(ray, Double.MAX_VALUE));
+                } else {
+                    assertSame(expected.object(), hit.object());
+                    assertEquals(expected.t(), hit.t());
+                    assertTrue(bvh.intersectShadowRay(ray, expected.t() + 1e-6));
+                    assertFalse(bvh.intersectShadowRay(ray, expected.t() - 1e-6));
+                }
+            }
+            if (expected != null)
+                hits++;
+        }
+        assertTrue(hits > 0);
+    }
+
+    /**
+     * Models placed at random, all sharing one mesh of small random triangles in a unit cube
+     */
+    private static List<Object> createModels(int width) {
+        Random random = new Random(21);
+        Vector2D uv = new Vector2D(0, 0);
+        Triangle[] triangles = new Triangle[400];
+        for (int i = 0; i < triangles.length; i++) {
+            Vector3D corner = new Vector3D(random.nextDouble() - 0.5, random.nextDouble() - 0.5, random.nextDouble() - 0.5);
+            triangles[i] = new Triangle(corner,
+                    new Vector3D(corner.x + 0.2 * random.nextDouble(), corner.y, corner.z + 0.2 * random.nextDouble()),
+                    new Vector3D(corner.x, corner.y + 0.2 * random.nextDouble(), corner.z + 0.2 * random.nextDouble()),
+                    uv, uv, uv);
+        }
+        Mesh mesh = new Mesh("random", triangles, new Vector3D(-0.5, -0.5, -0.5), new Vector3D(0.7, 0.7, 0.7), SplitMethod.SAH, width, false);
+        List<Object> models = new ArrayList<>();
+        for (int k = 0; k < 200; k++) {
+            models.add(new Model(TestScenes.at(TestScenes.randomPosition(random)), TestScenes.MATERIAL, mesh));
+        }
+        return models;
+    }
+
+    @Test
+    @DisplayName("Wide Scene Hierarchies Of Wide Meshes Match The Binary Ones")
+    void testModels() {
+        List<Object> binaryModels = createModels(2);
+        ImprovedBVH binary = new ImprovedBVH(binaryModels, SplitMethod.SAH, ForkJoinPool.commonPool(), 2);
+        Random random = new Random(22);
+        for (int width : new int[] {4, 8}) {
+            // The mesh traversals nest inside the scene traversal on the same thread
+            List<Object> models = createModels(width);
+            ImprovedBVH bvh = new ImprovedBVH(models, SplitMethod.SAH, ForkJoinPool.commonPool(), width);
+            int hits = 0;
+            for (int i = 0; i < 500; i++) {
+                Ray ray = TestScenes.randomRay(random);
+                Hit expected = binary.intersect(ray, 0.001, Double.MAX_VALUE);
+                Hit hit = bvh.intersect(ray, 0.001, Double.MAX_VALUE);
+                if (expected == null) {
+                    assertNull(hit);
+                    assertFalse(bvh.intersectShadowRay(ray, Double.MAX_VALUE));
+                    continue;
+                }
+                assertNotNull(hit);
+                assertEquals(binaryModels.indexOf(expected.object()), models.indexOf(hit.object()));
+                assertEquals(expected.t(), hit.t(), 1e-9);
+                assertTrue(bvh.intersectShadowRay(ray, expected.t() + 1e-6));
+                assertFalse(bvh.intersectShadowRay(ray, expected.t() - 1e-6));
+                hits++;
+            }
+            assertTrue(hits > 50);
+        }
+    }
+
+    @Test
+    @DisplayName("Wide Mesh Hierarchies Match The Binary One")
+    void testTriangles() {
+        Random random = new Random(8);
+        Vector2D uv = new Vector2D(0, 0);
+        Triangle[] triangles = new Triangle[3000];
+        for (int i = 0; i < triangles.length; i++) {
+            Vector3D corner = TestScenes.randomPosition(random);
+            triangles[i] = new Triangle(corner,
+                    new Vector3D(corner.x + 0.4 * random.nextDouble(), corner.y, corner.z + 0.4 * random.nextDouble()),
+                    new Vector3D(corner.x, corner.y + 0.4 * random.nextDouble(), corner.z + 0.4 * random.nextDouble()),
+                    uv, uv, uv);
+        }
+        Triangle[] binaryTriangles = triangles.clone();
+        BVHTriangle binary = new BVHTriangle(binaryTriangles, SplitMethod.SAH, ForkJoinPool.commonPool(), 2);
+        Triangle[] wideTriangles = triangles.clone();
+        BVHTriangle wide = new BVHTriangle(wideTriangles, SplitMethod.SAH, ForkJoinPool.commonPool(), 8);
+
+        Triangle hit = new Triangle(new Vector3D(), new Vector3D(), new Vector3D(), uv, uv, uv);
+        for (int i = 0; i < 500; i++) {
+            Ray ray = TestScenes.randomRay(random);
+            double expected = binary.intersect(ray, binaryTriangles, hit);
+            assertEquals(expected, wide.intersect(ray, wideTriangles, hit));
+            if (expected < Double.MAX_VALUE) {
+                assertTrue(wide.intersectShadowRay(ray, wideTriangles, expected + 1e-6));
+                assertFalse(wide.intersectShadowRay(ray, wideTriangles, expected - 1e-6));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Vectorized And Scalar Box Tests Agree")
+    void testBoxTests() {
+        Random random = new Random(15);
+        for (int width : new int[] {4, 8}) {
+            WideBoxTest vectorized = WideBoxTest.forWidth(width);
+            double[] bounds = new double[6 * width];
+            double[] scalarNear = new double[8];
+            double[] vectorNear = new double[8];
+            for (int i = 0; i < 1000; i++) {
+                for (int lane = 0; lane < width; lane++) {
+                    for (int axis = 0; axis < 3; axis++) {
+                        double min = random.nextDouble() * 10 - 5;
+                        bounds[axis * width + lane] = min;
+                        bounds[(axis + 3) * width + lane] = min + random.nextDouble() * 3;
+                    }
+                }
+                if (i % 3 == 0) {
+                    // Unused lane, as filled in by the collapse
+                    for (int k = 0; k < 6; k++)
+                        bounds[k * width + width - 1] = Double.POSITIVE_INFINITY;
+                }
+                Ray ray = TestScenes.randomRay(random);
+                double invX = 1.0 / ray.direction().x;
+                double invY = 1.0 / ray.direction().y;
+                double invZ = 1.0 / ray.direction().z;
+                Vector3D o = ray.origin();
+                int expected = WideBoxTest.scalar().intersect(bounds, 0, width, o.x, o.y, o.z, invX, invY, invZ, 0.001, 20, scalarNear);
+                int actual = vectorized.intersect(bounds, 0, width, o.x, o.y, o.z, invX, invY, invZ, 0.001, 20, vectorNear);
+                assertEquals(expected, actual);
+                if (i % 3 == 0)
+                    assertEquals(0, expected & (1 << (width - 1)));
+                for (int lane = 0; lane < width; lane++) {
+                    if ((expected & (1 << lane)) != 0)
+                        assertEquals(scalarNear[lane], vectorNear[lane]);
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Axis-Parallel Rays In The Plane Of A Bound Hit The Box")
+    void testOnPlane() {
+        // Each ray runs along a face or edge of the box, where a zero direction times an infinite inverse is NaN
+        double[][] rays = {
+                {-5, 1, 0, 1, 0, 0},
+                {-5, -1, 0, 1, -0.0, 0},
+                {5, 1, -1, -1, 0, 0},
+                {0, -1, 5, 0.0, -0.0, -1}
+        };
+        for (int width : new int[] {4, 8}) {
+            double[] bounds = new double[6 * width];
+            for (int lane = 0; lane < width; lane++) {
+                for (int axis = 0; axis < 3; axis++) {
+                    bounds[axis * width + lane] = -1;
+                    bounds[(axis + 3) * width + lane] = 1;
+                }
+            }
+            double[] near = new double[8];
+            for (WideBoxTest boxTest : new WideBoxTest[] {WideBoxTest.scalar(), WideBoxTest.forWidth(width)}) {
+                for (double[] r : rays) {
+                    int mask = boxTest.intersect(bounds, 0, width, r[0], r[1], r[2], 1.0 / r[3], 1.0 / r[4], 1.0 / r[5], 0.001, 20, near);
+                    assertEquals((1 << width) - 1, mask);
+                    for (int lane = 0; lane < width; lane++)
+                        assertEquals(4, near[lane]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package me.jacksonhoggard.raydream.object;
+
+import me.jacksonhoggard.raydream.math.Ray;
+import me.jacksonhoggard.raydream.math.Vector2D;
+import me.jacksonhoggard.raydream.math.Vector3D;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("BVHCache Tests")
+public class BVHCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private static Triangle[] randomTriangles(int count, long seed) {
+        Random random = new Random(seed);
+        Triangle[] triangles = new Triangle[count];
+        Vector2D uv = new Vector2D(0, 0);
+        for (int i = 0; i < count; i++) {
+            Vector3D corner = new Vector3D(random.nextDouble() * 10 - 5, random.nextDouble() * 10 - 5, random.nextDouble() * 10 - 5);
+            triangles[i] = new Triangle(
+                    corner,
+                    new Vector3D(corner.x + 0.3 * random.nextDouble(), corner.y, corner.z + 0.3 * random.nextDouble()),
+                    new Vector3D(corner.x, corner.y + 0.3 * random.nextDouble(), corner.z + 0.3 * random.nextDouble()),
+                    uv, uv, uv);
+        }
+        return triangles;
+    }
+
+    private static void assertSameHits(BVHTriangle expected, Triangle[] expectedTriangles, BVHTriangle actual, Triangle[] actualTriangles) {
+        Random random = new Random(3);
+        Vector2D uv = new Vector2D(0, 0);
+        for (int i = 0; i < 300; i++) {
+            Ray ray = new Ray(new Vector3D(random.nextDouble() * 10 - 5, random.nextDouble() * 10 - 5, -20), new Vector3D(0, 0, 1));
+            Triangle hit = new Triangle(new Vector3D(), new Vector3D(), new Vector3D(), uv, uv, uv);
+            assertEquals(expected.intersect(ray, expectedTriangles, hit), actual.intersect(ray, actualTriangles, hit));
+        }
+    }
+
+    @Test
+    @DisplayName("Cached Hierarchy Matches A Fresh Build")
+    void testRoundTrip() {
+        BVHCache cache = new BVHCache(directory, 1);
+        Triangle[] built = randomTriangles(2000, 5);
+        BVHTriangle first = cache.load(built);
+        assertEquals(1, cache.getBuildCount());
+        assertTrue(Files.isRegularFile(cache.getFile(cache.key(randomTriangles(2000, 5)))));
+
+        Triangle[] loaded = randomTriangles(2000, 5);
+        BVHTriangle second = cache.load(loaded);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getBuildCount());
+        for (int i = 0; i < built.length; i++)
+            assertEquals(built[i].getCentroid().x, loaded[i].getCentroid().x);
+        assertSameHits(first, built, second, loaded);
+    }
+
+    @Test
+    @DisplayName("Corrupt File Falls Back To A Build")
+    void testCorruptFile() throws IOException {
+        BVHCache cache = new BVHCache(directory, 1);
+        cache.load(randomTriangles(1000, 9));
+        Path file = cache.getFile(cache.key(randomTriangles(1000, 9)));
+        byte[] data = Files.readAllBytes(file);
+        data[data.length / 2] ^= 0x10;
+        Files.write(file, data);
+
+        Triangle[] triangles = randomTriangles(1000, 9);
+        BVHTriangle bvh = cache.load(triangles);
+        assertEquals(0, cache.getHitCount());
+        assertEquals(2, cache.getBuildCount());
+        Triangle[] reference = randomTriangles(1000, 9);
+        assertSameHits(new BVHTriangle(reference), reference, bvh, triangles);
+
+        // The unusable file was replaced
+        cache.load(randomTriangles(1000, 9));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    @DisplayName("Different Geometry Gets A Different File")
+    void testKey() {
+        BVHCache cache = new BVHCache(directory, 1);
+        assertEquals(cache.key(randomTriangles(100, 1)), cache.key(randomTriangles(100, 1)));
+        assertNotEquals(cache.key(randomTriangles(100, 1)), cache.key(randomTriangles(100, 2)));
+        assertNotEquals(cache.key(randomTriangles(100, 1)), cache.key(randomTriangles(99, 1)));
+    }
+}
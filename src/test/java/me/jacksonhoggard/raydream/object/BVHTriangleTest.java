@@ -0,0 +1,147 @@
+package me.jacksonhoggard.raydream.object;
+
+import me.jacksonhoggard.raydream.acceleration.SAHCostModel;
+import me.jacksonhoggard.raydream.acceleration.SplitMethod;
+import me.jacksonhoggard.raydream.config.ApplicationConfig;
+import me.jacksonhoggard.raydream.math.Ray;
+import me.jacksonhoggard.raydream.math.Vector2D;
+import me.jacksonhoggard.raydream.math.Vector3D;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("BVHTriangle Tests")
+public class BVHTriangleTest {
+
+    private static Triangle[] randomTriangles(int count, long seed) {
+        Random random = new Random(seed);
+        Triangle[] triangles = new Triangle[count];
+        Vector2D uv = new Vector2D(0, 0);
+        for (int i = 0; i < count; i++) {
+            Vector3D corner = new Vector3D(random.nextDouble() * 10 - 5, random.nextDouble() * 10 - 5, random.nextDouble() * 10 - 5);
+            double size = i % 50 == 0 ? 4.0 : 0.2;
+            triangles[i] = new Triangle(
+                    corner,
+                    new Vector3D(corner.x + size * random.nextDouble(), corner.y, corner.z + size * random.nextDouble()),
+                    new Vector3D(corner.x, corner.y + size * random.nextDouble(), corner.z + size * random.nextDouble()),
+                    uv, uv, uv);
+        }
+        return triangles;
+    }
+
+    @Test
+    @DisplayName("SAH And Longest Axis Builds Find The Same Hits")
+    void testSplitMethodsAgree() {
+        Triangle[] sahTriangles = randomTriangles(500, 7);
+        Triangle[] axisTriangles = randomTriangles(500, 7);
+        BVHTriangle sah = new BVHTriangle(sahTriangles, SplitMethod.SAH);
+        BVHTriangle axis = new BVHTriangle(axisTriangles, SplitMethod.LONGEST_AXIS);
+
+        Random random = new Random(11);
+        Vector2D uv = new Vector2D(0, 0);
+        int hits = 0;
+        for (int i = 0; i < 500; i++) {
+            Vector3D origin = new Vector3D(random.nextDouble() * 10 - 5, random.nextDouble() * 10 - 5, -20);
+            Vector3D direction = new Vector3D(random.nextDouble() - 0.5, random.nextDouble() - 0.5, 1).normalize();
+            Triangle sahHit = new Triangle(new Vector3D(), new Vector3D(), new Vector3D(), uv, uv, uv);
+            Triangle axisHit = new Triangle(new Vector3D(), new Vector3D(), new Vector3D(), uv, uv, uv);
+            double sahT = sah.intersect(new Ray(origin, direction), sahTriangles, sahHit);
+            double axisT = axis.intersect(new Ray(origin, direction), axisTriangles, axisHit);
+            assertEquals(axisT, sahT, 1e-9);
+            if (sahT < Double.MAX_VALUE)
+                hits++;
+        }
+        assertTrue(hits > 0);
+        assertTrue(sah.getSAHCost(SAHCostModel.TRIANGLES) > 0);
+    }
+
+    @Test
+    @DisplayName("Closest And Shadow Hits Match A Brute Force Search")
+    void testBruteForce() {
+        Triangle[] triangles = randomTriangles(300, 13);
+        Triangle[] unordered = triangles.clone();
+        BVHTriangle bvh = new BVHTriangle(triangles);
+
+        Random random = new Random(17);
+        Vector2D uv = new Vector2D(0, 0);
+        Triangle hit = new Triangle(new Vector3D(), new Vector3D(), new Vector3D(), uv, uv, uv);
+        for (int i = 0; i < 300; i++) {
+            Vector3D origin = new Vector3D(random.nextDouble() * 10 - 5, random.nextDouble() * 10 - 5, random.nextDouble() * 10 - 5);
+            Vector3D direction = new Vector3D(random.nextDouble() - 0.5, random.nextDouble() - 0.5, random.nextDouble() - 0.5).normalize();
+            Ray ray = new Ray(origin, direction);
+            double expected = Double.MAX_VALUE;
+            for (Triangle triangle : unordered) {
+                double t = triangle.intersect(ray);
+                if (t > 0 && t < expected)
+                    expected = t;
+            }
+            assertEquals(expected, bvh.intersect(ray, triangles, hit), 1e-9);
+            if (expected < Double.MAX_VALUE) {
+                assertTrue(bvh.intersectShadowRay(ray, triangles, expected + 1e-6));
+                assertFalse(bvh.intersectShadowRay(ray, triangles, expected * 0.5));
+            }
+        }
+    }
+
+    /**
+     * Long, thin triangles crossing the scene diagonally, as in wall and floor strips, among small ones
+     */
+    private static Triangle[] stripTriangles(int count, long seed) {
+        Random random = new Random(seed);
+        Triangle[] triangles = new Triangle[count];
+        Vector2D uv = new Vector2D(0, 0);
+        for (int i = 0; i < count; i++) {
+            Vector3D corner = new Vector3D(random.nextDouble() * 10 - 5, random.nextDouble() * 10 - 5, random.nextDouble() * 10 - 5);
+            if (i % 4 == 0) {
+                Vector3D end = new Vector3D(-corner.x, corner.y * 0.5, -corner.z);
+                triangles[i] = new Triangle(corner, end, new Vector3D(end.x, end.y + 0.05, end.z), uv, uv, uv);
+            } else {
+                triangles[i] = new Triangle(corner,
+                        new Vector3D(corner.x + 0.2 * random.nextDouble(), corner.y, corner.z + 0.2 * random.nextDouble()),
+                        new Vector3D(corner.x, corner.y + 0.2 * random.nextDouble(), corner.z + 0.2 * random.nextDouble()),
+                        uv, uv, uv);
+            }
+        }
+        return triangles;
+    }
+
+    @Test
+    @DisplayName("Spatial Splits Lower The SAH Cost And Find The Same Hits")
+    void testSpatialSplits() {
+        Triangle[] triangles = stripTriangles(2000, 19);
+        Vector3D min = new Vector3D(-5, -5, -5);
+        Vector3D max = new Vector3D(5, 5, 5);
+        Mesh sah = new Mesh("strips", triangles.clone(), min, max, SplitMethod.SAH);
+        Mesh spatial = new Mesh("strips", triangles.clone(), min, max, SplitMethod.SPATIAL);
+        assertTrue(spatial.triangles().length > triangles.length);
+        assertTrue(spatial.triangles().length <= triangles.length * (1 + ApplicationConfig.BVH_SPATIAL_SPLIT_MAX_GROWTH));
+        assertTrue(spatial.bvh().getSAHCost(SAHCostModel.TRIANGLES) < sah.bvh().getSAHCost(SAHCostModel.TRIANGLES));
+        assertThrows(IllegalArgumentException.class, () -> new BVHTriangle(triangles.clone(), SplitMethod.SPATIAL));
+
+        Random random = new Random(23);
+        Vector2D uv = new Vector2D(0, 0);
+        Triangle hit = new Triangle(new Vector3D(), new Vector3D(), new Vector3D(), uv, uv, uv);
+        int hits = 0;
+        for (int i = 0; i < 1000; i++) {
+            Vector3D origin = new Vector3D(random.nextDouble() * 10 - 5, random.nextDouble() * 10 - 5, random.nextDouble() * 10 - 5);
+            Vector3D direction = new Vector3D(random.nextDouble() - 0.5, random.nextDouble() - 0.5, random.nextDouble() - 0.5).normalize();
+            Ray ray = new Ray(origin, direction);
+            double expected = Double.MAX_VALUE;
+            for (Triangle triangle : triangles) {
+                double t = triangle.intersect(ray);
+                if (t > 0 && t < expected)
+                    expected = t;
+            }
+            assertEquals(expected, spatial.bvh().intersect(ray, spatial.triangles(), hit), 1e-9);
+            if (expected < Double.MAX_VALUE) {
+                assertTrue(spatial.bvh().intersectShadowRay(ray, spatial.triangles(), expected + 1e-6));
+                assertFalse(spatial.bvh().intersectShadowRay(ray, spatial.triangles(), expected * 0.5));
+                hits++;
+            }
+        }
+        assertTrue(hits > 0);
+    }
+}
@@ -0,0 +1,82 @@
+package me.jacksonhoggard.raydream.object;
+
+import me.jacksonhoggard.raydream.math.Ray;
+import me.jacksonhoggard.raydream.math.Vector2D;
+import me.jacksonhoggard.raydream.math.Vector3D;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("MeshCache Tests")
+public class MeshCacheTest {
+
+    private static Mesh quad() {
+        Vector2D uv = new Vector2D(0, 0);
+        Triangle[] triangles = {
+                new Triangle(new Vector3D(-1, -1, 0), new Vector3D(1, -1, 0), new Vector3D(1, 1, 0), uv, uv, uv),
+                new Triangle(new Vector3D(-1, -1, 0), new Vector3D(1, 1, 0), new Vector3D(-1, 1, 0), uv, uv, uv)
+        };
+        return new Mesh("quad", triangles, new Vector3D(-1, -1, 0), new Vector3D(1, 1, 0));
+    }
+
+    @Test
+    @DisplayName("Equal Geometry Is Built Once")
+    void testSharing() {
+        MeshCache cache = new MeshCache();
+        AtomicInteger builds = new AtomicInteger();
+        float[] vertices = {0, 1, 2, 3, 4, 5, 6, 7};
+        Mesh first = cache.get(vertices, () -> {
+            builds.incrementAndGet();
+            return quad();
+        });
+        Mesh second = cache.get(vertices.clone(), () -> {
+            builds.incrementAndGet();
+            return quad();
+        });
+        Mesh other = cache.get(new float[] {7, 6, 5, 4, 3, 2, 1, 0}, () -> {
+            builds.incrementAndGet();
+            return quad();
+        });
+        assertSame(first, second);
+        assertNotSame(first, other);
+        assertEquals(2, builds.get());
+        assertEquals(2, cache.getMeshCount());
+        assertEquals(3, cache.getInstanceCount());
+    }
+
+    @Test
+    @DisplayName("Meshes Not Requested Since The Last Eviction Are Dropped")
+    void testEviction() {
+        MeshCache cache = new MeshCache();
+        float[] kept = {0, 1, 2};
+        float[] dropped = {3, 4, 5};
+        Mesh first = cache.get(kept, MeshCacheTest::quad);
+        cache.get(dropped, MeshCacheTest::quad);
+        assertEquals(0, cache.evictUnused());
+
+        // The next scene only uses the first geometry
+        assertSame(first, cache.get(kept.clone(), MeshCacheTest::quad));
+        assertEquals(1, cache.evictUnused());
+        assertEquals(1, cache.getMeshCount());
+        assertSame(first, cache.get(kept, MeshCacheTest::quad));
+    }
+
+    @Test
+    @DisplayName("Instances Of A Shared Mesh Keep Their Own Transform")
+    void testInstances() {
+        Mesh mesh = quad();
+        Model near = new Model(TestScenes.at(new Vector3D(0, 0, 0)), TestScenes.MATERIAL, mesh);
+        Model far = new Model(new Transform(new Vector3D(0, 0, -5), new Vector3D(), new Vector3D(2, 2, 2)), TestScenes.MATERIAL, mesh);
+        assertSame(near.getMesh().bvh(), far.getMesh().bvh());
+        assertEquals(0.0, near.getBounds().getCenter().x, 1e-9);
+        assertEquals(4.0, far.getBounds().getExtent().x, 1e-9);
+
+        // Both instances trace in object space through the same hierarchy
+        Ray ray = new Ray(new Vector3D(0.5, 0.5, 3), new Vector3D(0, 0, -1));
+        assertEquals(3.0, near.intersect(ray).t(), 1e-9);
+        assertEquals(3.0, far.intersect(ray).t(), 1e-9);
+    }
+}
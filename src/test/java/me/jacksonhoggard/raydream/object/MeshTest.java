@@ -0,0 +1,93 @@
+package me.jacksonhoggard.raydream.object;
+
+import me.jacksonhoggard.raydream.acceleration.ImprovedBVH;
+import me.jacksonhoggard.raydream.acceleration.SplitMethod;
+import me.jacksonhoggard.raydream.math.Ray;
+import me.jacksonhoggard.raydream.math.Vector2D;
+import me.jacksonhoggard.raydream.math.Vector3D;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Mesh Tests")
+public class MeshTest {
+
+    /**
+     * A grid of quads in the z = 0 plane between -1 and 1
+     */
+    private static Mesh grid(boolean lazy) {
+        Vector2D uv = new Vector2D(0, 0);
+        List<Triangle> triangles = new ArrayList<>();
+        int cells = 16;
+        for (int j = 0; j < cells; j++) {
+            for (int i = 0; i < cells; i++) {
+                double x0 = -1 + 2.0 * i / cells, x1 = -1 + 2.0 * (i + 1) / cells;
+                double y0 = -1 + 2.0 * j / cells, y1 = -1 + 2.0 * (j + 1) / cells;
+                triangles.add(new Triangle(new Vector3D(x0, y0, 0), new Vector3D(x1, y0, 0), new Vector3D(x1, y1, 0), uv, uv, uv));
+                triangles.add(new Triangle(new Vector3D(x0, y0, 0), new Vector3D(x1, y1, 0), new Vector3D(x0, y1, 0), uv, uv, uv));
+            }
+        }
+        return new Mesh("grid", triangles.toArray(new Triangle[0]), new Vector3D(-1, -1, 0), new Vector3D(1, 1, 0), SplitMethod.LONGEST_AXIS, 2, lazy);
+    }
+
+    @Test
+    @DisplayName("Lazy Meshes Are Built When A Ray First Reaches Them")
+    void testLazy() {
+        Mesh reached = grid(true);
+        Mesh hidden = grid(true);
+        assertFalse(reached.isBuilt());
+        List<Object> objects = List.of(
+                new Model(TestScenes.at(new Vector3D(0, 0, 0)), TestScenes.MATERIAL, reached),
+                new Model(TestScenes.at(new Vector3D(10, 0, 0)), TestScenes.MATERIAL, hidden));
+        ImprovedBVH bvh = new ImprovedBVH(objects);
+        assertFalse(reached.isBuilt());
+        assertFalse(hidden.isBuilt());
+
+        Hit hit = bvh.intersect(new Ray(new Vector3D(0.3, 0.2, 5), new Vector3D(0, 0, -1)), 0.0001, Double.MAX_VALUE);
+        assertNotNull(hit);
+        assertEquals(5.0, hit.t(), 1e-9);
+        assertTrue(reached.isBuilt());
+        assertFalse(hidden.isBuilt());
+
+        // A lazy mesh traces exactly as one built up front
+        Mesh eager = grid(false);
+        assertTrue(eager.isBuilt());
+        Triangle triangle = new Triangle(new Vector3D(), new Vector3D(), new Vector3D(), new Vector2D(), new Vector2D(), new Vector2D());
+        Ray ray = new Ray(new Vector3D(-0.7, 0.4, 2), new Vector3D(0.1, -0.2, -1).normalize());
+        assertEquals(eager.bvh().intersect(ray, eager.triangles(), triangle), reached.bvh().intersect(ray, reached.triangles(), triangle));
+    }
+
+    @Test
+    @DisplayName("Threads Reaching A Lazy Mesh Together Share One Build")
+    void testConcurrentBuild() throws Exception {
+        Mesh mesh = grid(true);
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<BVHTriangle>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return mesh.bvh();
+                }));
+            }
+            start.countDown();
+            BVHTriangle first = results.get(0).get();
+            for (Future<BVHTriangle> result : results)
+                assertSame(first, result.get());
+            assertSame(first, mesh.bvh());
+            assertEquals(512, mesh.triangles().length);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package me.jacksonhoggard.raydream.object;
+
+import me.jacksonhoggard.raydream.material.Material;
+import me.jacksonhoggard.raydream.math.Vector3D;
+
+/**
+ * Materials and placements shared by the object tests
+ */
+final class TestScenes {
+
+    /**
+     * Material given to every object, since only the geometry matters to the tests
+     */
+    static final Material MATERIAL = new Material(new Vector3D(1, 1, 1), 0.1, 0.8, 0.2, 32.0, 0.0, 0.0, 1.0, 0.0, Material.Type.REFLECT, null, null);
+
+    private TestScenes() {
+    }
+
+    /**
+     * @return an unrotated, unscaled placement at the given position
+     */
+    static Transform at(Vector3D position) {
+        return new Transform(position, new Vector3D(), new Vector3D(1, 1, 1));
+    }
+}
@@ -0,0 +1,56 @@
+package me.jacksonhoggard.raydream.render;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("AccumulationBuffer Tests")
+public class AccumulationBufferTest {
+
+    private static final float EPSILON = 1e-6f;
+    private AccumulationBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        buffer = new AccumulationBuffer(4, 3);
+    }
+
+    @Test
+    @DisplayName("Empty Pixels Read As Black")
+    void testEmptyPixel() {
+        assertEquals(12, buffer.getPixelCount());
+        assertEquals(0, buffer.getSampleCount(5));
+        assertEquals(0.0f, buffer.getMeanRed(5), EPSILON);
+    }
+
+    @Test
+    @DisplayName("Mean Of Accumulated Samples")
+    void testMean() {
+        buffer.add(5, 1.0, 2.0, 3.0, 2);
+        buffer.add(5, 0.5, 1.0, 0.0, 2);
+        assertEquals(4, buffer.getSampleCount(5));
+        assertEquals(0.375f, buffer.getMeanRed(5), EPSILON);
+        assertEquals(0.75f, buffer.getMeanGreen(5), EPSILON);
+        assertEquals(0.75f, buffer.getMeanBlue(5), EPSILON);
+        assertEquals(0, buffer.getSampleCount(4));
+    }
+
+    @Test
+    @DisplayName("Noise Estimate")
+    void testNoiseEstimate() {
+        assertEquals(Double.POSITIVE_INFINITY, buffer.estimateNoise());
+
+        // Two identical samples: no variance
+        buffer.add(0, 2.0, 2.0, 2.0, 2.0, 2);
+        assertEquals(0.0, buffer.estimateNoise(), 1e-6);
+
+        // Samples of luminance 0 and 1: variance 0.25 over 2 samples
+        buffer.add(1, 1.0, 1.0, 1.0, 1.0, 2);
+        assertEquals(Math.sqrt(0.125 / 2), buffer.estimateNoise(), 1e-6);
+        assertEquals(0.0, buffer.getStandardError(0), 1e-6);
+        assertEquals(Math.sqrt(0.25 / 2), buffer.getStandardError(1), 1e-6);
+        assertEquals(Double.POSITIVE_INFINITY, buffer.getStandardError(2));
+    }
+}
@@ -0,0 +1,84 @@
+package me.jacksonhoggard.raydream.render;
+
+import me.jacksonhoggard.raydream.light.Light;
+import me.jacksonhoggard.raydream.light.PointLight;
+import me.jacksonhoggard.raydream.math.Vector3D;
+import me.jacksonhoggard.raydream.object.Object;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("RenderCheckpoint Tests")
+public class RenderCheckpointTest {
+
+    private static Scene createScene() {
+        Camera camera = new Camera(new Vector3D(0, 0, 2), new Vector3D(), new Vector3D(0, 1, 0), 60, 0, 10, 6);
+        Light ambient = new PointLight(new Vector3D(), new Vector3D(1, 1, 1), 1);
+        return new Scene(camera, ambient, new Light[0], new Object[0], new Vector3D(0.25, 0.5, 0.75), 10, 6);
+    }
+
+    private static Path tempFile(String suffix) throws IOException {
+        File file = File.createTempFile("raydream-checkpoint", suffix);
+        file.deleteOnExit();
+        return file.toPath();
+    }
+
+    @Test
+    @DisplayName("Checkpoint Round Trip")
+    void testRoundTrip() throws IOException {
+        Path checkpointFile = tempFile(".checkpoint");
+        RenderSettings settings = new RenderSettings(3, 4, 5, 2).setTileSize(4).setTileOrder(TileOrder.HILBERT).setPasses(7);
+        RenderJob job = new RenderJob(createScene(), "out.png", settings, null);
+        job.getAccumulation().add(13, 1.0, 2.0, 3.0, 0.5, 4);
+        BitSet tiles = new BitSet();
+        tiles.set(2);
+        RenderCheckpoint.write(checkpointFile, job, 3, tiles);
+
+        RenderCheckpoint checkpoint = RenderCheckpoint.read(checkpointFile);
+        assertEquals(10, checkpoint.getWidth());
+        assertEquals(6, checkpoint.getHeight());
+        assertEquals("out.png", checkpoint.getFilename());
+        assertEquals(3, checkpoint.getSettings().getSampleDepth());
+        assertEquals(5, checkpoint.getSettings().getNumShadowRays());
+        assertEquals(TileOrder.HILBERT, checkpoint.getSettings().getTileOrder());
+        assertEquals(7, checkpoint.getSettings().getPasses());
+        assertEquals(3, checkpoint.getCompletedPasses());
+        assertEquals(tiles, checkpoint.getCompletedTiles());
+        assertEquals(4, checkpoint.getAccumulation().getSampleCount(13));
+        assertEquals(0.5f, checkpoint.getAccumulation().getMeanGreen(13), 1e-6f);
+    }
+
+    @Test
+    @DisplayName("Resumed Render Matches Uninterrupted Render")
+    void testResume() throws IOException {
+        Scene scene = createScene();
+        Path checkpointFile = tempFile(".checkpoint");
+        Path interrupted = tempFile(".png");
+        Path uninterrupted = tempFile(".png");
+        RenderJob canceled = new RenderJob(scene, interrupted.toString(), new RenderSettings().setTileSize(4).setCheckpointFile(checkpointFile.toString()), null);
+        canceled.cancel();
+        canceled.run();
+        assertTrue(Files.exists(checkpointFile));
+
+        scene.resume(checkpointFile.toString(), null);
+        assertFalse(Files.exists(checkpointFile));
+        RenderJob reference = new RenderJob(scene, uninterrupted.toString(), new RenderSettings().setTileSize(4), null);
+        reference.run();
+        assertArrayEquals(Files.readAllBytes(uninterrupted), Files.readAllBytes(interrupted));
+    }
+
+    @Test
+    @DisplayName("Reject Non-Checkpoint Files")
+    void testInvalidFile() throws IOException {
+        Path file = tempFile(".checkpoint");
+        Files.write(file, new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        assertThrows(IOException.class, () -> RenderCheckpoint.read(file));
+    }
+}
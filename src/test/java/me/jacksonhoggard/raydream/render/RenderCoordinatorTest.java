@@ -0,0 +1,267 @@
+package me.jacksonhoggard.raydream.render;
+
+import me.jacksonhoggard.raydream.config.ApplicationConfig;
+import me.jacksonhoggard.raydream.math.Vector3D;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("RenderCoordinator Tests")
+public class RenderCoordinatorTest {
+
+    private static Path createProject() throws IOException {
+        Path directory = Files.createTempDirectory("raydream-project");
+        directory.toFile().deleteOnExit();
+        Path projectFile = directory.resolve("project.dream");
+        Files.writeString(projectFile, "0.25 0.5 0.75");
+        projectFile.toFile().deleteOnExit();
+        return projectFile;
+    }
+
+    private static Path tempFile() throws IOException {
+        File file = File.createTempFile("raydream-distributed", ".png");
+        file.deleteOnExit();
+        return file.toPath();
+    }
+
+    private static byte[] renderLocally() throws IOException {
+        Path output = tempFile();
+        TestSceneLoader.createScene(new Vector3D(0.25, 0.5, 0.75)).render(output.toString(), new RenderSettings().setTileSize(4), null);
+        return Files.readAllBytes(output);
+    }
+
+    private static Process startWorkerProcess(int port) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        if(ManagementFactory.getRuntimeMXBean().getInputArguments().contains("--enable-preview"))
+            command.add("--enable-preview");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(RenderWorker.class.getName());
+        command.add("localhost:" + port);
+        command.add("2");
+        command.add(TestSceneLoader.class.getName());
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    @Test
+    @Timeout(60)
+    @DisplayName("Render On Worker Processes")
+    void testWorkerProcesses() throws Exception {
+        Path projectFile = createProject();
+        Path output = tempFile();
+        List<Process> processes = new ArrayList<>();
+        try(RenderCoordinator coordinator = new RenderCoordinator(projectFile, 0)) {
+            processes.add(startWorkerProcess(coordinator.getPort()));
+            processes.add(startWorkerProcess(coordinator.getPort()));
+            coordinator.render(TestSceneLoader.createScene(new Vector3D(0.25, 0.5, 0.75)), output.toString(), new RenderSettings().setTileSize(4), null);
+        } finally {
+            for(Process process : processes)
+                process.destroy();
+        }
+        assertArrayEquals(renderLocally(), Files.readAllBytes(output));
+    }
+
+    @Test
+    @Timeout(60)
+    @DisplayName("Reassign Tiles Of Stalled Worker")
+    void testStalledWorker() throws Exception {
+        Path projectFile = createProject();
+        Path output = tempFile();
+        try(RenderCoordinator coordinator = new RenderCoordinator(projectFile, 0, 200);
+            Socket stalled = new Socket("localhost", coordinator.getPort())) {
+            // Joins like a worker, then keeps its tiles without ever answering
+            DataOutputStream out = new DataOutputStream(stalled.getOutputStream());
+            out.writeInt(RenderProtocol.MAGIC);
+            out.writeInt(RenderProtocol.VERSION);
+            out.writeInt(1);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stalled.getInputStream()));
+            assertEquals(RenderProtocol.SCENE, RenderProtocol.readType(in));
+            Path unpacked = RenderProtocol.unbundle(in, Files.createTempDirectory("raydream-stalled"));
+            assertEquals("0.25 0.5 0.75", Files.readString(unpacked));
+            out.writeByte(RenderProtocol.READY);
+            out.flush();
+            while(coordinator.getWorkerCount() == 0)
+                Thread.sleep(10);
+
+            Thread worker = new Thread(() -> {
+                try {
+                    new RenderWorker("localhost", coordinator.getPort(), 2, new TestSceneLoader()).run();
+                } catch (IOException ignored) {
+                }
+            });
+            worker.setDaemon(true);
+            worker.start();
+            coordinator.render(TestSceneLoader.createScene(new Vector3D(0.25, 0.5, 0.75)), output.toString(), new RenderSettings().setTileSize(4), null);
+            assertEquals(1, coordinator.getWorkerCount());
+        }
+        assertArrayEquals(renderLocally(), Files.readAllBytes(output));
+    }
+
+    @Test
+    @Timeout(60)
+    @DisplayName("Keep Slow Worker That Keeps Answering")
+    void testSlowWorker() throws Exception {
+        Path projectFile = createProject();
+        Path output = tempFile();
+        try(RenderCoordinator coordinator = new RenderCoordinator(projectFile, 0, 400);
+            Socket slow = new Socket("localhost", coordinator.getPort())) {
+            // Holds four tiles and answers one every 150 ms, so its last tile waits longer than the timeout
+            DataOutputStream out = new DataOutputStream(slow.getOutputStream());
+            out.writeInt(RenderProtocol.MAGIC);
+            out.writeInt(RenderProtocol.VERSION);
+            out.writeInt(2);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(slow.getInputStream()));
+            assertEquals(RenderProtocol.SCENE, RenderProtocol.readType(in));
+            RenderProtocol.unbundle(in, Files.createTempDirectory("raydream-slow"));
+            out.writeByte(RenderProtocol.READY);
+            out.flush();
+            while(coordinator.getWorkerCount() == 0)
+                Thread.sleep(10);
+
+            Thread worker = new Thread(() -> {
+                try {
+                    int type;
+                    while((type = RenderProtocol.readType(in)) >= 0) {
+                        if(type == RenderProtocol.JOB) {
+                            in.readInt();
+                            RenderProtocol.readSettings(in);
+                            continue;
+                        }
+                        int jobId = in.readInt();
+                        Tile tile = RenderProtocol.readTile(in);
+                        Thread.sleep(150);
+                        out.writeByte(RenderProtocol.RESULT);
+                        out.writeInt(jobId);
+                        out.writeInt(tile.index());
+                        out.writeInt(tile.width());
+                        out.writeInt(tile.height());
+                        new AccumulationBuffer(tile.width(), tile.height()).write(out);
+                        out.flush();
+                    }
+                } catch (IOException | InterruptedException ignored) {
+                }
+            });
+            worker.setDaemon(true);
+            worker.start();
+            coordinator.render(TestSceneLoader.createScene(new Vector3D(0.25, 0.5, 0.75)), output.toString(), new RenderSettings().setTileSize(4), null);
+            assertEquals(1, coordinator.getWorkerCount());
+        }
+    }
+
+    @Test
+    @Timeout(60)
+    @DisplayName("Ship Only The Files The Project References")
+    void testBundle() throws Exception {
+        Path projectFile = createProject();
+        Path directory = projectFile.getParent();
+        Path texture = Files.createDirectories(directory.resolve("textures")).resolve("wood.png");
+        Files.write(texture, new byte[100000]);
+        Files.writeString(directory.resolve("model.rdo"), "+ mesh:\nmaterial:\n| bump: textures/bump.png\n/\n;\n");
+        Path bump = directory.resolve("textures/bump.png");
+        Files.write(bump, new byte[] {4, 5, 6});
+        Files.writeString(projectFile, "0.25 0.5 0.75\n| texture: textures/wood.png\n| bump: null\nfile: model.rdo\n");
+        Files.writeString(directory.resolve("notes.txt"), "not referenced");
+        Files.write(Files.createDirectories(directory.resolve(ApplicationConfig.BVH_CACHE_DIRECTORY)).resolve("mesh.bvh"), new byte[] {7});
+        Path output = directory.resolve("render.png");
+        Files.write(output, new byte[] {1, 2, 3});
+        Files.writeString(directory.resolve("render.png.checkpoint"), "checkpoint");
+        try(RenderCoordinator coordinator = new RenderCoordinator(projectFile, output, 0, 1000);
+            Socket socket = new Socket("localhost", coordinator.getPort())) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(RenderProtocol.MAGIC);
+            out.writeInt(RenderProtocol.VERSION);
+            out.writeInt(1);
+            out.flush();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            assertEquals(RenderProtocol.SCENE, RenderProtocol.readType(in));
+            Path unpackedDirectory = Files.createTempDirectory("raydream-bundle");
+            Path unpacked = RenderProtocol.unbundle(in, unpackedDirectory);
+            assertEquals(Files.readString(projectFile), Files.readString(unpacked));
+            assertArrayEquals(Files.readAllBytes(texture), Files.readAllBytes(unpackedDirectory.resolve("textures/wood.png")));
+            assertArrayEquals(Files.readAllBytes(bump), Files.readAllBytes(unpackedDirectory.resolve("textures/bump.png")));
+            assertTrue(Files.exists(unpackedDirectory.resolve("model.rdo")));
+            assertFalse(Files.exists(unpackedDirectory.resolve("notes.txt")));
+            assertFalse(Files.exists(unpackedDirectory.resolve(ApplicationConfig.BVH_CACHE_DIRECTORY)));
+            assertFalse(Files.exists(unpackedDirectory.resolve("render.png")));
+            assertFalse(Files.exists(unpackedDirectory.resolve("render.png.checkpoint")));
+        }
+    }
+
+    @Test
+    @Timeout(60)
+    @DisplayName("Drop Worker Returning Samples Of The Wrong Size")
+    void testOversizedResult() throws Exception {
+        Path projectFile = createProject();
+        Path output = tempFile();
+        try(RenderCoordinator coordinator = new RenderCoordinator(projectFile, 0);
+            Socket faulty = new Socket("localhost", coordinator.getPort())) {
+            DataOutputStream out = new DataOutputStream(faulty.getOutputStream());
+            out.writeInt(RenderProtocol.MAGIC);
+            out.writeInt(RenderProtocol.VERSION);
+            out.writeInt(1);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(faulty.getInputStream()));
+            assertEquals(RenderProtocol.SCENE, RenderProtocol.readType(in));
+            RenderProtocol.unbundle(in, Files.createTempDirectory("raydream-faulty"));
+            out.writeByte(RenderProtocol.READY);
+            out.flush();
+            while(coordinator.getWorkerCount() == 0)
+                Thread.sleep(10);
+
+            Thread render = new Thread(() -> {
+                try {
+                    coordinator.render(TestSceneLoader.createScene(new Vector3D(0.25, 0.5, 0.75)), output.toString(), new RenderSettings().setTileSize(4), null);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            render.start();
+            assertEquals(RenderProtocol.JOB, RenderProtocol.readType(in));
+            int jobId = in.readInt();
+            RenderProtocol.readSettings(in);
+            assertEquals(RenderProtocol.TILE, RenderProtocol.readType(in));
+            assertEquals(jobId, in.readInt());
+            Tile tile = RenderProtocol.readTile(in);
+            // Announces samples larger than the tile and never sends them, so only a size check made
+            // before reading them lets the coordinator drop the worker
+            out.writeByte(RenderProtocol.RESULT);
+            out.writeInt(jobId);
+            out.writeInt(tile.index());
+            out.writeInt(1000);
+            out.writeInt(1000);
+            out.flush();
+            try {
+                while(in.read() >= 0) {
+                }
+            } catch (IOException ignored) {
+                // Reset by the coordinator dropping the connection
+            }
+
+            Thread worker = new Thread(() -> {
+                try {
+                    new RenderWorker("localhost", coordinator.getPort(), 2, new TestSceneLoader()).run();
+                } catch (IOException ignored) {
+                }
+            });
+            worker.setDaemon(true);
+            worker.start();
+            render.join();
+            assertEquals(1, coordinator.getWorkerCount());
+        }
+        assertArrayEquals(renderLocally(), Files.readAllBytes(output));
+    }
+}
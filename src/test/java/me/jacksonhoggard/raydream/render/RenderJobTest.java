@@ -0,0 +1,121 @@
+package me.jacksonhoggard.raydream.render;
+
+import me.jacksonhoggard.raydream.light.Light;
+import me.jacksonhoggard.raydream.light.PointLight;
+import me.jacksonhoggard.raydream.math.Vector3D;
+import me.jacksonhoggard.raydream.object.Object;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("RenderJob Tests")
+public class RenderJobTest {
+
+    private static Scene createScene() {
+        Camera camera = new Camera(new Vector3D(0, 0, 2), new Vector3D(), new Vector3D(0, 1, 0), 60, 0, 16, 12);
+        Light ambient = new PointLight(new Vector3D(), new Vector3D(1, 1, 1), 1);
+        return new Scene(camera, ambient, new Light[0], new Object[0], new Vector3D(0.5, 0.5, 0.5), 16, 12);
+    }
+
+    @Test
+    @DisplayName("Concurrent Jobs Share One Scheduler")
+    void testConcurrentJobs() throws Exception {
+        RenderScheduler scheduler = new RenderScheduler(2, RenderScheduler.Policy.FAIR);
+        Scene scene = createScene();
+        File first = File.createTempFile("raydream-first", ".png");
+        File second = File.createTempFile("raydream-second", ".png");
+        first.deleteOnExit();
+        second.deleteOnExit();
+        RenderJob firstJob = new RenderJob(scene, first.getPath(), new RenderSettings().setTileSize(4), null, scheduler);
+        RenderJob secondJob = new RenderJob(scene, second.getPath(), new RenderSettings().setTileSize(4).setPriority(1), null, scheduler);
+
+        ExecutorService drivers = Executors.newFixedThreadPool(2);
+        try {
+            CompletableFuture<Void> a = CompletableFuture.runAsync(() -> run(firstJob), drivers);
+            CompletableFuture<Void> b = CompletableFuture.runAsync(() -> run(secondJob), drivers);
+            CompletableFuture.allOf(a, b).get();
+        } finally {
+            drivers.shutdown();
+        }
+
+        assertEquals(100, firstJob.getProgress().getPercent());
+        assertEquals(100, secondJob.getProgress().getPercent());
+        assertEquals(firstJob.getImage().getRGB(3, 3), secondJob.getImage().getRGB(3, 3));
+        assertEquals(0, scheduler.getActiveJobCount());
+    }
+
+    @Test
+    @DisplayName("Cancelling One Job Leaves Others Untouched")
+    void testCancel() throws IOException {
+        Scene scene = createScene();
+        File output = File.createTempFile("raydream-cancel", ".png");
+        output.deleteOnExit();
+        RenderJob canceled = new RenderJob(scene, output.getPath(), new RenderSettings(), null);
+        RenderJob other = new RenderJob(scene, output.getPath(), new RenderSettings(), null);
+        canceled.cancel();
+        canceled.run();
+
+        assertTrue(canceled.isCanceled());
+        assertFalse(other.isCanceled());
+        assertEquals(0, canceled.getProgress().getCompleted());
+    }
+
+    @Test
+    @DisplayName("Crop Renders Only The Region And Composites Over The Full Frame")
+    void testCrop() throws IOException {
+        Scene scene = createScene();
+        File output = File.createTempFile("raydream-crop", ".png");
+        output.deleteOnExit();
+        RenderJob full = new RenderJob(scene, output.getPath(), new RenderSettings().setTileSize(4), null);
+        full.run();
+
+        CropRegion region = new CropRegion(5, 3, 6, 4);
+        RenderJob cropped = new RenderJob(scene, output.getPath(), new RenderSettings().setTileSize(4).setCrop(region).setComposite(true), null);
+        cropped.run();
+        assertEquals(6, cropped.getImage().getWidth());
+        assertEquals(4, cropped.getImage().getHeight());
+        assertEquals(region.getPixelCount(), cropped.getProgress().getCompleted());
+        assertEquals(full.getImage().getRGB(7, 4), cropped.getImage().getRGB(2, 1));
+
+        BufferedImage composited = ImageIO.read(output);
+        assertEquals(16, composited.getWidth());
+        assertEquals(12, composited.getHeight());
+    }
+
+    @Test
+    @DisplayName("Time Budget Stops At The Deadline With Every Pixel Sampled")
+    void testTimeBudget() throws IOException {
+        Scene scene = createScene();
+        File output = File.createTempFile("raydream-budget", ".png");
+        output.deleteOnExit();
+        RenderJob job = new RenderJob(scene, output.getPath(), new RenderSettings().setTileSize(4).setTimeBudget(300), null);
+        long start = System.nanoTime();
+        job.run();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(job.getSettings().isProgressive());
+        assertTrue(elapsedMillis >= 300, "stopped after " + elapsedMillis + "ms");
+        assertTrue(elapsedMillis < 5000, "stopped after " + elapsedMillis + "ms");
+        assertTrue(job.getCompletedPasses() > 0);
+        for(int k = 0; k < job.getAccumulation().getPixelCount(); k++)
+            assertTrue(job.getAccumulation().getSampleCount(k) > 0);
+        assertTrue(output.length() > 0);
+    }
+
+    private static void run(RenderJob job) {
+        try {
+            job.run();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
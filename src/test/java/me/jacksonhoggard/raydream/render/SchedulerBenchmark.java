@@ -0,0 +1,80 @@
+package me.jacksonhoggard.raydream.render;
+
+import com.sun.management.OperatingSystemMXBean;
+import me.jacksonhoggard.raydream.light.Light;
+import me.jacksonhoggard.raydream.light.PointLight;
+import me.jacksonhoggard.raydream.material.Material;
+import me.jacksonhoggard.raydream.math.Vector3D;
+import me.jacksonhoggard.raydream.object.Object;
+import me.jacksonhoggard.raydream.object.Sphere;
+import me.jacksonhoggard.raydream.object.Transform;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Compares the flat tile queue of {@link RenderScheduler} with the recursive subdivision of
+ * {@link SubdivisionScheduler} on a frame whose cost is concentrated in one corner: a cluster of glass
+ * spheres in front of an empty sky. Reports the median wall time and the core time left idle, which is
+ * where the tail of a badly balanced frame shows up.
+ * <p>
+ * Run with {@code java -cp <test classpath> me.jacksonhoggard.raydream.render.SchedulerBenchmark [threads] [runs]}
+ */
+public class SchedulerBenchmark {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 180;
+
+    public static void main(String[] args) throws IOException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        Scene scene = createScene();
+        RenderScheduler queue = new RenderScheduler(threads, RenderScheduler.Policy.FAIR);
+        SubdivisionScheduler subdivision = new SubdivisionScheduler(threads);
+        System.out.println("Threads: " + threads + ", runs: " + runs + ", " + WIDTH + "x" + HEIGHT);
+        for(int tileSize : new int[] {16, 32, 64}) {
+            measure("tile queue   tile " + tileSize, scene, tileSize, threads, runs, () -> queue);
+            measure("subdivision  tile " + tileSize, scene, tileSize, threads, runs, () -> subdivision);
+        }
+        System.exit(0);
+    }
+
+    private static void measure(String name, Scene scene, int tileSize, int threads, int runs, Supplier<TileExecutor> executor) throws IOException {
+        OperatingSystemMXBean os = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        File output = File.createTempFile("raydream-benchmark", ".png");
+        output.deleteOnExit();
+        RenderSettings settings = new RenderSettings(4, 4, 4, threads).setTileSize(tileSize);
+        // Warm up the JIT before measuring
+        new RenderJob(scene, output.getPath(), settings, null, executor.get()).runPass();
+        double[] wall = new double[runs];
+        double[] idle = new double[runs];
+        for(int run = 0; run < runs; run++) {
+            long cpuStart = os.getProcessCpuTime();
+            long start = System.nanoTime();
+            new RenderJob(scene, output.getPath(), settings, null, executor.get()).runPass();
+            long elapsed = System.nanoTime() - start;
+            long cpu = os.getProcessCpuTime() - cpuStart;
+            wall[run] = elapsed / 1e6;
+            idle[run] = Math.max(0, 1.0 - (double) cpu / ((double) elapsed * threads)) * 100;
+        }
+        Arrays.sort(wall);
+        Arrays.sort(idle);
+        System.out.printf("%-24s %9.1f ms   idle %5.1f%%%n", name, wall[runs / 2], idle[runs / 2]);
+    }
+
+    private static Scene createScene() {
+        Camera camera = new Camera(new Vector3D(0, 0, 4), new Vector3D(), new Vector3D(0, 1, 0), 60, 0, WIDTH, HEIGHT);
+        Light ambient = new PointLight(new Vector3D(), new Vector3D(1, 1, 1), 1);
+        Light[] lights = {new PointLight(new Vector3D(2, 3, 4), new Vector3D(1, 1, 1), 1)};
+        Material glass = new Material(new Vector3D(1, 1, 1), 0.0, 0.0, 0.9, 200.0, 0.0, 0.0, 1.5, 0.0, Material.Type.REFLECT_REFRACT, null, null);
+        Object[] objects = new Object[9];
+        for(int k = 0; k < objects.length; k++) {
+            Vector3D position = new Vector3D(-2.6 + (k % 3) * 0.45, 0.9 + (k / 3) * 0.45, 0);
+            objects[k] = new Sphere(new Transform(position, new Vector3D(), new Vector3D(1, 1, 1)), 0.2, glass);
+        }
+        return new Scene(camera, ambient, lights, objects, new Vector3D(0.5, 0.7, 1.0), WIDTH, HEIGHT);
+    }
+}
@@ -0,0 +1,47 @@
+package me.jacksonhoggard.raydream.render;
+
+import me.jacksonhoggard.raydream.math.Vector3D;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("SubdivisionScheduler Tests")
+public class SubdivisionSchedulerTest {
+
+    private static File tempFile() throws IOException {
+        File file = File.createTempFile("raydream-subdivision", ".png");
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    @DisplayName("Subdivided Render Matches Tile Queue Render")
+    void testMatchesTileQueue() throws IOException {
+        Scene scene = TestSceneLoader.createScene(new Vector3D(0.25, 0.5, 0.75));
+        File subdivided = tempFile();
+        File queued = tempFile();
+        // Tiles larger than twice the minimum split size so idle workers split them
+        RenderJob job = new RenderJob(scene, subdivided.getPath(), new RenderSettings().setTileSize(16), null, new SubdivisionScheduler(4));
+        job.run();
+        new RenderJob(scene, queued.getPath(), new RenderSettings().setTileSize(16), null).run();
+
+        assertEquals(100, job.getProgress().getPercent());
+        assertArrayEquals(Files.readAllBytes(queued.toPath()), Files.readAllBytes(subdivided.toPath()));
+    }
+
+    @Test
+    @DisplayName("Progressive Passes Reuse The Pool")
+    void testProgressive() throws IOException {
+        Scene scene = TestSceneLoader.createScene(new Vector3D(0.25, 0.5, 0.75));
+        RenderJob job = new RenderJob(scene, tempFile().getPath(), new RenderSettings().setTileSize(4).setPasses(3), null, new SubdivisionScheduler(2));
+        job.run();
+
+        assertEquals(3, job.getCompletedPasses());
+        assertEquals(3 * job.getSettings().getSamplesPerPass(), job.getAccumulation().getSampleCount(0));
+    }
+}
@@ -0,0 +1,31 @@
+package me.jacksonhoggard.raydream.render;
+
+import me.jacksonhoggard.raydream.light.Light;
+import me.jacksonhoggard.raydream.light.PointLight;
+import me.jacksonhoggard.raydream.math.Vector3D;
+import me.jacksonhoggard.raydream.object.Object;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Loads a fixed scene whose sky color is read from the project file, so render workers need no OpenGL context
+ */
+public class TestSceneLoader implements SceneLoader {
+
+    static final int WIDTH = 16;
+    static final int HEIGHT = 12;
+
+    @Override
+    public Scene load(Path projectFile) throws IOException {
+        String[] sky = Files.readString(projectFile).trim().split(" ");
+        return createScene(new Vector3D(Double.parseDouble(sky[0]), Double.parseDouble(sky[1]), Double.parseDouble(sky[2])));
+    }
+
+    static Scene createScene(Vector3D skyColor) {
+        Camera camera = new Camera(new Vector3D(0, 0, 2), new Vector3D(), new Vector3D(0, 1, 0), 60, 0, WIDTH, HEIGHT);
+        Light ambient = new PointLight(new Vector3D(), new Vector3D(1, 1, 1), 1);
+        return new Scene(camera, ambient, new Light[0], new Object[0], skyColor, WIDTH, HEIGHT);
+    }
+}
@@ -0,0 +1,88 @@
+package me.jacksonhoggard.raydream.render;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("TileScheduler Tests")
+public class TileSchedulerTest {
+
+    private static final int WIDTH = 107;
+    private static final int HEIGHT = 61;
+
+    @Test
+    @DisplayName("Every Order Covers Each Pixel Exactly Once")
+    void testCoverage() {
+        for (TileOrder order : TileOrder.values()) {
+            TileScheduler scheduler = new TileScheduler(WIDTH, HEIGHT, 16, order);
+            int[] covered = new int[WIDTH * HEIGHT];
+            int tiles = 0;
+            Tile tile;
+            while ((tile = scheduler.next()) != null) {
+                tiles++;
+                for (int y = tile.y(); y < tile.y() + tile.height(); y++) {
+                    for (int x = tile.x(); x < tile.x() + tile.width(); x++) {
+                        covered[y * WIDTH + x]++;
+                    }
+                }
+            }
+            assertEquals(scheduler.getTileCount(), tiles, order.name());
+            for (int count : covered) {
+                assertEquals(1, count, order.name());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Crop Region Tiles Stay Inside The Region")
+    void testCropRegion() {
+        CropRegion region = new CropRegion(30, 20, 50, 25);
+        TileScheduler scheduler = new TileScheduler(region, 16, TileOrder.SPIRAL);
+        int pixels = 0;
+        Tile tile;
+        while ((tile = scheduler.next()) != null) {
+            assertTrue(tile.x() >= region.x() && tile.x() + tile.width() <= region.x() + region.width());
+            assertTrue(tile.y() >= region.y() && tile.y() + tile.height() <= region.y() + region.height());
+            pixels += tile.getPixelCount();
+        }
+        assertEquals(region.getPixelCount(), pixels);
+        assertEquals(new CropRegion(30, 20, 20, 10), new CropRegion(30, 20, 50, 25).clamp(50, 30));
+        assertThrows(IllegalArgumentException.class, () -> new CropRegion(60, 0, 10, 10).clamp(50, 30));
+    }
+
+    @Test
+    @DisplayName("Tile Count Is Proportional To Tiles, Not Pixels")
+    void testTileCount() {
+        TileScheduler scheduler = new TileScheduler(3840, 2160, 32, TileOrder.SCANLINE);
+        assertEquals(120 * 68, scheduler.getTileCount());
+    }
+
+    @Test
+    @DisplayName("Spiral Order Starts At The Center")
+    void testSpiralStartsAtCenter() {
+        TileScheduler scheduler = new TileScheduler(160, 160, 32, TileOrder.SPIRAL);
+        Tile first = scheduler.next();
+        assertEquals(64, first.x());
+        assertEquals(64, first.y());
+    }
+
+    @Test
+    @DisplayName("Hilbert Order Visits Adjacent Tiles")
+    void testHilbertAdjacency() {
+        TileScheduler scheduler = new TileScheduler(256, 256, 32, TileOrder.HILBERT);
+        Tile previous = scheduler.next();
+        Tile tile;
+        while ((tile = scheduler.next()) != null) {
+            int distance = Math.abs(tile.x() - previous.x()) + Math.abs(tile.y() - previous.y());
+            assertEquals(32, distance);
+            previous = tile;
+        }
+    }
+
+    @Test
+    @DisplayName("Invalid Tile Size")
+    void testInvalidTileSize() {
+        assertThrows(IllegalArgumentException.class, () -> new TileScheduler(10, 10, 0, TileOrder.SCANLINE));
+    }
+}
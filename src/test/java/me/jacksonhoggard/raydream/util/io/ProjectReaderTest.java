@@ -0,0 +1,148 @@
+package me.jacksonhoggard.raydream.util.io;
+
+import me.jacksonhoggard.raydream.light.AreaLight;
+import me.jacksonhoggard.raydream.light.PointLight;
+import me.jacksonhoggard.raydream.material.Material;
+import me.jacksonhoggard.raydream.object.MeshCache;
+import me.jacksonhoggard.raydream.object.Model;
+import me.jacksonhoggard.raydream.object.Sphere;
+import me.jacksonhoggard.raydream.render.RenderSettings;
+import me.jacksonhoggard.raydream.render.Scene;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("ProjectReader Tests")
+public class ProjectReaderTest {
+
+    private static final String MATERIAL = """
+            material:
+            | color: 0.5 0.25 1.0
+            | ambient: 0.1
+            | diffuse: 0.8
+            | specular: 0.2
+            | exponent: 32.0
+            | ior: 1.0
+            | k: 0.0
+            | metalness: 0.0
+            | roughness: 0.0
+            | type: REFLECT
+            | texture: %s
+            | bump: null
+            | bScale: 0.0
+            /
+            """;
+
+    private static final String TRANSFORM = """
+            transform:
+            | translation: %s
+            | rotation: 0.0 0.0 0.0
+            | scale: 1.0 1.0 1.0
+            /
+            """;
+
+    private static Path createProject() throws IOException {
+        Path directory = Files.createTempDirectory("raydream-project");
+        Files.createDirectories(directory.resolve("textures"));
+        ImageIO.write(new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB), "png", directory.resolve("textures/wood.png").toFile());
+        Files.writeString(directory.resolve("cube.rdo"),
+                "+ mesh:\nlabel: a\n" + MATERIAL.formatted("null") + "triangles: \n"
+                        + "| 0.0 0.0 0.0 1.0 0.0 0.0 0.0 1.0 0.0 0.0 0.0 1.0 0.0 0.0 1.0 0.0 0.0 1.0 0.0 0.0 1.0 0.0 0.0 1.0\n/\n;\n"
+                        + "+ mesh:\nlabel: b\ntriangles: \n"
+                        + "| 0.0 0.0 1.0 1.0 0.0 1.0 0.0 1.0 1.0 0.0 0.0 1.0 0.0 0.0 1.0 0.0 0.0 1.0 0.0 0.0 1.0 0.0 0.0 1.0\n/\n;\n");
+        Path projectFile = directory.resolve("scene.dream");
+        Files.writeString(projectFile,
+                "+ settings:\nlookFrom: 0.0 1.0 5.0\nlookAt: 0.0 0.0 0.0\nup: 0.0 1.0 0.0\nsky: 0.25 0.5 0.75\n"
+                        + "ambient: 0.1 0.1 0.1\nfov: 45.0\naperture: 0.0\nwidth: 64\nheight: 48\nsamples: 3\nbounces: 4\n"
+                        + "shadows: 2\nbvhWidth: 4\nlazyMeshes: true\n;\n"
+                        + "+ light: point\nlabel: Key\n" + TRANSFORM.formatted("1.0 2.0 3.0")
+                        + "material:\n| color: 1.0 1.0 1.0\n| brightness: 2.0\n/\n;\n"
+                        + "+ light: area\nlabel: Fill\n" + TRANSFORM.formatted("0.0 3.0 0.0")
+                        + "material:\n| color: 1.0 0.5 0.5\n| brightness: 1.0\n/\n;\n"
+                        + "+ object: sphere\nlabel: Ball\n" + TRANSFORM.formatted("0.0 0.0 -1.0") + MATERIAL.formatted("textures/wood.png") + ";\n"
+                        + "+ object: model\nlabel: Cube\n" + TRANSFORM.formatted("2.0 0.0 0.0") + "file: cube.rdo\n;\n"
+                        + "+ object: model\nlabel: Cube copy\n" + TRANSFORM.formatted("-2.0 0.0 0.0") + "splitMethod: SPATIAL\nfile: cube.rdo\n;\n");
+        return projectFile;
+    }
+
+    @Test
+    @DisplayName("Read Settings Without The Editor")
+    void testSettings() throws IOException {
+        ProjectReader reader = new ProjectReader(createProject(), new MeshCache());
+        RenderSettings settings = reader.getSettings();
+        assertEquals(3, settings.getSampleDepth());
+        assertEquals(4, settings.getBounces());
+        assertEquals(2, settings.getNumShadowRays());
+        assertEquals(4, settings.getBvhWidth());
+        assertTrue(settings.isLazyMeshes());
+
+        Scene scene = reader.createScene();
+        assertEquals(64, scene.getWidth());
+        assertEquals(48, scene.getHeight());
+        assertEquals(45.0, scene.getCamera().getFov(), 1e-9);
+        assertEquals(5.0, scene.getCamera().getLookFrom().z, 1e-9);
+    }
+
+    @Test
+    @DisplayName("Build Objects, Lights And Models")
+    void testScene() throws IOException {
+        Scene scene = new ProjectReader(createProject(), new MeshCache()).createScene();
+        assertEquals(2, scene.getLights().length);
+        assertTrue(scene.getLights()[0] instanceof PointLight);
+        assertTrue(scene.getLights()[1] instanceof AreaLight);
+
+        assertEquals(5, scene.getObjects().length);
+        assertTrue(scene.getObjects()[0] instanceof Sphere);
+        Sphere sphere = (Sphere) scene.getObjects()[0];
+        assertEquals(Material.Type.REFLECT, sphere.getMaterial().getType());
+        assertNotNull(sphere.getMaterial().getTexture());
+        assertEquals(-1.0, sphere.getTransform().translation().z, 1e-9);
+
+        Model first = (Model) scene.getObjects()[1];
+        Model second = (Model) scene.getObjects()[2];
+        assertNotSame(first.getMesh(), second.getMesh());
+        assertEquals(Material.Type.REFLECT, first.getMaterial().getType());
+        assertEquals(Material.Type.OTHER, second.getMaterial().getType());
+        // The copy builds its meshes with another split method, so they are kept apart
+        Model copy = (Model) scene.getObjects()[3];
+        assertNotSame(first.getMesh(), copy.getMesh());
+    }
+
+    @Test
+    @DisplayName("Share Meshes Between Placements Of One Model")
+    void testSharedMeshes() throws IOException {
+        Path projectFile = createProject();
+        Files.writeString(projectFile, Files.readString(projectFile).replace("splitMethod: SPATIAL\n", ""));
+        Scene scene = new ProjectReader(projectFile, new MeshCache()).createScene();
+        Model first = (Model) scene.getObjects()[1];
+        Model copy = (Model) scene.getObjects()[3];
+        assertSame(first.getMesh(), copy.getMesh());
+        assertEquals(2.0, first.getTransform().translation().x, 1e-9);
+        assertEquals(-2.0, copy.getTransform().translation().x, 1e-9);
+    }
+
+    @Test
+    @DisplayName("List Referenced Files")
+    void testReferencedFiles() throws IOException {
+        Path projectFile = createProject();
+        Path directory = projectFile.toAbsolutePath().getParent();
+        Files.writeString(directory.resolve("unused.png"), "");
+        assertEquals(List.of(directory.resolve("textures/wood.png"), directory.resolve("cube.rdo")), ProjectReader.referencedFiles(projectFile));
+    }
+
+    @Test
+    @DisplayName("Reject Unknown Tokens")
+    void testUnknownToken() throws IOException {
+        Path projectFile = createProject();
+        Files.writeString(projectFile, "+ object: cone\n;\n");
+        assertThrows(IOException.class, () -> new ProjectReader(projectFile, new MeshCache()));
+    }
+}